@@ -0,0 +1,471 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ArnesCluster - Sistema completo en una máquina para pruebas de desempeño
+ *
+ * Levanta ServidorCentral y N NodoTrabajador Java como procesos aparte en
+ * loopback, cada uno con su directorio de trabajo y su copia de los datos
+ * (generados con GeneradorDatos), en puertos propios a partir de
+ * --puerto (coordinador en la base, nodo i en base + 100 + i). Los nodos
+ * se registran en el coordinador, que arranca sin nodos semilla.
+ *
+ * Fallas que se pueden inyectar en un nodo:
+ *   matar    - SIGKILL del proceso; al curar se vuelve a iniciar
+ *   pausar   - SIGSTOP (el proceso no responde pero sus conexiones siguen
+ *              abiertas); al curar SIGCONT
+ *   lentitud - cada tarea del nodo demora --retardo ms (operación RETARDO)
+ *
+ * Escenario: carga a tasa fija, primero --calentamiento s que no se miden
+ * (JIT, conexiones), luego --antes s, falla durante --durante s, curación
+ * y --despues s más. Informa latencia y errores de cada fase,
+ * el tiempo hasta que el sistema se recupera de la falla (último intervalo
+ * de 100 ms con solicitudes fallidas o latencia alta) y una línea de
+ * tiempo cada 500 ms.
+ *
+ * Uso:
+ *   java ArnesCluster [--nodos=4] [--replicas=2] [--quorum=2:1] [--cuentas=5000] [--tasa=200]
+ *                     [--falla=matar|pausar|lentitud|ninguna] [--nodo=1] [--retardo=200]
+ *                     [--calentamiento=3] [--antes=5] [--durante=10] [--despues=5] [--plazo=2000]
+ *                     [--dir=arnes] [--puerto=19000]
+ * Sólo para Linux/macOS (pausar usa kill -STOP).
+ */
+public class ArnesCluster implements Closeable {
+
+    private static final int TIEMPO_ARRANQUE_MS = 60000;
+    private static final long INTERVALO_MS = 100;     // Intervalo para detectar la recuperación
+    private static final long INTERVALO_LINEA_MS = 500;
+
+    /**
+     * Parámetros del sistema a levantar
+     */
+    public static class Configuracion {
+        public int nodos = 4;
+        public int replicas = 2;
+        public String quorum = "2:1"; // W:R del coordinador (--quorum)
+        public long cuentas = 5000;
+        public int puertoBase = 19000;
+        public Path directorio = Paths.get("arnes");
+        public String classpath = System.getProperty("java.class.path");
+        public Map<String, List<String>> opcionesJvm = new HashMap<>(); // Por clase (ServidorCentral, NodoTrabajador)
+        public List<String> argumentosNodo = new ArrayList<>();         // Se agregan a los de cada nodo
+    }
+
+    private final Configuracion conf;
+    private final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    private final Map<Integer, Process> nodos = new TreeMap<>();
+    private Process coordinador;
+    private long cuentasPorParticion;
+    private int particiones;
+
+    public ArnesCluster(Configuracion conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * Genera los datos, inicia coordinador y nodos y espera a que cada
+     * partición responda
+     */
+    public void iniciar() throws IOException, InterruptedException {
+        Directorios.borrar(conf.directorio);
+        GeneradorDatos.Parametros parametros = new GeneradorDatos.Parametros();
+        parametros.cuentas = conf.cuentas;
+        parametros.directorio = conf.directorio.resolve("data").toString();
+        GeneradorDatos.Resultado datos = GeneradorDatos.generar(parametros);
+        cuentasPorParticion = parametros.cuentasPorParticion();
+        particiones = parametros.particiones;
+        log("Datos generados: " + conf.cuentas + " cuentas, saldo total " + CodecMonto.formatear(datos.saldoTotal));
+
+        Path dirCoordinador = conf.directorio.resolve("central");
+        Files.createDirectories(dirCoordinador);
+        coordinador = iniciarProceso(dirCoordinador, "ServidorCentral",
+                "--semillas=no", "--puerto=" + conf.puertoBase, "--quorum=" + conf.quorum);
+        esperarPuerto(conf.puertoBase);
+
+        for (int id = 1; id <= conf.nodos; id++) {
+            Path dirNodo = conf.directorio.resolve("nodo" + id);
+            Directorios.copiar(conf.directorio.resolve("data"), dirNodo.resolve("data"));
+            iniciarNodo(id);
+        }
+        for (int id = 1; id <= conf.nodos; id++) {
+            esperarPuerto(puertoNodo(id));
+        }
+        esperarParticiones();
+        log("Sistema listo: coordinador en " + conf.puertoBase + ", " + conf.nodos + " nodos");
+    }
+
+    /**
+     * Inicia (o reinicia) el nodo con sus particiones
+     */
+    public void iniciarNodo(int id) throws IOException {
+        List<String> argumentos = new ArrayList<>(Arrays.asList(String.valueOf(id), "127.0.0.1",
+                "--puerto=" + puertoNodo(id),
+                "--puerto-central=" + conf.puertoBase,
+                "--particiones=" + String.join(",", particionesDeNodo(id)),
+                "--inyectar-fallas=si"));
+        argumentos.addAll(conf.argumentosNodo);
+        Process proceso = iniciarProceso(conf.directorio.resolve("nodo" + id), "NodoTrabajador",
+                argumentos.toArray(new String[0]));
+        nodos.put(id, proceso);
+    }
+
+    /**
+     * Particiones del nodo: la partición p va a los nodos p, p+1, ... (réplicas)
+     */
+    List<String> particionesDeNodo(int id) {
+        List<String> resultado = new ArrayList<>();
+        int replicas = Math.min(conf.replicas, conf.nodos);
+        for (int p = 1; p <= particiones; p++) {
+            for (int r = 0; r < replicas; r++) {
+                if ((p - 1 + r) % conf.nodos + 1 == id) {
+                    resultado.add("parte" + p);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    public int puertoNodo(int id) {
+        return conf.puertoBase + 100 + id;
+    }
+
+    public int getPuertoCoordinador() {
+        return conf.puertoBase;
+    }
+
+    public void matarNodo(int id) throws InterruptedException {
+        Process proceso = nodos.get(id);
+        proceso.destroyForcibly();
+        proceso.waitFor();
+    }
+
+    public void pausarNodo(int id) throws IOException, InterruptedException {
+        senal(nodos.get(id), "-STOP");
+    }
+
+    public void reanudarNodo(int id) throws IOException, InterruptedException {
+        senal(nodos.get(id), "-CONT");
+    }
+
+    /**
+     * Demora artificial en cada tarea del nodo (0 la quita)
+     */
+    public void ralentizarNodo(int id, long retardoMs) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", puertoNodo(id));
+             PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            salida.println("TASK|0|RETARDO|" + retardoMs);
+            entrada.readLine();
+        }
+    }
+
+    /**
+     * Termina nodos y coordinador con SIGTERM (la JVM sale normalmente y
+     * corre lo que hace al salir, como escribir un archivo de clases) y
+     * fuerza a los que no terminaron en plazoMs
+     */
+    public void detener(long plazoMs) throws InterruptedException {
+        List<Process> procesos = new ArrayList<>(nodos.values());
+        if (coordinador != null) {
+            procesos.add(coordinador);
+        }
+        for (Process proceso : procesos) {
+            proceso.destroy();
+        }
+        long limite = System.currentTimeMillis() + plazoMs;
+        for (Process proceso : procesos) {
+            if (!proceso.waitFor(Math.max(0, limite - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                proceso.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Process proceso : nodos.values()) {
+            proceso.destroyForcibly();
+        }
+        if (coordinador != null) {
+            coordinador.destroyForcibly();
+        }
+    }
+
+    private Process iniciarProceso(Path directorio, String clase, String... argumentos) throws IOException {
+        List<String> comando = new ArrayList<>(Collections.singletonList(java));
+        comando.addAll(conf.opcionesJvm.getOrDefault(clase, Collections.emptyList()));
+        comando.addAll(Arrays.asList("-cp", conf.classpath, clase));
+        comando.addAll(Arrays.asList(argumentos));
+        return new ProcessBuilder(comando)
+                .directory(directorio.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(directorio.resolve("salida.txt").toFile()))
+                .start();
+    }
+
+    private static void senal(Process proceso, String senal) throws IOException, InterruptedException {
+        new ProcessBuilder("kill", senal, String.valueOf(proceso.pid())).inheritIO().start().waitFor();
+    }
+
+    private static void esperarPuerto(int puerto) throws IOException, InterruptedException {
+        long limite = System.currentTimeMillis() + TIEMPO_ARRANQUE_MS;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", puerto), 500);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > limite) {
+                    throw new IOException("El puerto " + puerto + " no respondió a tiempo");
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Espera a que la primera cuenta de cada partición se pueda consultar
+     * (los nodos ya se registraron en el coordinador)
+     */
+    private void esperarParticiones() throws IOException, InterruptedException {
+        long limite = System.currentTimeMillis() + TIEMPO_ARRANQUE_MS;
+        try (ClienteBanco banco = new ClienteBanco("127.0.0.1", conf.puertoBase, 1)) {
+            for (int p = 0; p < particiones; p++) {
+                int idCuenta = (int) (GeneradorDatos.PRIMER_ID_CUENTA + p * cuentasPorParticion);
+                while (true) {
+                    String respuesta = banco.consultarSaldo(idCuenta).exceptionally(e -> "").join();
+                    if (respuesta.contains("|OK|")) {
+                        break;
+                    }
+                    if (System.currentTimeMillis() > limite) {
+                        throw new IOException("La partición parte" + (p + 1) + " no respondió a tiempo");
+                    }
+                    Thread.sleep(200);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resultado de una solicitud de la carga
+     */
+    private static final class Muestra {
+        final long enviadaMs;
+        final long latenciaMicros;
+        final boolean fallida;
+
+        Muestra(long enviadaMs, long latenciaMicros, boolean fallida) {
+            this.enviadaMs = enviadaMs;
+            this.latenciaMicros = latenciaMicros;
+            this.fallida = fallida;
+        }
+    }
+
+    /**
+     * Escenario de falla con carga a tasa fija
+     */
+    public void ejecutarEscenario(String falla, int nodo, long retardoMs, int tasa, long plazoMs, int calentamientoS,
+                                  int antesS, int duranteS, int despuesS) throws IOException, InterruptedException {
+        long medicionMs = calentamientoS * 1000L;
+        long falloMs = medicionMs + antesS * 1000L;
+        long curaMs = falloMs + duranteS * 1000L;
+        long finMs = curaMs + despuesS * 1000L;
+        long periodoNanos = TimeUnit.SECONDS.toNanos(1) / tasa;
+
+        Queue<Muestra> muestras = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<?>> respuestas = new ArrayList<>();
+        Random random = new Random(42);
+        boolean fallaAplicada = false;
+        boolean curada = false;
+
+        log("Escenario: falla '" + falla + "' en nodo " + nodo + " a los " + (calentamientoS + antesS) + " s durante " + duranteS +
+            " s, " + tasa + " solicitudes/s");
+        try (ClienteBanco banco = new ClienteBanco("127.0.0.1", conf.puertoBase)) {
+            banco.setPlazoMs(plazoMs);
+            long inicio = System.nanoTime();
+            for (long n = 0; ; n++) {
+                long objetivo = inicio + n * periodoNanos;
+                long espera;
+                while ((espera = objetivo - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(espera);
+                }
+                long ahoraMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+                if (ahoraMs >= finMs) {
+                    break;
+                }
+                if (!fallaAplicada && ahoraMs >= falloMs) {
+                    aplicarFalla(falla, nodo, retardoMs);
+                    fallaAplicada = true;
+                }
+                if (!curada && ahoraMs >= curaMs) {
+                    curarFalla(falla, nodo);
+                    curada = true;
+                }
+
+                // Transferencias dentro de una partición: entre particiones sólo las
+                // atiende un nodo que tenga ambas, y eso no depende de la falla
+                int particion = random.nextInt(particiones);
+                long primera = GeneradorDatos.PRIMER_ID_CUENTA + particion * cuentasPorParticion;
+                int origen = (int) (primera + random.nextInt((int) cuentasPorParticion));
+                CompletableFuture<String> respuesta;
+                if (n % 3 == 0) {
+                    respuesta = banco.consultarSaldo(origen);
+                } else {
+                    int destino = (int) (primera + random.nextInt((int) cuentasPorParticion));
+                    respuesta = banco.transferirFondos(origen, destino, 100);
+                }
+                long enviada = System.nanoTime();
+                respuestas.add(respuesta.handle((r, e) -> {
+                    // Un rechazo de negocio (saldo insuficiente) no es una falla del sistema
+                    boolean fallida = e != null || (r.contains("|ERROR|") && !r.contains("Saldo insuficiente"));
+                    muestras.add(new Muestra(ahoraMs, (System.nanoTime() - enviada) / 1000, fallida));
+                    return null;
+                }));
+            }
+            CompletableFuture.allOf(respuestas.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        informar(new ArrayList<>(muestras), medicionMs, falloMs, curaMs, finMs);
+    }
+
+    private void aplicarFalla(String falla, int nodo, long retardoMs) throws IOException, InterruptedException {
+        log("FALLA: " + falla + " nodo " + nodo);
+        switch (falla) {
+            case "matar":
+                matarNodo(nodo);
+                break;
+            case "pausar":
+                pausarNodo(nodo);
+                break;
+            case "lentitud":
+                ralentizarNodo(nodo, retardoMs);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void curarFalla(String falla, int nodo) throws IOException, InterruptedException {
+        log("CURACIÓN: " + falla + " nodo " + nodo);
+        switch (falla) {
+            case "matar":
+                iniciarNodo(nodo);
+                break;
+            case "pausar":
+                reanudarNodo(nodo);
+                break;
+            case "lentitud":
+                ralentizarNodo(nodo, 0);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Resumen por fase, tiempo de recuperación y línea de tiempo
+     */
+    private static void informar(List<Muestra> muestras, long medicionMs, long falloMs, long curaMs, long finMs) {
+        muestras.sort(Comparator.comparingLong(m -> m.enviadaMs));
+        long[] base = estadisticas(muestras, medicionMs, falloMs);
+
+        System.out.println("\n" + "=".repeat(72));
+        System.out.println("RESULTADO DEL ESCENARIO");
+        System.out.println("=".repeat(72));
+        System.out.println(String.format("%-12s %10s %10s %10s %10s %10s", "Fase", "Enviadas", "Fallidas",
+                "p50 ms", "p99 ms", "máx ms"));
+        filaFase("antes", base);
+        filaFase("falla", estadisticas(muestras, falloMs, curaMs));
+        filaFase("después", estadisticas(muestras, curaMs, finMs));
+
+        // Intervalo malo: alguna solicitud fallida o p99 muy por encima de la base
+        long umbralMicros = Math.max(base[3] * 3, base[3] + 50_000);
+        long ultimoMalo = -1;
+        for (long t = falloMs; t < curaMs; t += INTERVALO_MS) {
+            long[] intervalo = estadisticas(muestras, t, Math.min(t + INTERVALO_MS, curaMs));
+            if (intervalo[0] > 0 && (intervalo[1] > 0 || intervalo[3] > umbralMicros)) {
+                ultimoMalo = t;
+            }
+        }
+        if (ultimoMalo < 0) {
+            System.out.println("Recuperación: la falla no afectó a las solicitudes");
+        } else if (ultimoMalo + INTERVALO_MS >= curaMs) {
+            System.out.println("Recuperación: el sistema no se recuperó mientras duró la falla");
+        } else {
+            System.out.println("Recuperación: " + (ultimoMalo + INTERVALO_MS - falloMs) + " ms después de la falla" +
+                               " (umbral p99 " + umbralMicros / 1000 + " ms)");
+        }
+
+        System.out.println("\nLínea de tiempo:");
+        for (long t = medicionMs; t < finMs; t += INTERVALO_LINEA_MS) {
+            long[] intervalo = estadisticas(muestras, t, t + INTERVALO_LINEA_MS);
+            String marca = t == falloMs ? "  <- falla" : t == curaMs ? "  <- curación" : "";
+            System.out.println(String.format("  %6.1f s  enviadas %5d  fallidas %5d  p99 %9.2f ms%s",
+                    t / 1000.0, intervalo[0], intervalo[1], intervalo[3] / 1000.0, marca));
+        }
+        System.out.println("=".repeat(72));
+    }
+
+    /**
+     * {enviadas, fallidas, p50, p99, máximo} (µs) de las muestras enviadas en [desde, hasta)
+     */
+    private static long[] estadisticas(List<Muestra> muestras, long desdeMs, long hastaMs) {
+        List<Long> latencias = new ArrayList<>();
+        long fallidas = 0;
+        for (Muestra muestra : muestras) {
+            if (muestra.enviadaMs >= desdeMs && muestra.enviadaMs < hastaMs) {
+                latencias.add(muestra.latenciaMicros);
+                fallidas += muestra.fallida ? 1 : 0;
+            }
+        }
+        if (latencias.isEmpty()) {
+            return new long[5];
+        }
+        Collections.sort(latencias);
+        int n = latencias.size();
+        return new long[] {n, fallidas, latencias.get((int) Math.ceil(0.50 * n) - 1),
+                latencias.get((int) Math.ceil(0.99 * n) - 1), latencias.get(n - 1)};
+    }
+
+    private static void filaFase(String fase, long[] e) {
+        System.out.println(String.format("%-12s %10d %10d %10.2f %10.2f %10.2f", fase, e[0], e[1],
+                e[2] / 1000.0, e[3] / 1000.0, e[4] / 1000.0));
+    }
+
+    private static void log(String mensaje) {
+        System.out.println("[arnés] " + mensaje);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = LineaComandos.opciones(args);
+
+        Configuracion conf = new Configuracion();
+        conf.nodos = Integer.parseInt(opciones.getOrDefault("nodos", "4"));
+        conf.replicas = Integer.parseInt(opciones.getOrDefault("replicas", "2"));
+        conf.quorum = opciones.getOrDefault("quorum", conf.quorum);
+        conf.cuentas = Long.parseLong(opciones.getOrDefault("cuentas", "5000"));
+        conf.puertoBase = Integer.parseInt(opciones.getOrDefault("puerto", "19000"));
+        conf.directorio = Paths.get(opciones.getOrDefault("dir", "arnes"));
+
+        try (ArnesCluster arnes = new ArnesCluster(conf)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(arnes::close));
+            arnes.iniciar();
+            arnes.ejecutarEscenario(
+                    opciones.getOrDefault("falla", "matar"),
+                    Integer.parseInt(opciones.getOrDefault("nodo", "1")),
+                    Long.parseLong(opciones.getOrDefault("retardo", "200")),
+                    Integer.parseInt(opciones.getOrDefault("tasa", "200")),
+                    Long.parseLong(opciones.getOrDefault("plazo", "2000")),
+                    Integer.parseInt(opciones.getOrDefault("calentamiento", "3")),
+                    Integer.parseInt(opciones.getOrDefault("antes", "5")),
+                    Integer.parseInt(opciones.getOrDefault("durante", "10")),
+                    Integer.parseInt(opciones.getOrDefault("despues", "5")));
+        }
+    }
+}
@@ -0,0 +1,413 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * ArranqueRapido - Empaquetado con archivo de clases compartidas y
+ * medición del tiempo de arranque
+ *
+ * Al reiniciar coordinador y nodos (despliegues, fallas) el arranque de
+ * la JVM y la carga de clases cuentan como indisponibilidad. Con un
+ * archivo de clases de la aplicación (AppCDS) la JVM mapea las clases ya
+ * verificadas y enlazadas en vez de leerlas y verificarlas de nuevo.
+ *
+ * empaquetar: arma <dir>/banco.jar con las clases compiladas del
+ * classpath (CDS sólo archiva clases de archivos jar) y hace una corrida
+ * de entrenamiento con ArnesCluster (coordinador y un nodo con las cuatro
+ * particiones) y un Cliente con carga. Cada proceso escribe al salir el
+ * archivo de sus clases:
+ *
+ *   JDK 13 a 24: -XX:ArchiveClassesAtExit  -> <dir>/<Clase>.jsa  (se usa con -XX:SharedArchiveFile)
+ *   JDK 25+:     -XX:AOTCacheOutput        -> <dir>/<Clase>.aot  (se usa con -XX:AOTCache; guarda
+ *                                             además clases enlazadas y perfiles de métodos)
+ *
+ * El archivo sólo vale para la misma JVM y el mismo banco.jar (ruta y
+ * fecha): después de recompilar hay que empaquetar de nuevo. Si no
+ * coincide la JVM avisa y arranca sin él.
+ *
+ * medir: tiempo desde que se lanza el proceso hasta la primera solicitud
+ * atendida, con y sin archivo (ambos desde banco.jar), alternando los
+ * modos en cada repetición:
+ *
+ *   NodoTrabajador  - hasta responder OK a TASK CONSULTAR_SALDO (sin registro
+ *                     ni calentamiento, que corre en segundo plano)
+ *   ServidorCentral - hasta responder OK a REQUEST CONSULTAR_SALDO, con el
+ *                     arqueo inicial y el registro de un nodo ya iniciado
+ *   Cliente         - hasta terminar una invocación de una transacción
+ *                     contra un coordinador ya iniciado
+ *
+ * Uso:
+ *   java -cp . ArranqueRapido empaquetar [--dir=arranque] [--puerto=19800] [--transacciones=400]
+ *   java -cp . ArranqueRapido medir [--dir=arranque] [--puerto=19850] [--repeticiones=5]
+ */
+public class ArranqueRapido {
+
+    private static final String[] CLASES = {"NodoTrabajador", "ServidorCentral", "Cliente"};
+    private static final String PARTICIONES = "parte1,parte2,parte3,parte4";
+    private static final int TIEMPO_MAXIMO_MS = 60000;
+    private static final String JAVA = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    // Desde JDK 25 (JEP 483 y 515) el caché AOT reemplaza al archivo dinámico
+    private static final boolean CACHE_AOT = Runtime.version().feature() >= 25;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = LineaComandos.opciones(args);
+        String comando = args.length > 0 ? args[0] : "";
+        Path directorio = Paths.get(opciones.getOrDefault("dir", "arranque")).toAbsolutePath().normalize();
+
+        if (Runtime.version().feature() < 13) {
+            System.out.println("Se necesita JDK 13 o posterior (-XX:ArchiveClassesAtExit)");
+            System.exit(2);
+        }
+        switch (comando) {
+            case "empaquetar":
+                empaquetar(directorio,
+                        Integer.parseInt(opciones.getOrDefault("puerto", "19800")),
+                        Integer.parseInt(opciones.getOrDefault("transacciones", "400")));
+                break;
+            case "medir":
+                medir(directorio,
+                        Integer.parseInt(opciones.getOrDefault("puerto", "19850")),
+                        Integer.parseInt(opciones.getOrDefault("repeticiones", "5")));
+                break;
+            default:
+                System.out.println("Uso: java -cp . ArranqueRapido empaquetar [--dir=arranque] [--puerto=19800] [--transacciones=400]");
+                System.out.println("     java -cp . ArranqueRapido medir [--dir=arranque] [--puerto=19850] [--repeticiones=5]");
+                System.exit(2);
+        }
+    }
+
+    // ========== Empaquetado ==========
+
+    /**
+     * banco.jar, corrida de entrenamiento y verificación de los archivos
+     */
+    static void empaquetar(Path directorio, int puerto, int transacciones) throws IOException, InterruptedException {
+        Files.createDirectories(directorio);
+        Path jar = directorio.resolve("banco.jar");
+        int clases = crearJar(jar);
+        log("Jar: " + jar + " (" + clases + " clases)");
+        for (String clase : CLASES) {
+            Files.deleteIfExists(archivo(directorio, clase));
+        }
+
+        ArnesCluster.Configuracion conf = new ArnesCluster.Configuracion();
+        conf.nodos = 1;
+        conf.replicas = 1;
+        conf.quorum = "1:1";
+        conf.puertoBase = puerto;
+        conf.directorio = directorio.resolve("entrenamiento");
+        conf.classpath = jar.toString();
+        conf.opcionesJvm.put("ServidorCentral", Collections.singletonList(opcionEntrenamiento(directorio, "ServidorCentral")));
+        conf.opcionesJvm.put("NodoTrabajador", Collections.singletonList(opcionEntrenamiento(directorio, "NodoTrabajador")));
+        // Un calentamiento corto, así las clases que usa quedan en el archivo
+        conf.argumentosNodo.add("--calentamiento=3");
+
+        log("Entrenamiento: " + (CACHE_AOT ? "caché AOT" : "archivo CDS dinámico") + ", JDK " + Runtime.version());
+        try (ArnesCluster arnes = new ArnesCluster(conf)) {
+            arnes.iniciar();
+
+            Path dirCliente = conf.directorio.resolve("cliente");
+            Files.createDirectories(dirCliente);
+            Process cliente = iniciarProceso(dirCliente, jar, opcionEntrenamiento(directorio, "Cliente"), "Cliente",
+                    String.valueOf(transacciones), "8", "127.0.0.1", "2000",
+                    "--puerto=" + puerto, "--demora=20", "--lecturas=0.5");
+            if (!cliente.waitFor(5, TimeUnit.MINUTES)) {
+                cliente.destroyForcibly();
+                throw new IOException("El cliente de entrenamiento no terminó; ver " + dirCliente.resolve("salida.txt"));
+            }
+            log("Cliente de entrenamiento: " + transacciones + " transacciones");
+
+            // SIGTERM: la JVM sale normalmente y escribe el archivo
+            arnes.detener(120000);
+        }
+
+        boolean completo = true;
+        for (String clase : CLASES) {
+            Path archivo = archivo(directorio, clase);
+            if (!Files.exists(archivo)) {
+                log("FALTA " + archivo + " (ver salida.txt en " + conf.directorio + ")");
+                completo = false;
+            } else if (!verificar(directorio, clase)) {
+                log("La JVM no pudo usar " + archivo);
+                completo = false;
+            } else {
+                log(String.format("%-16s %s (%.1f MB)", clase, archivo, Files.size(archivo) / 1048576.0));
+            }
+        }
+        if (!completo) {
+            System.exit(1);
+        }
+
+        System.out.println("\nArranque con el archivo (desde el directorio de trabajo de siempre):");
+        for (String clase : CLASES) {
+            System.out.println("  " + JAVA + " " + opcionUso(directorio, clase) + " -cp " + jar + " " + clase + " ...");
+        }
+        System.out.println("Después de recompilar o cambiar de JDK hay que volver a empaquetar.");
+    }
+
+    /**
+     * Copia en el jar las clases de los directorios del classpath
+     */
+    static int crearJar(Path jar) throws IOException {
+        Manifest manifiesto = new Manifest();
+        manifiesto.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        int clases = 0;
+        Path temporal = jar.resolveSibling(jar.getFileName() + ".tmp");
+        try (JarOutputStream salida = new JarOutputStream(Files.newOutputStream(temporal), manifiesto)) {
+            for (String entrada : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                Path raiz = Paths.get(entrada.isEmpty() ? "." : entrada).toAbsolutePath().normalize();
+                if (!Files.isDirectory(raiz)) {
+                    continue;
+                }
+                List<Path> archivos = new ArrayList<>();
+                try (Stream<Path> rutas = Files.walk(raiz)) {
+                    rutas.filter(r -> r.toString().endsWith(".class") && !r.startsWith(jar.getParent()))
+                            .sorted()
+                            .forEach(archivos::add);
+                }
+                for (Path archivo : archivos) {
+                    salida.putNextEntry(new JarEntry(raiz.relativize(archivo).toString().replace(File.separatorChar, '/')));
+                    Files.copy(archivo, salida);
+                    salida.closeEntry();
+                    clases++;
+                }
+            }
+        }
+        if (clases == 0) {
+            Files.delete(temporal);
+            throw new IOException("No hay clases compiladas en el classpath (compilar con javac *.java y usar -cp .)");
+        }
+        Files.move(temporal, jar, StandardCopyOption.REPLACE_EXISTING);
+        return clases;
+    }
+
+    /**
+     * La JVM arranca exigiendo el archivo (falla si no lo puede mapear)
+     */
+    private static boolean verificar(Path directorio, String clase) throws IOException, InterruptedException {
+        Process proceso = new ProcessBuilder(JAVA, CACHE_AOT ? "-XX:AOTMode=on" : "-Xshare:on",
+                opcionUso(directorio, clase), "-cp", directorio.resolve("banco.jar").toString(), "-version")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        return proceso.waitFor() == 0;
+    }
+
+    static Path archivo(Path directorio, String clase) {
+        return directorio.resolve(clase + (CACHE_AOT ? ".aot" : ".jsa"));
+    }
+
+    static String opcionEntrenamiento(Path directorio, String clase) {
+        return (CACHE_AOT ? "-XX:AOTCacheOutput=" : "-XX:ArchiveClassesAtExit=") + archivo(directorio, clase);
+    }
+
+    static String opcionUso(Path directorio, String clase) {
+        return (CACHE_AOT ? "-XX:AOTCache=" : "-XX:SharedArchiveFile=") + archivo(directorio, clase);
+    }
+
+    // ========== Medición ==========
+
+    /**
+     * Tiempo hasta la primera solicitud atendida de cada componente, con
+     * y sin archivo
+     */
+    static void medir(Path directorio, int puerto, int repeticiones) throws IOException, InterruptedException {
+        Path jar = directorio.resolve("banco.jar");
+        for (String clase : CLASES) {
+            if (!Files.exists(archivo(directorio, clase))) {
+                System.out.println("Falta " + archivo(directorio, clase) + ": ejecutar antes 'ArranqueRapido empaquetar'");
+                System.exit(2);
+            }
+        }
+
+        // medicion/data la usan el nodo medido (directorio medicion) y el
+        // coordinador medido (medicion/central, con ../data); los procesos
+        // residentes tienen su copia en medicion/residente
+        Path base = directorio.resolve("medicion");
+        Directorios.borrar(base);
+        GeneradorDatos.Parametros parametros = new GeneradorDatos.Parametros();
+        parametros.directorio = base.resolve("data").toString();
+        GeneradorDatos.generar(parametros);
+        Path residente = base.resolve("residente");
+        Directorios.copiar(base.resolve("data"), residente.resolve("data"));
+        Files.createDirectories(base.resolve("central"));
+        Files.createDirectories(residente.resolve("central"));
+        Files.createDirectories(base.resolve("cliente"));
+
+        int puertoNodo = puerto + 1;
+        int puertoNodoResidente = puerto + 2;
+        int puertoCoordinadorResidente = puerto + 3;
+        String consultaNodo = "TASK|1|CONSULTAR_SALDO|" + GeneradorDatos.PRIMER_ID_CUENTA + "|plazo=5000";
+        String consultaCliente = "REQUEST|CONSULTAR_SALDO|" + GeneradorDatos.PRIMER_ID_CUENTA;
+        String registro = "REGISTRO|1|" + puertoNodoResidente + "|java|1|" + PARTICIONES + "|ip=127.0.0.1";
+
+        log("Medición: " + repeticiones + " repeticiones por modo, " + Runtime.getRuntime().availableProcessors() +
+            " CPU, JDK " + Runtime.version());
+        Map<String, List<Long>> sinArchivo = new LinkedHashMap<>();
+        Map<String, List<Long>> conArchivo = new LinkedHashMap<>();
+        for (String clase : CLASES) {
+            sinArchivo.put(clase, new ArrayList<>());
+            conArchivo.put(clase, new ArrayList<>());
+        }
+
+        for (int r = 0; r < repeticiones; r++) {
+            for (boolean usaArchivo : new boolean[] {r % 2 == 0, r % 2 != 0}) {
+                String opcion = usaArchivo ? opcionUso(directorio, "NodoTrabajador") : null;
+                long nanos = medirServidor(base, jar, opcion, "NodoTrabajador", puertoNodo, null, consultaNodo,
+                        "1", "127.0.0.1", "--puerto=" + puertoNodo, "--registro=no", "--calentamiento=0",
+                        "--particiones=" + PARTICIONES);
+                (usaArchivo ? conArchivo : sinArchivo).get("NodoTrabajador").add(nanos);
+            }
+        }
+
+        List<Process> residentes = new ArrayList<>();
+        try {
+            residentes.add(iniciarProceso(residente, jar, null, "NodoTrabajador", "1", "127.0.0.1",
+                    "--puerto=" + puertoNodoResidente, "--registro=no", "--calentamiento=0",
+                    "--particiones=" + PARTICIONES));
+            esperarRespuesta(puertoNodoResidente, null, consultaNodo);
+
+            for (int r = 0; r < repeticiones; r++) {
+                for (boolean usaArchivo : new boolean[] {r % 2 == 0, r % 2 != 0}) {
+                    String opcion = usaArchivo ? opcionUso(directorio, "ServidorCentral") : null;
+                    long nanos = medirServidor(base.resolve("central"), jar, opcion, "ServidorCentral", puerto,
+                            registro, consultaCliente, "--semillas=no", "--puerto=" + puerto);
+                    (usaArchivo ? conArchivo : sinArchivo).get("ServidorCentral").add(nanos);
+                }
+            }
+
+            residentes.add(iniciarProceso(residente.resolve("central"), jar, null, "ServidorCentral",
+                    "--semillas=no", "--puerto=" + puertoCoordinadorResidente));
+            esperarRespuesta(puertoCoordinadorResidente, registro, consultaCliente);
+
+            for (int r = 0; r < repeticiones; r++) {
+                for (boolean usaArchivo : new boolean[] {r % 2 == 0, r % 2 != 0}) {
+                    String opcion = usaArchivo ? opcionUso(directorio, "Cliente") : null;
+                    long inicio = System.nanoTime();
+                    Process cliente = iniciarProceso(base.resolve("cliente"), jar, opcion, "Cliente",
+                            "1", "1", "127.0.0.1", "5000", "--puerto=" + puertoCoordinadorResidente, "--demora=1");
+                    if (!cliente.waitFor(TIEMPO_MAXIMO_MS, TimeUnit.MILLISECONDS) || cliente.exitValue() != 0) {
+                        cliente.destroyForcibly();
+                        throw new IOException("El cliente no terminó bien; ver " + base.resolve("cliente/salida.txt"));
+                    }
+                    (usaArchivo ? conArchivo : sinArchivo).get("Cliente").add(System.nanoTime() - inicio);
+                }
+            }
+        } finally {
+            for (Process proceso : residentes) {
+                proceso.destroyForcibly().waitFor();
+            }
+        }
+
+        System.out.println("\n" + "=".repeat(78));
+        System.out.println("TIEMPO HASTA LA PRIMERA SOLICITUD ATENDIDA (ms)");
+        System.out.println("=".repeat(78));
+        System.out.println(String.format("%-16s %12s %10s %12s %10s %10s", "Componente",
+                "sin: mediana", "mín", "con: mediana", "mín", "mejora"));
+        for (String clase : CLASES) {
+            long[] sin = ordenar(sinArchivo.get(clase));
+            long[] con = ordenar(conArchivo.get(clase));
+            long medianaSin = sin[sin.length / 2];
+            long medianaCon = con[con.length / 2];
+            System.out.println(String.format("%-16s %12.1f %10.1f %12.1f %10.1f %9.1f%%", clase,
+                    medianaSin / 1e6, sin[0] / 1e6, medianaCon / 1e6, con[0] / 1e6,
+                    100.0 * (medianaSin - medianaCon) / medianaSin));
+        }
+        System.out.println("=".repeat(78));
+        System.out.println("sin: -cp banco.jar (sólo el archivo CDS del JDK); con: además "
+                + (CACHE_AOT ? "-XX:AOTCache" : "-XX:SharedArchiveFile") + " de la clase");
+    }
+
+    /**
+     * Lanza el proceso y cuenta hasta que responde OK a la consulta
+     */
+    private static long medirServidor(Path directorio, Path jar, String opcionJvm, String clase, int puerto,
+                                      String registro, String consulta, String... argumentos)
+            throws IOException, InterruptedException {
+        long inicio = System.nanoTime();
+        Process proceso = iniciarProceso(directorio, jar, opcionJvm, clase, argumentos);
+        try {
+            esperarRespuesta(puerto, registro, consulta);
+            return System.nanoTime() - inicio;
+        } finally {
+            proceso.destroyForcibly().waitFor();
+        }
+    }
+
+    /**
+     * Reintenta hasta que la consulta responde OK; antes de cada intento
+     * envía el registro del nodo, si hay (el coordinador empieza sin nodos)
+     */
+    private static void esperarRespuesta(int puerto, String registro, String consulta)
+            throws IOException, InterruptedException {
+        long limite = System.currentTimeMillis() + TIEMPO_MAXIMO_MS;
+        boolean registrado = registro == null;
+        while (true) {
+            if (!registrado) {
+                String respuesta = enviar(puerto, registro);
+                registrado = respuesta != null && respuesta.startsWith("REGISTRADO");
+            }
+            if (registrado) {
+                String respuesta = enviar(puerto, consulta);
+                if (respuesta != null && respuesta.contains("|OK|")) {
+                    return;
+                }
+            }
+            if (System.currentTimeMillis() > limite) {
+                throw new IOException("El puerto " + puerto + " no atendió la consulta a tiempo");
+            }
+            Thread.sleep(2);
+        }
+    }
+
+    /**
+     * Una línea por una conexión nueva; null si no se pudo conectar
+     */
+    private static String enviar(int puerto, String linea) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", puerto), 500);
+            socket.setSoTimeout(10000);
+            PrintWriter salida = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            salida.println(linea);
+            return entrada.readLine();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Process iniciarProceso(Path directorio, Path jar, String opcionJvm, String clase, String... argumentos)
+            throws IOException {
+        List<String> comando = new ArrayList<>(Collections.singletonList(JAVA));
+        if (opcionJvm != null) {
+            comando.add(opcionJvm);
+        }
+        comando.addAll(Arrays.asList("-cp", jar.toString(), clase));
+        comando.addAll(Arrays.asList(argumentos));
+        return new ProcessBuilder(comando)
+                .directory(directorio.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(directorio.resolve("salida.txt").toFile()))
+                .start();
+    }
+
+    private static long[] ordenar(List<Long> valores) {
+        long[] resultado = valores.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(resultado);
+        return resultado;
+    }
+
+    private static void log(String mensaje) {
+        System.out.println("[arranque] " + mensaje);
+    }
+}
@@ -0,0 +1,120 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * BenchmarkDespacho - Memoria asignada por el camino de despacho del
+ * servidor central
+ *
+ * Arma una tabla de ruteo con --nodos nodos (tres particiones cada uno,
+ * repartidas en ronda) y un conjunto fijo de tareas de consulta y
+ * transferencia sobre cuentas de todas las particiones, algunas con un
+ * nodo ya intentado o con carril distinto al de su operación. Después del
+ * calentamiento mide, con los bytes asignados por el hilo que informa la
+ * JVM (com.sun.management.ThreadMXBean), --iteraciones llamadas a:
+ *
+ *   - ServidorCentral.seleccionarNodo: debe asignar 0 bytes por tarea.
+ *   - ServidorCentral.mensajeTarea: sólo el String del mensaje.
+ *
+ * Termina con código 1 si alguna medición supera su límite, así puede
+ * correr como verificación después de cambios en el despacho.
+ *
+ * Uso:
+ *   java BenchmarkDespacho [--nodos=4] [--iteraciones=5000000] [--calentamiento=2000000]
+ */
+public class BenchmarkDespacho {
+
+    private static final int TAREAS = 1024;
+    private static final int PARTICIONES = 4;
+    private static final int CUENTAS_POR_PARTICION = 1250;
+
+    public static void main(String[] args) {
+        Map<String, String> opciones = LineaComandos.opciones(args);
+        int numNodos = Integer.parseInt(opciones.getOrDefault("nodos", "4"));
+        long iteraciones = Long.parseLong(opciones.getOrDefault("iteraciones", "5000000"));
+        long calentamiento = Long.parseLong(opciones.getOrDefault("calentamiento", "2000000"));
+
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!hilos.isThreadAllocatedMemorySupported()) {
+            System.out.println("La JVM no informa la memoria asignada por hilo");
+            System.exit(2);
+        }
+        hilos.setThreadAllocatedMemoryEnabled(true);
+
+        List<ServidorCentral.NodoTrabajador> nodos = new ArrayList<>();
+        for (int i = 0; i < numNodos; i++) {
+            ServidorCentral.NodoTrabajador nodo = new ServidorCentral.NodoTrabajador("127.0.0.1", 9101 + i, "java");
+            for (int r = 0; r < 3; r++) {
+                nodo.particiones.add("parte" + (1 + (i + r) % PARTICIONES));
+            }
+            nodo.capacidad = 1 + i % 3;
+            nodo.cargaActual.set(i % 5);
+            nodo.sospechoso = i == numNodos - 1 && numNodos > 1;
+            nodos.add(nodo);
+        }
+        ServidorCentral.TablaRuteo tabla = new ServidorCentral.TablaRuteo(nodos);
+
+        Random random = new Random(42);
+        ServidorCentral.InfoTarea[] tareas = new ServidorCentral.InfoTarea[TAREAS];
+        for (int i = 0; i < TAREAS; i++) {
+            String origen = String.valueOf(GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(PARTICIONES * CUENTAS_POR_PARTICION));
+            String destino = String.valueOf(GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(PARTICIONES * CUENTAS_POR_PARTICION));
+            ServidorCentral.InfoTarea tarea = i % 5 == 0
+                    ? new ServidorCentral.InfoTarea(i, "TRANSFERIR_FONDOS", new String[]{origen, destino, "12.50"}, 30000)
+                    : new ServidorCentral.InfoTarea(i, "CONSULTAR_SALDO", new String[]{origen}, 30000);
+            if (i % 7 == 0) {
+                tarea.nodosIntentados.add(nodos.get(random.nextInt(numNodos)));
+            }
+            if (i % 11 == 0) {
+                tarea.carril = PlanificadorCarriles.Carril.AUDITORIA;
+            }
+            tareas[i] = tarea;
+        }
+
+        System.out.println(String.format("Despacho: %d nodos, %d tareas distintas, %d iteraciones",
+                numNodos, TAREAS, iteraciones));
+
+        // Ruteo
+        medirRuteo(tabla, tareas, calentamiento);
+        long antes = hilos.getCurrentThreadAllocatedBytes();
+        long inicio = System.nanoTime();
+        long elegidos = medirRuteo(tabla, tareas, iteraciones);
+        long nanos = System.nanoTime() - inicio;
+        double bytesRuteo = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / iteraciones;
+        boolean ruteoOk = bytesRuteo < 0.5;
+        System.out.println(String.format("  seleccionarNodo: %7.1f ns/tarea %8.2f B/tarea  (límite 0)      %s  [%d]",
+                (double) nanos / iteraciones, bytesRuteo, ruteoOk ? "OK" : "FALLA", elegidos));
+
+        // Mensajes TASK: se descuenta el String resultante
+        long largo = medirMensajes(tareas, calentamiento);
+        antes = hilos.getCurrentThreadAllocatedBytes();
+        inicio = System.nanoTime();
+        largo = medirMensajes(tareas, iteraciones);
+        nanos = System.nanoTime() - inicio;
+        double bytesMensaje = (double) (hilos.getCurrentThreadAllocatedBytes() - antes) / iteraciones;
+        double limiteMensaje = 24 + 16 + 8 + (double) largo / iteraciones; // String + byte[] + alineación
+        boolean mensajeOk = bytesMensaje <= limiteMensaje;
+        System.out.println(String.format("  mensajeTarea:    %7.1f ns/tarea %8.2f B/tarea  (límite %.0f)    %s",
+                (double) nanos / iteraciones, bytesMensaje, limiteMensaje, mensajeOk ? "OK" : "FALLA"));
+
+        System.exit(ruteoOk && mensajeOk ? 0 : 1);
+    }
+
+    private static long medirRuteo(ServidorCentral.TablaRuteo tabla, ServidorCentral.InfoTarea[] tareas,
+                                   long iteraciones) {
+        long suma = 0;
+        for (long i = 0; i < iteraciones; i++) {
+            ServidorCentral.NodoTrabajador nodo = ServidorCentral.seleccionarNodo(tabla, tareas[(int) (i & (TAREAS - 1))]);
+            suma += nodo != null ? nodo.puerto : 0;
+        }
+        return suma;
+    }
+
+    private static long medirMensajes(ServidorCentral.InfoTarea[] tareas, long iteraciones) {
+        long largo = 0;
+        for (long i = 0; i < iteraciones; i++) {
+            ServidorCentral.InfoTarea tarea = tareas[(int) (i & (TAREAS - 1))];
+            largo += ServidorCentral.mensajeTarea(tarea, tarea.operacion, tarea.parametros, false).length();
+        }
+        return largo;
+    }
+}
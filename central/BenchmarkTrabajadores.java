@@ -0,0 +1,595 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * BenchmarkTrabajadores - Conformidad y desempeño de las implementaciones
+ * de NodoTrabajador (Java, Python, JavaScript y TypeScript)
+ *
+ * Inicia cada implementación por turno como nodo 1 (particiones parte1 a
+ * parte3 en todas) en loopback, con su propia copia de los datos generados
+ * con GeneradorDatos, y la maneja directamente con TASK|... como lo hace el
+ * servidor central: una conexión por tarea. No hay coordinador; los nodos
+ * apuntan su registro a una dirección de documentación (192.0.2.1) para no
+ * sumarse a un servidor central que esté corriendo en la máquina.
+ *
+ * Para cada implementación:
+ *   1. Conformidad: PING, formato de RESPONSE|id|..., saldos con dos
+ *      decimales iguales a los del archivo, metadatos clave=valor al final,
+ *      efecto de una transferencia y los errores esperados.
+ *   2. Carga: --conexiones hilos en lazo cerrado con la misma secuencia de
+ *      operaciones (semilla fija), --lecturas % consultas y el resto
+ *      transferencias de 0.01; --calentamiento s sin medir y --duracion s
+ *      medidos. Se informa TPS, percentiles de latencia, rechazos, fallas
+ *      y memoria residente del proceso (Linux, /proc).
+ *
+ * El nodo Java se inicia sin su calentamiento propio (--calentamiento=0),
+ * así todas las implementaciones tienen el mismo, el de la carga.
+ *
+ * Al final imprime una tabla comparativa y pesos sugeridos por lenguaje,
+ * proporcionales al TPS de las implementaciones conformes.
+ *
+ * TypeScript se compila con tsc si está en el PATH; si no, se omite.
+ *
+ * Uso (desde central/, donde están los nodos de los otros lenguajes):
+ *   java BenchmarkTrabajadores [--lenguajes=java,python,javascript,typescript] [--cuentas=5000]
+ *                              [--conexiones=8] [--lecturas=80] [--calentamiento=3] [--duracion=10]
+ *                              [--fuentes=.] [--dir=banco-trabajadores] [--semilla=42]
+ */
+public class BenchmarkTrabajadores {
+
+    private static final int ID_NODO = 1;
+    private static final int PUERTO_NODO = 9100 + ID_NODO; // Fijo en los nodos JavaScript y TypeScript
+    private static final String[] PARTICIONES = {"parte1", "parte2", "parte3"};
+    private static final String IP_SIN_CENTRAL = "192.0.2.1"; // TEST-NET-1 (RFC 5737)
+    private static final int TIEMPO_ARRANQUE_MS = 60000;
+    private static final int TIEMPO_RESPUESTA_MS = 5000;
+
+    /**
+     * Parámetros de una ejecución
+     */
+    public static class Configuracion {
+        public List<String> lenguajes = Arrays.asList("java", "python", "javascript", "typescript");
+        public long cuentas = 5000;
+        public int conexiones = 8;
+        public int lecturas = 80;      // % de consultas de saldo
+        public int calentamientoS = 3;
+        public int duracionS = 10;
+        public long semilla = 42;
+        public Path fuentes = Paths.get(".");
+        public Path directorio = Paths.get("banco-trabajadores");
+        public String classpath = System.getProperty("java.class.path");
+    }
+
+    /**
+     * Resultado de una implementación
+     */
+    public static class Resultado {
+        final String lenguaje;
+        String omitido;                          // Motivo si no se pudo ejecutar
+        final Map<String, String> conformidad = new LinkedHashMap<>(); // prueba -> null o falla
+        long completadas;
+        long rechazadas;                         // RESPONSE|...|ERROR (saldo insuficiente, etc.)
+        long fallidas;                           // Sin respuesta o respuesta inválida
+        double tps;
+        long[] percentilesMicros = new long[4];  // p50, p95, p99, máximo
+        long rssKb = -1;
+        long picoRssKb = -1;
+
+        Resultado(String lenguaje) {
+            this.lenguaje = lenguaje;
+        }
+    }
+
+    private final Configuracion conf;
+    private final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    private long cuentasPorParticion;
+    private final Map<Integer, String> saldosIniciales = new HashMap<>();
+
+    public BenchmarkTrabajadores(Configuracion conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * Ejecuta conformidad y carga en cada lenguaje configurado
+     */
+    public List<Resultado> ejecutar() throws IOException, InterruptedException {
+        Directorios.borrar(conf.directorio);
+        GeneradorDatos.Parametros parametros = new GeneradorDatos.Parametros();
+        parametros.cuentas = conf.cuentas;
+        parametros.directorio = conf.directorio.resolve("data").toString();
+        GeneradorDatos.generar(parametros);
+        cuentasPorParticion = parametros.cuentasPorParticion();
+        leerSaldosIniciales(conf.directorio.resolve("data"));
+        log("Datos generados: " + conf.cuentas + " cuentas (" + cuentasPorParticion + " por partición)");
+
+        List<Resultado> resultados = new ArrayList<>();
+        for (String lenguaje : conf.lenguajes) {
+            resultados.add(ejecutarLenguaje(lenguaje.trim()));
+        }
+        return resultados;
+    }
+
+    private Resultado ejecutarLenguaje(String lenguaje) throws IOException, InterruptedException {
+        Resultado resultado = new Resultado(lenguaje);
+        if (puertoAbierto(PUERTO_NODO)) {
+            resultado.omitido = "el puerto " + PUERTO_NODO + " ya está en uso";
+            log(lenguaje + ": omitido, " + resultado.omitido);
+            return resultado;
+        }
+
+        // Datos en base/data: Java trabaja en base (lee data/) y los demás
+        // en base/central (leen ../data/)
+        Path base = conf.directorio.resolve(lenguaje);
+        Path central = base.resolve("central");
+        Files.createDirectories(central);
+        Directorios.copiar(conf.directorio.resolve("data"), base.resolve("data"));
+
+        List<String> comando = comando(lenguaje, base, central, resultado);
+        if (comando == null) {
+            log(lenguaje + ": omitido, " + resultado.omitido);
+            return resultado;
+        }
+
+        log(lenguaje + ": iniciando " + String.join(" ", comando));
+        Process proceso = new ProcessBuilder(comando)
+                .directory("java".equals(lenguaje) ? base.toFile() : central.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(base.resolve("salida.txt").toFile()))
+                .start();
+        try {
+            if (!esperarNodo(proceso)) {
+                resultado.omitido = "el nodo no respondió (ver " + base.resolve("salida.txt") + ")";
+                log(lenguaje + ": " + resultado.omitido);
+                return resultado;
+            }
+            verificarConformidad(resultado);
+            long fallas = resultado.conformidad.values().stream().filter(Objects::nonNull).count();
+            log(lenguaje + ": conformidad " + (resultado.conformidad.size() - fallas) + "/" + resultado.conformidad.size());
+
+            medirCarga(resultado, proceso.pid());
+            log(String.format("%s: %.0f TPS, p50 %.2f ms, p99 %.2f ms, %d rechazadas, %d fallidas",
+                    lenguaje, resultado.tps, resultado.percentilesMicros[0] / 1000.0,
+                    resultado.percentilesMicros[2] / 1000.0, resultado.rechazadas, resultado.fallidas));
+        } finally {
+            proceso.destroyForcibly();
+            proceso.waitFor();
+            esperarPuertoLibre(PUERTO_NODO);
+        }
+        return resultado;
+    }
+
+    /**
+     * Comando de inicio del nodo; null (con el motivo en el resultado) si
+     * falta algo para ejecutarlo
+     */
+    private List<String> comando(String lenguaje, Path base, Path central, Resultado resultado) throws IOException {
+        String id = String.valueOf(ID_NODO);
+        switch (lenguaje) {
+            case "java":
+                return Arrays.asList(java, "-cp", conf.classpath, "NodoTrabajador", id, IP_SIN_CENTRAL,
+                        "--puerto=" + PUERTO_NODO, "--registro=no", "--calentamiento=0",
+                        "--particiones=" + String.join(",", PARTICIONES));
+            case "python":
+                if (!copiarFuente("NodoTrabajador.py", central, resultado)) {
+                    return null;
+                }
+                return Arrays.asList(ejecutable("python3", "python"), central.resolve("NodoTrabajador.py").toString(),
+                        id, IP_SIN_CENTRAL, "--particiones", PARTICIONES[0], PARTICIONES[1], PARTICIONES[2]);
+            case "javascript":
+                if (!copiarFuente("NodoTrabajador2.js", central, resultado)) {
+                    return null;
+                }
+                return Arrays.asList(ejecutable("node"), "NodoTrabajador2.js", id, IP_SIN_CENTRAL);
+            case "typescript":
+                if (!copiarFuente("NodoTrabajador.ts", central, resultado)) {
+                    return null;
+                }
+                String tsc = ejecutable("tsc");
+                if (tsc == null) {
+                    resultado.omitido = "tsc no está en el PATH";
+                    return null;
+                }
+                Process compilacion = new ProcessBuilder(tsc, "--outDir", ".", "--target", "es2017",
+                        "--module", "commonjs", "NodoTrabajador.ts")
+                        .directory(central.toFile())
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(base.resolve("salida.txt").toFile()))
+                        .start();
+                try {
+                    compilacion.waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // tsc emite el .js aunque falten tipos (@types/node)
+                if (!Files.exists(central.resolve("NodoTrabajador.js"))) {
+                    resultado.omitido = "tsc no generó NodoTrabajador.js";
+                    return null;
+                }
+                return Arrays.asList(ejecutable("node"), "NodoTrabajador.js", id, IP_SIN_CENTRAL);
+            default:
+                resultado.omitido = "lenguaje desconocido";
+                return null;
+        }
+    }
+
+    private boolean copiarFuente(String archivo, Path destino, Resultado resultado) throws IOException {
+        Path fuente = conf.fuentes.resolve(archivo);
+        if (!Files.exists(fuente)) {
+            resultado.omitido = "no se encontró " + fuente;
+            return false;
+        }
+        Files.copy(fuente, destino.resolve(archivo), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Ruta del primer ejecutable del PATH con alguno de los nombres (null si no hay)
+     */
+    private static String ejecutable(String... nombres) {
+        for (String nombre : nombres) {
+            for (String directorio : System.getenv().getOrDefault("PATH", "").split(File.pathSeparator)) {
+                Path ruta = Paths.get(directorio, nombre);
+                if (Files.isExecutable(ruta)) {
+                    return ruta.toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Espera a que el nodo responda PING y cargue la primera cuenta de cada partición
+     */
+    private boolean esperarNodo(Process proceso) throws InterruptedException {
+        long limite = System.currentTimeMillis() + TIEMPO_ARRANQUE_MS;
+        while (System.currentTimeMillis() < limite && proceso.isAlive()) {
+            try {
+                boolean listo = "PONG".equals(enviar("PING"));
+                for (int p = 0; listo && p < PARTICIONES.length; p++) {
+                    listo = enviar("TASK|0|CONSULTAR_SALDO|" + primeraCuenta(p)).startsWith("RESPONSE|0|OK|");
+                }
+                if (listo) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // Todavía no escucha
+            }
+            Thread.sleep(200);
+        }
+        return false;
+    }
+
+    /**
+     * Pruebas de protocolo; cada una registra null si pasa o la diferencia encontrada
+     */
+    private void verificarConformidad(Resultado resultado) {
+        int cuentaA = primeraCuenta(0);
+        int cuentaB = primeraCuenta(1) + 1; // Otra partición
+        String saldoA = saldosIniciales.get(cuentaA);
+
+        prueba(resultado, "PING -> PONG", () -> esperar("PING", "PONG"));
+        prueba(resultado, "saldo: RESPONSE|id|OK|monto del archivo", () ->
+                esperar("TASK|11|CONSULTAR_SALDO|" + cuentaA, "RESPONSE|11|OK|" + saldoA));
+        prueba(resultado, "metadatos plazo=, clase= y traza= al final", () ->
+                esperar("TASK|12|CONSULTAR_SALDO|" + cuentaA + "|plazo=5000|clase=lectura|traza=0af1",
+                        "RESPONSE|12|OK|" + saldoA));
+        prueba(resultado, "transferencia: OK y saldos actualizados", () -> {
+            String respuesta = enviar("TASK|13|TRANSFERIR_FONDOS|" + cuentaA + "|" + cuentaB + "|12.34");
+            if (!respuesta.startsWith("RESPONSE|13|OK")) {
+                return "respondió " + respuesta;
+            }
+            String esperadoA = CodecMonto.formatear(CodecMonto.parsear(saldoA) - 1234);
+            String esperadoB = CodecMonto.formatear(CodecMonto.parsear(saldosIniciales.get(cuentaB)) + 1234);
+            String diferencia = esperar("TASK|14|CONSULTAR_SALDO|" + cuentaA, "RESPONSE|14|OK|" + esperadoA);
+            return diferencia != null ? diferencia
+                    : esperar("TASK|15|CONSULTAR_SALDO|" + cuentaB, "RESPONSE|15|OK|" + esperadoB);
+        });
+        prueba(resultado, "cuenta inexistente -> ERROR", () ->
+                esperarError("TASK|16|CONSULTAR_SALDO|" + (GeneradorDatos.PRIMER_ID_CUENTA + conf.cuentas * 10), "16"));
+        prueba(resultado, "saldo insuficiente -> ERROR", () ->
+                esperarError("TASK|17|TRANSFERIR_FONDOS|" + cuentaA + "|" + cuentaB + "|999999999.00", "17"));
+        prueba(resultado, "monto no positivo -> ERROR", () ->
+                esperarError("TASK|18|TRANSFERIR_FONDOS|" + cuentaA + "|" + cuentaB + "|-5.00", "18"));
+        prueba(resultado, "operación desconocida -> RESPONSE|id|ERROR", () ->
+                esperarError("TASK|19|OPERACION_INEXISTENTE|1", "19"));
+        prueba(resultado, "solicitud sin TASK -> ERROR", () -> {
+            String respuesta = enviar("HOLA|1|2");
+            return respuesta.startsWith("ERROR|") ? null : "respondió " + respuesta;
+        });
+    }
+
+    private interface Prueba {
+        String ejecutar() throws IOException;
+    }
+
+    private static void prueba(Resultado resultado, String nombre, Prueba prueba) {
+        String falla;
+        try {
+            falla = prueba.ejecutar();
+        } catch (IOException e) {
+            falla = "sin respuesta: " + e.getMessage();
+        }
+        resultado.conformidad.put(nombre, falla);
+    }
+
+    private static String esperar(String solicitud, String esperada) throws IOException {
+        String respuesta = enviar(solicitud);
+        return respuesta.equals(esperada) ? null : "esperaba " + esperada + ", respondió " + respuesta;
+    }
+
+    private static String esperarError(String solicitud, String idTarea) throws IOException {
+        String respuesta = enviar(solicitud);
+        return respuesta.startsWith("RESPONSE|" + idTarea + "|ERROR|") ? null : "respondió " + respuesta;
+    }
+
+    /**
+     * Envía una línea en una conexión nueva y devuelve la respuesta
+     */
+    private static String enviar(String linea) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", PUERTO_NODO), TIEMPO_RESPUESTA_MS);
+            socket.setSoTimeout(TIEMPO_RESPUESTA_MS);
+            socket.setTcpNoDelay(true);
+            PrintWriter salida = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            salida.println(linea);
+            String respuesta = entrada.readLine();
+            if (respuesta == null) {
+                throw new IOException("conexión cerrada");
+            }
+            return respuesta.trim();
+        }
+    }
+
+    /**
+     * Carga en lazo cerrado; cada hilo repite la misma secuencia en todos los lenguajes
+     */
+    private void medirCarga(Resultado resultado, long pid) throws InterruptedException {
+        int cuentasMedidas = (int) Math.min(cuentasPorParticion * PARTICIONES.length, conf.cuentas);
+        long inicio = System.nanoTime();
+        long inicioMedicion = inicio + conf.calentamientoS * 1_000_000_000L;
+        long fin = inicioMedicion + conf.duracionS * 1_000_000_000L;
+
+        List<long[]> latenciasPorHilo = new ArrayList<>();
+        long[][] contadores = new long[conf.conexiones][3]; // completadas, rechazadas, fallidas
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < conf.conexiones; h++) {
+            long[] latencias = new long[1 << 16];
+            latenciasPorHilo.add(latencias);
+            int hilo = h;
+            Thread t = new Thread(() -> {
+                Random random = new Random(conf.semilla + hilo);
+                long[] propias = latenciasPorHilo.get(hilo);
+                int n = 0;
+                for (int idTarea = 1; ; idTarea++) {
+                    int origen = GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(cuentasMedidas);
+                    String solicitud;
+                    if (random.nextInt(100) < conf.lecturas) {
+                        solicitud = "TASK|" + idTarea + "|CONSULTAR_SALDO|" + origen + "|plazo=" + TIEMPO_RESPUESTA_MS;
+                    } else {
+                        int destino = GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(cuentasMedidas);
+                        if (destino == origen) {
+                            destino = origen == GeneradorDatos.PRIMER_ID_CUENTA ? origen + 1 : origen - 1;
+                        }
+                        solicitud = "TASK|" + idTarea + "|TRANSFERIR_FONDOS|" + origen + "|" + destino + "|0.01|plazo="
+                                + TIEMPO_RESPUESTA_MS;
+                    }
+
+                    long enviada = System.nanoTime();
+                    if (enviada >= fin) {
+                        break;
+                    }
+                    int estado;
+                    try {
+                        String respuesta = enviar(solicitud);
+                        estado = respuesta.startsWith("RESPONSE|" + idTarea + "|OK") ? 0
+                                : respuesta.startsWith("RESPONSE|" + idTarea + "|ERROR|") ? 1 : 2;
+                    } catch (IOException e) {
+                        estado = 2;
+                    }
+                    long latencia = (System.nanoTime() - enviada) / 1000;
+                    if (enviada >= inicioMedicion) {
+                        contadores[hilo][estado]++;
+                        if (n == propias.length) {
+                            propias = Arrays.copyOf(propias, n * 2);
+                            latenciasPorHilo.set(hilo, propias);
+                        }
+                        propias[n++] = latencia;
+                    }
+                }
+                latenciasPorHilo.set(hilo, Arrays.copyOf(propias, n));
+            });
+            t.setName("Carga-" + h);
+            hilos.add(t);
+            t.start();
+        }
+
+        // Memoria a mitad de la medición y pico al final
+        Thread.sleep(Math.max(0, (inicioMedicion - System.nanoTime()) / 1_000_000 + conf.duracionS * 500L));
+        resultado.rssKb = memoriaKb(pid, "VmRSS");
+        for (Thread t : hilos) {
+            t.join();
+        }
+        resultado.picoRssKb = memoriaKb(pid, "VmHWM");
+
+        long total = 0;
+        for (long[] latencias : latenciasPorHilo) {
+            total += latencias.length;
+        }
+        long[] todas = new long[(int) total];
+        int posicion = 0;
+        for (long[] latencias : latenciasPorHilo) {
+            System.arraycopy(latencias, 0, todas, posicion, latencias.length);
+            posicion += latencias.length;
+        }
+        Arrays.sort(todas);
+        for (long[] c : contadores) {
+            resultado.completadas += c[0];
+            resultado.rechazadas += c[1];
+            resultado.fallidas += c[2];
+        }
+        resultado.tps = (resultado.completadas + resultado.rechazadas) / (double) conf.duracionS;
+        if (todas.length > 0) {
+            resultado.percentilesMicros = new long[] {percentil(todas, 0.50), percentil(todas, 0.95),
+                    percentil(todas, 0.99), todas[todas.length - 1]};
+        }
+    }
+
+    private static long percentil(long[] ordenadas, double p) {
+        return ordenadas[(int) Math.ceil(p * ordenadas.length) - 1];
+    }
+
+    /**
+     * Campo de /proc/pid/status en KB (-1 fuera de Linux)
+     */
+    private static long memoriaKb(long pid, String campo) {
+        try {
+            for (String linea : Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"))) {
+                if (linea.startsWith(campo + ":")) {
+                    return Long.parseLong(linea.substring(campo.length() + 1).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Sin /proc
+        }
+        return -1;
+    }
+
+    /**
+     * Tabla de conformidad, tabla de desempeño y pesos sugeridos
+     */
+    public void informar(List<Resultado> resultados) {
+        System.out.println("\n" + "=".repeat(96));
+        System.out.println("CONFORMIDAD DEL PROTOCOLO");
+        System.out.println("=".repeat(96));
+        StringBuilder encabezado = new StringBuilder(String.format("%-46s", "Prueba"));
+        for (Resultado resultado : resultados) {
+            encabezado.append(String.format(" %11s", resultado.lenguaje));
+        }
+        System.out.println(encabezado);
+        Set<String> pruebas = new LinkedHashSet<>();
+        resultados.forEach(r -> pruebas.addAll(r.conformidad.keySet()));
+        for (String prueba : pruebas) {
+            StringBuilder fila = new StringBuilder(String.format("%-46s", prueba));
+            for (Resultado resultado : resultados) {
+                String estado = resultado.omitido != null || !resultado.conformidad.containsKey(prueba) ? "-"
+                        : resultado.conformidad.get(prueba) == null ? "OK" : "FALLA";
+                fila.append(String.format(" %11s", estado));
+            }
+            System.out.println(fila);
+        }
+        for (Resultado resultado : resultados) {
+            if (resultado.omitido != null) {
+                System.out.println("  " + resultado.lenguaje + ": omitido, " + resultado.omitido);
+            }
+            for (Map.Entry<String, String> prueba : resultado.conformidad.entrySet()) {
+                if (prueba.getValue() != null) {
+                    System.out.println("  " + resultado.lenguaje + " / " + prueba.getKey() + ": " + prueba.getValue());
+                }
+            }
+        }
+
+        System.out.println("\n" + "=".repeat(96));
+        System.out.println(String.format("DESEMPEÑO (%d conexiones, %d%% lecturas, %d s medidos)",
+                conf.conexiones, conf.lecturas, conf.duracionS));
+        System.out.println("=".repeat(96));
+        System.out.println(String.format("%-11s %9s %9s %9s %9s %9s %10s %9s %9s %9s", "Lenguaje", "TPS",
+                "p50 ms", "p95 ms", "p99 ms", "máx ms", "Rechazos", "Fallas", "RSS MB", "Pico MB"));
+        double mejorTps = 0;
+        for (Resultado resultado : resultados) {
+            if (resultado.omitido == null) {
+                long[] p = resultado.percentilesMicros;
+                System.out.println(String.format("%-11s %9.0f %9.2f %9.2f %9.2f %9.2f %10d %9d %9s %9s",
+                        resultado.lenguaje, resultado.tps, p[0] / 1000.0, p[1] / 1000.0, p[2] / 1000.0, p[3] / 1000.0,
+                        resultado.rechazadas, resultado.fallidas, megas(resultado.rssKb), megas(resultado.picoRssKb)));
+                if (conforme(resultado)) {
+                    mejorTps = Math.max(mejorTps, resultado.tps);
+                }
+            }
+        }
+
+        StringBuilder pesos = new StringBuilder();
+        for (Resultado resultado : resultados) {
+            if (resultado.omitido == null && conforme(resultado) && mejorTps > 0) {
+                pesos.append(pesos.length() > 0 ? "," : "").append(resultado.lenguaje).append(':')
+                        .append(String.format(Locale.ROOT, "%.2f", resultado.tps / mejorTps));
+            }
+        }
+        System.out.println("\nPesos sugeridos por lenguaje (TPS relativo, sólo implementaciones conformes): "
+                + (pesos.length() > 0 ? pesos : "ninguno"));
+        System.out.println("=".repeat(96));
+    }
+
+    private static boolean conforme(Resultado resultado) {
+        return resultado.omitido == null && resultado.conformidad.values().stream().allMatch(Objects::isNull);
+    }
+
+    private static String megas(long kb) {
+        return kb < 0 ? "n/d" : String.format("%.1f", kb / 1024.0);
+    }
+
+    /**
+     * Saldos del archivo de cada partición medida, tal como los escribe GeneradorDatos
+     */
+    private void leerSaldosIniciales(Path datos) throws IOException {
+        for (String particion : PARTICIONES) {
+            try (BufferedReader lector = Files.newBufferedReader(datos.resolve(particion).resolve("cuentas_" + particion + ".txt"))) {
+                String linea;
+                while ((linea = lector.readLine()) != null) {
+                    String[] campos = linea.split("\\|");
+                    if (campos.length >= 3) {
+                        saldosIniciales.put(Integer.parseInt(campos[0]), campos[2]);
+                    }
+                }
+            }
+        }
+    }
+
+    private int primeraCuenta(int particion) {
+        return (int) (GeneradorDatos.PRIMER_ID_CUENTA + particion * cuentasPorParticion);
+    }
+
+    private static boolean puertoAbierto(int puerto) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", puerto), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void esperarPuertoLibre(int puerto) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10000;
+        while (puertoAbierto(puerto) && System.currentTimeMillis() < limite) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static void log(String mensaje) {
+        System.out.println("[benchmark] " + mensaje);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = LineaComandos.opciones(args);
+
+        Configuracion conf = new Configuracion();
+        if (opciones.containsKey("lenguajes")) {
+            conf.lenguajes = Arrays.asList(opciones.get("lenguajes").split(","));
+        }
+        conf.cuentas = Long.parseLong(opciones.getOrDefault("cuentas", "5000"));
+        conf.conexiones = Integer.parseInt(opciones.getOrDefault("conexiones", "8"));
+        conf.lecturas = Integer.parseInt(opciones.getOrDefault("lecturas", "80"));
+        conf.calentamientoS = Integer.parseInt(opciones.getOrDefault("calentamiento", "3"));
+        conf.duracionS = Integer.parseInt(opciones.getOrDefault("duracion", "10"));
+        conf.semilla = Long.parseLong(opciones.getOrDefault("semilla", "42"));
+        conf.fuentes = Paths.get(opciones.getOrDefault("fuentes", "."));
+        conf.directorio = Paths.get(opciones.getOrDefault("dir", "banco-trabajadores"));
+
+        BenchmarkTrabajadores benchmark = new BenchmarkTrabajadores(conf);
+        benchmark.informar(benchmark.ejecutar());
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captura - Registro compacto de las solicitudes recibidas para reproducirlas
+ *
+ * El servidor central anota cada REQUEST con su instante de llegada, su
+ * latencia y si terminó en error. Un hilo aparte codifica los registros y
+ * los escribe en bloque, así el camino de la solicitud sólo encola un
+ * objeto. Con la cola llena el registro se descarta y se cuenta.
+ *
+ * Formato (binario, enteros sin signo en varint LEB128):
+ *   cabecera: "CAP1", inicio en milisegundos de época (8 bytes)
+ *   registro: llegada µs desde el inicio, latencia µs, error (0/1),
+ *             largo, bytes UTF-8 del cuerpo
+ * El cuerpo es la solicitud sin "REQUEST|" ni los metadatos id= y
+ * traza=, que son propios de cada envío. Los registros se escriben al
+ * terminar cada solicitud, por eso leer() los ordena por llegada. Un
+ * registro final incompleto (proceso cortado) se ignora.
+ *
+ * Rotación por tamaño: al pasar de maxBytes el archivo se renombra a
+ * archivo.1 (el anterior .1 pasa a .2, y así) y se empieza otro con la
+ * misma cabecera; se conservan maxArchivos rotados y el más viejo se
+ * borra. Todos los segmentos miden la llegada desde el mismo inicio, y
+ * leer() junta el archivo con sus rotados.
+ */
+public final class Captura implements Closeable {
+
+    private static final byte[] MAGIA = {'C', 'A', 'P', '1'};
+    private static final int CAPACIDAD_COLA = 65536;
+    private static final long INTERVALO_ESCRITURA_MS = 1000;
+    public static final long MAX_BYTES_POR_DEFECTO = 256L << 20;
+    public static final int MAX_ARCHIVOS_POR_DEFECTO = 4;
+
+    private final Path archivo;
+    private final long maxBytes;
+    private final int maxArchivos;
+    private final long inicioNanos = System.nanoTime();
+    private final long inicioMillis = System.currentTimeMillis();
+    private final BlockingQueue<Registro> pendientes = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+    private final AtomicLong escritos = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong rotaciones = new AtomicLong();
+    private final Object cerrojo = new Object();
+    private DataOutputStream salida;
+    private final Thread escritor;
+    private volatile boolean cerrada;
+
+    /**
+     * Solicitud capturada
+     */
+    public static final class Registro {
+        public final long llegadaMicros;
+        public final long latenciaMicros;
+        public final boolean error;
+        public final String cuerpo;
+
+        Registro(long llegadaMicros, long latenciaMicros, boolean error, String cuerpo) {
+            this.llegadaMicros = llegadaMicros;
+            this.latenciaMicros = latenciaMicros;
+            this.error = error;
+            this.cuerpo = cuerpo;
+        }
+    }
+
+    private Captura(Path archivo, long maxBytes, int maxArchivos) throws IOException {
+        this.archivo = archivo;
+        this.maxBytes = maxBytes;
+        this.maxArchivos = Math.max(0, maxArchivos);
+        Path directorio = archivo.toAbsolutePath().getParent();
+        if (directorio != null) {
+            Files.createDirectories(directorio);
+        }
+        salida = abrirSegmento();
+
+        escritor = new Thread(this::escribir);
+        escritor.setDaemon(true);
+        escritor.setName("Captura");
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Empieza a capturar en el archivo (lo reemplaza si existe) con la
+     * rotación por defecto
+     */
+    public static Captura abrir(Path archivo) throws IOException {
+        return abrir(archivo, MAX_BYTES_POR_DEFECTO, MAX_ARCHIVOS_POR_DEFECTO);
+    }
+
+    /**
+     * Empieza a capturar rotando el archivo al pasar de maxBytes y
+     * conservando maxArchivos rotados (0: sin rotados, se trunca)
+     */
+    public static Captura abrir(Path archivo, long maxBytes, int maxArchivos) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Tamaño máximo de captura inválido: " + maxBytes);
+        }
+        return new Captura(archivo, maxBytes, maxArchivos);
+    }
+
+    private DataOutputStream abrirSegmento() throws IOException {
+        DataOutputStream segmento = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivo), 1 << 16));
+        segmento.write(MAGIA);
+        segmento.writeLong(inicioMillis);
+        return segmento;
+    }
+
+    /**
+     * Cierra el archivo actual, corre los rotados un número y abre otro
+     */
+    private void rotar() throws IOException {
+        salida.close();
+        Files.deleteIfExists(rotado(archivo, maxArchivos));
+        for (int i = maxArchivos - 1; i >= 1; i--) {
+            Path origen = rotado(archivo, i);
+            if (Files.exists(origen)) {
+                Files.move(origen, rotado(archivo, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxArchivos > 0) {
+            Files.move(archivo, rotado(archivo, 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        salida = abrirSegmento();
+        rotaciones.incrementAndGet();
+    }
+
+    private static Path rotado(Path archivo, int numero) {
+        return archivo.resolveSibling(archivo.getFileName() + "." + numero);
+    }
+
+    /**
+     * Anota una solicitud terminada; llegada y fin medidos con System.nanoTime
+     */
+    public void registrar(long llegadaNanos, long finNanos, boolean error, String cuerpo) {
+        if (cerrada) {
+            return;
+        }
+        Registro registro = new Registro(Math.max(0, (llegadaNanos - inicioNanos) / 1000),
+                Math.max(0, (finNanos - llegadaNanos) / 1000), error, cuerpo);
+        if (!pendientes.offer(registro)) {
+            descartados.incrementAndGet();
+        }
+    }
+
+    private void escribir() {
+        List<Registro> lote = new ArrayList<>(1024);
+        try {
+            while (!cerrada || !pendientes.isEmpty()) {
+                Registro primero = pendientes.poll(INTERVALO_ESCRITURA_MS, TimeUnit.MILLISECONDS);
+                if (primero != null) {
+                    lote.add(primero);
+                    pendientes.drainTo(lote);
+                    synchronized (cerrojo) {
+                        for (Registro registro : lote) {
+                            escribirRegistro(registro);
+                            if (salida.size() >= maxBytes) {
+                                rotar();
+                            }
+                        }
+                    }
+                    escritos.addAndGet(lote.size());
+                    lote.clear();
+                }
+                synchronized (cerrojo) {
+                    salida.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Captura detenida, no se pudo escribir " + archivo + ": " + e.getMessage());
+            cerrada = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void escribirRegistro(Registro registro) throws IOException {
+        byte[] cuerpo = registro.cuerpo.getBytes(StandardCharsets.UTF_8);
+        escribirVarint(registro.llegadaMicros);
+        escribirVarint(registro.latenciaMicros);
+        salida.write(registro.error ? 1 : 0);
+        escribirVarint(cuerpo.length);
+        salida.write(cuerpo);
+    }
+
+    private void escribirVarint(long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.write((int) valor);
+    }
+
+    public long escritos() {
+        return escritos.get();
+    }
+
+    public long descartados() {
+        return descartados.get();
+    }
+
+    public long rotaciones() {
+        return rotaciones.get();
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Escribe lo pendiente y cierra el archivo
+     */
+    @Override
+    public void close() {
+        if (cerrada) {
+            return;
+        }
+        cerrada = true;
+        try {
+            escritor.join(INTERVALO_ESCRITURA_MS * 5);
+            synchronized (cerrojo) {
+                salida.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error cerrando la captura: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lee una captura completa, con sus archivos rotados, ordenada por
+     * instante de llegada
+     */
+    public static List<Registro> leer(Path archivo) throws IOException {
+        List<Registro> registros = new ArrayList<>();
+        for (int i = 1; Files.exists(rotado(archivo, i)); i++) {
+            leerSegmento(rotado(archivo, i), registros);
+        }
+        leerSegmento(archivo, registros);
+        registros.sort(Comparator.comparingLong(r -> r.llegadaMicros));
+        return registros;
+    }
+
+    private static void leerSegmento(Path archivo, List<Registro> registros) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo), 1 << 16))) {
+            byte[] magia = new byte[MAGIA.length];
+            entrada.readFully(magia);
+            if (!java.util.Arrays.equals(magia, MAGIA)) {
+                throw new IOException("No es un archivo de captura: " + archivo);
+            }
+            entrada.readLong(); // Inicio de la captura (referencia)
+
+            while (true) {
+                try {
+                    long llegada = leerVarint(entrada);
+                    long latencia = leerVarint(entrada);
+                    boolean error = entrada.readUnsignedByte() != 0;
+                    byte[] cuerpo = new byte[(int) leerVarint(entrada)];
+                    entrada.readFully(cuerpo);
+                    registros.add(new Registro(llegada, latencia, error, new String(cuerpo, StandardCharsets.UTF_8)));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long leerVarint(DataInputStream entrada) throws IOException {
+        long valor = 0;
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            int b = entrada.readUnsignedByte();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint inválido en la captura");
+    }
+}
@@ -1,11 +1,22 @@
 import java.io.*;
-import java.net.*;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
@@ -23,7 +34,7 @@ import java.util.concurrent.CountDownLatch;
 public class Cliente {
     // Configuración de conexión al servidor
     private static String IP_SERVIDOR = "192.168.18.31"; // Cambiar según configuración
-    private static final int PUERTO_SERVIDOR = 9000;
+    private static int PUERTO_SERVIDOR = 9000; // --puerto=
     
     // Para generar valores aleatorios
     private static final Random random = new Random();
@@ -36,6 +47,15 @@ public class Cliente {
     private static final int MIN_ID_CUENTA = 101;
     private static final int MAX_ID_CUENTA = 5100; // 5000 cuentas creadas
     
+    // Plazo que se informa al servidor en cada solicitud (0 = sin plazo)
+    private static long plazoMs = 0;
+    
+    // Conexiones persistentes con el servidor central (solicitudes en pipeline)
+    private static ClienteBanco banco;
+    
+    // Perfil de tráfico de la prueba de carga (--perfil= y ajustes, ver ModeloCarga)
+    private static ModeloCarga modelo = new ModeloCarga(new ModeloCarga.Parametros());
+    
     // Contadores para estadísticas
     private static AtomicInteger transaccionesExitosas = new AtomicInteger(0);
     private static AtomicInteger transaccionesConError = new AtomicInteger(0);
@@ -46,10 +66,20 @@ public class Cliente {
      * Método principal
      */
     public static void main(String[] args) {
+        // Separar opciones --clave=valor de los argumentos posicionales
+        List<String> posicionales = new ArrayList<>();
+        Map<String, String> opciones = LineaComandos.opciones(args, posicionales);
+        
         // Verificar argumentos
-        if (args.length >= 1) {
+        if (posicionales.contains("--reproducir") || opciones.getOrDefault("reproducir", "x").isEmpty()) {
+            System.err.println("Uso: java Cliente --reproducir=<captura> [--velocidad=1|N|max] [--ip=servidor] [--puerto=9000]");
+            System.err.println("Ejemplo: java Cliente --reproducir=../logs/captura.cap --velocidad=4 --ip=192.168.1.100");
+        } else if (opciones.containsKey("reproducir")) {
+            // Reproducción de una captura del servidor central
+            modoReproduccion(opciones);
+        } else if (!posicionales.isEmpty()) {
             // Modo prueba de carga automática
-            modoAutomatico(args);
+            modoAutomatico(posicionales.toArray(new String[0]), opciones);
         } else {
             // Modo interactivo
             modoInteractivo();
@@ -110,6 +140,10 @@ public class Cliente {
                         realizarPruebaArqueo();
                         break;
                         
+                    case 6: // Consultar cliente
+                        consultarClienteInteractivo(scanner);
+                        break;
+                        
                     case 0: // Salir
                         continuar = false;
                         System.out.println("Cerrando cliente bancario...");
@@ -155,6 +189,23 @@ public class Cliente {
         }
     }
     
+    /**
+     * Consulta las cuentas y el saldo total de un cliente en modo interactivo
+     */
+    private static void consultarClienteInteractivo(Scanner scanner) {
+        System.out.print("ID de cliente: ");
+        int idCliente = scanner.nextInt();
+        scanner.nextLine();
+        
+        try {
+            String resultado = esperar(banco().consultarCliente(idCliente));
+            System.out.println("Resultado: " + resultado);
+            log("Consulta interactiva - Cliente " + idCliente + ": " + resultado);
+        } catch (IOException e) {
+            System.err.println("Error en consulta: " + e.getMessage());
+        }
+    }
+    
     /**
      * Transferir fondos en modo interactivo
      */
@@ -166,7 +217,7 @@ public class Cliente {
         int cuentaDestino = scanner.nextInt();
         
         System.out.print("Monto a transferir: ");
-        double monto = scanner.nextDouble();
+        long monto = CodecMonto.parsear(scanner.next()); // Centavos
         scanner.nextLine();
         
         if (cuentaOrigen < MIN_ID_CUENTA || cuentaOrigen > MAX_ID_CUENTA ||
@@ -184,7 +235,7 @@ public class Cliente {
             String resultado = transferirFondos(cuentaOrigen, cuentaDestino, monto);
             System.out.println("Resultado: " + resultado);
             log("Transferencia interactiva - " + cuentaOrigen + " -> " + cuentaDestino + 
-                " (" + monto + "): " + resultado);
+                " (" + CodecMonto.formatear(monto) + "): " + resultado);
         } catch (IOException e) {
             System.err.println("Error en transferencia: " + e.getMessage());
         }
@@ -200,6 +251,7 @@ public class Cliente {
         System.out.println("3. Prueba de carga basica");
         System.out.println("4. Prueba de carga intensa");
         System.out.println("5. Prueba de arqueo");
+        System.out.println("6. Consultar cliente");
         System.out.println("0. Salir");
         System.out.print("Seleccione una opcion: ");
     }
@@ -207,7 +259,7 @@ public class Cliente {
     /**
      * Modo automático para pruebas de carga
      */
-    private static void modoAutomatico(String[] args) {
+    private static void modoAutomatico(String[] args, Map<String, String> opciones) {
         try {
             int numTransacciones = Integer.parseInt(args[0]);
             int numHilos = args.length > 1 ? Integer.parseInt(args[1]) : 20;
@@ -216,26 +268,183 @@ public class Cliente {
                 IP_SERVIDOR = args[2];
             }
             
+            if (args.length > 3) {
+                plazoMs = Long.parseLong(args[3]);
+            }
+            
+            // Fracción de solicitudes trazadas de extremo a extremo (trazas/*.json)
+            if (args.length > 4) {
+                Trazador.iniciar("cliente", Double.parseDouble(args[4]));
+            }
+            
+            PUERTO_SERVIDOR = Integer.parseInt(opciones.getOrDefault("puerto", String.valueOf(PUERTO_SERVIDOR)));
+            modelo = ModeloCarga.desdeOpciones(opciones);
+            
             log("MODO AUTOMATICO INICIADO");
             log("Servidor: " + IP_SERVIDOR + ":" + PUERTO_SERVIDOR);
             log("Transacciones: " + numTransacciones);
-            log("Hilos concurrentes: " + numHilos);
+            log("Usuarios concurrentes: " + numHilos);
+            log("Modelo de carga: " + modelo.describir());
+            if (plazoMs > 0) {
+                log("Plazo por solicitud: " + plazoMs + " ms");
+            }
             
             realizarPruebaCarga(numTransacciones, numHilos);
             
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             System.err.println("Error en argumentos: " + e.getMessage());
-            System.err.println("Uso: java Cliente <num_transacciones> [num_hilos] [ip_servidor]");
-            System.err.println("Ejemplo: java Cliente 500 25 192.168.1.100");
+            System.err.println("Uso: java Cliente <num_transacciones> [num_hilos] [ip_servidor] [plazo_ms] [muestreo_trazas] [--perfil=...] [--puerto=9000]");
+            System.err.println("Perfiles: uniforme, zipf, hotspot, afinidad, rafagas, realista (ajustes en ModeloCarga)");
+            System.err.println("Ejemplo: java Cliente 500 25 192.168.1.100 2000 0.05 --perfil=zipf --lecturas=0.7");
+        }
+    }
+    
+    /**
+     * Reproduce una captura del servidor central (--captura= en ServidorCentral)
+     * 
+     * Con velocidad 1 (o N) cada solicitud sale en su instante original (o N
+     * veces antes), con lo que se conservan los intervalos entre llegadas y
+     * la concurrencia resulta de los tiempos, como en la captura. Con
+     * velocidad max se envía lo más rápido posible sin superar la mayor
+     * concurrencia observada en la captura. Al final se comparan latencia
+     * y rendimiento de la captura con los de la reproducción.
+     */
+    private static void modoReproduccion(Map<String, String> opciones) {
+        IP_SERVIDOR = opciones.getOrDefault("ip", IP_SERVIDOR);
+        PUERTO_SERVIDOR = Integer.parseInt(opciones.getOrDefault("puerto", String.valueOf(PUERTO_SERVIDOR)));
+        String velocidad = opciones.getOrDefault("velocidad", "1");
+        boolean maxima = velocidad.equals("max");
+        
+        try {
+            List<Captura.Registro> registros = Captura.leer(Paths.get(opciones.get("reproducir")));
+            if (registros.isEmpty()) {
+                System.out.println("La captura no tiene solicitudes");
+                return;
+            }
+            double factor = maxima ? 1 : Double.parseDouble(velocidad);
+            int concurrencia = concurrenciaMaxima(registros);
+            log("REPRODUCCIÓN: " + registros.size() + " solicitudes de " + opciones.get("reproducir") +
+                ", velocidad " + (maxima ? "máxima (concurrencia " + concurrencia + ")" : factor + "x"));
+            
+            int total = registros.size();
+            long[] latencias = new long[total]; // Microsegundos
+            AtomicInteger errores = new AtomicInteger();
+            CountDownLatch pendientes = new CountDownLatch(total);
+            Semaphore cupos = new Semaphore(concurrencia); // Sólo con velocidad max
+            long primeraLlegada = registros.get(0).llegadaMicros;
+            long retrasoMaximo = 0;
+            AtomicLong ultimaRespuesta = new AtomicLong();
+            
+            long inicio = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                Captura.Registro registro = registros.get(i);
+                if (maxima) {
+                    cupos.acquireUninterruptibly();
+                } else {
+                    long objetivo = inicio + (long) ((registro.llegadaMicros - primeraLlegada) * 1000 / factor);
+                    long espera;
+                    while ((espera = objetivo - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(espera);
+                    }
+                    retrasoMaximo = Math.max(retrasoMaximo, -espera);
+                }
+                
+                int indice = i;
+                long enviada = System.nanoTime();
+                banco().enviar(registro.cuerpo, null).whenComplete((respuesta, error) -> {
+                    long ahora = System.nanoTime();
+                    latencias[indice] = (ahora - enviada) / 1000;
+                    ultimaRespuesta.accumulateAndGet(ahora, Math::max);
+                    if (error != null || respuesta.contains("|ERROR|")) {
+                        errores.incrementAndGet();
+                    }
+                    if (maxima) {
+                        cupos.release();
+                    }
+                    pendientes.countDown();
+                });
+            }
+            pendientes.await();
+            
+            // Captura: desde la primera llegada hasta la última respuesta
+            long[] latenciasCaptura = new long[total];
+            long finCaptura = 0;
+            int erroresCaptura = 0;
+            for (int i = 0; i < total; i++) {
+                Captura.Registro registro = registros.get(i);
+                latenciasCaptura[i] = registro.latenciaMicros;
+                finCaptura = Math.max(finCaptura, registro.llegadaMicros + registro.latenciaMicros);
+                erroresCaptura += registro.error ? 1 : 0;
+            }
+            double segundosCaptura = (finCaptura - primeraLlegada) / 1e6;
+            double segundosReproduccion = (ultimaRespuesta.get() - inicio) / 1e9;
+            Arrays.sort(latenciasCaptura);
+            Arrays.sort(latencias);
+            
+            System.out.println("\n" + "=".repeat(64));
+            System.out.println("RESULTADO DE LA REPRODUCCIÓN");
+            System.out.println("=".repeat(64));
+            System.out.println(String.format("%-22s %12s %14s %12s", "", "Captura", "Reproducción", "Diferencia"));
+            filaComparacion("Duración (s)", segundosCaptura, segundosReproduccion);
+            filaComparacion("Rendimiento (sol/s)", total / segundosCaptura, total / segundosReproduccion);
+            filaComparacion("Latencia p50 (ms)", percentilMs(latenciasCaptura, 0.50), percentilMs(latencias, 0.50));
+            filaComparacion("Latencia p90 (ms)", percentilMs(latenciasCaptura, 0.90), percentilMs(latencias, 0.90));
+            filaComparacion("Latencia p99 (ms)", percentilMs(latenciasCaptura, 0.99), percentilMs(latencias, 0.99));
+            filaComparacion("Latencia máx (ms)", percentilMs(latenciasCaptura, 1.0), percentilMs(latencias, 1.0));
+            filaComparacion("Errores", erroresCaptura, errores.get());
+            if (!maxima) {
+                System.out.println(String.format("Retraso máximo de envío respecto del horario: %.2f ms",
+                        retrasoMaximo / 1e6));
+            }
+            System.out.println("=".repeat(64));
+            
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error en la reproducción: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (banco != null) {
+                banco.close();
+            }
         }
     }
     
+    /**
+     * Mayor cantidad de solicitudes en curso a la vez en la captura
+     */
+    private static int concurrenciaMaxima(List<Captura.Registro> registros) {
+        long[] eventos = new long[registros.size() * 2];
+        int n = 0;
+        for (Captura.Registro registro : registros) {
+            eventos[n++] = registro.llegadaMicros * 2 + 1;                            // Llegada
+            eventos[n++] = (registro.llegadaMicros + registro.latenciaMicros) * 2;  // Fin (antes que una llegada simultánea)
+        }
+        Arrays.sort(eventos);
+        int enCurso = 0;
+        int maximo = 1;
+        for (long evento : eventos) {
+            enCurso += (evento & 1) == 1 ? 1 : -1;
+            maximo = Math.max(maximo, enCurso);
+        }
+        return maximo;
+    }
+    
+    private static double percentilMs(long[] ordenadas, double p) {
+        int i = (int) Math.ceil(p * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, i)] / 1000.0;
+    }
+    
+    private static void filaComparacion(String nombre, double captura, double reproduccion) {
+        String diferencia = captura == 0 ? "-" : String.format("%+.1f%%", (reproduccion - captura) * 100 / captura);
+        System.out.println(String.format("%-22s %12.2f %14.2f %12s", nombre, captura, reproduccion, diferencia));
+    }
+    
     /**
      * SEGÚN PDF: Realiza prueba de carga con cientos de transacciones
      */
     private static void realizarPruebaCarga(int numTransacciones, int numHilos) {
         log("INICIANDO PRUEBA DE CARGA");
-        log("Transacciones: " + numTransacciones + ", Hilos: " + numHilos);
+        log("Transacciones: " + numTransacciones + ", Usuarios concurrentes: " + numHilos);
         
         // Resetear contadores
         transaccionesExitosas.set(0);
@@ -243,43 +452,23 @@ public class Cliente {
         consultasRealizadas.set(0);
         transferenciasRealizadas.set(0);
         
-        // Pool de hilos para concurrencia real
-        ExecutorService executor = Executors.newFixedThreadPool(numHilos);
+        // Cada usuario simulado espera un delay aleatorio, envía una transacción
+        // y al recibir la respuesta programa la siguiente; las respuestas llegan
+        // por las conexiones persistentes sin ocupar un hilo por solicitud
+        ScheduledExecutorService temporizador = Executors.newScheduledThreadPool(2);
         CountDownLatch latch = new CountDownLatch(numTransacciones);
+        AtomicInteger siguiente = new AtomicInteger();
         
         long tiempoInicio = System.currentTimeMillis();
         
-        // SEGÚN PDF: Enviar cientos de transacciones con delay aleatorio
-        for (int i = 0; i < numTransacciones; i++) {
-            final int numTrans = i;
-            executor.submit(() -> {
-                try {
-                    // SEGÚN PDF: Delay aleatorio para simular concurrencia real
-                    Thread.sleep(random.nextInt(500) + 50); // 50-550ms
-                    
-                    if (numTrans % 3 == 0) {
-                        // Consulta de saldo (33% de las transacciones)
-                        realizarConsultaAleatoria();
-                    } else {
-                        // Transferencia (67% de las transacciones)
-                        realizarTransferenciaAleatoria();
-                    }
-                    
-                    transaccionesExitosas.incrementAndGet();
-                    
-                } catch (Exception e) {
-                    transaccionesConError.incrementAndGet();
-                    log("Error en transacción " + numTrans + ": " + e.getMessage());
-                } finally {
-                    latch.countDown();
-                }
-            });
+        for (int i = 0; i < numHilos; i++) {
+            programarTransaccion(temporizador, siguiente, numTransacciones, latch);
         }
         
         try {
             // Esperar a que terminen todas las transacciones
             boolean terminado = latch.await(10, TimeUnit.MINUTES);
-            executor.shutdown();
+            temporizador.shutdown();
             
             long tiempoTotal = System.currentTimeMillis() - tiempoInicio;
             double segundos = tiempoTotal / 1000.0;
@@ -294,38 +483,63 @@ public class Cliente {
     }
     
     /**
-     * Realiza una consulta de saldo aleatoria
+     * SEGÚN PDF: Programa la siguiente transacción de un usuario simulado
+     * con delay aleatorio
      */
-    private static void realizarConsultaAleatoria() throws IOException {
-        int idCuenta = MIN_ID_CUENTA + random.nextInt(MAX_ID_CUENTA - MIN_ID_CUENTA + 1);
-        String resultado = consultarSaldo(idCuenta);
-        consultasRealizadas.incrementAndGet();
-        
-        if (random.nextInt(100) < 5) { // Log 5% de las consultas
-            log("Consulta " + idCuenta + ": " + resultado);
+    private static void programarTransaccion(ScheduledExecutorService temporizador, AtomicInteger siguiente,
+                                             int numTransacciones, CountDownLatch latch) {
+        int numTrans = siguiente.getAndIncrement();
+        if (numTrans >= numTransacciones) {
+            return;
         }
+        
+        temporizador.schedule(() -> {
+            // Consulta o transferencia según la mezcla del modelo (por defecto 33% / 67%)
+            ModeloCarga.Operacion operacion = modelo.siguiente();
+            CompletableFuture<String> respuesta = operacion.consulta
+                    ? realizarConsulta(operacion.origen)
+                    : realizarTransferencia(operacion.origen, operacion.destino, operacion.monto);
+            
+            respuesta.whenComplete((resultado, error) -> {
+                if (error == null) {
+                    transaccionesExitosas.incrementAndGet();
+                } else {
+                    transaccionesConError.incrementAndGet();
+                    log("Error en transacción " + numTrans + ": " + error.getMessage());
+                }
+                latch.countDown();
+                programarTransaccion(temporizador, siguiente, numTransacciones, latch);
+            });
+        }, modelo.demoraMs(), TimeUnit.MILLISECONDS); // Por defecto 50-550ms
     }
     
     /**
-     * Realiza una transferencia aleatoria
+     * Realiza una consulta de saldo de la cuenta elegida por el modelo
      */
-    private static void realizarTransferenciaAleatoria() throws IOException {
-        int cuentaOrigen = MIN_ID_CUENTA + random.nextInt(MAX_ID_CUENTA - MIN_ID_CUENTA + 1);
-        int cuentaDestino = MIN_ID_CUENTA + random.nextInt(MAX_ID_CUENTA - MIN_ID_CUENTA + 1);
-        
-        // Evitar transferencias a la misma cuenta
-        while (cuentaDestino == cuentaOrigen) {
-            cuentaDestino = MIN_ID_CUENTA + random.nextInt(MAX_ID_CUENTA - MIN_ID_CUENTA + 1);
-        }
-        
-        double monto = 10.0 + random.nextDouble() * 490.0; // 10-500
-        String resultado = transferirFondos(cuentaOrigen, cuentaDestino, monto);
-        transferenciasRealizadas.incrementAndGet();
-        
-        if (random.nextInt(100) < 3) { // Log 3% de las transferencias
-            log("Transferencia " + cuentaOrigen + " -> " + cuentaDestino + 
-                " ($" + String.format("%.2f", monto) + "): " + resultado);
-        }
+    private static CompletableFuture<String> realizarConsulta(int idCuenta) {
+        return banco().consultarSaldo(idCuenta).thenApply(resultado -> {
+            consultasRealizadas.incrementAndGet();
+            
+            if (random.nextInt(100) < 5) { // Log 5% de las consultas
+                log("Consulta " + idCuenta + ": " + resultado);
+            }
+            return resultado;
+        });
+    }
+    
+    /**
+     * Realiza una transferencia entre las cuentas elegidas por el modelo
+     */
+    private static CompletableFuture<String> realizarTransferencia(int origen, int destino, long monto) {
+        return banco().transferirFondos(origen, destino, monto).thenApply(resultado -> {
+            transferenciasRealizadas.incrementAndGet();
+            
+            if (random.nextInt(100) < 3) { // Log 3% de las transferencias
+                log("Transferencia " + origen + " -> " + destino + 
+                    " ($" + CodecMonto.formatear(monto) + "): " + resultado);
+            }
+            return resultado;
+        });
     }
     
     /**
@@ -366,7 +580,7 @@ public class Cliente {
         System.out.println("Esto puede tomar varios minutos...");
         
         try {
-            double saldoTotal = 0;
+            long saldoTotal = 0; // Centavos
             int cuentasConsultadas = 0;
             int errores = 0;
             long tiempoInicio = System.currentTimeMillis();
@@ -375,13 +589,13 @@ public class Cliente {
             // Según el ServerCentral: 5000 cuentas desde ID 101
             for (int idCuenta = MIN_ID_CUENTA; idCuenta <= MAX_ID_CUENTA; idCuenta++) {
                 try {
-                    String resultado = consultarSaldo(idCuenta);
+                    String resultado = consultarSaldo(idCuenta, "auditoria");
                     
                     if (resultado != null && resultado.contains("|OK|")) {
                         String[] partes = resultado.split("\\|");
                         if (partes.length >= 4) {
                             try {
-                                double saldo = Double.parseDouble(partes[3]);
+                                long saldo = CodecMonto.parsear(partes[3]);
                                 saldoTotal += saldo;
                                 cuentasConsultadas++;
                             } catch (NumberFormatException e) {
@@ -425,12 +639,12 @@ public class Cliente {
             System.out.println("Total cuentas esperadas: " + (MAX_ID_CUENTA - MIN_ID_CUENTA + 1));
             System.out.println("Cuentas encontradas: " + cuentasConsultadas);
             System.out.println("Cuentas con error: " + errores);
-            System.out.println("Saldo total calculado: $" + String.format("%,.2f", saldoTotal));
+            System.out.println("Saldo total calculado: $" + String.format("%,.2f", BigDecimal.valueOf(saldoTotal, 2)));
             System.out.println("Tiempo total: " + String.format("%.2f", segundos) + " segundos");
             System.out.println("Velocidad: " + String.format("%.2f", cuentasConsultadas / segundos) + " consultas/seg");
             
             if (cuentasConsultadas > 0) {
-                double promedio = saldoTotal / cuentasConsultadas;
+                double promedio = saldoTotal / 100.0 / cuentasConsultadas;
                 System.out.println("Promedio por cuenta: $" + String.format("%.2f", promedio));
             }
             
@@ -438,14 +652,14 @@ public class Cliente {
             System.out.println("Tasa de éxito: " + String.format("%.2f", tasaExito) + "%");
             
             // Comparar con el saldo reportado por el ServerCentral (13,630,080.92)
-            double saldoEsperado = 13630080.92; // Del log del ServerCentral
-            double diferencia = Math.abs(saldoTotal - saldoEsperado);
+            long saldoEsperado = 1363008092L; // Del log del ServerCentral (13,630,080.92)
+            long diferencia = Math.abs(saldoTotal - saldoEsperado);
             System.out.println("\nCOMPARACIÓN CON SERVIDOR CENTRAL:");
-            System.out.println("Saldo reportado por servidor: $" + String.format("%,.2f", saldoEsperado));
-            System.out.println("Saldo calculado por arqueo: $" + String.format("%,.2f", saldoTotal));
-            System.out.println("Diferencia: $" + String.format("%,.2f", diferencia));
+            System.out.println("Saldo reportado por servidor: $" + String.format("%,.2f", BigDecimal.valueOf(saldoEsperado, 2)));
+            System.out.println("Saldo calculado por arqueo: $" + String.format("%,.2f", BigDecimal.valueOf(saldoTotal, 2)));
+            System.out.println("Diferencia: $" + String.format("%,.2f", BigDecimal.valueOf(diferencia, 2)));
             
-            if (diferencia < 0.01) {
+            if (diferencia == 0) {
                 System.out.println("✅ ARQUEO EXITOSO - Los saldos coinciden");
             } else {
                 System.out.println("⚠️  DISCREPANCIA DETECTADA - Revisar integridad de datos");
@@ -454,7 +668,7 @@ public class Cliente {
             System.out.println("=".repeat(60));
             
             log("Arqueo completado - Cuentas: " + cuentasConsultadas + 
-                ", Saldo: $" + String.format("%,.2f", saldoTotal) + 
+                ", Saldo: $" + String.format("%,.2f", BigDecimal.valueOf(saldoTotal, 2)) + 
                 ", Errores: " + errores + 
                 ", Tiempo: " + String.format("%.2f", segundos) + "s");
                 
@@ -468,30 +682,50 @@ public class Cliente {
      * Consulta el saldo de una cuenta
      */
     private static String consultarSaldo(int idCuenta) throws IOException {
-        try (Socket socket = new Socket(IP_SERVIDOR, PUERTO_SERVIDOR);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            
-            String request = "REQUEST|CONSULTAR_SALDO|" + idCuenta;
-            out.println(request);
-            
-            return in.readLine();
-        }
+        return esperar(banco().consultarSaldo(idCuenta));
+    }
+    
+    /**
+     * Consulta el saldo indicando la clase de tráfico ("auditoria" en el
+     * arqueo: sólo usa la capacidad que dejan libre los usuarios)
+     */
+    private static String consultarSaldo(int idCuenta, String clase) throws IOException {
+        return esperar(banco().consultarSaldo(idCuenta, clase));
     }
     
     /**
      * Realiza una transferencia entre cuentas
      */
-    private static String transferirFondos(int cuentaOrigen, int cuentaDestino, double monto) throws IOException {
-        try (Socket socket = new Socket(IP_SERVIDOR, PUERTO_SERVIDOR);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            
-            String request = String.format("REQUEST|TRANSFERIR_FONDOS|%d|%d|%.2f", 
-                                        cuentaOrigen, cuentaDestino, monto);
-            out.println(request);
-            
-            return in.readLine();
+    private static String transferirFondos(int cuentaOrigen, int cuentaDestino, long monto) throws IOException {
+        return esperar(banco().transferirFondos(cuentaOrigen, cuentaDestino, monto));
+    }
+    
+    /**
+     * Conexiones persistentes con el servidor, abiertas en el primer uso
+     */
+    private static synchronized ClienteBanco banco() {
+        if (banco == null) {
+            banco = new ClienteBanco(IP_SERVIDOR, PUERTO_SERVIDOR);
+            banco.setPlazoMs(plazoMs);
+        }
+        return banco;
+    }
+    
+    /**
+     * Espera la respuesta de una solicitud asíncrona
+     */
+    private static String esperar(CompletableFuture<String> respuesta) throws IOException {
+        try {
+            return respuesta.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Consulta interrumpida");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) {
+                throw (IOException) causa;
+            }
+            throw new IOException(causa instanceof TimeoutException ? "Sin respuesta del servidor" : causa.toString(), causa);
         }
     }
     
@@ -0,0 +1,252 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClienteBanco - API asíncrona del servidor central
+ *
+ * Mantiene unas pocas conexiones persistentes y envía por cada una muchas
+ * solicitudes seguidas sin esperar las respuestas (pipelining). Cada
+ * solicitud lleva "|id=N" y el servidor devuelve ese id en el segundo
+ * campo de la respuesta, que puede llegar en cualquier orden; con él se
+ * completa el CompletableFuture de la solicitud.
+ *
+ * Las respuestas son la línea completa del servidor
+ * ("RESPONSE|N|OK|1234.50"), igual que en el protocolo de una línea por
+ * conexión. Si se cae una conexión sus solicitudes pendientes fallan con
+ * IOException y la siguiente solicitud abre una nueva.
+ *
+ * Admite miles de solicitudes pendientes desde un solo proceso; al llegar
+ * a MAX_PENDIENTES la siguiente solicitud espera a que termine alguna.
+ */
+public class ClienteBanco implements Closeable {
+
+    public static final int CONEXIONES_POR_DEFECTO = 4;
+    private static final int MAX_PENDIENTES = 10000;
+    private static final int TIEMPO_CONEXION_MS = 3000;
+    private static final long PLAZO_SERVIDOR_MS = 30000; // Plazo máximo del servidor central
+    private static final long MARGEN_RESPUESTA_MS = 1000;
+
+    private final String ip;
+    private final int puerto;
+    private final Conexion[] conexiones;
+    private final AtomicInteger turno = new AtomicInteger();
+    private final AtomicLong generadorId = new AtomicLong();
+    private final Semaphore cupos = new Semaphore(MAX_PENDIENTES);
+    private volatile long plazoMs;
+    private volatile boolean cerrado;
+
+    public ClienteBanco(String ip, int puerto) {
+        this(ip, puerto, CONEXIONES_POR_DEFECTO);
+    }
+
+    public ClienteBanco(String ip, int puerto, int numConexiones) {
+        this.ip = ip;
+        this.puerto = puerto;
+        this.conexiones = new Conexion[Math.max(1, numConexiones)];
+    }
+
+    /**
+     * Plazo que se informa al servidor en cada solicitud (0 = sin plazo)
+     */
+    public void setPlazoMs(long plazoMs) {
+        this.plazoMs = plazoMs;
+    }
+
+    public CompletableFuture<String> consultarSaldo(int idCuenta) {
+        return enviar("CONSULTAR_SALDO|" + idCuenta, null);
+    }
+
+    /**
+     * Consulta indicando la clase de tráfico ("auditoria" en los arqueos)
+     */
+    public CompletableFuture<String> consultarSaldo(int idCuenta, String clase) {
+        return enviar("CONSULTAR_SALDO|" + idCuenta, clase);
+    }
+
+    /**
+     * Cuentas y saldo total de un cliente ("RESPONSE|N|OK|cuentas|total|id:saldo;...")
+     */
+    public CompletableFuture<String> consultarCliente(int idCliente) {
+        return enviar("CONSULTAR_CLIENTE|" + idCliente, null);
+    }
+
+    public CompletableFuture<String> transferirFondos(int cuentaOrigen, int cuentaDestino, long monto) {
+        StringBuilder cuerpo = new StringBuilder(48).append("TRANSFERIR_FONDOS|")
+                .append(cuentaOrigen).append('|').append(cuentaDestino).append('|');
+        return enviar(CodecMonto.escribir(cuerpo, monto).toString(), null);
+    }
+
+    /**
+     * Envía REQUEST|cuerpo con los metadatos de plazo, clase, traza e id
+     */
+    public CompletableFuture<String> enviar(String cuerpo, String clase) {
+        CompletableFuture<String> futuro = new CompletableFuture<>();
+        if (cerrado) {
+            futuro.completeExceptionally(new IOException("Cliente cerrado"));
+            return futuro;
+        }
+
+        long id = generadorId.incrementAndGet();
+        long plazo = plazoMs;
+        String traza = Trazador.muestrear();
+
+        StringBuilder linea = new StringBuilder(cuerpo.length() + 64).append("REQUEST|").append(cuerpo);
+        if (clase != null) {
+            linea.append("|clase=").append(clase);
+        }
+        if (plazo > 0) {
+            linea.append("|plazo=").append(plazo);
+        }
+        if (traza != null) {
+            linea.append("|traza=").append(traza);
+        }
+        linea.append("|id=").append(id);
+
+        cupos.acquireUninterruptibly();
+        long inicio = System.nanoTime();
+        String tramo = cuerpo.substring(0, Math.max(0, cuerpo.indexOf('|'))).toLowerCase();
+        futuro.orTimeout((plazo > 0 ? plazo : PLAZO_SERVIDOR_MS) + MARGEN_RESPUESTA_MS, TimeUnit.MILLISECONDS);
+
+        Conexion conexion = null;
+        try {
+            conexion = conexion();
+            conexion.pendientes.put(id, futuro);
+            Conexion usada = conexion;
+            futuro.whenComplete((respuesta, error) -> {
+                usada.pendientes.remove(id);
+                cupos.release();
+                Trazador.tramo(traza, tramo, inicio, System.nanoTime());
+            });
+            conexion.escribir(linea);
+        } catch (IOException e) {
+            if (conexion == null) {
+                cupos.release();
+            } else {
+                conexion.cerrar(e);
+            }
+            futuro.completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    /**
+     * Siguiente conexión por turno; reabre la que se haya cerrado
+     */
+    private Conexion conexion() throws IOException {
+        int i = Math.floorMod(turno.getAndIncrement(), conexiones.length);
+        Conexion conexion = conexiones[i];
+        if (conexion != null && !conexion.cerrada) {
+            return conexion;
+        }
+        synchronized (conexiones) {
+            conexion = conexiones[i];
+            if (conexion == null || conexion.cerrada) {
+                conexion = new Conexion();
+                conexiones[i] = conexion;
+            }
+            return conexion;
+        }
+    }
+
+    /**
+     * Solicitudes enviadas que aún esperan respuesta
+     */
+    public int pendientes() {
+        return MAX_PENDIENTES - cupos.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        cerrado = true;
+        synchronized (conexiones) {
+            for (Conexion conexion : conexiones) {
+                if (conexion != null) {
+                    conexion.cerrar(new IOException("Cliente cerrado"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Conexión persistente con un hilo lector que reparte las respuestas
+     */
+    private final class Conexion {
+        final Socket socket = new Socket();
+        final Writer salida;
+        final Map<Long, CompletableFuture<String>> pendientes = new ConcurrentHashMap<>();
+        volatile boolean cerrada;
+
+        Conexion() throws IOException {
+            socket.connect(new InetSocketAddress(ip, puerto), TIEMPO_CONEXION_MS);
+            socket.setTcpNoDelay(true);
+            salida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            Thread lector = new Thread(this::leer);
+            lector.setDaemon(true);
+            lector.setName("ClienteBanco-" + socket.getLocalPort());
+            lector.start();
+        }
+
+        synchronized void escribir(CharSequence linea) throws IOException {
+            if (cerrada) {
+                throw new IOException("Conexión cerrada");
+            }
+            salida.append(linea).append('\n');
+            salida.flush();
+        }
+
+        private void leer() {
+            IOException causa = new IOException("Conexión cerrada por el servidor");
+            try (BufferedReader entrada = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String respuesta;
+                while ((respuesta = entrada.readLine()) != null) {
+                    CompletableFuture<String> futuro = pendientes.remove(idDe(respuesta));
+                    if (futuro != null) {
+                        futuro.complete(respuesta);
+                    }
+                }
+            } catch (IOException e) {
+                causa = e;
+            }
+            cerrar(causa);
+        }
+
+        void cerrar(IOException causa) {
+            cerrada = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ya estaba cerrada
+            }
+            for (CompletableFuture<String> futuro : pendientes.values()) {
+                futuro.completeExceptionally(causa);
+            }
+        }
+    }
+
+    /**
+     * Id de RESPONSE|id|... (-1 si la línea no lo trae)
+     */
+    private static long idDe(String respuesta) {
+        int inicio = respuesta.indexOf('|') + 1;
+        int fin = respuesta.indexOf('|', inicio);
+        if (inicio <= 0 || fin < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(respuesta, inicio, fin, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * CodecMonto - Montos en centavos (long) sobre el protocolo de texto
+ *
+ * Los saldos y montos se manejan como centavos enteros en todo el sistema,
+ * así las sumas son exactas y el arqueo no acumula error de redondeo. En
+ * el protocolo se siguen escribiendo con dos decimales ("1234.50").
+ *
+ * El parseo y la escritura trabajan directamente sobre CharSequence,
+ * StringBuilder o byte[] sin crear objetos intermedios (ni Formatter, ni
+ * BigDecimal, ni Double), por lo que pueden usarse en el camino caliente.
+ */
+public final class CodecMonto {
+
+    // Mayor parte entera que cabe en centavos con los decimales redondeados (hasta 100)
+    private static final long MAX_ENTEROS = (Long.MAX_VALUE - 100) / 100;
+
+    private CodecMonto() {
+    }
+
+    /**
+     * Parsea un monto decimal ("123", "123.4", "-123.45") a centavos.
+     * Con más de dos decimales se redondea la mitad hacia arriba.
+     */
+    public static long parsear(CharSequence texto) {
+        return parsear(texto, 0, texto.length());
+    }
+
+    public static long parsear(CharSequence texto, int desde, int hasta) {
+        if (desde >= hasta) {
+            throw new NumberFormatException("Monto vacío");
+        }
+
+        boolean negativo = false;
+        int i = desde;
+        char c = texto.charAt(i);
+        if (c == '-' || c == '+') {
+            negativo = c == '-';
+            i++;
+        }
+
+        long enteros = 0;
+        int digitos = 0;
+        while (i < hasta && (c = texto.charAt(i)) != '.') {
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Monto inválido");
+            }
+            enteros = enteros * 10 + (c - '0');
+            if (enteros > MAX_ENTEROS) {
+                throw new NumberFormatException("Monto fuera de rango");
+            }
+            digitos++;
+            i++;
+        }
+
+        long decimales = 0;
+        int posicionDecimal = 0;
+        if (i < hasta) {
+            i++; // punto decimal
+            while (i < hasta) {
+                c = texto.charAt(i++);
+                if (c < '0' || c > '9') {
+                    throw new NumberFormatException("Monto inválido");
+                }
+                if (posicionDecimal < 2) {
+                    decimales = decimales * 10 + (c - '0');
+                } else if (posicionDecimal == 2 && c >= '5') {
+                    decimales++; // redondeo
+                }
+                posicionDecimal++;
+                digitos++;
+            }
+        }
+
+        if (digitos == 0) {
+            throw new NumberFormatException("Monto inválido");
+        }
+        if (posicionDecimal == 1) {
+            decimales *= 10;
+        }
+
+        long centavos = enteros * 100 + decimales;
+        return negativo ? -centavos : centavos;
+    }
+
+    /**
+     * Parsea un monto desde bytes ASCII (archivos de datos)
+     */
+    public static long parsear(byte[] datos, int desde, int hasta) {
+        if (desde >= hasta) {
+            throw new NumberFormatException("Monto vacío");
+        }
+
+        boolean negativo = datos[desde] == '-';
+        int i = negativo || datos[desde] == '+' ? desde + 1 : desde;
+
+        long enteros = 0;
+        int digitos = 0;
+        byte b;
+        while (i < hasta && (b = datos[i]) != '.') {
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Monto inválido");
+            }
+            enteros = enteros * 10 + (b - '0');
+            if (enteros > MAX_ENTEROS) {
+                throw new NumberFormatException("Monto fuera de rango");
+            }
+            digitos++;
+            i++;
+        }
+
+        long decimales = 0;
+        int posicionDecimal = 0;
+        if (i < hasta) {
+            i++;
+            while (i < hasta) {
+                b = datos[i++];
+                if (b < '0' || b > '9') {
+                    throw new NumberFormatException("Monto inválido");
+                }
+                if (posicionDecimal < 2) {
+                    decimales = decimales * 10 + (b - '0');
+                } else if (posicionDecimal == 2 && b >= '5') {
+                    decimales++;
+                }
+                posicionDecimal++;
+                digitos++;
+            }
+        }
+
+        if (digitos == 0) {
+            throw new NumberFormatException("Monto inválido");
+        }
+        if (posicionDecimal == 1) {
+            decimales *= 10;
+        }
+
+        long centavos = enteros * 100 + decimales;
+        return negativo ? -centavos : centavos;
+    }
+
+    /**
+     * Agrega el monto con dos decimales al StringBuilder
+     */
+    public static StringBuilder escribir(StringBuilder destino, long centavos) {
+        if (centavos < 0) {
+            destino.append('-');
+            centavos = -centavos;
+        }
+        long decimales = centavos % 100;
+        destino.append(centavos / 100).append('.');
+        if (decimales < 10) {
+            destino.append('0');
+        }
+        return destino.append(decimales);
+    }
+
+    /**
+     * Escribe el monto con dos decimales en bytes ASCII; devuelve la
+     * posición siguiente al último byte escrito
+     */
+    public static int escribir(byte[] destino, int posicion, long centavos) {
+        if (centavos < 0) {
+            destino[posicion++] = '-';
+            centavos = -centavos;
+        }
+        posicion = escribirEntero(destino, posicion, centavos / 100);
+        long decimales = centavos % 100;
+        destino[posicion++] = '.';
+        destino[posicion++] = (byte) ('0' + decimales / 10);
+        destino[posicion++] = (byte) ('0' + decimales % 10);
+        return posicion;
+    }
+
+    /**
+     * Escribe un entero no negativo en bytes ASCII
+     */
+    public static int escribirEntero(byte[] destino, int posicion, long valor) {
+        int digitos = 1;
+        for (long resto = valor / 10; resto > 0; resto /= 10) {
+            digitos++;
+        }
+        int fin = posicion + digitos;
+        for (int i = fin - 1; i >= posicion; i--) {
+            destino[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+        return fin;
+    }
+
+    /**
+     * Monto con dos decimales como String (sólo crea el String resultante)
+     */
+    public static String formatear(long centavos) {
+        return escribir(new StringBuilder(24), centavos).toString();
+    }
+}
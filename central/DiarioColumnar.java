@@ -0,0 +1,810 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DiarioColumnar - Diario de transacciones en formato columnar comprimido
+ * e informes agregados sobre él
+ *
+ * Formato (.bdc): "BDC1" y luego bloques de hasta FILAS_POR_BLOQUE filas,
+ * que se pueden seguir agregando al final del archivo:
+ *
+ *   int filas | long instanteMin | long instanteMax
+ *   6 columnas: int bytesComprimidos | int bytesOriginales | datos (Deflate)
+ *
+ * Columnas: id (delta), origen, destino, monto en centavos, instante (ms
+ * desde 1970 de la fecha y hora local del nodo, en delta) y estado
+ * (diccionario del bloque y un byte por fila). Los enteros van en varint
+ * zigzag, así los deltas pequeños ocupan uno o dos bytes antes de comprimir.
+ *
+ * Un informe lee el archivo de corrido y reparte los bloques entre hilos.
+ * De cada bloque sólo se descomprimen las columnas que usa el informe y los
+ * que quedan fuera del rango de fechas se saltan sin descomprimir (mínimo y
+ * máximo en la cabecera). La agregación por bloque recorre arreglos de
+ * primitivos y acumula en arreglos densos (día × grupo); las tablas de cada
+ * bloque se suman al total.
+ *
+ * Uso:
+ *   java DiarioColumnar exportar <transacciones.txt> <salida.bdc> [--filas-por-bloque=65536]
+ *   java DiarioColumnar informe <archivo.bdc>... [--por=dia,tipo] [--datos=../data] [--desde=aaaa-mm-dd]
+ *                               [--hasta=aaaa-mm-dd] [--estado=Confirmada] [--hilos=N]
+ *   java DiarioColumnar generar <salida.bdc> [--filas=10000000] [--cuentas=5000] [--dias=30]
+ *                               [--inicio=2026-01-01] [--semilla=42]
+ *
+ * --por combina dia, tipo (tipo de la cuenta origen) y particion (partición
+ * de la cuenta origen); tipo y partición salen de los archivos de cuentas
+ * de --datos.
+ */
+public class DiarioColumnar {
+
+    public static final int MAGIA = 0x42444331; // "BDC1"
+    public static final int FILAS_POR_BLOQUE = 65536;
+    private static final long DIA_MS = 86_400_000L;
+
+    private static final int ID = 0;
+    private static final int ORIGEN = 1;
+    private static final int DESTINO = 2;
+    private static final int MONTO = 3;
+    private static final int INSTANTE = 4;
+    private static final int ESTADO = 5;
+    private static final int COLUMNAS = 6;
+
+    /**
+     * Escribe filas en bloques al final de un archivo .bdc
+     */
+    public static class Escritor implements Closeable {
+        private final DataOutputStream salida;
+        private final int filasPorBloque;
+        private final long[] ids;
+        private final int[] origenes;
+        private final int[] destinos;
+        private final long[] montos;
+        private final long[] instantes;
+        private final byte[] estados;
+        private final Map<String, Integer> diccionario = new LinkedHashMap<>();
+        private final Deflater compresor = new Deflater(Deflater.BEST_SPEED);
+        private final Bytes columna = new Bytes(1 << 16);
+        private final Bytes comprimida = new Bytes(1 << 16);
+        private int enBloque = 0;
+        private long filas = 0;
+
+        public Escritor(Path archivo) throws IOException {
+            this(archivo, FILAS_POR_BLOQUE);
+        }
+
+        public Escritor(Path archivo, int filasPorBloque) throws IOException {
+            boolean nuevo = !Files.exists(archivo) || Files.size(archivo) == 0;
+            if (!nuevo) {
+                try (DataInputStream entrada = new DataInputStream(Files.newInputStream(archivo))) {
+                    if (entrada.readInt() != MAGIA) {
+                        throw new IOException("No es un diario columnar: " + archivo);
+                    }
+                }
+            }
+            this.salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivo,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+            if (nuevo) {
+                salida.writeInt(MAGIA);
+            }
+            this.filasPorBloque = filasPorBloque;
+            ids = new long[filasPorBloque];
+            origenes = new int[filasPorBloque];
+            destinos = new int[filasPorBloque];
+            montos = new long[filasPorBloque];
+            instantes = new long[filasPorBloque];
+            estados = new byte[filasPorBloque];
+        }
+
+        public void agregar(long id, int origen, int destino, long monto, long instante, String estado)
+                throws IOException {
+            Integer indice = diccionario.get(estado);
+            if (indice == null) {
+                if (diccionario.size() == 255) {
+                    volcarBloque();
+                }
+                indice = diccionario.size();
+                diccionario.put(estado, indice);
+            }
+            ids[enBloque] = id;
+            origenes[enBloque] = origen;
+            destinos[enBloque] = destino;
+            montos[enBloque] = monto;
+            instantes[enBloque] = instante;
+            estados[enBloque] = (byte) (int) indice;
+            filas++;
+            if (++enBloque == filasPorBloque) {
+                volcarBloque();
+            }
+        }
+
+        /**
+         * Agrega una línea id|origen|destino|monto|aaaa-mm-dd hh:mm:ss[.mmm]|estado
+         */
+        public void agregar(String linea) throws IOException {
+            int s1 = linea.indexOf('|');
+            int s2 = linea.indexOf('|', s1 + 1);
+            int s3 = linea.indexOf('|', s2 + 1);
+            int s4 = linea.indexOf('|', s3 + 1);
+            int s5 = linea.indexOf('|', s4 + 1);
+            if (s1 < 0 || s2 < 0 || s3 < 0 || s4 < 0 || s5 < 0) {
+                throw new IllegalArgumentException("Línea de transacción inválida: " + linea);
+            }
+            agregar(Long.parseLong(linea.substring(0, s1).trim()),
+                    Integer.parseInt(linea.substring(s1 + 1, s2).trim()),
+                    Integer.parseInt(linea.substring(s2 + 1, s3).trim()),
+                    CodecMonto.parsear(linea.substring(s3 + 1, s4).trim()),
+                    parsearFechaHora(linea.substring(s4 + 1, s5).trim()),
+                    linea.substring(s5 + 1).trim());
+        }
+
+        public long filas() {
+            return filas;
+        }
+
+        private void volcarBloque() throws IOException {
+            if (enBloque == 0) {
+                return;
+            }
+            long minimo = Long.MAX_VALUE;
+            long maximo = Long.MIN_VALUE;
+            for (int i = 0; i < enBloque; i++) {
+                minimo = Math.min(minimo, instantes[i]);
+                maximo = Math.max(maximo, instantes[i]);
+            }
+            salida.writeInt(enBloque);
+            salida.writeLong(minimo);
+            salida.writeLong(maximo);
+
+            columna.largo = 0;
+            long anterior = 0;
+            for (int i = 0; i < enBloque; i++) {
+                columna.varint(ids[i] - anterior);
+                anterior = ids[i];
+            }
+            escribirColumna();
+            columna.largo = 0;
+            for (int i = 0; i < enBloque; i++) {
+                columna.varint(origenes[i]);
+            }
+            escribirColumna();
+            columna.largo = 0;
+            for (int i = 0; i < enBloque; i++) {
+                columna.varint(destinos[i]);
+            }
+            escribirColumna();
+            columna.largo = 0;
+            for (int i = 0; i < enBloque; i++) {
+                columna.varint(montos[i]);
+            }
+            escribirColumna();
+            columna.largo = 0;
+            anterior = 0;
+            for (int i = 0; i < enBloque; i++) {
+                columna.varint(instantes[i] - anterior);
+                anterior = instantes[i];
+            }
+            escribirColumna();
+            columna.largo = 0;
+            columna.varint(diccionario.size());
+            for (String estado : diccionario.keySet()) {
+                byte[] texto = estado.getBytes(StandardCharsets.UTF_8);
+                columna.varint(texto.length);
+                columna.agregar(texto, 0, texto.length);
+            }
+            columna.agregar(estados, 0, enBloque);
+            escribirColumna();
+
+            enBloque = 0;
+            diccionario.clear();
+        }
+
+        private void escribirColumna() throws IOException {
+            compresor.reset();
+            compresor.setInput(columna.datos, 0, columna.largo);
+            compresor.finish();
+            comprimida.largo = 0;
+            while (!compresor.finished()) {
+                comprimida.reservar(4096);
+                comprimida.largo += compresor.deflate(comprimida.datos, comprimida.largo,
+                        comprimida.datos.length - comprimida.largo);
+            }
+            salida.writeInt(comprimida.largo);
+            salida.writeInt(columna.largo);
+            salida.write(comprimida.datos, 0, comprimida.largo);
+        }
+
+        @Override
+        public void close() throws IOException {
+            volcarBloque();
+            salida.close();
+            compresor.end();
+        }
+    }
+
+    /**
+     * Bloque leído: columnas comprimidas que se decodifican al pedirlas
+     */
+    public static class Bloque {
+        private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+        public final int filas;
+        public final long instanteMin;
+        public final long instanteMax;
+        private final byte[][] comprimidas = new byte[COLUMNAS][];
+        private final int[] originales = new int[COLUMNAS];
+        private String[] diccionario;
+
+        Bloque(int filas, long instanteMin, long instanteMax) {
+            this.filas = filas;
+            this.instanteMin = instanteMin;
+            this.instanteMax = instanteMax;
+        }
+
+        public long[] ids() {
+            return largos(ID, true);
+        }
+
+        public int[] origenes() {
+            return enteros(ORIGEN);
+        }
+
+        public int[] destinos() {
+            return enteros(DESTINO);
+        }
+
+        public long[] montos() {
+            return largos(MONTO, false);
+        }
+
+        public long[] instantes() {
+            return largos(INSTANTE, true);
+        }
+
+        /**
+         * Índice de estado por fila; los nombres están en diccionario()
+         */
+        public byte[] estados() {
+            byte[] datos = descomprimir(ESTADO);
+            int[] posicion = {0};
+            diccionario = new String[(int) leerVarint(datos, posicion)];
+            for (int i = 0; i < diccionario.length; i++) {
+                int largo = (int) leerVarint(datos, posicion);
+                diccionario[i] = new String(datos, posicion[0], largo, StandardCharsets.UTF_8);
+                posicion[0] += largo;
+            }
+            return Arrays.copyOfRange(datos, posicion[0], posicion[0] + filas);
+        }
+
+        public String[] diccionario() {
+            if (diccionario == null) {
+                estados();
+            }
+            return diccionario;
+        }
+
+        private long[] largos(int columna, boolean delta) {
+            byte[] datos = descomprimir(columna);
+            long[] valores = new long[filas];
+            int posicion = 0;
+            long anterior = 0;
+            for (int i = 0; i < filas; i++) {
+                long crudo = 0;
+                int desplazamiento = 0;
+                byte b;
+                do {
+                    b = datos[posicion++];
+                    crudo |= (long) (b & 0x7F) << desplazamiento;
+                    desplazamiento += 7;
+                } while (b < 0);
+                long valor = (crudo >>> 1) ^ -(crudo & 1);
+                anterior = delta ? anterior + valor : valor;
+                valores[i] = anterior;
+            }
+            return valores;
+        }
+
+        private int[] enteros(int columna) {
+            byte[] datos = descomprimir(columna);
+            int[] valores = new int[filas];
+            int posicion = 0;
+            for (int i = 0; i < filas; i++) {
+                long crudo = 0;
+                int desplazamiento = 0;
+                byte b;
+                do {
+                    b = datos[posicion++];
+                    crudo |= (long) (b & 0x7F) << desplazamiento;
+                    desplazamiento += 7;
+                } while (b < 0);
+                valores[i] = (int) ((crudo >>> 1) ^ -(crudo & 1));
+            }
+            return valores;
+        }
+
+        private byte[] descomprimir(int columna) {
+            Inflater inflater = INFLATERS.get();
+            inflater.reset();
+            inflater.setInput(comprimidas[columna]);
+            byte[] datos = new byte[originales[columna]];
+            try {
+                int leidos = 0;
+                while (leidos < datos.length && !inflater.finished()) {
+                    leidos += inflater.inflate(datos, leidos, datos.length - leidos);
+                }
+            } catch (DataFormatException e) {
+                throw new UncheckedIOException(new IOException("Columna dañada: " + e.getMessage()));
+            }
+            return datos;
+        }
+    }
+
+    /**
+     * Lee los bloques de un archivo en orden
+     */
+    public static class Lector implements Closeable {
+        private final DataInputStream entrada;
+        public long bloquesSaltados = 0;
+        public long bytesLeidos = 4;
+
+        public Lector(Path archivo) throws IOException {
+            entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo), 1 << 20));
+            if (entrada.readInt() != MAGIA) {
+                entrada.close();
+                throw new IOException("No es un diario columnar: " + archivo);
+            }
+        }
+
+        public Bloque siguiente() throws IOException {
+            return siguiente(Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /**
+         * Siguiente bloque con algún instante en [desde, hasta]; los demás se
+         * saltan sin leer sus columnas (null al terminar el archivo)
+         */
+        public Bloque siguiente(long desde, long hasta) throws IOException {
+            while (true) {
+                int filas;
+                try {
+                    filas = entrada.readInt();
+                } catch (EOFException e) {
+                    return null;
+                }
+                Bloque bloque = new Bloque(filas, entrada.readLong(), entrada.readLong());
+                bytesLeidos += 20;
+                boolean fuera = bloque.instanteMax < desde || bloque.instanteMin > hasta;
+                for (int c = 0; c < COLUMNAS; c++) {
+                    int largo = entrada.readInt();
+                    bloque.originales[c] = entrada.readInt();
+                    bytesLeidos += 8 + largo;
+                    if (fuera) {
+                        entrada.skipNBytes(largo);
+                    } else {
+                        bloque.comprimidas[c] = new byte[largo];
+                        entrada.readFully(bloque.comprimidas[c]);
+                    }
+                }
+                if (!fuera) {
+                    return bloque;
+                }
+                bloquesSaltados++;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            entrada.close();
+        }
+    }
+
+    /**
+     * Arreglo de bytes que crece, con escritura de varint zigzag
+     */
+    private static class Bytes {
+        byte[] datos;
+        int largo = 0;
+
+        Bytes(int capacidad) {
+            datos = new byte[capacidad];
+        }
+
+        void reservar(int adicional) {
+            if (largo + adicional > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, largo + adicional));
+            }
+        }
+
+        void varint(long valor) {
+            reservar(10);
+            long v = (valor << 1) ^ (valor >> 63);
+            while ((v & ~0x7FL) != 0) {
+                datos[largo++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            datos[largo++] = (byte) v;
+        }
+
+        void agregar(byte[] origen, int desde, int cantidad) {
+            reservar(cantidad);
+            System.arraycopy(origen, desde, datos, largo, cantidad);
+            largo += cantidad;
+        }
+    }
+
+    private static long leerVarint(byte[] datos, int[] posicion) {
+        long crudo = 0;
+        int desplazamiento = 0;
+        byte b;
+        do {
+            b = datos[posicion[0]++];
+            crudo |= (long) (b & 0x7F) << desplazamiento;
+            desplazamiento += 7;
+        } while (b < 0);
+        return (crudo >>> 1) ^ -(crudo & 1);
+    }
+
+    /**
+     * "aaaa-mm-dd hh:mm:ss[.mmm]" a ms desde 1970 sin zona horaria
+     */
+    public static long parsearFechaHora(String texto) {
+        long dias = LocalDate.of(digitos(texto, 0, 4), digitos(texto, 5, 7), digitos(texto, 8, 10)).toEpochDay();
+        long segundos = digitos(texto, 11, 13) * 3600L + digitos(texto, 14, 16) * 60L + digitos(texto, 17, 19);
+        int milisegundos = texto.length() >= 23 && texto.charAt(19) == '.' ? digitos(texto, 20, 23) : 0;
+        return dias * DIA_MS + segundos * 1000 + milisegundos;
+    }
+
+    private static int digitos(String texto, int desde, int hasta) {
+        int valor = 0;
+        for (int i = desde; i < hasta; i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Fecha inválida: " + texto);
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return valor;
+    }
+
+    /**
+     * Partición y tipo de cada cuenta según los archivos de --datos
+     */
+    static class Cuentas {
+        byte[] particion = new byte[0]; // 0 = desconocida
+        byte[] tipo = new byte[0];      // 0 = desconocido, i = tipos.get(i)
+        final List<String> tipos = new ArrayList<>(Collections.singletonList("desconocido"));
+        int particiones = 0;
+
+        static Cuentas cargar(Path datos) throws IOException {
+            Cuentas cuentas = new Cuentas();
+            Map<String, Integer> indiceTipos = new HashMap<>();
+            for (int p = 1; ; p++) {
+                Path archivo = datos.resolve("parte" + p).resolve("cuentas_parte" + p + ".txt");
+                if (!Files.exists(archivo)) {
+                    break;
+                }
+                cuentas.particiones = p;
+                try (BufferedReader lector = Files.newBufferedReader(archivo)) {
+                    String linea;
+                    while ((linea = lector.readLine()) != null) {
+                        String[] campos = linea.split("\\|");
+                        if (campos.length < 4) {
+                            continue;
+                        }
+                        int id = Integer.parseInt(campos[0].trim());
+                        if (id >= cuentas.particion.length) {
+                            int capacidad = Math.max(id + 1, cuentas.particion.length * 2);
+                            cuentas.particion = Arrays.copyOf(cuentas.particion, capacidad);
+                            cuentas.tipo = Arrays.copyOf(cuentas.tipo, capacidad);
+                        }
+                        int tipo = indiceTipos.computeIfAbsent(campos[3].trim(), t -> {
+                            cuentas.tipos.add(t);
+                            return cuentas.tipos.size() - 1;
+                        });
+                        cuentas.particion[id] = (byte) p;
+                        cuentas.tipo[id] = (byte) tipo;
+                    }
+                }
+            }
+            return cuentas;
+        }
+    }
+
+    /**
+     * Informe agrupado: transacciones y monto por día, tipo y/o partición
+     */
+    static class Informe {
+        final boolean porDia;
+        final boolean porTipo;
+        final boolean porParticion;
+        final Cuentas cuentas;
+        final int tipos;
+        final int grupos;
+        final long desde;
+        final long hasta;
+        final String estado; // null = todos
+        final TreeMap<Long, long[]> totales = new TreeMap<>(); // (día, grupo) -> {transacciones, monto}
+        long filasLeidas = 0;
+        long filasContadas = 0;
+
+        Informe(Set<String> por, Cuentas cuentas, long desde, long hasta, String estado) {
+            this.porDia = por.contains("dia");
+            this.porTipo = por.contains("tipo");
+            this.porParticion = por.contains("particion");
+            this.cuentas = cuentas;
+            this.tipos = porTipo ? cuentas.tipos.size() : 1;
+            this.grupos = tipos * (porParticion ? cuentas.particiones + 1 : 1);
+            this.desde = desde;
+            this.hasta = hasta;
+            this.estado = estado;
+        }
+
+        /**
+         * Agrega un bloque en tablas densas y las suma al total
+         */
+        void agregar(Bloque bloque) {
+            long[] instantes = bloque.instantes();
+            long[] montos = bloque.montos();
+            int[] origenes = porTipo || porParticion ? bloque.origenes() : null;
+            int filtro = -1;
+            byte[] estados = null;
+            if (estado != null) {
+                estados = bloque.estados();
+                filtro = Arrays.asList(bloque.diccionario()).indexOf(estado);
+                if (filtro < 0) {
+                    sumar(bloque.filas, 0, 0, new long[0], new long[0]);
+                    return;
+                }
+            }
+
+            long diaMin = porDia ? Math.floorDiv(Math.max(bloque.instanteMin, desde), DIA_MS) : 0;
+            long diaMax = porDia ? Math.floorDiv(Math.min(bloque.instanteMax, hasta), DIA_MS) : 0;
+            int dias = (int) (diaMax - diaMin + 1);
+            long[] conteo = new long[dias * grupos];
+            long[] suma = new long[dias * grupos];
+            boolean filtrarFechas = bloque.instanteMin < desde || bloque.instanteMax > hasta;
+            byte[] particiones = cuentas != null ? cuentas.particion : null;
+            byte[] tiposCuenta = cuentas != null ? cuentas.tipo : null;
+
+            long contadas = 0;
+            for (int i = 0; i < bloque.filas; i++) {
+                long instante = instantes[i];
+                if (filtrarFechas && (instante < desde || instante > hasta)) {
+                    continue;
+                }
+                if (filtro >= 0 && estados[i] != filtro) {
+                    continue;
+                }
+                int grupo = 0;
+                if (origenes != null) {
+                    int origen = origenes[i];
+                    boolean conocida = origen >= 0 && origen < particiones.length;
+                    if (porTipo) {
+                        grupo = conocida ? tiposCuenta[origen] : 0;
+                    }
+                    if (porParticion) {
+                        grupo += (conocida ? particiones[origen] : 0) * tipos;
+                    }
+                }
+                int celda = porDia ? (int) (Math.floorDiv(instante, DIA_MS) - diaMin) * grupos + grupo : grupo;
+                conteo[celda]++;
+                suma[celda] += montos[i];
+                contadas++;
+            }
+            sumar(bloque.filas, contadas, diaMin, conteo, suma);
+        }
+
+        private synchronized void sumar(long filas, long contadas, long diaMin, long[] conteo, long[] suma) {
+            filasLeidas += filas;
+            filasContadas += contadas;
+            for (int celda = 0; celda < conteo.length; celda++) {
+                if (conteo[celda] == 0) {
+                    continue;
+                }
+                long clave = (diaMin + celda / grupos) * grupos + celda % grupos;
+                long[] total = totales.computeIfAbsent(clave, k -> new long[2]);
+                total[0] += conteo[celda];
+                total[1] += suma[celda];
+            }
+        }
+
+        void imprimir() {
+            StringBuilder encabezado = new StringBuilder();
+            if (porDia) {
+                encabezado.append(String.format("%-12s", "Día"));
+            }
+            if (porTipo) {
+                encabezado.append(String.format("%-14s", "Tipo"));
+            }
+            if (porParticion) {
+                encabezado.append(String.format("%-11s", "Partición"));
+            }
+            encabezado.append(String.format("%16s %22s %14s", "Transacciones", "Monto total", "Monto medio"));
+            System.out.println(encabezado);
+
+            for (Map.Entry<Long, long[]> fila : totales.entrySet()) {
+                long dia = Math.floorDiv(fila.getKey(), grupos);
+                int grupo = (int) Math.floorMod(fila.getKey(), (long) grupos);
+                StringBuilder linea = new StringBuilder();
+                if (porDia) {
+                    linea.append(String.format("%-12s", LocalDate.ofEpochDay(dia)));
+                }
+                if (porTipo) {
+                    linea.append(String.format("%-14s", cuentas.tipos.get(grupo % tipos)));
+                }
+                if (porParticion) {
+                    int particion = grupo / tipos;
+                    linea.append(String.format("%-11s", particion == 0 ? "?" : "parte" + particion));
+                }
+                long[] total = fila.getValue();
+                linea.append(String.format("%16d %22s %14s", total[0], CodecMonto.formatear(total[1]),
+                        CodecMonto.formatear(total[1] / total[0])));
+                System.out.println(linea);
+            }
+        }
+    }
+
+    /**
+     * Recorre los archivos repartiendo los bloques entre hilos; el lector
+     * se adelanta a lo sumo dos bloques por hilo
+     */
+    static void informe(List<Path> archivos, Informe informe, int hilos) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r);
+            hilo.setDaemon(true);
+            hilo.setName("Informe");
+            return hilo;
+        });
+        Semaphore enVuelo = new Semaphore(hilos * 2);
+        List<Future<?>> tareas = new ArrayList<>();
+        long bloques = 0;
+        long saltados = 0;
+        long bytes = 0;
+        long inicio = System.nanoTime();
+        try {
+            for (Path archivo : archivos) {
+                try (Lector lector = new Lector(archivo)) {
+                    Bloque bloque;
+                    while ((bloque = lector.siguiente(informe.desde, informe.hasta)) != null) {
+                        Bloque actual = bloque;
+                        enVuelo.acquire();
+                        bloques++;
+                        tareas.add(pool.submit(() -> {
+                            try {
+                                informe.agregar(actual);
+                            } finally {
+                                enVuelo.release();
+                            }
+                        }));
+                    }
+                    saltados += lector.bloquesSaltados;
+                    bytes += lector.bytesLeidos;
+                }
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error agregando un bloque: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        informe.imprimir();
+        System.out.println(String.format("%n%d filas leídas (%d contadas) en %d bloques, %d bloques saltados por fecha, " +
+                "%.1f MB en %.2f s (%.0f filas/s, %d hilos)", informe.filasLeidas, informe.filasContadas, bloques,
+                saltados, bytes / 1e6, segundos, informe.filasLeidas / Math.max(segundos, 1e-9), hilos));
+    }
+
+    /**
+     * Convierte transacciones.txt al formato columnar
+     */
+    static void exportar(Path texto, Path salida, int filasPorBloque) throws IOException {
+        long inicio = System.nanoTime();
+        long descartadas = 0;
+        long filas;
+        try (BufferedReader lector = Files.newBufferedReader(texto, StandardCharsets.UTF_8);
+             Escritor escritor = new Escritor(salida, filasPorBloque)) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    escritor.agregar(linea);
+                } catch (RuntimeException e) {
+                    descartadas++;
+                }
+            }
+            filas = escritor.filas();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.println(String.format("%d transacciones exportadas a %s (%d descartadas), %.1f MB -> %.1f MB en %.2f s",
+                filas, salida, descartadas, Files.size(texto) / 1e6, Files.size(salida) / 1e6, segundos));
+    }
+
+    /**
+     * Diario sintético para medir los informes: transacciones repartidas
+     * en el tiempo entre cuentas al azar
+     */
+    static void generar(Path salida, long filas, int cuentas, int dias, LocalDate inicio, long semilla)
+            throws IOException {
+        Files.deleteIfExists(salida);
+        SplittableRandom random = new SplittableRandom(semilla);
+        long instante = inicio.toEpochDay() * DIA_MS;
+        long paso = Math.max(1, dias * DIA_MS / Math.max(filas, 1));
+        long comienzo = System.nanoTime();
+        try (Escritor escritor = new Escritor(salida)) {
+            for (long id = 1; id <= filas; id++) {
+                instante += random.nextLong(2 * paso);
+                int origen = GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(cuentas);
+                int destino = GeneradorDatos.PRIMER_ID_CUENTA + random.nextInt(cuentas);
+                escritor.agregar(id, origen, destino, 100 + random.nextLong(500_000), instante,
+                        random.nextInt(100) < 98 ? "Confirmada" : "Rechazada");
+            }
+        }
+        System.out.println(String.format("%d transacciones generadas en %s (%.1f MB, %.2f s)", filas, salida,
+                Files.size(salida) / 1e6, (System.nanoTime() - comienzo) / 1e9));
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> posicionales = new ArrayList<>();
+        Map<String, String> opciones = LineaComandos.opciones(args, posicionales);
+        String comando = posicionales.isEmpty() ? "" : posicionales.get(0);
+
+        switch (comando) {
+            case "exportar":
+                if (posicionales.size() < 3) {
+                    break;
+                }
+                exportar(Paths.get(posicionales.get(1)), Paths.get(posicionales.get(2)),
+                        Integer.parseInt(opciones.getOrDefault("filas-por-bloque", String.valueOf(FILAS_POR_BLOQUE))));
+                return;
+
+            case "informe":
+                if (posicionales.size() < 2) {
+                    break;
+                }
+                Set<String> por = new HashSet<>(Arrays.asList(opciones.getOrDefault("por", "dia,tipo").split(",")));
+                Cuentas cuentas = por.contains("tipo") || por.contains("particion")
+                        ? Cuentas.cargar(Paths.get(opciones.getOrDefault("datos", "../data"))) : null;
+                long desde = opciones.containsKey("desde")
+                        ? LocalDate.parse(opciones.get("desde")).toEpochDay() * DIA_MS : Long.MIN_VALUE;
+                long hasta = opciones.containsKey("hasta")
+                        ? (LocalDate.parse(opciones.get("hasta")).toEpochDay() + 1) * DIA_MS - 1 : Long.MAX_VALUE;
+                List<Path> archivos = new ArrayList<>();
+                for (String archivo : posicionales.subList(1, posicionales.size())) {
+                    archivos.add(Paths.get(archivo));
+                }
+                informe(archivos, new Informe(por, cuentas, desde, hasta, opciones.get("estado")),
+                        Integer.parseInt(opciones.getOrDefault("hilos",
+                                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+                return;
+
+            case "generar":
+                if (posicionales.size() < 2) {
+                    break;
+                }
+                generar(Paths.get(posicionales.get(1)),
+                        Long.parseLong(opciones.getOrDefault("filas", "10000000")),
+                        Integer.parseInt(opciones.getOrDefault("cuentas", "5000")),
+                        Integer.parseInt(opciones.getOrDefault("dias", "30")),
+                        LocalDate.parse(opciones.getOrDefault("inicio", "2026-01-01")),
+                        Long.parseLong(opciones.getOrDefault("semilla", "42")));
+                return;
+
+            default:
+                break;
+        }
+        System.out.println("Uso: java DiarioColumnar exportar <transacciones.txt> <salida.bdc>");
+        System.out.println("     java DiarioColumnar informe <archivo.bdc>... [--por=dia,tipo] [--datos=../data]");
+        System.out.println("          [--desde=aaaa-mm-dd] [--hasta=aaaa-mm-dd] [--estado=Confirmada] [--hilos=N]");
+        System.out.println("     java DiarioColumnar generar <salida.bdc> [--filas=10000000] [--cuentas=5000] [--dias=30]");
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directorios - Copia y borrado recursivo para los directorios de trabajo
+ * del arnés, los benchmarks y el arranque rápido
+ */
+public final class Directorios {
+
+    private Directorios() {
+    }
+
+    /**
+     * Copia el árbol de origen dentro de destino, reemplazando los archivos que existan
+     */
+    public static void copiar(Path origen, Path destino) throws IOException {
+        try (Stream<Path> rutas = Files.walk(origen)) {
+            for (Path ruta : (Iterable<Path>) rutas::iterator) {
+                Path copia = destino.resolve(origen.relativize(ruta).toString());
+                if (Files.isDirectory(ruta)) {
+                    Files.createDirectories(copia);
+                } else {
+                    Files.copy(ruta, copia, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Borra el directorio con todo su contenido; no hace nada si no existe
+     */
+    public static void borrar(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) {
+            return;
+        }
+        try (Stream<Path> rutas = Files.walk(directorio)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(ruta -> ruta.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * GeneradorDatos - Genera el juego de datos sintético del banco
+ *
+ * Escribe clientes.txt y las particiones cuentas_parteN.txt con el mismo
+ * formato que usan el servidor y los nodos (id|id_cliente|saldo|tipo).
+ * Las cuentas se numeran desde 101 y cada partición recibe un rango
+ * contiguo de IDs.
+ *
+ * Los datos dependen sólo de los parámetros: el saldo de cada cuenta sale
+ * de mezclar la semilla con su ID, así el resultado es idéntico sin importar
+ * cuántos hilos lo generen. Las cuentas se codifican por bloques en bytes
+ * (sin String.format) en paralelo y cada partición se escribe en orden.
+ *
+ * Uso: java GeneradorDatos [--cuentas=N] [--clientes=N] [--particiones=N]
+ *      [--distribucion=uniforme|lognormal|pareto] [--semilla=N] [--dir=ruta]
+ */
+public class GeneradorDatos {
+    // Primer ID de cuenta
+    public static final int PRIMER_ID_CUENTA = 101;
+
+    // Cuentas por bloque que codifica una tarea
+    private static final int CUENTAS_POR_BLOQUE = 64 * 1024;
+
+    // Bytes máximos de una línea de cuenta
+    private static final int BYTES_MAXIMOS_POR_CUENTA = 64;
+
+    private static final String[] NOMBRES = {"Juan", "María", "Carlos", "Ana", "Pedro", "Laura", "Miguel", "Sofia", "Diego", "Carmen"};
+    private static final String[] APELLIDOS = {"Pérez", "López", "García", "Martínez", "Rodríguez", "González", "Hernández", "Díaz", "Moreno", "Muñoz"};
+    private static final byte[] AHORROS = "Ahorros".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CORRIENTE = "Corriente".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Distribución de los saldos iniciales (en centavos)
+     */
+    public enum Distribucion {
+        UNIFORME,  // Entre 500 y 5000
+        LOGNORMAL, // Mediana ~1500, cola larga
+        PARETO;    // Mínimo 500, pocas cuentas con saldos muy altos
+
+        static Distribucion desde(String nombre) {
+            return valueOf(nombre.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Parámetros de generación
+     */
+    public static class Parametros {
+        public long cuentas = 5000;
+        public int clientes = 1000;
+        public int particiones = 4;
+        public Distribucion distribucion = Distribucion.UNIFORME;
+        public long semilla = 12345;
+        public String directorio = "../data";
+        public int hilos = Runtime.getRuntime().availableProcessors();
+
+        public long cuentasPorParticion() {
+            return (cuentas + particiones - 1) / particiones;
+        }
+    }
+
+    /**
+     * Resultado de la generación
+     */
+    public static class Resultado {
+        public long[] cuentasPorParticion;
+        public long saldoTotal; // Centavos
+        public long bytes;
+        public long nanos;
+    }
+
+    /**
+     * Bloque de cuentas consecutivas de una partición ya codificado
+     */
+    private static class Bloque {
+        final byte[] datos;
+        final int longitud;
+        final long saldo;
+
+        Bloque(byte[] datos, int longitud, long saldo) {
+            this.datos = datos;
+            this.longitud = longitud;
+            this.saldo = saldo;
+        }
+    }
+
+    public static void main(String[] args) {
+        Parametros parametros = new Parametros();
+        parametros.directorio = "data";
+
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                System.err.println("Argumento no reconocido: " + arg);
+                System.exit(1);
+            }
+            String clave = arg.substring(2, igual);
+            String valor = arg.substring(igual + 1);
+            switch (clave) {
+                case "cuentas": parametros.cuentas = Long.parseLong(valor); break;
+                case "clientes": parametros.clientes = Integer.parseInt(valor); break;
+                case "particiones": parametros.particiones = Integer.parseInt(valor); break;
+                case "distribucion": parametros.distribucion = Distribucion.desde(valor); break;
+                case "semilla": parametros.semilla = Long.parseLong(valor); break;
+                case "dir": parametros.directorio = valor; break;
+                case "hilos": parametros.hilos = Integer.parseInt(valor); break;
+                default:
+                    System.err.println("Opción no reconocida: " + clave);
+                    System.exit(1);
+            }
+        }
+
+        try {
+            Resultado resultado = generar(parametros);
+            double segundos = resultado.nanos / 1e9;
+            System.out.println("Cuentas generadas: " + parametros.cuentas + " en " + parametros.particiones
+                    + " particiones, " + parametros.clientes + " clientes");
+            System.out.println("Saldo total: " + CodecMonto.formatear(resultado.saldoTotal));
+            System.out.println(String.format("Tiempo: %.2f s (%.0f cuentas/s, %.1f MB/s)", segundos,
+                    parametros.cuentas / segundos, resultado.bytes / 1e6 / segundos));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error generando datos: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Genera clientes y particiones de cuentas en el directorio indicado
+     */
+    public static Resultado generar(Parametros parametros) throws IOException {
+        if (parametros.cuentas < 1 || parametros.clientes < 1 || parametros.particiones < 1 || parametros.hilos < 1) {
+            throw new IllegalArgumentException("Cuentas, clientes, particiones e hilos deben ser positivos");
+        }
+        if (PRIMER_ID_CUENTA - 1 + parametros.cuentas > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Demasiadas cuentas para IDs enteros: " + parametros.cuentas);
+        }
+
+        long inicio = System.nanoTime();
+        Resultado resultado = new Resultado();
+        resultado.cuentasPorParticion = new long[parametros.particiones];
+
+        Files.createDirectories(Paths.get(parametros.directorio, "clientes"));
+        for (int particion = 1; particion <= parametros.particiones; particion++) {
+            Files.createDirectories(Paths.get(parametros.directorio, "parte" + particion));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parametros.hilos);
+        try {
+            Future<Long> clientes = pool.submit(() -> escribirClientes(parametros));
+
+            // Los bloques se codifican en paralelo con una ventana acotada y se
+            // escriben en orden en el archivo de su partición
+            int ventana = parametros.hilos * 2;
+            ArrayDeque<Future<Bloque>> enVuelo = new ArrayDeque<>();
+            long porParticion = parametros.cuentasPorParticion();
+
+            for (int particion = 1; particion <= parametros.particiones; particion++) {
+                long desde = (particion - 1) * porParticion;
+                long hasta = Math.min(parametros.cuentas, desde + porParticion);
+                Path archivo = Paths.get(parametros.directorio, "parte" + particion, "cuentas_parte" + particion + ".txt");
+
+                try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long siguiente = desde;
+                    while (siguiente < hasta || !enVuelo.isEmpty()) {
+                        while (siguiente < hasta && enVuelo.size() < ventana) {
+                            long inicioBloque = siguiente;
+                            long finBloque = Math.min(hasta, siguiente + CUENTAS_POR_BLOQUE);
+                            enVuelo.add(pool.submit(() -> codificarBloque(parametros, inicioBloque, finBloque)));
+                            siguiente = finBloque;
+                        }
+
+                        Bloque bloque = esperar(enVuelo.poll());
+                        ByteBuffer buffer = ByteBuffer.wrap(bloque.datos, 0, bloque.longitud);
+                        while (buffer.hasRemaining()) {
+                            canal.write(buffer);
+                        }
+                        resultado.saldoTotal += bloque.saldo;
+                        resultado.bytes += bloque.longitud;
+                    }
+                }
+                resultado.cuentasPorParticion[particion - 1] = Math.max(0, hasta - desde);
+            }
+
+            resultado.bytes += esperar(clientes);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        resultado.nanos = System.nanoTime() - inicio;
+        return resultado;
+    }
+
+    private static <T> T esperar(Future<T> futuro) throws IOException {
+        try {
+            return futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Generación interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error en la generación", e.getCause());
+        }
+    }
+
+    /**
+     * Cliente dueño de la cuenta número n (1 = ID 101); los modelos de carga
+     * lo usan para generar tráfico entre cuentas de un mismo cliente
+     */
+    public static long idCliente(long numero, int clientes) {
+        return 1 + (numero % clientes);
+    }
+
+    /**
+     * Codifica las cuentas de índice [desde, hasta) (índice 0 = ID 101)
+     */
+    private static Bloque codificarBloque(Parametros parametros, long desde, long hasta) {
+        byte[] datos = new byte[(int) (hasta - desde) * BYTES_MAXIMOS_POR_CUENTA];
+        int posicion = 0;
+        long saldoBloque = 0;
+
+        for (long i = desde; i < hasta; i++) {
+            long numero = i + 1;
+            long saldo = saldo(parametros, numero);
+            saldoBloque += saldo;
+
+            posicion = CodecMonto.escribirEntero(datos, posicion, PRIMER_ID_CUENTA - 1 + numero);
+            datos[posicion++] = '|';
+            posicion = CodecMonto.escribirEntero(datos, posicion, idCliente(numero, parametros.clientes));
+            datos[posicion++] = '|';
+            posicion = CodecMonto.escribir(datos, posicion, saldo);
+            datos[posicion++] = '|';
+            byte[] tipo = (numero % 3 == 0) ? AHORROS : CORRIENTE;
+            System.arraycopy(tipo, 0, datos, posicion, tipo.length);
+            posicion += tipo.length;
+            datos[posicion++] = '\n';
+        }
+
+        return new Bloque(datos, posicion, saldoBloque);
+    }
+
+    /**
+     * Saldo inicial en centavos de la cuenta número n (1 = ID 101)
+     */
+    static long saldo(Parametros parametros, long numero) {
+        long base = mezclar(parametros.semilla ^ mezclar(numero));
+        double u1 = uniforme(base);
+
+        switch (parametros.distribucion) {
+            case LOGNORMAL: {
+                // Box-Muller con un segundo uniforme derivado del primero
+                double u2 = uniforme(mezclar(base));
+                double normal = Math.sqrt(-2 * Math.log(1 - u1)) * Math.cos(2 * Math.PI * u2);
+                double monto = Math.exp(Math.log(1500) + 0.75 * normal);
+                return Math.round(Math.min(Math.max(monto, 10), 1_000_000) * 100);
+            }
+            case PARETO: {
+                double monto = 500 / Math.pow(1 - u1, 1 / 1.5);
+                return Math.round(Math.min(monto, 10_000_000) * 100);
+            }
+            default:
+                return Math.round((500 + u1 * 4500) * 100); // Entre 500 y 5000
+        }
+    }
+
+    /**
+     * Mezclador de SplitMix64
+     */
+    private static long mezclar(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Uniforme en [0, 1) a partir de los 53 bits altos
+     */
+    private static double uniforme(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Escribe clientes.txt; devuelve los bytes escritos
+     */
+    private static long escribirClientes(Parametros parametros) throws IOException {
+        Path archivo = Paths.get(parametros.directorio, "clientes", "clientes.txt");
+        byte[][] nombres = new byte[NOMBRES.length][];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = (NOMBRES[i] + " " + APELLIDOS[i]).getBytes(StandardCharsets.UTF_8);
+        }
+
+        long bytes = 0;
+        byte[] buffer = new byte[1024 * 1024];
+        int posicion = 0;
+        try (OutputStream salida = Files.newOutputStream(archivo)) {
+            for (long i = 1; i <= parametros.clientes; i++) {
+                if (posicion > buffer.length - 256) {
+                    salida.write(buffer, 0, posicion);
+                    bytes += posicion;
+                    posicion = 0;
+                }
+
+                posicion = CodecMonto.escribirEntero(buffer, posicion, i);
+                buffer[posicion++] = '|';
+                byte[] nombre = nombres[(int) (i % nombres.length)];
+                System.arraycopy(nombre, 0, buffer, posicion, nombre.length);
+                posicion += nombre.length;
+                buffer[posicion++] = '|';
+                posicion = escribirAscii(buffer, posicion, "cliente");
+                posicion = CodecMonto.escribirEntero(buffer, posicion, i);
+                posicion = escribirAscii(buffer, posicion, "@banco.com");
+                buffer[posicion++] = '|';
+                buffer[posicion++] = '9';
+                posicion = CodecMonto.escribirEntero(buffer, posicion, 10000000 + i);
+                buffer[posicion++] = '\n';
+            }
+            salida.write(buffer, 0, posicion);
+            bytes += posicion;
+        }
+        return bytes;
+    }
+
+    private static int escribirAscii(byte[] destino, int posicion, String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            destino[posicion++] = (byte) texto.charAt(i);
+        }
+        return posicion;
+    }
+}
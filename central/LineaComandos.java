@@ -0,0 +1,41 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LineaComandos - Opciones --clave=valor de los programas del sistema
+ *
+ * Todos los main (servidor central, nodos, cliente, arnés, benchmarks y
+ * herramientas) aceptan opciones --clave=valor en cualquier posición; lo
+ * que no tiene esa forma es un argumento posicional. Una opción repetida
+ * se queda con el último valor.
+ */
+public final class LineaComandos {
+
+    private LineaComandos() {
+    }
+
+    /**
+     * Opciones de la línea de comandos; los argumentos posicionales se ignoran
+     */
+    public static Map<String, String> opciones(String[] args) {
+        return opciones(args, null);
+    }
+
+    /**
+     * Opciones de la línea de comandos; los argumentos posicionales se
+     * agregan en orden a posicionales (si no es null)
+     */
+    public static Map<String, String> opciones(String[] args, List<String> posicionales) {
+        Map<String, String> opciones = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (arg.startsWith("--") && igual > 2) {
+                opciones.put(arg.substring(2, igual), arg.substring(igual + 1));
+            } else if (posicionales != null) {
+                posicionales.add(arg);
+            }
+        }
+        return opciones;
+    }
+}
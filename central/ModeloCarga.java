@@ -0,0 +1,351 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ModeloCarga - Perfiles de tráfico para las pruebas de carga
+ *
+ * Decide qué operación sigue, sobre qué cuentas y cuánto esperar antes de
+ * enviarla:
+ * - Popularidad de cuentas: uniforme, Zipf (exponente s) o punto caliente
+ *   (una fracción de las cuentas recibe una fracción del tráfico). Las
+ *   cuentas populares se reparten al azar entre particiones (permutación
+ *   fija por semilla), no quedan todas en la primera.
+ * - Mezcla lectura/escritura: fracción de consultas de saldo.
+ * - Fracción de transferencias entre particiones distintas (el resto
+ *   queda dentro de la partición de la cuenta origen).
+ * - Afinidad de cliente: fracción de transferencias entre dos cuentas del
+ *   mismo id_cliente (según la asignación de GeneradorDatos). Se decide
+ *   antes que la partición: esas transferencias no siguen la fracción
+ *   entre particiones.
+ * - Llegadas: uniformes entre 50 y 550 ms, Poisson, o ráfagas ON/OFF en
+ *   las que la tasa se multiplica durante los períodos activos.
+ *
+ * Perfiles (--perfil=): uniforme, zipf, hotspot, afinidad, rafagas,
+ * realista. Cada parámetro se puede ajustar por separado:
+ *   --zipf=0.99 --hotspot=0.01:0.9 --lecturas=0.33 --entre-particiones=0.1
+ *   --afinidad=0.5 --llegadas=uniforme|poisson|rafagas --demora=300
+ *   --rafagas=5:1000:4000 (factor:ms activos:ms en calma)
+ *   --cuentas=5000 --particiones=4 --clientes=1000 --semilla=7
+ * Es inmutable una vez creado y se puede usar desde varios hilos.
+ */
+public class ModeloCarga {
+
+    public enum Popularidad {
+        UNIFORME, ZIPF, HOTSPOT
+    }
+
+    public enum Llegadas {
+        UNIFORME, POISSON, RAFAGAS
+    }
+
+    private static final int INTENTOS_PARTICION = 8;
+
+    /**
+     * Parámetros del modelo (los valores por defecto reproducen la carga original)
+     */
+    public static class Parametros {
+        public long primeraCuenta = GeneradorDatos.PRIMER_ID_CUENTA;
+        public int cuentas = 5000;
+        public int particiones = 4;
+        public int clientes = 1000;
+        public Popularidad popularidad = Popularidad.UNIFORME;
+        public double exponenteZipf = 0.99;
+        public double fraccionCaliente = 0.01;
+        public double traficoCaliente = 0.9;
+        public double lecturas = 1.0 / 3;
+        public double entreParticiones = -1; // Negativo: destino sin restricción de partición
+        public double afinidad = 0;
+        public Llegadas llegadas = Llegadas.UNIFORME;
+        public long demoraMediaMs = 300;
+        public double factorRafaga = 5;
+        public long rafagaMs = 1000;
+        public long calmaMs = 4000;
+        public long semilla = 7;
+    }
+
+    /**
+     * Próxima operación: consulta de origen o transferencia origen -> destino
+     */
+    public static final class Operacion {
+        public final boolean consulta;
+        public final int origen;
+        public final int destino;
+        public final long monto; // Centavos
+
+        Operacion(boolean consulta, int origen, int destino, long monto) {
+            this.consulta = consulta;
+            this.origen = origen;
+            this.destino = destino;
+            this.monto = monto;
+        }
+    }
+
+    private final Parametros p;
+    private final int cuentasPorParticion;
+    private final int[] permutacion;   // Rango de popularidad -> índice de cuenta
+    private final double[] acumuladaZipf;
+    private final int cuentasCalientes;
+    private final long inicioMs = System.currentTimeMillis();
+
+    public ModeloCarga(Parametros parametros) {
+        this.p = parametros;
+        if (p.cuentas < 2 || p.particiones < 1 || p.clientes < 1) {
+            throw new IllegalArgumentException("Se necesitan al menos 2 cuentas, 1 partición y 1 cliente");
+        }
+        this.cuentasPorParticion = (p.cuentas + p.particiones - 1) / p.particiones;
+        this.cuentasCalientes = Math.max(1, (int) (p.cuentas * p.fraccionCaliente));
+
+        permutacion = new int[p.cuentas];
+        for (int i = 0; i < p.cuentas; i++) {
+            permutacion[i] = i;
+        }
+        Random random = new Random(p.semilla);
+        for (int i = p.cuentas - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = permutacion[i];
+            permutacion[i] = permutacion[j];
+            permutacion[j] = t;
+        }
+
+        if (p.popularidad == Popularidad.ZIPF) {
+            acumuladaZipf = new double[p.cuentas];
+            double suma = 0;
+            for (int k = 0; k < p.cuentas; k++) {
+                suma += 1.0 / Math.pow(k + 1, p.exponenteZipf);
+                acumuladaZipf[k] = suma;
+            }
+            for (int k = 0; k < p.cuentas; k++) {
+                acumuladaZipf[k] /= suma;
+            }
+        } else {
+            acumuladaZipf = null;
+        }
+    }
+
+    /**
+     * Modelo a partir de --perfil= y los ajustes individuales
+     */
+    public static ModeloCarga desdeOpciones(Map<String, String> opciones) {
+        Parametros p = new Parametros();
+        switch (opciones.getOrDefault("perfil", "uniforme")) {
+            case "uniforme":
+                break;
+            case "zipf":
+                p.popularidad = Popularidad.ZIPF;
+                break;
+            case "hotspot":
+                p.popularidad = Popularidad.HOTSPOT;
+                break;
+            case "afinidad":
+                p.afinidad = 0.8;
+                break;
+            case "rafagas":
+                p.llegadas = Llegadas.RAFAGAS;
+                break;
+            case "realista":
+                p.popularidad = Popularidad.ZIPF;
+                p.lecturas = 0.7;
+                p.entreParticiones = 0.1;
+                p.afinidad = 0.3;
+                p.llegadas = Llegadas.RAFAGAS;
+                break;
+            default:
+                throw new IllegalArgumentException("Perfil desconocido: " + opciones.get("perfil"));
+        }
+
+        for (Map.Entry<String, String> opcion : opciones.entrySet()) {
+            String valor = opcion.getValue();
+            switch (opcion.getKey()) {
+                case "zipf":
+                    p.popularidad = Popularidad.ZIPF;
+                    p.exponenteZipf = Double.parseDouble(valor);
+                    break;
+                case "hotspot": {
+                    String[] partes = valor.split(":");
+                    p.popularidad = Popularidad.HOTSPOT;
+                    p.fraccionCaliente = Double.parseDouble(partes[0]);
+                    p.traficoCaliente = Double.parseDouble(partes[1]);
+                    break;
+                }
+                case "lecturas": p.lecturas = Double.parseDouble(valor); break;
+                case "entre-particiones": p.entreParticiones = Double.parseDouble(valor); break;
+                case "afinidad": p.afinidad = Double.parseDouble(valor); break;
+                case "llegadas": p.llegadas = Llegadas.valueOf(valor.toUpperCase()); break;
+                case "demora": p.demoraMediaMs = Long.parseLong(valor); break;
+                case "rafagas": {
+                    String[] partes = valor.split(":");
+                    p.llegadas = Llegadas.RAFAGAS;
+                    p.factorRafaga = Double.parseDouble(partes[0]);
+                    p.rafagaMs = Long.parseLong(partes[1]);
+                    p.calmaMs = Long.parseLong(partes[2]);
+                    break;
+                }
+                case "cuentas": p.cuentas = Integer.parseInt(valor); break;
+                case "particiones": p.particiones = Integer.parseInt(valor); break;
+                case "clientes": p.clientes = Integer.parseInt(valor); break;
+                case "primera-cuenta": p.primeraCuenta = Long.parseLong(valor); break;
+                case "semilla": p.semilla = Long.parseLong(valor); break;
+                default: break; // Opciones de otros componentes
+            }
+        }
+        return new ModeloCarga(p);
+    }
+
+    /**
+     * Siguiente operación según la mezcla, la popularidad y las restricciones
+     */
+    public Operacion siguiente() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        int origen = elegirCuenta(r);
+        long monto = 1000 + r.nextInt(49001); // 10.00-500.00 en centavos
+
+        if (r.nextDouble() < p.lecturas) {
+            return new Operacion(true, id(origen), -1, monto);
+        }
+
+        int destino = -1;
+        if (p.afinidad > 0 && r.nextDouble() < p.afinidad) {
+            destino = otraCuentaDelCliente(origen, r);
+        }
+        if (destino < 0) {
+            if (p.entreParticiones < 0) {
+                destino = elegirDistinta(origen, r);
+            } else {
+                destino = elegirPorParticion(origen, r.nextDouble() < p.entreParticiones, r);
+            }
+        }
+        return new Operacion(false, id(origen), id(destino), monto);
+    }
+
+    /**
+     * Espera antes de la próxima solicitud de un usuario simulado
+     */
+    public long demoraMs() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        switch (p.llegadas) {
+            case POISSON:
+                return exponencial(p.demoraMediaMs, r);
+            case RAFAGAS: {
+                long fase = (System.currentTimeMillis() - inicioMs) % (p.rafagaMs + p.calmaMs);
+                double media = fase < p.rafagaMs ? p.demoraMediaMs / p.factorRafaga : p.demoraMediaMs;
+                return exponencial(media, r);
+            }
+            default:
+                // Entre 50 y 550 ms como la carga original (media 300)
+                long media = Math.max(1, p.demoraMediaMs);
+                return r.nextLong(media / 6, media * 11 / 6 + 1);
+        }
+    }
+
+    /**
+     * Índice de cuenta según la popularidad configurada
+     */
+    private int elegirCuenta(ThreadLocalRandom r) {
+        switch (p.popularidad) {
+            case ZIPF: {
+                int k = java.util.Arrays.binarySearch(acumuladaZipf, r.nextDouble());
+                return permutacion[Math.min(k < 0 ? -k - 1 : k, p.cuentas - 1)];
+            }
+            case HOTSPOT:
+                if (r.nextDouble() < p.traficoCaliente || cuentasCalientes == p.cuentas) {
+                    return permutacion[r.nextInt(cuentasCalientes)];
+                }
+                return permutacion[cuentasCalientes + r.nextInt(p.cuentas - cuentasCalientes)];
+            default:
+                return r.nextInt(p.cuentas);
+        }
+    }
+
+    private int elegirDistinta(int origen, ThreadLocalRandom r) {
+        int destino;
+        do {
+            destino = elegirCuenta(r);
+        } while (destino == origen);
+        return destino;
+    }
+
+    /**
+     * Destino por popularidad en otra partición (o en la misma); si no sale
+     * en unos intentos se toma uno uniforme que cumpla
+     */
+    private int elegirPorParticion(int origen, boolean otraParticion, ThreadLocalRandom r) {
+        int particionOrigen = origen / cuentasPorParticion;
+        for (int i = 0; i < INTENTOS_PARTICION; i++) {
+            int destino = elegirCuenta(r);
+            if (destino != origen && (destino / cuentasPorParticion != particionOrigen) == otraParticion) {
+                return destino;
+            }
+        }
+
+        int particiones = (p.cuentas + cuentasPorParticion - 1) / cuentasPorParticion;
+        if (otraParticion && particiones > 1) {
+            int particion = (particionOrigen + 1 + r.nextInt(particiones - 1)) % particiones;
+            int desde = particion * cuentasPorParticion;
+            return desde + r.nextInt(Math.min(cuentasPorParticion, p.cuentas - desde));
+        }
+        int desde = particionOrigen * cuentasPorParticion;
+        int tamano = Math.min(cuentasPorParticion, p.cuentas - desde);
+        if (tamano < 2) {
+            return elegirDistinta(origen, r);
+        }
+        int destino;
+        do {
+            destino = desde + r.nextInt(tamano);
+        } while (destino == origen);
+        return destino;
+    }
+
+    /**
+     * Otra cuenta del mismo cliente (las cuentas n, n + clientes, n + 2*clientes...)
+     * o -1 si el cliente tiene una sola
+     */
+    private int otraCuentaDelCliente(int origen, ThreadLocalRandom r) {
+        int primera = origen % p.clientes;
+        int delCliente = (p.cuentas - 1 - primera) / p.clientes + 1;
+        if (delCliente < 2) {
+            return -1;
+        }
+        int destino;
+        do {
+            destino = primera + r.nextInt(delCliente) * p.clientes;
+        } while (destino == origen);
+        return destino;
+    }
+
+    private static long exponencial(double media, ThreadLocalRandom r) {
+        return (long) (-Math.log(1 - r.nextDouble()) * media);
+    }
+
+    private int id(int indice) {
+        return (int) (p.primeraCuenta + indice);
+    }
+
+    /**
+     * Descripción del perfil para los reportes
+     */
+    public String describir() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("popularidad=").append(p.popularidad.name().toLowerCase());
+        if (p.popularidad == Popularidad.ZIPF) {
+            sb.append("(s=").append(p.exponenteZipf).append(')');
+        } else if (p.popularidad == Popularidad.HOTSPOT) {
+            sb.append('(').append(p.fraccionCaliente).append(" de las cuentas, ")
+              .append(p.traficoCaliente).append(" del tráfico)");
+        }
+        sb.append(", lecturas=").append(String.format("%.2f", p.lecturas));
+        if (p.entreParticiones >= 0) {
+            sb.append(", entre particiones=").append(p.entreParticiones);
+        }
+        if (p.afinidad > 0) {
+            sb.append(", afinidad de cliente=").append(p.afinidad);
+        }
+        sb.append(", llegadas=").append(p.llegadas.name().toLowerCase());
+        if (p.llegadas == Llegadas.RAFAGAS) {
+            sb.append("(x").append(p.factorRafaga).append(' ').append(p.rafagaMs).append('/')
+              .append(p.calmaMs).append(" ms)");
+        }
+        sb.append(", cuentas=").append(p.primeraCuenta).append('-').append(p.primeraCuenta + p.cuentas - 1);
+        return sb.toString();
+    }
+}
@@ -3,9 +3,18 @@ import java.net.*;
 import java.util.*;
 import java.text.SimpleDateFormat;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.Date;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.file.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 /**
  * NodoTrabajador - Implementación Java de un nodo trabajador
@@ -26,7 +35,11 @@ public class NodoTrabajador {
     private static final String DATA_DIR = "data"; // Sin ../ porque está en el mismo directorio
     
     // Conjunto de particiones que gestiona este nodo
-    private static Set<String> particiones = new HashSet<>();
+    private static Set<String> particiones = ConcurrentHashMap.newKeySet();
+    // Versión del conjunto de particiones: sube con cada migración y va en
+    // REGISTRO para que el servidor central descarte registros atrasados.
+    // Empieza en la hora de inicio, así un nodo reiniciado no queda atrás.
+    private static final AtomicLong versionParticiones = new AtomicLong(System.currentTimeMillis());
     
     // Para registro de actividad
     private static final SimpleDateFormat formatoFecha = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -35,19 +48,312 @@ public class NodoTrabajador {
     // Estructuras de datos para clientes y cuentas
     private static Map<Integer, Map<String, String>> clientes = new HashMap<>();
     private static Map<Integer, Map<String, Object>> cuentas = new HashMap<>();
+    
+    // Índice secundario: cuentas de cada cliente (IDs ordenados, se reemplaza el arreglo al cambiar)
+    private static final Map<Integer, int[]> cuentasPorCliente = new ConcurrentHashMap<>();
     private static List<Map<String, Object>> transacciones = new ArrayList<>();
+    private static int transaccionesIniciales = 0;
+    
+    // Volcado al diario columnar: filas ya escritas de la lista principal y de cada shard
+    private static final Object volcadoLock = new Object();
+    private static int volcadasDiario = -1;
+    private static int[] volcadasShard = new int[0];
     
     // Locks para operaciones concurrentes
     private static Map<Integer, ReentrantLock> cuentaLocks = new HashMap<>();
     private static final ReentrantLock transaccionLock = new ReentrantLock();
     
-    // Pool de hilos para procesar solicitudes
-    private static ExecutorService threadPool;
+    // Cuentas calientes: créditos repartidos en sub-saldos (motor de locks)
+    private static final ConcurrentHashMap<Integer, SaldoDividido> cuentasCalientes = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, LongAdder> contencionCreditos = new ConcurrentHashMap<>();
+    private static final long UMBRAL_PROMOCION = 50;   // Esperas por segundo en el lock
+    private static final long UMBRAL_DEGRADACION = 20; // Créditos por segundo
+    private static final int VENTANAS_PARA_DEGRADAR = 10;
+    
+    // Migración en curso por partición: cuentas cambiadas desde el último envío
+    private static final Map<String, Set<Integer>> cambiosMigracion = new ConcurrentHashMap<>();
+    
+    // Cargas masivas: filas ya aplicadas por trabajo (se recuerdan los últimos)
+    private static final int TRABAJOS_RECORDADOS = 16;
+    private static final Map<String, FilasTrabajo> filasAplicadas = Collections.synchronizedMap(
+            new LinkedHashMap<String, FilasTrabajo>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FilasTrabajo> mayor) {
+                    return size() > TRABAJOS_RECORDADOS;
+                }
+            });
+    
+    /**
+     * Filas de una carga masiva aplicadas en este nodo y las que se están
+     * aplicando (un lote reenviado espera a que termine la misma fila)
+     */
+    static class FilasTrabajo {
+        final BitSet aplicadas = new BitSet();
+        final BitSet enCurso = new BitSet();
+    }
+    
+    // Árboles Merkle por partición para comparar réplicas (anti-entropía)
+    private static final Map<String, ArbolMerkle> arbolesMerkle = new ConcurrentHashMap<>();
+    
+    // Reparaciones rechazadas por conflicto (misma versión, otro saldo)
+    private static final LongAdder conflictosReparacion = new LongAdder();
+    
+    // Hilos que procesan las solicitudes: un carril por clase de tráfico,
+    // primero el plazo más próximo dentro de cada carril
+    private static PlanificadorCarriles threadPool;
+    
+    // Hilos que leen las conexiones entrantes antes de encolar la tarea; las
+    // conexiones del coordinador son persistentes, así que el tope limita
+    // las conexiones abiertas a la vez (las que exceden se rechazan)
+    private static final int MAX_CONEXIONES = 256;
+    private static final ExecutorService poolConexiones = new ThreadPoolExecutor(0, MAX_CONEXIONES,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>());
+    
+    // Plazo por defecto cuando la tarea no informa uno
+    private static final long PLAZO_POR_DEFECTO_MS = 30000;
+    
+    // Motor de ejecución alternativo: un shard por núcleo (--motor=shards)
+    private static MotorShards motorShards;
+    
+    // Tamaño de cada rango de un archivo de partición que parsea una tarea
+    private static final int TAMANO_RANGO_CARGA = 4 * 1024 * 1024;
+    
+    // CALENTAMIENTO: operaciones sintéticas contra el propio puerto hasta que
+    // el JIT se estabiliza; mientras tanto el latido responde
+    // PONG|estado=calentando (--calentamiento=segundos máximos, 0 = sin)
+    private static final int CALENTAMIENTO_MAXIMO_S = 30;
+    private static final int OPERACIONES_POR_RONDA = 2000;
+    private static final double FRACCION_COMPILANDO = 0.02; // Ronda estable: menos del 2% del tiempo compilando
+    private static final int RONDAS_ESTABLES = 3;
+    private static volatile boolean listo = false;
+    
+    // Registro periódico en el servidor central (renueva la membresía)
+    private static final long INTERVALO_REGISTRO_MS = 10000;
+    private static int capacidad;
+    
+    // Demora artificial por tarea para simular un nodo lento (operación RETARDO);
+    // sólo se acepta con --inyectar-fallas=si, que pasa ArnesCluster
+    private static volatile long retardoInyectadoMs;
+    private static boolean inyeccionFallas;
+    
+    // Opciones de línea de comandos (--clave=valor)
+    private static final Map<String, String> opciones = new HashMap<>();
+    
+    /**
+     * Motor de ejecución con un shard de escritor único por núcleo
+     * 
+     * Las cuentas se reparten entre shards por ID y cada shard tiene un hilo
+     * propio que es el único que modifica sus saldos, por lo que no se toman
+     * locks. Una transferencia dentro de un shard se aplica de una vez; entre
+     * shards, el shard origen valida y debita y entrega el crédito al shard
+     * destino por su cola. Las colas son FIFO, así los créditos de un mismo
+     * origen llegan en orden. Mientras el crédito está en la cola el monto
+     * está en tránsito y no figura en ningún saldo.
+     */
+    static class MotorShards {
+        private final Shard[] shards;
+        
+        MotorShards(int numShards) {
+            shards = new Shard[numShards];
+            for (int i = 0; i < numShards; i++) {
+                shards[i] = new Shard(i, numShards);
+            }
+        }
+        
+        boolean atiende(String operacion) {
+            return "CONSULTAR_SALDO".equals(operacion) || "TRANSFERIR_FONDOS".equals(operacion);
+        }
+        
+        private Shard shardDe(int idCuenta) {
+            return shards[Math.floorMod(idCuenta, shards.length)];
+        }
+        
+        /**
+         * Ejecuta una lectura o ajuste en el hilo del shard de la cuenta y
+         * espera el resultado
+         */
+        <T> T enShard(int idCuenta, Callable<T> operacion) {
+            CompletableFuture<T> resultado = new CompletableFuture<>();
+            shardDe(idCuenta).cola.add(() -> {
+                try {
+                    resultado.complete(operacion.call());
+                } catch (Exception e) {
+                    resultado.completeExceptionally(e);
+                }
+            });
+            return resultado.join();
+        }
+        
+        CompletableFuture<String> consultarSaldo(String[] parametros, long plazoNanos) {
+            CompletableFuture<String> resultado = new CompletableFuture<>();
+            if (parametros.length < 1) {
+                resultado.complete("ERROR|Faltan parámetros para consultar saldo");
+                return resultado;
+            }
+            
+            int idCuenta;
+            try {
+                idCuenta = Integer.parseInt(parametros[0]);
+            } catch (NumberFormatException e) {
+                resultado.complete("ERROR|ID de cuenta inválido");
+                return resultado;
+            }
+            
+            Map<String, Object> cuenta = cuentas.get(idCuenta);
+            if (cuenta == null) {
+                resultado.complete("ERROR|Cuenta no encontrada: " + idCuenta);
+                return resultado;
+            }
+            
+            shardDe(idCuenta).encolar(plazoNanos, resultado, () -> {
+                long saldo = (long) cuenta.get("saldo");
+                resultado.complete("OK|" + CodecMonto.formatear(saldo));
+            });
+            return resultado;
+        }
+        
+        CompletableFuture<String> transferirFondos(String[] parametros, long plazoNanos) {
+            CompletableFuture<String> resultado = new CompletableFuture<>();
+            if (parametros.length < 3) {
+                resultado.complete("ERROR|Faltan parámetros para transferencia");
+                return resultado;
+            }
+            
+            int cuentaOrigen;
+            int cuentaDestino;
+            long monto;
+            try {
+                cuentaOrigen = Integer.parseInt(parametros[0]);
+                cuentaDestino = Integer.parseInt(parametros[1]);
+                monto = CodecMonto.parsear(parametros[2]);
+            } catch (NumberFormatException e) {
+                resultado.complete("ERROR|Parámetros inválidos");
+                return resultado;
+            }
+            
+            // Validaciones básicas
+            if (monto <= 0) {
+                resultado.complete("ERROR|El monto debe ser positivo");
+                return resultado;
+            }
+            
+            Map<String, Object> origen = cuentas.get(cuentaOrigen);
+            Map<String, Object> destino = cuentas.get(cuentaDestino);
+            if (origen == null) {
+                resultado.complete("ERROR|Cuenta origen no encontrada: " + cuentaOrigen);
+                return resultado;
+            }
+            if (destino == null) {
+                resultado.complete("ERROR|Cuenta destino no encontrada: " + cuentaDestino);
+                return resultado;
+            }
+            
+            Shard shardOrigen = shardDe(cuentaOrigen);
+            Shard shardDestino = shardDe(cuentaDestino);
+            
+            shardOrigen.encolar(plazoNanos, resultado, () -> {
+                // Verificar saldo suficiente y debitar en el shard origen
+                long saldoOrigen = (long) origen.get("saldo");
+                if (saldoOrigen < monto) {
+                    resultado.complete("ERROR|Saldo insuficiente. Disponible: " + CodecMonto.formatear(saldoOrigen));
+                    return;
+                }
+                acumularSaldo(cuentaOrigen, origen, -monto);
+                
+                // Corre en el hilo del shard destino, que registra la transacción
+                Runnable credito = () -> {
+                    acumularSaldo(cuentaDestino, destino, monto);
+                    shardDestino.registrarTransaccion(cuentaOrigen, cuentaDestino, monto);
+                    resultado.complete("OK|Transferencia completada");
+                };
+                
+                if (shardDestino == shardOrigen) {
+                    credito.run();
+                } else {
+                    // El débito ya está aplicado: el crédito no se descarta por plazo
+                    shardDestino.encolar(Shard.SIN_PLAZO, resultado, credito);
+                }
+            });
+            return resultado;
+        }
+    }
+    
+    /**
+     * Shard del motor: un hilo, su cola y su propio registro de transacciones
+     */
+    static class Shard implements Runnable {
+        private static final long SIN_PLAZO = Long.MAX_VALUE;
+        
+        private final BlockingQueue<Runnable> cola = new LinkedBlockingQueue<>();
+        private final int indice;
+        private final int numShards;
+        private int siguienteTransaccion = 0;
+        
+        // Sólo el hilo del shard escribe en estas estructuras
+        final List<Map<String, Object>> transacciones = Collections.synchronizedList(new ArrayList<>());
+        private final SimpleDateFormat formatoShard = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        
+        Shard(int indice, int numShards) {
+            this.indice = indice;
+            this.numShards = numShards;
+            Thread hilo = new Thread(this);
+            hilo.setDaemon(true);
+            hilo.setName("Shard-" + indice);
+            hilo.start();
+        }
+        
+        void encolar(long plazoNanos, CompletableFuture<String> resultado, Runnable operacion) {
+            cola.add(() -> {
+                if (plazoNanos != SIN_PLAZO && System.nanoTime() - plazoNanos >= 0) {
+                    resultado.complete("ERROR|Plazo vencido");
+                    return;
+                }
+                operacion.run();
+            });
+        }
+        
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    cola.take().run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log("Error en shard " + indice + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        /**
+         * Registra la transacción sin el lock global: los IDs se intercalan
+         * entre shards (indice, indice + numShards, ...)
+         */
+        void registrarTransaccion(int cuentaOrigen, int cuentaDestino, long monto) {
+            int idTransaccion = transaccionesIniciales + 1 + indice + numShards * siguienteTransaccion++;
+            
+            Map<String, Object> transaccion = new HashMap<>();
+            transaccion.put("id_transacc", idTransaccion);
+            transaccion.put("id_orig", cuentaOrigen);
+            transaccion.put("id_dest", cuentaDestino);
+            transaccion.put("monto", monto);
+            transaccion.put("fecha_hora", formatoShard.format(new Date()));
+            transaccion.put("estado", "Confirmada");
+            
+            transacciones.add(transaccion);
+        }
+    }
     
     /**
      * Método principal
      */
     public static void main(String[] args) {
+        // Separar las opciones --clave=valor de los argumentos posicionales
+        List<String> posicionales = new ArrayList<>();
+        opciones.putAll(LineaComandos.opciones(args, posicionales));
+        args = posicionales.toArray(new String[0]);
+        
         // Procesar argumentos si se proporcionan
         if (args.length >= 1) {
             ID_NODO = Integer.parseInt(args[0]);
@@ -59,6 +365,11 @@ public class NodoTrabajador {
             IP_SERVIDOR_CENTRAL = args[1];
         }
         
+        // Puertos explícitos para correr varios sistemas en una máquina (ArnesCluster)
+        PUERTO = Integer.parseInt(opcion("puerto", String.valueOf(PUERTO)));
+        PUERTO_SERVIDOR_CENTRAL = Integer.parseInt(opcion("puerto-central", String.valueOf(PUERTO_SERVIDOR_CENTRAL)));
+        inyeccionFallas = "si".equals(opcion("inyectar-fallas", "no"));
+        
         // Inicializar el nodo
         try {
             inicializar();
@@ -90,8 +401,23 @@ public class NodoTrabajador {
         
         // Crear pool de hilos
         int numThreads = Runtime.getRuntime().availableProcessors() * 2;
-        threadPool = Executors.newFixedThreadPool(numThreads);
-        log("Pool de hilos creado con " + numThreads + " hilos");
+        threadPool = new PlanificadorCarriles("Tareas", numThreads,
+                opcion("carriles", PlanificadorCarriles.PESOS_POR_DEFECTO));
+        log("Pool de hilos creado: " + threadPool);
+        
+        // Sólo se trazan las tareas que llegan con traza del servidor central
+        Trazador.iniciar("nodo" + ID_NODO, 0);
+        
+        if ("shards".equals(opcion("motor", "locks"))) {
+            int numShards = Integer.parseInt(opcion("shards",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            motorShards = new MotorShards(numShards);
+            capacidad = numShards;
+            log("Motor de ejecución: " + numShards + " shards de escritor único");
+        } else {
+            capacidad = numThreads;
+            iniciarMonitorCuentasCalientes();
+        }
         
         log("Nodo trabajador inicializado correctamente");
     }
@@ -123,6 +449,14 @@ public class NodoTrabajador {
      * Configura las particiones que gestionará este nodo
      */
     private static void configurarParticiones() {
+        // Particiones indicadas al iniciar: --particiones=parte1,parte2
+        String indicadas = opcion("particiones", null);
+        if (indicadas != null) {
+            particiones.addAll(Arrays.asList(indicadas.split(",")));
+            log("Particiones configuradas: " + particiones);
+            return;
+        }
+        
         // Configuración según ID del nodo (compatible con ServidorCentral)
         switch (ID_NODO) {
             case 1:
@@ -165,10 +499,17 @@ public class NodoTrabajador {
         // Cargar transacciones
         cargarTransacciones();
         
+        // Árboles Merkle de las particiones cargadas
+        construirArbolesMerkle();
+        
+        // Índice de cuentas por cliente para CONSULTAR_CLIENTE
+        construirIndiceClientes();
+        
         log("Datos cargados correctamente:");
         log("  - Clientes: " + clientes.size());
         log("  - Cuentas: " + cuentas.size());
         log("  - Transacciones: " + transacciones.size());
+        transaccionesIniciales = transacciones.size();
     }
     
     /**
@@ -204,39 +545,293 @@ public class NodoTrabajador {
     
     /**
      * Carga cuentas desde las particiones configuradas
+     * 
+     * Cada archivo se divide en rangos de bytes alineados a fin de línea y
+     * los rangos de todas las particiones se parsean en paralelo con
+     * fork/join. Los mapas se crean con la capacidad estimada por tamaño
+     * de archivo para no redimensionar durante la carga.
      */
     private static void cargarCuentasDesdeParticiones() throws IOException {
-        for (String particion : particiones) {
-            File particionFile = new File(DATA_DIR + "/" + particion + "/cuentas_" + particion + ".txt");
+        long inicio = System.nanoTime();
+        List<FileChannel> canales = new ArrayList<>();
+        List<RangoCarga> rangos = new ArrayList<>();
+        Map<String, LongAdder> cargadasPorParticion = new LinkedHashMap<>();
+        LongAdder descartadas = new LongAdder();
+        long bytesTotales = 0;
+        long filasEstimadas = 0;
+        
+        try {
+            for (String particion : particiones) {
+                File particionFile = new File(DATA_DIR + "/" + particion + "/cuentas_" + particion + ".txt");
+                
+                if (!particionFile.exists()) {
+                    log("Archivo de partición no encontrado: " + particionFile.getPath());
+                    continue;
+                }
+                
+                FileChannel canal = FileChannel.open(particionFile.toPath(), StandardOpenOption.READ);
+                canales.add(canal);
+                LongAdder cargadas = new LongAdder();
+                cargadasPorParticion.put(particion, cargadas);
+                
+                long tamano = canal.size();
+                bytesTotales += tamano;
+                filasEstimadas += estimarLineas(canal);
+                long desde = 0;
+                while (desde < tamano) {
+                    long hasta = desde + TAMANO_RANGO_CARGA >= tamano
+                            ? tamano : inicioDeLinea(canal, desde + TAMANO_RANGO_CARGA);
+                    rangos.add(new RangoCarga(particion, canal, desde, hasta, cargadas, descartadas));
+                    desde = hasta;
+                }
+            }
             
-            if (!particionFile.exists()) {
-                log("Archivo de partición no encontrado: " + particionFile.getPath());
-                continue;
+            int capacidad = (int) Math.min(1 << 30, filasEstimadas + filasEstimadas / 8 + 16);
+            cuentas = new ConcurrentHashMap<>(capacidad);
+            cuentaLocks = new ConcurrentHashMap<>(capacidad);
+            
+            if (!rangos.isEmpty()) {
+                ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                try {
+                    pool.invoke(new CargaRangos(rangos, 0, rangos.size()));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (FileChannel canal : canales) {
+                canal.close();
+            }
+        }
+        
+        for (Map.Entry<String, LongAdder> entrada : cargadasPorParticion.entrySet()) {
+            log("Partición " + entrada.getKey() + ": " + entrada.getValue().sum() + " cuentas cargadas");
+        }
+        if (descartadas.sum() > 0) {
+            log("Líneas de cuentas descartadas por formato inválido: " + descartadas.sum());
+        }
+        
+        double segundos = Math.max(System.nanoTime() - inicio, 1) / 1e9;
+        log(String.format("Carga de cuentas: %d filas, %.1f MB en %.3f s (%.0f filas/s, %.1f MB/s, %d rangos)",
+                cuentas.size(), bytesTotales / 1e6, segundos,
+                cuentas.size() / segundos, bytesTotales / 1e6 / segundos, rangos.size()));
+    }
+    
+    /**
+     * Estima las líneas del archivo con el largo medio de las primeras 64 KB
+     */
+    private static long estimarLineas(FileChannel canal) throws IOException {
+        ByteBuffer muestra = ByteBuffer.allocate(64 * 1024);
+        int leidos = Math.max(canal.read(muestra, 0), 0);
+        int lineas = 0;
+        for (int i = 0; i < leidos; i++) {
+            if (muestra.get(i) == '\n') {
+                lineas++;
+            }
+        }
+        if (lineas == 0) {
+            return 1;
+        }
+        return canal.size() * lineas / leidos + 1;
+    }
+    
+    /**
+     * Posición del primer byte de la línea siguiente a la que contiene
+     * la posición dada (o el fin del archivo)
+     */
+    private static long inicioDeLinea(FileChannel canal, long posicion) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long tamano = canal.size();
+        while (posicion < tamano) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            if (leidos <= 0) {
+                break;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') {
+                    return posicion + i + 1;
+                }
+            }
+            posicion += leidos;
+        }
+        return tamano;
+    }
+    
+    /**
+     * Rango [desde, hasta) de un archivo de partición, alineado a líneas
+     */
+    static class RangoCarga {
+        private static final String[] TIPOS_CUENTA = {"Ahorros", "Corriente"};
+        
+        final String particion;
+        final FileChannel canal;
+        final long desde;
+        final long hasta;
+        final LongAdder cargadas;
+        final LongAdder descartadas;
+        
+        RangoCarga(String particion, FileChannel canal, long desde, long hasta,
+                   LongAdder cargadas, LongAdder descartadas) {
+            this.particion = particion;
+            this.canal = canal;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.cargadas = cargadas;
+            this.descartadas = descartadas;
+        }
+        
+        /**
+         * Lee el rango completo y carga cada línea id|id_cliente|saldo|tipo
+         */
+        void cargar() throws IOException {
+            byte[] datos = new byte[(int) (hasta - desde)];
+            ByteBuffer buffer = ByteBuffer.wrap(datos);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, desde + buffer.position()) < 0) {
+                    break;
+                }
             }
             
-            int cuentasCargadas = 0;
-            try (BufferedReader reader = new BufferedReader(new FileReader(particionFile))) {
-                String linea;
-                while ((linea = reader.readLine()) != null) {
-                    if (linea.trim().isEmpty()) continue;
-                    
-                    String[] partes = linea.split("\\|");
-                    if (partes.length >= 4) {
-                        int idCuenta = Integer.parseInt(partes[0]);
-                        Map<String, Object> cuenta = new HashMap<>();
-                        cuenta.put("id_cliente", Integer.parseInt(partes[1]));
-                        cuenta.put("saldo", Double.parseDouble(partes[2]));
-                        cuenta.put("tipo_cuenta", partes[3]);
-                        cuentas.put(idCuenta, cuenta);
-                        
-                        // Crear lock para esta cuenta
-                        cuentaLocks.put(idCuenta, new ReentrantLock());
-                        cuentasCargadas++;
-                    }
+            int fin = buffer.position();
+            int inicioLinea = 0;
+            while (inicioLinea < fin) {
+                int finLinea = inicioLinea;
+                while (finLinea < fin && datos[finLinea] != '\n') {
+                    finLinea++;
+                }
+                int finUtil = finLinea;
+                if (finUtil > inicioLinea && datos[finUtil - 1] == '\r') {
+                    finUtil--;
                 }
+                if (finUtil > inicioLinea) {
+                    cargarLinea(datos, inicioLinea, finUtil);
+                }
+                inicioLinea = finLinea + 1;
+            }
+        }
+        
+        private void cargarLinea(byte[] datos, int desde, int hasta) {
+            int separador1 = siguienteSeparador(datos, desde, hasta);
+            int separador2 = siguienteSeparador(datos, separador1 + 1, hasta);
+            int separador3 = siguienteSeparador(datos, separador2 + 1, hasta);
+            if (separador3 >= hasta) {
+                if (!lineaEnBlanco(datos, desde, hasta)) {
+                    descartadas.increment();
+                }
+                return;
             }
+            int finTipo = siguienteSeparador(datos, separador3 + 1, hasta);
             
-            log("Partición " + particion + ": " + cuentasCargadas + " cuentas cargadas");
+            try {
+                int idCuenta = parsearEntero(datos, desde, separador1);
+                int idCliente = parsearEntero(datos, separador1 + 1, separador2);
+                long saldo = CodecMonto.parsear(datos, separador2 + 1, separador3); // Centavos
+                
+                Map<String, Object> cuenta = new HashMap<>();
+                cuenta.put("id_cliente", idCliente);
+                cuenta.put("saldo", saldo);
+                cuenta.put("tipo_cuenta", tipoCuenta(datos, separador3 + 1, finTipo));
+                cuenta.put("particion", particion);
+                cuenta.put("version", 0L);
+                cuentas.put(idCuenta, cuenta);
+                
+                // Crear lock para esta cuenta
+                cuentaLocks.put(idCuenta, new ReentrantLock());
+                cargadas.increment();
+            } catch (NumberFormatException e) {
+                descartadas.increment();
+            }
+        }
+        
+        private static int siguienteSeparador(byte[] datos, int desde, int hasta) {
+            int i = desde;
+            while (i < hasta && datos[i] != '|') {
+                i++;
+            }
+            return i;
+        }
+        
+        private static boolean lineaEnBlanco(byte[] datos, int desde, int hasta) {
+            for (int i = desde; i < hasta; i++) {
+                if (datos[i] != ' ' && datos[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static int parsearEntero(byte[] datos, int desde, int hasta) {
+            if (desde >= hasta || hasta - desde > 10) {
+                throw new NumberFormatException("Entero inválido");
+            }
+            long valor = 0;
+            for (int i = desde; i < hasta; i++) {
+                byte b = datos[i];
+                if (b < '0' || b > '9') {
+                    throw new NumberFormatException("Entero inválido");
+                }
+                valor = valor * 10 + (b - '0');
+            }
+            if (valor > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Entero inválido");
+            }
+            return (int) valor;
+        }
+        
+        /**
+         * Reutiliza los tipos de cuenta conocidos en vez de crear un String por fila
+         */
+        private static String tipoCuenta(byte[] datos, int desde, int hasta) {
+            for (String tipo : TIPOS_CUENTA) {
+                if (tipo.length() == hasta - desde && coincide(datos, desde, tipo)) {
+                    return tipo;
+                }
+            }
+            return new String(datos, desde, hasta - desde, StandardCharsets.UTF_8);
+        }
+        
+        private static boolean coincide(byte[] datos, int desde, String texto) {
+            for (int i = 0; i < texto.length(); i++) {
+                if (datos[desde + i] != texto.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+    
+    /**
+     * Reparte los rangos entre los hilos del ForkJoinPool
+     */
+    static class CargaRangos extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<RangoCarga> rangos;
+        private final int desde;
+        private final int hasta;
+        
+        CargaRangos(List<RangoCarga> rangos, int desde, int hasta) {
+            this.rangos = rangos;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+        
+        @Override
+        protected void compute() {
+            if (hasta - desde == 1) {
+                try {
+                    rangos.get(desde).cargar();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new CargaRangos(rangos, desde, medio), new CargaRangos(rangos, medio, hasta));
         }
     }
     
@@ -263,7 +858,7 @@ public class NodoTrabajador {
                     transaccion.put("id_transacc", Integer.parseInt(partes[0]));
                     transaccion.put("id_orig", Integer.parseInt(partes[1]));
                     transaccion.put("id_dest", Integer.parseInt(partes[2]));
-                    transaccion.put("monto", Double.parseDouble(partes[3]));
+                    transaccion.put("monto", CodecMonto.parsear(partes[3]));
                     transaccion.put("fecha_hora", partes[4]);
                     transaccion.put("estado", partes[5]);
                     transacciones.add(transaccion);
@@ -281,10 +876,20 @@ public class NodoTrabajador {
         try (ServerSocket serverSocket = new ServerSocket(PUERTO)) {
             log("Servidor listo para recibir conexiones");
             
+            iniciarCalentamiento();
+            
+            if (!"no".equals(opcion("registro", "si"))) {
+                iniciarRegistro();
+            }
+            
             while (true) {
                 try {
                     Socket clienteSocket = serverSocket.accept();
-                    threadPool.submit(() -> manejarSolicitud(clienteSocket));
+                    try {
+                        poolConexiones.execute(() -> manejarSolicitud(clienteSocket));
+                    } catch (RejectedExecutionException e) {
+                        rechazarConexion(clienteSocket);
+                    }
                 } catch (IOException e) {
                     log("Error aceptando conexión: " + e.getMessage());
                 }
@@ -296,73 +901,564 @@ public class NodoTrabajador {
     }
     
     /**
-     * Maneja una solicitud entrante
+     * Responde y cierra una conexión que excede MAX_CONEXIONES
      */
-    private static void manejarSolicitud(Socket socket) {
-        try (
-            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            PrintWriter salida = new PrintWriter(socket.getOutputStream(), true)
-        ) {
-            // Leer la solicitud
-            String solicitud = entrada.readLine();
-            
-            if (solicitud == null) {
-                // Health check o conexión cerrada
-                return;
-            }
-            
-            log("Solicitud recibida: " + solicitud);
-            
-            // Parsear la solicitud: TASK|idTarea|operacion|param1|param2|...
-            String[] partes = solicitud.split("\\|");
-            
-            if (partes.length < 3 || !partes[0].equals("TASK")) {
-                salida.println("ERROR|Formato de solicitud inválido");
-                return;
-            }
-            
-            int idTarea = Integer.parseInt(partes[1]);
-            String operacion = partes[2];
-            String[] parametros = Arrays.copyOfRange(partes, 3, partes.length);
-            
-            // Procesar según la operación
-            String resultado;
-            
-            switch (operacion) {
-                case "CONSULTAR_SALDO":
-                    resultado = consultarSaldo(parametros);
-                    break;
-                    
-                case "TRANSFERIR_FONDOS":
-                    resultado = transferirFondos(parametros);
-                    break;
-                    
-                default:
-                    resultado = "ERROR|Operación no soportada: " + operacion;
-                    break;
-            }
-            
-            // Enviar respuesta: RESPONSE|idTarea|resultado
-            String respuesta = "RESPONSE|" + idTarea + "|" + resultado;
-            salida.println(respuesta);
-            log("Respuesta enviada para tarea " + idTarea + ": " + resultado);
-            
-        } catch (Exception e) {
-            log("Error procesando solicitud: " + e.getMessage());
+    private static void rechazarConexion(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(1000);
+            new PrintWriter(s.getOutputStream(), true).println("ERROR|Nodo saturado: " + MAX_CONEXIONES + " conexiones");
+        } catch (IOException e) {
+            // El cliente ya cerró
         }
+        log("Conexión rechazada: se alcanzó el máximo de " + MAX_CONEXIONES + " conexiones");
     }
     
     /**
-     * Consulta el saldo de una cuenta
+     * Calentamiento antes de recibir tráfico
+     * 
+     * Con el socket ya abierto, unos hilos envían al propio nodo tareas
+     * como las del servidor central (conexión por tarea): consultas de
+     * saldo y de cliente y transferencias por más del saldo, que recorren
+     * locks y validación y se rechazan sin cambiar nada. Las tareas llevan
+     * ID negativo y no se escriben en el log. Se hacen rondas hasta que el
+     * JIT pasa menos de FRACCION_COMPILANDO de la ronda compilando durante
+     * RONDAS_ESTABLES rondas seguidas, o hasta el máximo; recién entonces
+     * el nodo se declara listo en el latido y en el registro.
      */
-    private static String consultarSaldo(String[] parametros) {
-        if (parametros.length < 1) {
-            return "ERROR|Faltan parámetros para consultar saldo";
+    private static void iniciarCalentamiento() {
+        int maximoS = Integer.parseInt(opcion("calentamiento", String.valueOf(CALENTAMIENTO_MAXIMO_S)));
+        if (maximoS <= 0 || cuentas.isEmpty()) {
+            listo = true;
+            return;
         }
-        
-        try {
-            int idCuenta = Integer.parseInt(parametros[0]);
-            
+        Thread hilo = new Thread(() -> {
+            try {
+                calentar(TimeUnit.SECONDS.toNanos(maximoS));
+            } catch (Exception e) {
+                log("Error en el calentamiento: " + e.getMessage());
+            } finally {
+                listo = true;
+            }
+        });
+        hilo.setDaemon(true);
+        hilo.setName("Calentamiento");
+        hilo.start();
+    }
+    
+    private static void calentar(long maximoNanos) throws InterruptedException {
+        CompilationMXBean compilador = ManagementFactory.getCompilationMXBean();
+        boolean medible = compilador != null && compilador.isCompilationTimeMonitoringSupported();
+        int[] idsCuentas = cuentas.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int[] idsClientes = cuentasPorCliente.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int hilos = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(hilos);
+        AtomicInteger siguienteId = new AtomicInteger();
+        
+        log("Calentando (" + hilos + " hilos, máximo " + TimeUnit.NANOSECONDS.toSeconds(maximoNanos) + " s)...");
+        long inicio = System.nanoTime();
+        long compilacionInicial = medible ? compilador.getTotalCompilationTime() : 0;
+        int estables = 0;
+        int rondas = 0;
+        try {
+            while (System.nanoTime() - inicio < maximoNanos && estables < RONDAS_ESTABLES) {
+                long compilacionAntes = medible ? compilador.getTotalCompilationTime() : 0;
+                long inicioRonda = System.nanoTime();
+                List<Future<?>> tareas = new ArrayList<>();
+                for (int h = 0; h < hilos; h++) {
+                    tareas.add(pool.submit(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < OPERACIONES_POR_RONDA / hilos; i++) {
+                            enviarTareaCalentamiento(-1 - siguienteId.getAndIncrement(), random, idsCuentas, idsClientes);
+                        }
+                    }));
+                }
+                for (Future<?> tarea : tareas) {
+                    try {
+                        tarea.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+                    }
+                }
+                rondas++;
+                long rondaMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioRonda));
+                // Sin medición de compilación se hacen rondas hasta el máximo
+                boolean estable = medible
+                        && compilador.getTotalCompilationTime() - compilacionAntes < FRACCION_COMPILANDO * rondaMs;
+                estables = estable ? estables + 1 : 0;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        log(String.format("Calentamiento terminado: %d operaciones en %d rondas, %.1f s, %s; nodo listo",
+                siguienteId.get(), rondas, (System.nanoTime() - inicio) / 1e9,
+                medible ? (compilador.getTotalCompilationTime() - compilacionInicial) + " ms de compilación"
+                        : "sin medición de compilación"));
+    }
+    
+    /**
+     * Una tarea sintética por el puerto del nodo: 70% consultas de saldo,
+     * 10% de cliente y 20% transferencias rechazadas por saldo
+     */
+    private static void enviarTareaCalentamiento(int idTarea, ThreadLocalRandom random, int[] idsCuentas,
+                                                 int[] idsClientes) {
+        int tipo = random.nextInt(10);
+        String tarea;
+        if (tipo < 7 || idsCuentas.length < 2) {
+            tarea = "CONSULTAR_SALDO|" + idsCuentas[random.nextInt(idsCuentas.length)];
+        } else if (tipo == 7 && idsClientes.length > 0) {
+            tarea = "CONSULTAR_CLIENTE|" + idsClientes[random.nextInt(idsClientes.length)];
+        } else {
+            int origen = idsCuentas[random.nextInt(idsCuentas.length)];
+            int destino = idsCuentas[random.nextInt(idsCuentas.length)];
+            tarea = "TRANSFERIR_FONDOS|" + origen + "|" + (destino != origen ? destino : idsCuentas[0])
+                    + "|999999999999.99";
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", PUERTO), 2000);
+            socket.setSoTimeout(5000);
+            PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            salida.println("TASK|" + idTarea + "|" + tarea + "|plazo=5000");
+            entrada.readLine();
+        } catch (IOException e) {
+            // Una tarea perdida no cambia el calentamiento
+        }
+    }
+    
+    /**
+     * Registro en el servidor central
+     * 
+     * Anuncia puerto, lenguaje, capacidad y particiones, y lo repite cada
+     * INTERVALO_REGISTRO_MS para reaparecer si el servidor se reinicia.
+     * Con --ip=... se anuncia esa dirección en vez de la de la conexión
+     * (el servidor central lo acepta sólo con --token-cluster o desde
+     * loopback); --token-cluster=... se envía como token=.
+     */
+    private static void iniciarRegistro() {
+        Thread hiloRegistro = new Thread(() -> {
+            boolean registrado = false;
+            while (true) {
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(IP_SERVIDOR_CENTRAL, PUERTO_SERVIDOR_CENTRAL), 2000);
+                    socket.setSoTimeout(5000);
+                    PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+                    BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    salida.println(mensajeRegistro());
+                    
+                    String respuesta = entrada.readLine();
+                    boolean aceptado = respuesta != null && respuesta.startsWith("REGISTRADO");
+                    if (aceptado != registrado) {
+                        log(aceptado ? "Registrado en el servidor central" : "Registro rechazado: " + respuesta);
+                    }
+                    registrado = aceptado;
+                } catch (IOException e) {
+                    if (registrado) {
+                        log("Servidor central no disponible para el registro: " + e.getMessage());
+                    }
+                    registrado = false;
+                }
+                
+                try {
+                    Thread.sleep(registrado ? INTERVALO_REGISTRO_MS : 2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+        
+        hiloRegistro.setDaemon(true);
+        hiloRegistro.setName("Registro");
+        hiloRegistro.start();
+    }
+    
+    /**
+     * REGISTRO|idNodo|puerto|java|capacidad|particiones|vparticiones=N[|ip=...][|token=...]
+     * con las particiones actuales (cambian al migrar). La versión se lee
+     * antes que el conjunto: a lo sumo el conjunto es más nuevo que ella.
+     */
+    private static String mensajeRegistro() {
+        long version = versionParticiones.get();
+        StringBuilder sb = new StringBuilder("REGISTRO|" + ID_NODO + "|" + PUERTO + "|java|" + capacidad + "|");
+        sb.append(String.join(",", new TreeSet<>(particiones)));
+        sb.append("|vparticiones=").append(version);
+        String ipAnunciada = opcion("ip", null);
+        if (ipAnunciada != null) {
+            sb.append("|ip=").append(ipAnunciada);
+        }
+        if (!listo) {
+            sb.append("|estado=calentando");
+        }
+        String token = opcion("token-cluster", null);
+        if (token != null) {
+            sb.append("|token=").append(token);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Maneja una solicitud entrante
+     * 
+     * Lee y parsea la solicitud en el hilo de la conexión y encola su
+     * ejecución en el pool de tareas, que atiende primero la de plazo
+     * más próximo.
+     */
+    private static void manejarSolicitud(Socket socket) {
+        boolean encolada = false;
+        try {
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+            
+            // Leer la solicitud
+            String solicitud = entrada.readLine();
+            long recepcion = System.nanoTime();
+            
+            if (solicitud == null) {
+                // Conexión cerrada sin datos
+                return;
+            }
+            
+            // Canal persistente de latidos del servidor central
+            if (solicitud.equals("PING")) {
+                atenderLatidos(entrada, salida);
+                return;
+            }
+            
+            // Las tareas del calentamiento (ID negativo) no van al log
+            if (!solicitud.startsWith("TASK|-")) {
+                log("Solicitud recibida: " + solicitud);
+            }
+            
+            // Parsear la solicitud: TASK|idTarea|operacion|param1|param2|...[|clave=valor...]
+            String[] partes = solicitud.split("\\|");
+            
+            if (partes.length < 3 || !partes[0].equals("TASK")) {
+                salida.println("ERROR|Formato de solicitud inválido");
+                return;
+            }
+            
+            int idTarea;
+            try {
+                idTarea = Integer.parseInt(partes[1]);
+            } catch (NumberFormatException e) {
+                salida.println("ERROR|Id de tarea inválido: " + partes[1]);
+                return;
+            }
+            String operacion = partes[2];
+            int finParametros = inicioMetadatos(partes, 3);
+            String[] parametros = Arrays.copyOfRange(partes, 3, finParametros);
+            
+            // Plazo restante que informa el servidor central
+            String plazo = metadato(partes, finParametros, "plazo");
+            long plazoMs;
+            try {
+                plazoMs = plazo != null ? Long.parseLong(plazo) : PLAZO_POR_DEFECTO_MS;
+            } catch (NumberFormatException e) {
+                salida.println("RESPONSE|" + idTarea + "|ERROR|Plazo inválido: " + plazo);
+                return;
+            }
+            long plazoNanos = recepcion + TimeUnit.MILLISECONDS.toNanos(plazoMs);
+            
+            // Inyección de fallas (ArnesCluster): TASK|0|RETARDO|ms demora cada tarea
+            if (operacion.equals("RETARDO")) {
+                if (!inyeccionFallas) {
+                    salida.println("RESPONSE|" + idTarea + "|ERROR|Operación no soportada");
+                    return;
+                }
+                retardoInyectadoMs = Long.parseLong(parametros[0]);
+                log("Retardo inyectado por tarea: " + retardoInyectadoMs + " ms");
+                salida.println("RESPONSE|" + idTarea + "|OK|" + retardoInyectadoMs);
+                return;
+            }
+            
+            // Migración de particiones: transferencias largas en el hilo de la conexión
+            if (operacion.startsWith("MIGRAR_") || operacion.startsWith("EXPORTAR_")) {
+                atenderMigracion(entrada, salida, idTarea, operacion, parametros);
+                return;
+            }
+            
+            // Quórum del servidor central: el resultado lleva saldo y versión de las cuentas
+            boolean conVersiones = "1".equals(metadato(partes, finParametros, "versiones"));
+            
+            if (motorShards != null && motorShards.atiende(operacion)) {
+                ejecutarEnShards(salida, idTarea, operacion, parametros, plazoNanos, conVersiones);
+                Trazador.tramo(metadato(partes, finParametros, "traza"), "shards", recepcion, System.nanoTime());
+                return;
+            }
+            
+            // Clase de tráfico que informa el servidor central (clase=auditoria)
+            PlanificadorCarriles.Carril carril = PlanificadorCarriles.Carril.desdeNombre(
+                    metadato(partes, finParametros, "clase"));
+            if (carril == null) {
+                carril = PlanificadorCarriles.Carril.deOperacion(operacion);
+            }
+            if (carril == null) {
+                salida.println("RESPONSE|" + idTarea + "|ERROR|Operación no soportada: " + operacion);
+                return;
+            }
+            
+            String traza = metadato(partes, finParametros, "traza");
+            threadPool.ejecutar(carril, plazoNanos, () -> {
+                Trazador.tramo(traza, "cola_tareas", recepcion, System.nanoTime());
+                Trazador.fijarActual(traza);
+                try {
+                    ejecutarTarea(socket, salida, idTarea, operacion, parametros, plazoNanos, conVersiones);
+                } finally {
+                    Trazador.fijarActual(null);
+                }
+            });
+            encolada = true;
+            
+        } catch (Exception e) {
+            log("Error procesando solicitud: " + e.getMessage());
+        } finally {
+            if (!encolada) {
+                cerrarSilenciosamente(socket);
+            }
+        }
+    }
+    
+    /**
+     * Ejecuta una tarea encolada y envía la respuesta
+     */
+    private static void ejecutarTarea(Socket socket, PrintWriter salida, int idTarea,
+                                      String operacion, String[] parametros, long plazoNanos,
+                                      boolean conVersiones) {
+        try {
+            if (retardoInyectadoMs > 0) {
+                Thread.sleep(retardoInyectadoMs);
+            }
+            
+            // Si el cliente ya no espera la respuesta no se hace ningún trabajo
+            if (System.nanoTime() - plazoNanos >= 0) {
+                salida.println("RESPONSE|" + idTarea + "|ERROR|Plazo vencido");
+                log("Tarea " + idTarea + " descartada: plazo vencido");
+                return;
+            }
+            
+            // Procesar según la operación
+            String resultado;
+            long inicio = System.nanoTime();
+            
+            switch (operacion) {
+                case "CONSULTAR_SALDO":
+                    resultado = consultarSaldo(parametros);
+                    break;
+                    
+                case "TRANSFERIR_FONDOS":
+                    resultado = transferirFondos(parametros);
+                    break;
+                    
+                case "MERKLE_RAIZ":
+                    resultado = merkleRaiz(parametros);
+                    break;
+                    
+                case "MERKLE_HIJOS":
+                    resultado = merkleHijos(parametros);
+                    break;
+                    
+                case "RANGO_CUENTAS":
+                    resultado = rangoCuentas(parametros);
+                    break;
+                    
+                case "REPARAR":
+                    resultado = repararCuentas(parametros);
+                    break;
+                    
+                case "TRANSFERIR_LOTE":
+                    resultado = transferirLote(parametros);
+                    break;
+                    
+                case "ESTADO_CUENTAS":
+                    resultado = estadoCuentas(parametros);
+                    break;
+                    
+                case "CONSULTAR_CLIENTE":
+                    resultado = consultarCliente(parametros);
+                    break;
+                    
+                case "VOLCAR_DIARIO":
+                    resultado = volcarDiario();
+                    break;
+                    
+                default:
+                    resultado = "ERROR|Operación no soportada: " + operacion;
+                    break;
+            }
+            if (conVersiones) {
+                resultado = conEstado(resultado, operacion, parametros);
+            }
+            
+            long ejecutada = System.nanoTime();
+            Trazador.tramo(Trazador.actual(), "ejecucion", inicio, ejecutada);
+            
+            // Enviar respuesta: RESPONSE|idTarea|resultado
+            String respuesta = "RESPONSE|" + idTarea + "|" + resultado;
+            salida.println(respuesta);
+            Trazador.tramo(Trazador.actual(), "respuesta", ejecutada, System.nanoTime());
+            if (idTarea >= 0) {
+                log("Respuesta enviada para tarea " + idTarea + ": " + resultado);
+            }
+            
+        } catch (Exception e) {
+            log("Error procesando tarea " + idTarea + ": " + e.getMessage());
+        } finally {
+            cerrarSilenciosamente(socket);
+        }
+    }
+    
+    /**
+     * Ejecuta una tarea en el motor de shards y espera su resultado
+     */
+    private static void ejecutarEnShards(PrintWriter salida, int idTarea, String operacion,
+                                         String[] parametros, long plazoNanos,
+                                         boolean conVersiones) throws InterruptedException {
+        if (retardoInyectadoMs > 0) {
+            Thread.sleep(retardoInyectadoMs);
+        }
+        CompletableFuture<String> futuro = "CONSULTAR_SALDO".equals(operacion)
+                ? motorShards.consultarSaldo(parametros, plazoNanos)
+                : motorShards.transferirFondos(parametros, plazoNanos);
+        
+        String resultado;
+        try {
+            resultado = futuro.get();
+        } catch (ExecutionException e) {
+            resultado = "ERROR|" + e.getCause().getMessage();
+        }
+        if (conVersiones) {
+            resultado = conEstado(resultado, operacion, parametros);
+        }
+        
+        salida.println("RESPONSE|" + idTarea + "|" + resultado);
+        if (idTarea >= 0) {
+            log("Respuesta enviada para tarea " + idTarea + ": " + resultado);
+        }
+    }
+    
+    /**
+     * Agrega a un resultado OK el estado de las cuentas de la operación:
+     * OK|...|estado=id:saldo:version;id:saldo:version
+     * 
+     * El servidor central lo usa en las operaciones con quórum: en lecturas
+     * gana la réplica de mayor versión y en transferencias y lotes de carga
+     * masiva el estado se copia a las demás réplicas con REPARAR. Se lee
+     * después de aplicar la operación; si otra la siguió, el estado es más
+     * nuevo, nunca más viejo.
+     */
+    private static String conEstado(String resultado, String operacion, String[] parametros) {
+        if (!resultado.startsWith("OK|")) {
+            return resultado;
+        }
+        Collection<Integer> idsCuentas = new ArrayList<>();
+        try {
+            if ("TRANSFERIR_FONDOS".equals(operacion) || "CONSULTAR_SALDO".equals(operacion)) {
+                int cantidad = "TRANSFERIR_FONDOS".equals(operacion) ? 2 : 1;
+                for (int i = 0; i < cantidad && i < parametros.length; i++) {
+                    idsCuentas.add(Integer.parseInt(parametros[i]));
+                }
+            } else if ("TRANSFERIR_LOTE".equals(operacion) && parametros.length >= 2) {
+                // Filas fila:origen:destino:monto; cada cuenta una vez
+                idsCuentas = new TreeSet<>();
+                for (String fila : parametros[1].split(";")) {
+                    String[] campos = fila.split(":");
+                    idsCuentas.add(Integer.parseInt(campos[1]));
+                    idsCuentas.add(Integer.parseInt(campos[2]));
+                }
+            }
+        } catch (RuntimeException e) {
+            return resultado;
+        }
+        if (idsCuentas.isEmpty()) {
+            return resultado;
+        }
+        StringBuilder sb = new StringBuilder(resultado).append("|estado=");
+        agregarEstados(sb, idsCuentas);
+        return sb.toString();
+    }
+    
+    /**
+     * Agrega id:saldo:version;... de las cuentas que tiene este nodo
+     */
+    private static void agregarEstados(StringBuilder sb, Collection<Integer> idsCuentas) {
+        int inicio = sb.length();
+        for (int idCuenta : idsCuentas) {
+            if (!cuentas.containsKey(idCuenta)) {
+                continue;
+            }
+            long[] estado = leerCuenta(idCuenta);
+            if (sb.length() > inicio) {
+                sb.append(';');
+            }
+            sb.append(idCuenta).append(':');
+            CodecMonto.escribir(sb, estado[0]).append(':').append(estado[1]);
+        }
+    }
+    
+    /**
+     * Devuelve la opción --clave=valor indicada al iniciar el nodo
+     */
+    private static String opcion(String clave, String porDefecto) {
+        return opciones.getOrDefault(clave, porDefecto);
+    }
+    
+    /**
+     * Devuelve la posición donde empiezan los metadatos opcionales
+     * (campos clave=valor al final de la solicitud)
+     */
+    private static int inicioMetadatos(String[] partes, int desde) {
+        int fin = partes.length;
+        while (fin > desde && partes[fin - 1].indexOf('=') > 0) {
+            fin--;
+        }
+        return fin;
+    }
+    
+    /**
+     * Busca el valor de un metadato clave=valor a partir de la posición dada
+     */
+    private static String metadato(String[] partes, int desde, String clave) {
+        for (int i = desde; i < partes.length; i++) {
+            String campo = partes[i];
+            if (campo.length() > clave.length() && campo.charAt(clave.length()) == '=' && campo.startsWith(clave)) {
+                return campo.substring(clave.length() + 1);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Atiende el canal persistente de latidos del servidor central; PONG
+     * indica que el nodo está listo, PONG|estado=calentando que todavía no
+     */
+    private static void atenderLatidos(BufferedReader entrada, PrintWriter salida) throws IOException {
+        do {
+            salida.println(listo ? "PONG" : "PONG|estado=calentando");
+        } while (entrada.readLine() != null);
+    }
+    
+    /**
+     * Cierra un socket ignorando errores
+     */
+    private static void cerrarSilenciosamente(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nada que hacer
+        }
+    }
+    
+    /**
+     * Consulta el saldo de una cuenta
+     */
+    private static String consultarSaldo(String[] parametros) {
+        if (parametros.length < 1) {
+            return "ERROR|Faltan parámetros para consultar saldo";
+        }
+        
+        try {
+            int idCuenta = Integer.parseInt(parametros[0]);
+            
             // Verificar si tenemos la cuenta
             if (!cuentas.containsKey(idCuenta)) {
                 return "ERROR|Cuenta no encontrada: " + idCuenta;
@@ -374,10 +1470,16 @@ public class NodoTrabajador {
                 return "ERROR|Lock no disponible para cuenta: " + idCuenta;
             }
             
+            // Cuenta caliente: se suman los sub-saldos sin tomar el lock
+            SaldoDividido caliente = cuentasCalientes.get(idCuenta);
+            if (caliente != null) {
+                return "OK|" + CodecMonto.formatear(caliente.saldo());
+            }
+            
             lock.lock();
             try {
-                double saldo = (double) cuentas.get(idCuenta).get("saldo");
-                return "OK|" + String.format("%.2f", saldo);
+                long saldo = saldoBajoLock(idCuenta);
+                return "OK|" + CodecMonto.formatear(saldo);
             } finally {
                 lock.unlock();
             }
@@ -391,32 +1493,150 @@ public class NodoTrabajador {
     }
     
     /**
-     * Realiza una transferencia entre cuentas
+     * CONSULTAR_CLIENTE|idCliente[|parteN,parteM] -> OK|cuentas|saldo total[|id:saldo;...]
+     * 
+     * Recorre sólo las cuentas del cliente según el índice secundario. El
+     * servidor central indica qué particiones incluir: reparte la consulta
+     * entre nodos y cada partición debe contarse en uno solo.
      */
-    private static String transferirFondos(String[] parametros) {
-        if (parametros.length < 3) {
-            return "ERROR|Faltan parámetros para transferencia";
+    private static String consultarCliente(String[] parametros) {
+        if (parametros.length < 1) {
+            return "ERROR|Faltan parámetros para consultar cliente";
         }
         
         try {
-            int cuentaOrigen = Integer.parseInt(parametros[0]);
-            int cuentaDestino = Integer.parseInt(parametros[1]);
-            double monto = Double.parseDouble(parametros[2]);
+            int idCliente = Integer.parseInt(parametros[0]);
+            Set<String> incluidas = parametros.length > 1
+                    ? new HashSet<>(Arrays.asList(parametros[1].split(","))) : particiones;
             
-            // Validaciones básicas
-            if (monto <= 0) {
-                return "ERROR|El monto debe ser positivo";
+            int cantidad = 0;
+            long total = 0;
+            StringBuilder detalle = new StringBuilder();
+            for (int idCuenta : cuentasPorCliente.getOrDefault(idCliente, new int[0])) {
+                Map<String, Object> cuenta = cuentas.get(idCuenta);
+                if (cuenta == null || !incluidas.contains(cuenta.get("particion"))) {
+                    continue;
+                }
+                long saldo = leerCuenta(idCuenta)[0];
+                if (cantidad++ > 0) {
+                    detalle.append(';');
+                }
+                CodecMonto.escribir(detalle.append(idCuenta).append(':'), saldo);
+                total += saldo;
             }
             
-            if (!cuentas.containsKey(cuentaOrigen)) {
-                return "ERROR|Cuenta origen no encontrada: " + cuentaOrigen;
+            StringBuilder resultado = new StringBuilder("OK|").append(cantidad).append('|');
+            CodecMonto.escribir(resultado, total);
+            if (cantidad > 0) {
+                resultado.append('|').append(detalle);
             }
+            return resultado.toString();
             
-            if (!cuentas.containsKey(cuentaDestino)) {
-                return "ERROR|Cuenta destino no encontrada: " + cuentaDestino;
+        } catch (NumberFormatException e) {
+            return "ERROR|ID de cliente inválido";
+        }
+    }
+    
+    /**
+     * VOLCAR_DIARIO -> OK|filas
+     * 
+     * Agrega a data/transacciones/transacciones.bdc (ver DiarioColumnar) las
+     * transacciones registradas desde el último volcado. Las cargadas de
+     * transacciones.txt no se vuelcan: ese archivo se convierte con
+     * "DiarioColumnar exportar". Las marcas avanzan sólo si la escritura
+     * termina bien, así un volcado fallido se repite entero; antes se corta
+     * el archivo al largo que tenía, para no dejar filas sueltas ni un
+     * bloque a medias (el Escritor vuelca lo pendiente al cerrarse).
+     */
+    private static String volcarDiario() {
+        synchronized (volcadoLock) {
+            List<Map<String, Object>> pendientes = new ArrayList<>();
+            int hastaPrincipal;
+            transaccionLock.lock();
+            try {
+                if (volcadasDiario < 0) {
+                    volcadasDiario = transaccionesIniciales;
+                }
+                hastaPrincipal = transacciones.size();
+                pendientes.addAll(transacciones.subList(volcadasDiario, hastaPrincipal));
+            } finally {
+                transaccionLock.unlock();
             }
             
-            // Adquirir locks en orden para evitar deadlocks
+            Shard[] shards = motorShards != null ? motorShards.shards : new Shard[0];
+            if (volcadasShard.length != shards.length) {
+                volcadasShard = new int[shards.length];
+            }
+            int[] hastaShard = new int[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                synchronized (shards[i].transacciones) {
+                    hastaShard[i] = shards[i].transacciones.size();
+                    pendientes.addAll(shards[i].transacciones.subList(volcadasShard[i], hastaShard[i]));
+                }
+            }
+            // Los shards intercalan IDs; ordenados, los deltas del bloque quedan chicos
+            pendientes.sort(Comparator.comparingLong(t -> ((Number) t.get("id_transacc")).longValue()));
+            
+            Path archivo = Paths.get(DATA_DIR, "transacciones", "transacciones.bdc");
+            long largoPrevio;
+            try {
+                largoPrevio = Files.exists(archivo) ? Files.size(archivo) : 0;
+            } catch (IOException e) {
+                return "ERROR|No se pudo volcar el diario: " + e.getMessage();
+            }
+            try (DiarioColumnar.Escritor escritor = new DiarioColumnar.Escritor(archivo)) {
+                for (Map<String, Object> transaccion : pendientes) {
+                    escritor.agregar(((Number) transaccion.get("id_transacc")).longValue(),
+                            ((Number) transaccion.get("id_orig")).intValue(),
+                            ((Number) transaccion.get("id_dest")).intValue(),
+                            ((Number) transaccion.get("monto")).longValue(),
+                            DiarioColumnar.parsearFechaHora((String) transaccion.get("fecha_hora")),
+                            String.valueOf(transaccion.get("estado")));
+                }
+            } catch (IOException | RuntimeException e) {
+                log("Error volcando el diario: " + e.getMessage());
+                try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+                    canal.truncate(largoPrevio);
+                } catch (IOException | RuntimeException ex) {
+                    log("No se pudo recortar " + archivo + " a " + largoPrevio + " bytes: " + ex.getMessage());
+                }
+                return "ERROR|No se pudo volcar el diario: " + e.getMessage();
+            }
+            
+            volcadasDiario = hastaPrincipal;
+            volcadasShard = hastaShard;
+            log("Diario volcado: " + pendientes.size() + " transacciones en " + archivo);
+            return "OK|" + pendientes.size();
+        }
+    }
+    
+    /**
+     * Realiza una transferencia entre cuentas
+     */
+    private static String transferirFondos(String[] parametros) {
+        if (parametros.length < 3) {
+            return "ERROR|Faltan parámetros para transferencia";
+        }
+        
+        try {
+            int cuentaOrigen = Integer.parseInt(parametros[0]);
+            int cuentaDestino = Integer.parseInt(parametros[1]);
+            long monto = CodecMonto.parsear(parametros[2]); // Centavos
+            
+            // Validaciones básicas
+            if (monto <= 0) {
+                return "ERROR|El monto debe ser positivo";
+            }
+            
+            if (!cuentas.containsKey(cuentaOrigen)) {
+                return "ERROR|Cuenta origen no encontrada: " + cuentaOrigen;
+            }
+            
+            if (!cuentas.containsKey(cuentaDestino)) {
+                return "ERROR|Cuenta destino no encontrada: " + cuentaDestino;
+            }
+            
+            // Adquirir locks en orden para evitar deadlocks
             ReentrantLock lockOrigen = cuentaLocks.get(cuentaOrigen);
             ReentrantLock lockDestino = cuentaLocks.get(cuentaDestino);
             
@@ -424,25 +1644,34 @@ public class NodoTrabajador {
                 return "ERROR|Locks no disponibles para las cuentas";
             }
             
+            // Destino caliente: el crédito no toma el lock del destino
+            SaldoDividido destinoCaliente = cuentasCalientes.get(cuentaDestino);
+            if (destinoCaliente != null && cuentaOrigen != cuentaDestino) {
+                String resultado = transferirACuentaCaliente(cuentaOrigen, cuentaDestino, monto,
+                        lockOrigen, destinoCaliente);
+                if (resultado != null) {
+                    return resultado;
+                }
+                // La cuenta dejó de ser caliente: se sigue por el camino normal
+            }
+            
             ReentrantLock firstLock = cuentaOrigen < cuentaDestino ? lockOrigen : lockDestino;
             ReentrantLock secondLock = cuentaOrigen < cuentaDestino ? lockDestino : lockOrigen;
             
-            firstLock.lock();
+            bloquearMidiendoContencion(firstLock, firstLock == lockDestino ? cuentaDestino : -1);
             try {
-                secondLock.lock();
+                bloquearMidiendoContencion(secondLock, secondLock == lockDestino ? cuentaDestino : -1);
                 try {
                     // Verificar saldo suficiente
-                    double saldoOrigen = (double) cuentas.get(cuentaOrigen).get("saldo");
+                    long saldoOrigen = saldoBajoLock(cuentaOrigen);
                     
                     if (saldoOrigen < monto) {
-                        return "ERROR|Saldo insuficiente. Disponible: " + String.format("%.2f", saldoOrigen);
+                        return "ERROR|Saldo insuficiente. Disponible: " + CodecMonto.formatear(saldoOrigen);
                     }
                     
                     // Realizar la transferencia
-                    cuentas.get(cuentaOrigen).put("saldo", saldoOrigen - monto);
-                    
-                    double saldoDestino = (double) cuentas.get(cuentaDestino).get("saldo");
-                    cuentas.get(cuentaDestino).put("saldo", saldoDestino + monto);
+                    ajustarSaldoBajoLock(cuentaOrigen, -monto);
+                    ajustarSaldoBajoLock(cuentaDestino, monto);
                     
                     // Registrar la transacción
                     registrarTransaccion(cuentaOrigen, cuentaDestino, monto);
@@ -464,10 +1693,1019 @@ public class NodoTrabajador {
         }
     }
     
+    /**
+     * TRANSFERIR_LOTE|trabajo|fila:origen:destino:monto;... ->
+     * OK|aplicadas|duplicadas|rechazadas[|fila:motivo;...]
+     * 
+     * Lote de una carga masiva del servidor central. Cada fila se aplica
+     * como una transferencia normal y queda anotada con su número de fila
+     * del trabajo una vez aplicada: si el servidor central reenvía el lote
+     * (reintento o reanudación tras una caída) las filas anotadas se
+     * cuentan como duplicadas y no se aplican de nuevo, y una fila que
+     * otro envío está aplicando se espera. Una fila rechazada (saldo
+     * insuficiente, cuenta inexistente) también queda anotada.
+     */
+    private static String transferirLote(String[] parametros) {
+        if (parametros.length < 2) {
+            return "ERROR|Faltan parámetros para el lote";
+        }
+        
+        FilasTrabajo filas = filasAplicadas.computeIfAbsent(parametros[0], t -> new FilasTrabajo());
+        int nuevas = 0;
+        int duplicadas = 0;
+        StringBuilder rechazos = new StringBuilder();
+        int rechazadas = 0;
+        
+        for (String fila : parametros[1].split(";")) {
+            String[] campos = fila.split(":");
+            int numero;
+            try {
+                numero = Integer.parseInt(campos[0]);
+            } catch (NumberFormatException e) {
+                return "ERROR|Fila inválida en el lote: " + fila;
+            }
+            
+            synchronized (filas) {
+                try {
+                    while (filas.enCurso.get(numero)) {
+                        filas.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return "ERROR|Lote interrumpido";
+                }
+                if (filas.aplicadas.get(numero)) {
+                    duplicadas++;
+                    continue;
+                }
+                filas.enCurso.set(numero);
+            }
+            
+            String[] transferencia = Arrays.copyOfRange(campos, 1, campos.length);
+            String resultado = null;
+            try {
+                resultado = motorShards != null
+                        ? motorShards.transferirFondos(transferencia, Shard.SIN_PLAZO).join()
+                        : transferirFondos(transferencia);
+            } finally {
+                synchronized (filas) {
+                    filas.enCurso.clear(numero);
+                    if (resultado != null) {
+                        filas.aplicadas.set(numero);
+                    }
+                    filas.notifyAll();
+                }
+            }
+            if (resultado.startsWith("OK|")) {
+                nuevas++;
+            } else {
+                rechazadas++;
+                if (rechazos.length() > 0) {
+                    rechazos.append(';');
+                }
+                rechazos.append(numero).append(':')
+                        .append(resultado.substring(resultado.indexOf('|') + 1).replace(';', ',').replace('|', ' '));
+            }
+        }
+        
+        String resultado = "OK|" + nuevas + "|" + duplicadas + "|" + rechazadas;
+        return rechazadas > 0 ? resultado + "|" + rechazos : resultado;
+    }
+    
+    /**
+     * Transferencia hacia una cuenta caliente: sólo se toma el lock del
+     * origen y el crédito va a uno de los sub-saldos del destino.
+     * Devuelve null si el destino dejó de ser caliente antes de acreditar.
+     */
+    private static String transferirACuentaCaliente(int cuentaOrigen, int cuentaDestino, long monto,
+                                                    ReentrantLock lockOrigen, SaldoDividido destino) {
+        lockOrigen.lock();
+        try {
+            long saldoOrigen = saldoBajoLock(cuentaOrigen);
+            if (saldoOrigen < monto) {
+                return "ERROR|Saldo insuficiente. Disponible: " + CodecMonto.formatear(saldoOrigen);
+            }
+            
+            // Se acredita primero: si falla no hay nada que deshacer
+            if (!destino.acreditar(monto)) {
+                return null;
+            }
+            ajustarSaldoBajoLock(cuentaOrigen, -monto);
+        } finally {
+            lockOrigen.unlock();
+        }
+        
+        registrarTransaccion(cuentaOrigen, cuentaDestino, monto);
+        return "OK|Transferencia completada";
+    }
+    
+    /**
+     * Saldo de una cuenta; el llamador tiene el lock de la cuenta
+     */
+    private static long saldoBajoLock(int idCuenta) {
+        SaldoDividido caliente = cuentasCalientes.get(idCuenta);
+        if (caliente != null) {
+            return caliente.saldo();
+        }
+        return (long) cuentas.get(idCuenta).get("saldo");
+    }
+    
+    /**
+     * Suma un monto (negativo para débitos) al saldo de una cuenta; el
+     * llamador tiene el lock de la cuenta, por lo que no puede dejar de
+     * ser caliente mientras tanto
+     */
+    private static void ajustarSaldoBajoLock(int idCuenta, long monto) {
+        SaldoDividido caliente = cuentasCalientes.get(idCuenta);
+        if (caliente != null) {
+            caliente.ajustar(monto);
+            return;
+        }
+        acumularSaldo(idCuenta, cuentas.get(idCuenta), monto);
+    }
+    
+    /**
+     * Toma el lock y, si hubo que esperar por una cuenta destino, lo anota
+     * para el monitor de cuentas calientes (idCuentaDestino = -1 no mide)
+     */
+    private static void bloquearMidiendoContencion(ReentrantLock lock, int idCuentaDestino) {
+        if (lock.tryLock()) {
+            return;
+        }
+        if (idCuentaDestino >= 0) {
+            contencionCreditos.computeIfAbsent(idCuentaDestino, id -> new LongAdder()).increment();
+        }
+        long inicio = System.nanoTime();
+        lock.lock();
+        Trazador.tramo(Trazador.actual(), "espera_lock", inicio, System.nanoTime());
+    }
+    
+    /**
+     * Monitor de cuentas calientes
+     * 
+     * Cada segundo promueve a modo dividido las cuentas cuyos créditos
+     * esperaron el lock más de UMBRAL_PROMOCION veces, y devuelve al modo
+     * normal las cuentas calientes que recibieron menos de
+     * UMBRAL_DEGRADACION créditos durante VENTANAS_PARA_DEGRADAR segundos.
+     */
+    private static void iniciarMonitorCuentasCalientes() {
+        Thread hiloMonitor = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                    
+                    for (Map.Entry<Integer, LongAdder> entrada : contencionCreditos.entrySet()) {
+                        long esperas = entrada.getValue().sumThenReset();
+                        if (esperas >= UMBRAL_PROMOCION && !cuentasCalientes.containsKey(entrada.getKey())) {
+                            promoverCuentaCaliente(entrada.getKey(), esperas);
+                        }
+                        if (esperas == 0) {
+                            contencionCreditos.remove(entrada.getKey(), entrada.getValue());
+                        }
+                    }
+                    
+                    for (Map.Entry<Integer, SaldoDividido> entrada : cuentasCalientes.entrySet()) {
+                        SaldoDividido caliente = entrada.getValue();
+                        if (caliente.creditosVentana.sumThenReset() < UMBRAL_DEGRADACION) {
+                            if (++caliente.ventanasFrias >= VENTANAS_PARA_DEGRADAR) {
+                                degradarCuentaCaliente(entrada.getKey(), caliente);
+                            }
+                        } else {
+                            caliente.ventanasFrias = 0;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log("Error en monitor de cuentas calientes: " + e.getMessage());
+                }
+            }
+        });
+        
+        hiloMonitor.setDaemon(true);
+        hiloMonitor.setName("MonitorCuentasCalientes");
+        hiloMonitor.start();
+    }
+    
+    private static void promoverCuentaCaliente(int idCuenta, long esperas) {
+        ReentrantLock lock = cuentaLocks.get(idCuenta);
+        lock.lock();
+        try {
+            Map<String, Object> cuenta = cuentas.get(idCuenta);
+            long saldo = (long) cuenta.get("saldo");
+            cuentasCalientes.put(idCuenta, new SaldoDividido(saldo, (long) cuenta.get("version")));
+            
+            // Mientras es caliente su hash se calcula al consultar el árbol
+            ArbolMerkle arbol = arbolesMerkle.get(cuenta.get("particion"));
+            if (arbol != null) {
+                arbol.alternar(idCuenta, hashCuenta(idCuenta, saldo, (long) cuenta.get("version")));
+            }
+        } finally {
+            lock.unlock();
+        }
+        log("Cuenta " + idCuenta + " en modo caliente (" + esperas + " esperas/s por el lock)");
+    }
+    
+    private static void degradarCuentaCaliente(int idCuenta, SaldoDividido caliente) {
+        ReentrantLock lock = cuentaLocks.get(idCuenta);
+        lock.lock();
+        try {
+            // Otro hilo (una reparación o el monitor) ya la degradó
+            if (cuentasCalientes.get(idCuenta) != caliente) {
+                return;
+            }
+
+            // Con el lock tomado no hay débitos; se esperan los créditos en curso
+            long saldo = caliente.cerrar();
+            Map<String, Object> cuenta = cuentas.get(idCuenta);
+            long version = caliente.version();
+            cuenta.put("saldo", saldo);
+            cuenta.put("version", version);
+            cuentasCalientes.remove(idCuenta);
+            
+            ArbolMerkle arbol = arbolesMerkle.get(cuenta.get("particion"));
+            if (arbol != null) {
+                arbol.alternar(idCuenta, hashCuenta(idCuenta, saldo, version));
+            }
+        } finally {
+            lock.unlock();
+        }
+        log("Cuenta " + idCuenta + " vuelve al modo normal");
+    }
+    
+    /**
+     * Saldo repartido en sub-saldos para una cuenta caliente
+     * 
+     * Los créditos se suman sin lock a la celda del hilo que acredita
+     * (LongAdder) y las lecturas suman todas las celdas. Los débitos se
+     * siguen haciendo con el lock de la cuenta: como los créditos
+     * concurrentes sólo pueden aumentar el saldo, comprobar fondos sobre la
+     * suma es seguro. Para volver al modo normal se cierra el saldo y se
+     * esperan los créditos que ya habían entrado.
+     * 
+     * Cada crédito o débito cuenta como un cambio: la versión de la cuenta
+     * es la que tenía al promoverse más los cambios, igual que si cada
+     * ajuste hubiera subido la versión en el modo normal.
+     */
+    static class SaldoDividido {
+        private final LongAdder saldo = new LongAdder();
+        private final LongAdder cambios = new LongAdder();
+        private final LongAdder creditosEnCurso = new LongAdder();
+        private final long versionInicial;
+        private volatile boolean cerrado = false;
+        final LongAdder creditosVentana = new LongAdder();
+        int ventanasFrias = 0; // Sólo lo usa el monitor
+        
+        SaldoDividido(long saldoInicial, long versionInicial) {
+            saldo.add(saldoInicial);
+            this.versionInicial = versionInicial;
+        }
+        
+        long saldo() {
+            return saldo.sum();
+        }
+        
+        long version() {
+            return versionInicial + cambios.sum();
+        }
+        
+        /**
+         * {saldo, versión} sin créditos a medio aplicar entre ambas
+         * lecturas (con el lock de la cuenta tampoco hay débitos). Con
+         * créditos sin pausa se conforma con el último par leído.
+         */
+        long[] estado() {
+            for (int intento = 0; ; intento++) {
+                long version = version();
+                long total = saldo.sum();
+                if ((creditosEnCurso.sum() == 0 && version() == version) || intento == 1000) {
+                    return new long[] {total, version};
+                }
+                Thread.onSpinWait();
+            }
+        }
+        
+        /**
+         * Crédito sin lock; devuelve false si el saldo ya se cerró
+         */
+        boolean acreditar(long monto) {
+            if (cerrado) {
+                return false;
+            }
+            creditosEnCurso.increment();
+            try {
+                if (cerrado) {
+                    return false;
+                }
+                saldo.add(monto);
+                cambios.increment();
+                creditosVentana.increment();
+                return true;
+            } finally {
+                creditosEnCurso.decrement();
+            }
+        }
+        
+        /**
+         * Ajuste con el lock de la cuenta tomado
+         */
+        void ajustar(long monto) {
+            saldo.add(monto);
+            cambios.increment();
+            if (monto > 0) {
+                creditosVentana.increment();
+            }
+        }
+        
+        /**
+         * Cierra el saldo (con el lock de la cuenta tomado) y devuelve el
+         * total una vez terminados los créditos en curso
+         */
+        long cerrar() {
+            cerrado = true;
+            while (creditosEnCurso.sum() != 0) {
+                Thread.onSpinWait();
+            }
+            return saldo.sum();
+        }
+    }
+    
+    /**
+     * Suma un monto al saldo de una cuenta no caliente y sube su versión
+     */
+    private static void acumularSaldo(int idCuenta, Map<String, Object> cuenta, long monto) {
+        fijarSaldo(idCuenta, cuenta, (long) cuenta.get("saldo") + monto, (long) cuenta.get("version") + 1);
+    }
+    
+    /**
+     * Fija saldo y versión de una cuenta no caliente y actualiza su hoja en
+     * el árbol Merkle; el llamador tiene el lock de la cuenta o es el hilo
+     * de su shard
+     */
+    private static void fijarSaldo(int idCuenta, Map<String, Object> cuenta, long saldo, long version) {
+        long saldoAnterior = (long) cuenta.get("saldo");
+        long versionAnterior = (long) cuenta.get("version");
+        cuenta.put("saldo", saldo);
+        cuenta.put("version", version);
+        
+        ArbolMerkle arbol = arbolesMerkle.get(cuenta.get("particion"));
+        if (arbol != null) {
+            arbol.alternar(idCuenta, hashCuenta(idCuenta, saldoAnterior, versionAnterior)
+                    ^ hashCuenta(idCuenta, saldo, version));
+        }
+        
+        Set<Integer> cambios = cambiosMigracion.get(cuenta.get("particion"));
+        if (cambios != null) {
+            cambios.add(idCuenta);
+        }
+    }
+    
+    /**
+     * Hash de una cuenta para las hojas del árbol Merkle
+     */
+    private static long hashCuenta(int idCuenta, long saldo, long version) {
+        return mezclar(mezclar(idCuenta) ^ mezclar(saldo + 0x632BE59BD9B4E019L) ^ version);
+    }
+    
+    /**
+     * Mezclador de SplitMix64
+     */
+    private static long mezclar(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+    
+    /**
+     * Crea el árbol Merkle de cada partición con las cuentas cargadas
+     */
+    private static void construirArbolesMerkle() {
+        Map<String, List<Integer>> idsPorParticion = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Object>> entrada : cuentas.entrySet()) {
+            String particion = (String) entrada.getValue().get("particion");
+            idsPorParticion.computeIfAbsent(particion, p -> new ArrayList<>()).add(entrada.getKey());
+        }
+        
+        for (String particion : particiones) {
+            List<Integer> ids = idsPorParticion.getOrDefault(particion, Collections.emptyList());
+            ArbolMerkle arbol = new ArbolMerkle(ids);
+            for (int idCuenta : ids) {
+                Map<String, Object> cuenta = cuentas.get(idCuenta);
+                arbol.alternar(idCuenta, hashCuenta(idCuenta, (long) cuenta.get("saldo"), (long) cuenta.get("version")));
+            }
+            arbolesMerkle.put(particion, arbol);
+        }
+        log("Árboles Merkle construidos para " + arbolesMerkle.size() + " particiones");
+    }
+    
+    /**
+     * Agrupa por cliente las cuentas cargadas
+     */
+    private static void construirIndiceClientes() {
+        Map<Integer, List<Integer>> idsPorCliente = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Object>> entrada : cuentas.entrySet()) {
+            Integer idCliente = (Integer) entrada.getValue().get("id_cliente");
+            idsPorCliente.computeIfAbsent(idCliente, c -> new ArrayList<>()).add(entrada.getKey());
+        }
+        
+        cuentasPorCliente.clear();
+        for (Map.Entry<Integer, List<Integer>> entrada : idsPorCliente.entrySet()) {
+            cuentasPorCliente.put(entrada.getKey(), entrada.getValue().stream().mapToInt(Integer::intValue).sorted().toArray());
+        }
+        log("Índice de clientes construido: " + cuentasPorCliente.size() + " clientes");
+    }
+    
+    private static void indexarCuenta(int idCliente, int idCuenta) {
+        cuentasPorCliente.compute(idCliente, (c, ids) -> {
+            if (ids == null) {
+                return new int[] {idCuenta};
+            }
+            int posicion = Arrays.binarySearch(ids, idCuenta);
+            if (posicion >= 0) {
+                return ids;
+            }
+            posicion = -posicion - 1;
+            int[] nuevos = new int[ids.length + 1];
+            System.arraycopy(ids, 0, nuevos, 0, posicion);
+            nuevos[posicion] = idCuenta;
+            System.arraycopy(ids, posicion, nuevos, posicion + 1, ids.length - posicion);
+            return nuevos;
+        });
+    }
+    
+    private static void desindexarCuenta(int idCliente, int idCuenta) {
+        cuentasPorCliente.computeIfPresent(idCliente, (c, ids) -> {
+            int posicion = Arrays.binarySearch(ids, idCuenta);
+            if (posicion < 0) {
+                return ids;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            int[] nuevos = new int[ids.length - 1];
+            System.arraycopy(ids, 0, nuevos, 0, posicion);
+            System.arraycopy(ids, posicion + 1, nuevos, posicion, ids.length - posicion - 1);
+            return nuevos;
+        });
+    }
+    
+    /**
+     * Árbol Merkle de una partición
+     * 
+     * Cada cuenta cae en una hoja según su ID y la hoja guarda el XOR de los
+     * hashes (id, saldo, versión) de sus cuentas, así cada cambio de saldo se
+     * aplica en O(1) sin lock. Los niveles internos (RAMAS hijos por nodo) se
+     * calculan al consultar el árbol. Dos réplicas se comparan bajando sólo
+     * por los nodos distintos: O(log n) hashes por rango divergente.
+     */
+    static class ArbolMerkle {
+        static final int RAMAS = 16;
+        static final int NIVELES = 3; // Bajo la raíz: 16, 256 y 4096 hojas
+        static final int HOJAS = 4096;
+        
+        private final AtomicLongArray hojas = new AtomicLongArray(HOJAS);
+        final int[][] cuentasPorHoja = new int[HOJAS][];
+        final int totalCuentas;
+        
+        ArbolMerkle(List<Integer> ids) {
+            int[] cantidades = new int[HOJAS];
+            for (int idCuenta : ids) {
+                cantidades[hoja(idCuenta)]++;
+            }
+            for (int i = 0; i < HOJAS; i++) {
+                cuentasPorHoja[i] = new int[cantidades[i]];
+                cantidades[i] = 0;
+            }
+            for (int idCuenta : ids) {
+                int hoja = hoja(idCuenta);
+                cuentasPorHoja[hoja][cantidades[hoja]++] = idCuenta;
+            }
+            totalCuentas = ids.size();
+        }
+        
+        static int hoja(int idCuenta) {
+            return Math.floorMod(idCuenta, HOJAS);
+        }
+        
+        /**
+         * Agrega o quita (XOR) el hash de una cuenta en su hoja
+         */
+        void alternar(int idCuenta, long hash) {
+            hojas.accumulateAndGet(hoja(idCuenta), hash, (a, b) -> a ^ b);
+        }
+        
+        /**
+         * Calcula todos los niveles: [0] es la raíz y [NIVELES] las hojas
+         */
+        long[][] niveles() {
+            long[] actual = new long[HOJAS];
+            for (int i = 0; i < HOJAS; i++) {
+                actual[i] = hojas.get(i);
+            }
+            
+            // El saldo de las cuentas calientes está en sus sub-saldos
+            for (Map.Entry<Integer, SaldoDividido> entrada : cuentasCalientes.entrySet()) {
+                int idCuenta = entrada.getKey();
+                Map<String, Object> cuenta = cuentas.get(idCuenta);
+                if (cuenta != null && arbolesMerkle.get(cuenta.get("particion")) == this) {
+                    long[] estado = entrada.getValue().estado();
+                    actual[hoja(idCuenta)] ^= hashCuenta(idCuenta, estado[0], estado[1]);
+                }
+            }
+            
+            long[][] niveles = new long[NIVELES + 1][];
+            niveles[NIVELES] = actual;
+            for (int nivel = NIVELES - 1; nivel >= 0; nivel--) {
+                long[] hijos = niveles[nivel + 1];
+                long[] nodos = new long[hijos.length / RAMAS];
+                for (int i = 0; i < nodos.length; i++) {
+                    long hash = nivel;
+                    for (int j = 0; j < RAMAS; j++) {
+                        hash = mezclar(hash ^ hijos[i * RAMAS + j]);
+                    }
+                    nodos[i] = hash;
+                }
+                niveles[nivel] = nodos;
+            }
+            return niveles;
+        }
+    }
+    
+    /**
+     * MERKLE_RAIZ|particion -> OK|raiz|cuentas
+     */
+    private static String merkleRaiz(String[] parametros) {
+        ArbolMerkle arbol = parametros.length >= 1 ? arbolesMerkle.get(parametros[0]) : null;
+        if (arbol == null) {
+            return "ERROR|Partición no gestionada";
+        }
+        return "OK|" + Long.toHexString(arbol.niveles()[0][0]) + "|" + arbol.totalCuentas;
+    }
+    
+    /**
+     * MERKLE_HIJOS|particion|nivel|i1,i2,... -> OK|hashes de los RAMAS hijos
+     * de cada nodo indicado, en orden y separados por comas
+     */
+    private static String merkleHijos(String[] parametros) {
+        ArbolMerkle arbol = parametros.length >= 3 ? arbolesMerkle.get(parametros[0]) : null;
+        if (arbol == null) {
+            return "ERROR|Partición no gestionada";
+        }
+        
+        try {
+            int nivel = Integer.parseInt(parametros[1]);
+            if (nivel < 0 || nivel >= ArbolMerkle.NIVELES) {
+                return "ERROR|Nivel inválido";
+            }
+            
+            long[] hijos = arbol.niveles()[nivel + 1];
+            StringBuilder respuesta = new StringBuilder("OK|");
+            for (String indice : parametros[2].split(",")) {
+                int nodo = Integer.parseInt(indice);
+                if (nodo < 0 || (nodo + 1) * ArbolMerkle.RAMAS > hijos.length) {
+                    return "ERROR|Nodo inválido: " + nodo;
+                }
+                for (int j = 0; j < ArbolMerkle.RAMAS; j++) {
+                    if (respuesta.length() > 3) {
+                        respuesta.append(',');
+                    }
+                    respuesta.append(Long.toHexString(hijos[nodo * ArbolMerkle.RAMAS + j]));
+                }
+            }
+            return respuesta.toString();
+        } catch (NumberFormatException e) {
+            return "ERROR|Parámetros inválidos";
+        }
+    }
+    
+    /**
+     * RANGO_CUENTAS|particion|h1,h2,... -> OK|id:saldo:version;... de las
+     * cuentas de esas hojas
+     */
+    private static String rangoCuentas(String[] parametros) {
+        ArbolMerkle arbol = parametros.length >= 2 ? arbolesMerkle.get(parametros[0]) : null;
+        if (arbol == null) {
+            return "ERROR|Partición no gestionada";
+        }
+        
+        try {
+            StringBuilder respuesta = new StringBuilder("OK|");
+            for (String indice : parametros[1].split(",")) {
+                int hoja = Integer.parseInt(indice);
+                if (hoja < 0 || hoja >= ArbolMerkle.HOJAS) {
+                    return "ERROR|Hoja inválida: " + hoja;
+                }
+                for (int idCuenta : arbol.cuentasPorHoja[hoja]) {
+                    long[] estado = leerCuenta(idCuenta);
+                    if (respuesta.length() > 3) {
+                        respuesta.append(';');
+                    }
+                    respuesta.append(idCuenta).append(':');
+                    CodecMonto.escribir(respuesta, estado[0]).append(':').append(estado[1]);
+                }
+            }
+            return respuesta.toString();
+        } catch (NumberFormatException e) {
+            return "ERROR|Parámetros inválidos";
+        }
+    }
+    
+    /**
+     * ESTADO_CUENTAS|id1,id2,... -> OK|id:saldo:version;... de las que
+     * tiene este nodo
+     * 
+     * El servidor central trae así las cuentas de una partición desde su
+     * primaria antes de aplicar un lote en otro nodo.
+     */
+    private static String estadoCuentas(String[] parametros) {
+        if (parametros.length < 1) {
+            return "ERROR|Faltan cuentas";
+        }
+        List<Integer> idsCuentas = new ArrayList<>();
+        try {
+            for (String id : parametros[0].split(",")) {
+                idsCuentas.add(Integer.parseInt(id));
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR|Parámetros inválidos";
+        }
+        StringBuilder respuesta = new StringBuilder("OK|");
+        agregarEstados(respuesta, idsCuentas);
+        return respuesta.toString();
+    }
+    
+    /**
+     * Lee saldo y versión de una cuenta de forma consistente
+     */
+    private static long[] leerCuenta(int idCuenta) {
+        Map<String, Object> cuenta = cuentas.get(idCuenta);
+        if (motorShards != null) {
+            return motorShards.enShard(idCuenta,
+                    () -> new long[] {(long) cuenta.get("saldo"), (long) cuenta.get("version")});
+        }
+        
+        ReentrantLock lock = cuentaLocks.get(idCuenta);
+        lock.lock();
+        try {
+            SaldoDividido caliente = cuentasCalientes.get(idCuenta);
+            if (caliente != null) {
+                return caliente.estado();
+            }
+            return new long[] {(long) cuenta.get("saldo"), (long) cuenta.get("version")};
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * REPARAR|particion|id:saldo:version;... -> OK|aplicadas|omitidas|detalle
+     * 
+     * Aplica el estado que eligió el servidor central salvo que la cuenta
+     * local ya tenga una versión más nueva. Una cuenta caliente vuelve al
+     * modo normal antes de repararla. El detalle lleva una letra por
+     * cuenta, en el orden recibido: A aplicada, V la local ya estaba
+     * (versión más nueva o la misma con igual saldo), C conflicto de
+     * versión, O omitida (no es de la partición).
+     */
+    private static String repararCuentas(String[] parametros) {
+        ArbolMerkle arbol = parametros.length >= 2 ? arbolesMerkle.get(parametros[0]) : null;
+        if (arbol == null) {
+            return "ERROR|Partición no gestionada";
+        }
+        
+        int aplicadas = 0;
+        int omitidas = 0;
+        StringBuilder detalle = new StringBuilder();
+        try {
+            for (String entrada : parametros[1].split(";")) {
+                String[] campos = entrada.split(":");
+                int idCuenta = Integer.parseInt(campos[0]);
+                long saldo = CodecMonto.parsear(campos[1]);
+                long version = Long.parseLong(campos[2]);
+                
+                Map<String, Object> cuenta = cuentas.get(idCuenta);
+                if (cuenta == null || arbolesMerkle.get(cuenta.get("particion")) != arbol) {
+                    omitidas++;
+                    detalle.append('O');
+                    continue;
+                }
+                
+                Character resultado;
+                if (motorShards != null) {
+                    resultado = motorShards.enShard(idCuenta, () -> aplicarReparacion(idCuenta, cuenta, saldo, version));
+                } else {
+                    ReentrantLock lock = cuentaLocks.get(idCuenta);
+                    lock.lock();
+                    try {
+                        SaldoDividido caliente = cuentasCalientes.get(idCuenta);
+                        if (caliente != null) {
+                            degradarCuentaCaliente(idCuenta, caliente);
+                        }
+                        resultado = aplicarReparacion(idCuenta, cuenta, saldo, version);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                
+                if (resultado == 'A') {
+                    aplicadas++;
+                } else {
+                    omitidas++;
+                }
+                detalle.append(resultado.charValue());
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERROR|Parámetros inválidos";
+        }
+        
+        if (aplicadas > 0) {
+            log("Anti-entropía: " + aplicadas + " cuentas reparadas en " + parametros[0]);
+        }
+        return "OK|" + aplicadas + "|" + omitidas + "|" + detalle;
+    }
+    
+    /**
+     * Aplica el estado de otra réplica si es más nuevo. Con la misma
+     * versión y otro saldo las dos réplicas confirmaron cambios distintos:
+     * se conserva el saldo local y el conflicto se cuenta y se registra.
+     * Devuelve la letra del detalle de REPARAR (A, V o C).
+     */
+    private static char aplicarReparacion(int idCuenta, Map<String, Object> cuenta, long saldo, long version) {
+        long versionLocal = (long) cuenta.get("version");
+        long saldoLocal = (long) cuenta.get("saldo");
+        if (version == versionLocal && saldo != saldoLocal) {
+            conflictosReparacion.increment();
+            log("CONFLICTO en reparación de cuenta " + idCuenta + " (versión " + version + "): saldo local " +
+                CodecMonto.formatear(saldoLocal) + ", recibido " + CodecMonto.formatear(saldo) + "; se conserva el local (" +
+                conflictosReparacion.sum() + " conflictos desde el inicio)");
+            return 'C';
+        }
+        if (version <= versionLocal) {
+            return 'V';
+        }
+        fijarSaldo(idCuenta, cuenta, saldo, version);
+        return 'A';
+    }
+    
+    /**
+     * Migración en vivo de una partición entre nodos
+     * 
+     * La coordina el servidor central. En el origen, MIGRAR_INICIO empieza a
+     * anotar las cuentas que cambian. El destino trae la copia completa con
+     * MIGRAR_RECIBIR (EXPORTAR_PARTICION al origen) y luego los cambios con
+     * MIGRAR_DELTA (EXPORTAR_CAMBIOS) hasta que quedan pocos. Con la
+     * partición detenida en el servidor central se trae el último delta, el
+     * destino la activa (MIGRAR_ACTIVAR) y el origen la suelta (MIGRAR_FIN).
+     */
+    private static void atenderMigracion(BufferedReader entrada, PrintWriter salida, int idTarea,
+                                         String operacion, String[] parametros) throws IOException {
+        if (parametros.length < 1) {
+            salida.println("RESPONSE|" + idTarea + "|ERROR|Falta la partición");
+            return;
+        }
+        String particion = parametros[0];
+        String resultado;
+        
+        switch (operacion) {
+            case "EXPORTAR_PARTICION":
+            case "EXPORTAR_CAMBIOS":
+                exportarParticion(salida, particion, "EXPORTAR_CAMBIOS".equals(operacion));
+                return;
+                
+            case "MIGRAR_INICIO":
+                if (!particiones.contains(particion) || !arbolesMerkle.containsKey(particion)) {
+                    resultado = "ERROR|Partición no gestionada";
+                } else {
+                    cambiosMigracion.put(particion, ConcurrentHashMap.newKeySet());
+                    resultado = "OK|" + arbolesMerkle.get(particion).totalCuentas;
+                    log("Migración de " + particion + ": anotando cambios para el destino");
+                }
+                break;
+                
+            case "MIGRAR_RECIBIR":
+            case "MIGRAR_DELTA":
+                if (parametros.length < 3) {
+                    resultado = "ERROR|Faltan el origen de la partición";
+                } else if (particiones.contains(particion)) {
+                    resultado = "ERROR|La partición ya está en este nodo";
+                } else {
+                    boolean completa = "MIGRAR_RECIBIR".equals(operacion);
+                    int recibidas = recibirParticion(particion, parametros[1], Integer.parseInt(parametros[2]), completa);
+                    resultado = "OK|" + recibidas;
+                }
+                break;
+                
+            case "MIGRAR_ACTIVAR":
+                if (!arbolesMerkle.containsKey(particion)) {
+                    resultado = "ERROR|Partición no recibida";
+                } else {
+                    particiones.add(particion);
+                    resultado = "OK|" + arbolesMerkle.get(particion).totalCuentas +
+                            "|vparticiones=" + versionParticiones.incrementAndGet();
+                    log("Migración de " + particion + ": partición activa en este nodo");
+                }
+                break;
+                
+            case "MIGRAR_FIN":
+                cambiosMigracion.remove(particion);
+                particiones.remove(particion);
+                resultado = "OK|" + descartarParticion(particion) +
+                        "|vparticiones=" + versionParticiones.incrementAndGet();
+                log("Migración de " + particion + ": partición entregada");
+                break;
+                
+            case "MIGRAR_CANCELAR":
+                // En el origen deja de anotar; en el destino descarta la copia
+                cambiosMigracion.remove(particion);
+                resultado = "OK|" + (particiones.contains(particion) ? 0 : descartarParticion(particion));
+                log("Migración de " + particion + " cancelada");
+                break;
+                
+            default:
+                resultado = "ERROR|Operación no soportada: " + operacion;
+                break;
+        }
+        
+        salida.println("RESPONSE|" + idTarea + "|" + resultado);
+    }
+    
+    /**
+     * Envía las cuentas de la partición, una por línea
+     * (id|id_cliente|saldo|tipo|version) y al final FIN|cantidad. Con
+     * soloCambios se envían las anotadas desde el envío anterior y las
+     * cuentas calientes, cuyos créditos no pasan por fijarSaldo.
+     */
+    private static void exportarParticion(PrintWriter salida, String particion, boolean soloCambios) {
+        ArbolMerkle arbol = arbolesMerkle.get(particion);
+        Set<Integer> cambios = cambiosMigracion.get(particion);
+        if (arbol == null || cambios == null) {
+            salida.println("ERROR|Partición sin migración en curso");
+            return;
+        }
+        
+        PrintWriter bufferizada = new PrintWriter(new BufferedWriter(salida, 64 * 1024));
+        StringBuilder linea = new StringBuilder(64);
+        int enviadas = 0;
+        
+        if (soloCambios) {
+            // Se quita cada ID antes de leer la cuenta: un cambio posterior lo
+            // vuelve a anotar para el próximo envío
+            List<Integer> ids = new ArrayList<>();
+            for (Iterator<Integer> it = cambios.iterator(); it.hasNext(); ) {
+                ids.add(it.next());
+                it.remove();
+            }
+            for (int idCuenta : cuentasCalientes.keySet()) {
+                Map<String, Object> cuenta = cuentas.get(idCuenta);
+                if (cuenta != null && particion.equals(cuenta.get("particion"))) {
+                    ids.add(idCuenta);
+                }
+            }
+            for (int idCuenta : ids) {
+                enviadas += exportarCuenta(bufferizada, linea, idCuenta);
+            }
+        } else {
+            for (int[] hoja : arbol.cuentasPorHoja) {
+                for (int idCuenta : hoja) {
+                    enviadas += exportarCuenta(bufferizada, linea, idCuenta);
+                }
+            }
+        }
+        
+        bufferizada.println("FIN|" + enviadas);
+        bufferizada.flush();
+    }
+    
+    private static int exportarCuenta(PrintWriter salida, StringBuilder linea, int idCuenta) {
+        Map<String, Object> cuenta = cuentas.get(idCuenta);
+        if (cuenta == null) {
+            return 0;
+        }
+        long[] estado = leerCuenta(idCuenta);
+        linea.setLength(0);
+        linea.append(idCuenta).append('|').append(cuenta.get("id_cliente")).append('|');
+        CodecMonto.escribir(linea, estado[0]).append('|').append(cuenta.get("tipo_cuenta")).append('|').append(estado[1]);
+        salida.println(linea);
+        return 1;
+    }
+    
+    /**
+     * Trae del origen la partición completa o sus cambios y los aplica;
+     * devuelve la cantidad de cuentas recibidas
+     */
+    private static int recibirParticion(String particion, String ipOrigen, int puertoOrigen, boolean completa)
+            throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(ipOrigen, puertoOrigen), 2000);
+            socket.setSoTimeout(60000);
+            PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()), 64 * 1024);
+            salida.println("TASK|0|" + (completa ? "EXPORTAR_PARTICION" : "EXPORTAR_CAMBIOS") + "|" + particion);
+            
+            if (completa) {
+                descartarParticion(particion);
+            }
+            ArbolMerkle arbol = arbolesMerkle.get(particion);
+            if (!completa && arbol == null) {
+                throw new IOException("Partición no recibida: " + particion);
+            }
+            
+            List<Integer> ids = new ArrayList<>();
+            int recibidas = 0;
+            String linea;
+            while ((linea = entrada.readLine()) != null && !linea.startsWith("FIN|")) {
+                String[] campos = linea.split("\\|");
+                if (campos.length < 5) {
+                    throw new IOException("Respuesta del origen inválida: " + linea);
+                }
+                int idCuenta = Integer.parseInt(campos[0]);
+                long saldo = CodecMonto.parsear(campos[2]);
+                long version = Long.parseLong(campos[4]);
+                
+                if (completa) {
+                    Map<String, Object> cuenta = new HashMap<>();
+                    int idCliente = Integer.parseInt(campos[1]);
+                    cuenta.put("id_cliente", idCliente);
+                    cuenta.put("saldo", saldo);
+                    cuenta.put("tipo_cuenta", campos[3]);
+                    cuenta.put("particion", particion);
+                    cuenta.put("version", version);
+                    cuentas.put(idCuenta, cuenta);
+                    cuentaLocks.put(idCuenta, new ReentrantLock());
+                    indexarCuenta(idCliente, idCuenta);
+                    ids.add(idCuenta);
+                } else {
+                    Map<String, Object> cuenta = cuentas.get(idCuenta);
+                    if (cuenta != null) {
+                        aplicarEstado(idCuenta, cuenta, saldo, version);
+                    }
+                }
+                recibidas++;
+            }
+            if (linea == null) {
+                throw new IOException("El origen cerró la conexión antes de terminar");
+            }
+            
+            if (completa) {
+                arbol = new ArbolMerkle(ids);
+                for (int idCuenta : ids) {
+                    Map<String, Object> cuenta = cuentas.get(idCuenta);
+                    arbol.alternar(idCuenta, hashCuenta(idCuenta, (long) cuenta.get("saldo"), (long) cuenta.get("version")));
+                }
+                arbolesMerkle.put(particion, arbol);
+                log("Migración de " + particion + ": " + recibidas + " cuentas recibidas de " + ipOrigen + ":" + puertoOrigen);
+            }
+            return recibidas;
+        }
+    }
+    
+    /**
+     * Fija saldo y versión en el hilo dueño de la cuenta (lock o shard)
+     */
+    private static void aplicarEstado(int idCuenta, Map<String, Object> cuenta, long saldo, long version) {
+        if (motorShards != null) {
+            motorShards.enShard(idCuenta, () -> {
+                fijarSaldo(idCuenta, cuenta, saldo, version);
+                return null;
+            });
+            return;
+        }
+        ReentrantLock lock = cuentaLocks.get(idCuenta);
+        lock.lock();
+        try {
+            fijarSaldo(idCuenta, cuenta, saldo, version);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Quita del nodo las cuentas de una partición; devuelve cuántas quitó
+     */
+    private static int descartarParticion(String particion) {
+        ArbolMerkle arbol = arbolesMerkle.remove(particion);
+        if (arbol == null) {
+            return 0;
+        }
+        for (int[] hoja : arbol.cuentasPorHoja) {
+            for (int idCuenta : hoja) {
+                Map<String, Object> cuenta = cuentas.remove(idCuenta);
+                if (cuenta != null) {
+                    desindexarCuenta((Integer) cuenta.get("id_cliente"), idCuenta);
+                }
+                cuentaLocks.remove(idCuenta);
+                cuentasCalientes.remove(idCuenta);
+            }
+        }
+        return arbol.totalCuentas;
+    }
+    
     /**
      * Registra una transacción
      */
-    private static void registrarTransaccion(int cuentaOrigen, int cuentaDestino, double monto) {
+    private static void registrarTransaccion(int cuentaOrigen, int cuentaDestino, long monto) {
         transaccionLock.lock();
         try {
             int idTransaccion = transacciones.size() + 1;
@@ -482,7 +2720,7 @@ public class NodoTrabajador {
             
             transacciones.add(transaccion);
             
-            log("Transacción registrada: " + cuentaOrigen + " -> " + cuentaDestino + " ($" + monto + ")");
+            log("Transacción registrada: " + cuentaOrigen + " -> " + cuentaDestino + " ($" + CodecMonto.formatear(monto) + ")");
             
         } finally {
             transaccionLock.unlock();
@@ -493,6 +2731,7 @@ public class NodoTrabajador {
      * Registra un mensaje de log
      */
     private static void log(String mensaje) {
+        long inicio = System.nanoTime();
         String timestamp = formatoFecha.format(new Date());
         String logLine = "[" + timestamp + "] " + mensaje;
         
@@ -514,5 +2753,6 @@ public class NodoTrabajador {
         } catch (IOException e) {
             System.err.println("Error escribiendo en log: " + e.getMessage());
         }
+        Trazador.tramo(Trazador.actual(), "log", inicio, System.nanoTime());
     }
 }
@@ -319,6 +319,10 @@ def manejar_conexion_cliente(client_socket, client_address):
                 mensaje_completo = mensaje_completo.strip()
                 if not mensaje_completo: continue
 
+                # Latido del servidor central: se responde sin registrar en el log
+                if mensaje_completo == "PING":
+                    client_socket.sendall(b"PONG\n"); continue
+
                 log_message(f"Recibido de ServidorCentral: {mensaje_completo}")
                 partes = mensaje_completo.split('|')
 
@@ -347,6 +351,31 @@ def manejar_conexion_cliente(client_socket, client_address):
     finally:
         client_socket.close(); log_message(f"Conexión con {client_address} cerrada.")
 
+def iniciar_registro():
+    """Se anuncia al servidor central y renueva el registro cada 10 s."""
+    particiones = ",".join(sorted(particiones_nodo))
+    capacidad = os.cpu_count() or 1
+    mensaje = f"REGISTRO|{ID_NODO}|{PUERTO_NODO}|python|{capacidad}|{particiones}\n"
+
+    def registrar():
+        registrado = False
+        while True:
+            try:
+                with socket.create_connection((IP_SERVIDOR_CENTRAL, PUERTO_SERVIDOR_CENTRAL), timeout=5) as s:
+                    s.sendall(mensaje.encode('utf-8'))
+                    respuesta = s.makefile('r', encoding='utf-8').readline().strip()
+                aceptado = respuesta.startswith("REGISTRADO")
+                if aceptado != registrado:
+                    log_message("Registrado en el servidor central" if aceptado else f"Registro rechazado: {respuesta}")
+                registrado = aceptado
+            except OSError as e:
+                if registrado:
+                    log_message(f"Servidor central no disponible para el registro: {e}")
+                registrado = False
+            time.sleep(10 if registrado else 2)
+
+    threading.Thread(target=registrar, daemon=True).start()
+
 def iniciar_servidor_nodo():
     global PUERTO_NODO
     server_socket = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
@@ -356,6 +385,7 @@ def iniciar_servidor_nodo():
         server_socket.bind(('', PUERTO_NODO))
         server_socket.listen(10) # Aumentado un poco el backlog
         log_message(f"Nodo trabajador Python escuchando en el puerto {PUERTO_NODO}")
+        iniciar_registro()
 
         while True:
             client_socket, client_address = server_socket.accept()
@@ -342,9 +342,43 @@ class NodoTrabajador {
         // Iniciar el servidor
         this.server.listen(this.PUERTO, () => {
             this.log(`Servidor listo para recibir conexiones en puerto ${this.PUERTO}`);
+            this.iniciarRegistro();
         });
     }
     
+    /**
+     * Se anuncia al servidor central y renueva el registro cada 10 s
+     */
+    private iniciarRegistro(): void {
+        const particiones = Array.from(this.particiones).sort().join(',');
+        const mensaje = `REGISTRO|${this.ID_NODO}|${this.PUERTO}|typescript|1|${particiones}\n`;
+        let registrado = false;
+        
+        const registrar = (): void => {
+            let respuesta = '';
+            const socket = net.createConnection({ host: this.IP_SERVIDOR_CENTRAL, port: this.PUERTO_SERVIDOR_CENTRAL });
+            socket.setTimeout(5000);
+            socket.on('connect', () => socket.write(mensaje));
+            socket.on('data', (data) => {
+                respuesta += data.toString();
+                if (respuesta.includes('\n')) {
+                    socket.end();
+                }
+            });
+            socket.on('timeout', () => socket.destroy());
+            socket.on('error', () => { /* se informa en 'close' */ });
+            socket.on('close', () => {
+                const aceptado = respuesta.startsWith('REGISTRADO');
+                if (aceptado !== registrado) {
+                    this.log(aceptado ? 'Registrado en el servidor central' : 'Servidor central no disponible para el registro');
+                }
+                registrado = aceptado;
+                setTimeout(registrar, registrado ? 10000 : 2000).unref();
+            });
+        };
+        registrar();
+    }
+    
     /**
      * Maneja una solicitud entrante
      */
@@ -354,6 +388,12 @@ class NodoTrabajador {
             return;
         }
         
+        // Latido del servidor central: se responde sin registrar en el log
+        if (solicitud === 'PING') {
+            socket.write('PONG\n');
+            return;
+        }
+        
         this.log(`Solicitud recibida: ${solicitud}`);
         
         try {
@@ -519,13 +519,54 @@ var NodoTrabajadorJs = /** @class */ (function () {
         
         this.server.listen(this.PORT, function () {
             _this.log("SERVER escuchando en PORT ".concat(_this.PORT));
+            _this.iniciarRegistro();
         });
     };
 
+    /**
+     * Se anuncia al servidor central y renueva el registro cada 10 s
+     */
+    NodoTrabajadorJs.prototype.iniciarRegistro = function () {
+        var _this = this;
+        var particiones = Array.from(this.particiones).sort().join(',');
+        var mensaje = "REGISTRO|".concat(this.ID, "|").concat(this.PORT, "|javascript|1|").concat(particiones, "\n");
+        var registrado = false;
+        
+        var registrar = function () {
+            var respuesta = '';
+            var socket = net.createConnection({ host: _this.IP_SERVER_CENTRAL, port: 9000 });
+            socket.setTimeout(5000);
+            socket.on('connect', function () { socket.write(mensaje); });
+            socket.on('data', function (data) {
+                respuesta += data.toString();
+                if (respuesta.indexOf('\n') >= 0) {
+                    socket.end();
+                }
+            });
+            socket.on('timeout', function () { socket.destroy(); });
+            socket.on('error', function () { /* se informa en 'close' */ });
+            socket.on('close', function () {
+                var aceptado = respuesta.indexOf('REGISTRADO') === 0;
+                if (aceptado !== registrado) {
+                    _this.log(aceptado ? 'Registrado en el servidor central' : 'Servidor central no disponible para el registro');
+                }
+                registrado = aceptado;
+                setTimeout(registrar, registrado ? 10000 : 2000).unref();
+            });
+        };
+        registrar();
+    };
+
     /**
      * Maneja una solicitud entrante
      */
     NodoTrabajadorJs.prototype.manejarSolicitud = function (solicitud, socket) {
+        // Latido del servidor central: se responde sin registrar en el log
+        if (solicitud === 'PING') {
+            socket.write('PONG\n');
+            return;
+        }
+        
         this.log("Solicitud recibida: ".concat(solicitud));
         
         try {
@@ -0,0 +1,300 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PlanificadorCarriles - Hilos compartidos con una cola por clase de tráfico
+ *
+ * Las consultas de saldo, las transferencias y el tráfico de auditoría
+ * (arqueos, barridos de cuentas, anti-entropía) se encolan por separado.
+ * Dentro de cada carril se atiende primero el plazo más próximo (EDF).
+ *
+ * Entre lectura y transferencia los hilos se reparten por pesos (stride
+ * scheduling): con pesos 3 y 5, bajo saturación 3 de cada 8 tareas
+ * atendidas son lecturas. Un carril que estuvo vacío no acumula crédito.
+ *
+ * La auditoría sólo usa capacidad ociosa: se toma únicamente si los otros
+ * dos carriles están vacíos y nunca ocupa más hilos que su parte, así una
+ * ráfaga interactiva siempre encuentra hilos libres.
+ *
+ * Pesos configurables con "lectura:3,transferencia:5,auditoria:1".
+ */
+public final class PlanificadorCarriles {
+
+    public enum Carril {
+        LECTURA, TRANSFERENCIA, AUDITORIA;
+
+        private static final Carril[] TODOS = values();
+        private final String nombre = name().toLowerCase(Locale.ROOT);
+
+        /**
+         * Nombre en el protocolo ("lectura", "auditoria"...)
+         */
+        public String nombre() {
+            return nombre;
+        }
+
+        /**
+         * Carril por nombre ("lectura", "auditoria"...), null si no existe
+         */
+        public static Carril desdeNombre(String nombre) {
+            if (nombre != null) {
+                for (Carril carril : TODOS) {
+                    if (carril.nombre.equalsIgnoreCase(nombre)) {
+                        return carril;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Carril por defecto de una operación del protocolo; null si la
+         * operación no tiene carril (no se conoce). Cada operación nueva
+         * que pase por los carriles se agrega aquí.
+         */
+        public static Carril deOperacion(String operacion) {
+            switch (operacion) {
+                case "CONSULTAR_SALDO":
+                case "CONSULTAR_CLIENTE":
+                    return LECTURA;
+                case "TRANSFERIR_FONDOS":
+                    return TRANSFERENCIA;
+                case "MERKLE_RAIZ":      // Anti-entropía
+                case "MERKLE_HIJOS":
+                case "RANGO_CUENTAS":
+                case "ESTADO_CUENTAS":   // Cuentas de un lote desde su primaria
+                case "REPARAR":
+                case "TRANSFERIR_LOTE":  // Carga masiva: sólo con capacidad ociosa
+                case "VOLCAR_DIARIO":
+                    return AUDITORIA;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    public static final String PESOS_POR_DEFECTO = "lectura:3,transferencia:5,auditoria:1";
+
+    private static final long ESCALA_PASE = 1L << 20;
+
+    private final String nombre;
+    private final int hilos;
+    private final int maxAuditoria;
+    private final int[] pesos = new int[3];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hayTrabajo = lock.newCondition();
+    private final List<PriorityQueue<Entrada>> colas = new ArrayList<>(3);
+    private final long[] pase = new long[3];
+    private final long[] zancada = new long[3];
+    private long secuencia;
+    private int auditoriaEnCurso;
+
+    // Estadísticas por carril: tareas atendidas y espera acumulada en cola
+    private final AtomicLong[] atendidas = new AtomicLong[3];
+    private final AtomicLong[] esperaNanos = new AtomicLong[3];
+
+    /**
+     * Tarea encolada con su plazo absoluto
+     */
+    private static final class Entrada implements Comparable<Entrada> {
+        final long plazoNanos;
+        final long orden;
+        final long encolada = System.nanoTime();
+        final Runnable accion;
+
+        Entrada(long plazoNanos, long orden, Runnable accion) {
+            this.plazoNanos = plazoNanos;
+            this.orden = orden;
+            this.accion = accion;
+        }
+
+        @Override
+        public int compareTo(Entrada otra) {
+            int porPlazo = Long.compare(plazoNanos - otra.plazoNanos, 0);
+            return porPlazo != 0 ? porPlazo : Long.compare(orden, otra.orden);
+        }
+    }
+
+    public PlanificadorCarriles(String nombre, int hilos, String pesos) {
+        this.nombre = nombre;
+        this.hilos = hilos;
+        fijarPesos(pesos);
+
+        int total = this.pesos[0] + this.pesos[1] + this.pesos[2];
+        this.maxAuditoria = Math.max(1, hilos * this.pesos[Carril.AUDITORIA.ordinal()] / total);
+
+        for (int i = 0; i < 3; i++) {
+            colas.add(new PriorityQueue<>());
+            zancada[i] = ESCALA_PASE / this.pesos[i];
+            atendidas[i] = new AtomicLong();
+            esperaNanos[i] = new AtomicLong();
+        }
+
+        for (int i = 0; i < hilos; i++) {
+            Thread hilo = new Thread(this::atender);
+            hilo.setDaemon(true);
+            hilo.setName(nombre + "-" + i);
+            hilo.start();
+        }
+    }
+
+    private void fijarPesos(String texto) {
+        for (int i = 0; i < 3; i++) {
+            pesos[i] = 1;
+        }
+        for (String par : PESOS_POR_DEFECTO.split(",")) {
+            aplicarPeso(par);
+        }
+        if (texto != null && !texto.isEmpty()) {
+            for (String par : texto.split(",")) {
+                aplicarPeso(par);
+            }
+        }
+    }
+
+    private void aplicarPeso(String par) {
+        String[] claveValor = par.split(":");
+        Carril carril = Carril.desdeNombre(claveValor[0].trim());
+        if (carril == null || claveValor.length != 2) {
+            throw new IllegalArgumentException("Peso de carril inválido: " + par);
+        }
+        pesos[carril.ordinal()] = Math.max(1, Integer.parseInt(claveValor[1].trim()));
+    }
+
+    /**
+     * Encola la tarea en su carril con el plazo absoluto indicado
+     */
+    public void ejecutar(Carril carril, long plazoNanos, Runnable accion) {
+        int i = carril.ordinal();
+        lock.lock();
+        try {
+            if (colas.get(i).isEmpty()) {
+                // Un carril que vuelve a tener trabajo no cobra el tiempo que estuvo vacío
+                pase[i] = Math.max(pase[i], paseMinimoActivo());
+            }
+            colas.get(i).add(new Entrada(plazoNanos, secuencia++, accion));
+            hayTrabajo.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long paseMinimoActivo() {
+        long minimo = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            if (!colas.get(i).isEmpty()) {
+                minimo = Math.min(minimo, pase[i]);
+            }
+        }
+        return minimo == Long.MAX_VALUE ? 0 : minimo;
+    }
+
+    /**
+     * Bucle de cada hilo: toma la siguiente tarea según carril y plazo
+     */
+    private void atender() {
+        while (true) {
+            Entrada entrada;
+            int carril;
+            lock.lock();
+            try {
+                while ((carril = siguienteCarril()) < 0) {
+                    hayTrabajo.awaitUninterruptibly();
+                }
+                entrada = colas.get(carril).poll();
+                if (carril == Carril.AUDITORIA.ordinal()) {
+                    auditoriaEnCurso++;
+                } else {
+                    pase[carril] += zancada[carril];
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            atendidas[carril].incrementAndGet();
+            esperaNanos[carril].addAndGet(System.nanoTime() - entrada.encolada);
+            try {
+                entrada.accion.run();
+            } catch (RuntimeException e) {
+                System.err.println(nombre + ": error en tarea: " + e.getMessage());
+            } finally {
+                if (carril == Carril.AUDITORIA.ordinal()) {
+                    lock.lock();
+                    try {
+                        auditoriaEnCurso--;
+                        if (!colas.get(carril).isEmpty()) {
+                            hayTrabajo.signal();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Carril a atender (-1 si no hay nada que se pueda tomar); se llama con el lock
+     */
+    private int siguienteCarril() {
+        boolean lectura = !colas.get(0).isEmpty();
+        boolean transferencia = !colas.get(1).isEmpty();
+        if (lectura && transferencia) {
+            return pase[0] <= pase[1] ? 0 : 1;
+        }
+        if (lectura) {
+            return 0;
+        }
+        if (transferencia) {
+            return 1;
+        }
+        if (!colas.get(2).isEmpty() && auditoriaEnCurso < maxAuditoria) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Tareas en cola de un carril
+     */
+    public int enCola(Carril carril) {
+        lock.lock();
+        try {
+            return colas.get(carril.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resumen por carril: atendidas, en cola y espera media en cola
+     */
+    public String resumen() {
+        StringBuilder sb = new StringBuilder();
+        for (Carril carril : Carril.values()) {
+            int i = carril.ordinal();
+            long n = atendidas[i].get();
+            double esperaMs = n == 0 ? 0 : esperaNanos[i].get() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(carril.name().toLowerCase()).append('=').append(n)
+              .append(" (cola ").append(enCola(carril))
+              .append(", espera ").append(String.format("%.2f", esperaMs)).append(" ms)");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return nombre + "[hilos=" + hilos + ", pesos=lectura:" + pesos[0] + ",transferencia:" + pesos[1]
+                + ",auditoria:" + pesos[2] + ", auditoría máx " + maxAuditoria + " hilos]";
+    }
+}
@@ -3,10 +3,16 @@ import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.nio.file.*;
 import java.text.DecimalFormat;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 /**
  * ServidorCentral - Coordinador del sistema bancario distribuido
@@ -22,10 +28,11 @@ import java.text.DecimalFormat;
  */
 public class ServidorCentral {
     // Puerto para recibir solicitudes de clientes
-    private static final int PUERTO_SERVIDOR = 9000;
+    private static int PUERTO_SERVIDOR = 9000;
     
-    // Configuración de nodos trabajadores
-    private static List<NodoTrabajador> nodosTrabajadores = new ArrayList<>();
+    // Tabla de miembros: nodos semilla de la configuración y nodos que se
+    // registran al iniciar (el balanceador y los monitores la recorren)
+    private static List<NodoTrabajador> nodosTrabajadores = new CopyOnWriteArrayList<>();
     
     // Mapa para almacenar tareas pendientes
     private static ConcurrentHashMap<Integer, InfoTarea> tareasPendientes = new ConcurrentHashMap<>();
@@ -40,17 +47,132 @@ public class ServidorCentral {
     // Directorios de datos
     private static final String DATA_DIR = "../data";
     
-    // Saldo total para verificación (ARQUEO)
-    private static volatile double saldoTotalSistema = 0;
+    // Saldo total para verificación (ARQUEO), en centavos
+    private static volatile long saldoTotalSistema = 0;
+    
+    // Cuentas por partición (IDs contiguos desde 101); se actualiza en el arqueo
+    private static volatile int cuentasPorParticion = 1250;
+    
+    // Particiones con cuentas de cada cliente (bit N-1 = parteN), armado en el arqueo
+    private static volatile int[] particionesPorCliente = new int[0];
     
     // CONFIGURACIÓN SEGÚN PDF: 3+ particiones, replicación triple
     private static final int NUM_PARTICIONES = 4; // parte1.1, parte1.2, parte2.1, parte2.2
     private static final int FACTOR_REPLICACION = 3;
     
+    // DETECCIÓN DE FALLOS: latidos en paralelo con detector phi-accrual
+    private static final int INTERVALO_LATIDO_MS = 200;
+    private static final int INTERVALO_EVALUACION_MS = 100;
+    private static final double UMBRAL_SOSPECHA = 3.0; // Se drena tráfico del nodo
+    private static final double UMBRAL_FALLO = 8.0;    // Se marca el nodo como no disponible
+    private static ScheduledThreadPoolExecutor poolLatidos;
+    
+    // ARRANQUE GRADUAL: un nodo que termina de calentar o vuelve de una caída
+    // recibe una fracción creciente de las tareas de sus particiones, del 10%
+    // al 100% en RAMPA_MS; mientras calienta sólo recibe tareas si ninguna
+    // réplica lista tiene la partición
+    private static final long RAMPA_MS = 10000;
+    private static final int RAMPA_INICIAL_POR_MIL = 100;
+    
+    // MEMBRESÍA: un nodo registrado que sigue caído este tiempo sale de la tabla
+    private static final long TIEMPO_EXPULSION_MS = 60000;
+    
+    // REINTENTOS: acotados, con backoff aleatorio y presupuesto global
+    private static final int MAX_INTENTOS = 3;
+    private static final int BACKOFF_BASE_MS = 50;
+    private static final int BACKOFF_MAXIMO_MS = 1000;
+    private static final int TIEMPO_CONEXION_NODO_MS = 1000;
+    private static final int TIEMPO_RESPUESTA_NODO_MS = 10000;
+    private static final PresupuestoReintentos presupuestoReintentos = new PresupuestoReintentos(0.1, 10);
+    private static final int HILOS_DESPACHO = 100;
+    
+    // CONEXIONES: el pool de aceptación atiende la primera línea de cada
+    // conexión (registros, ADMIN, clientes de una sola solicitud); una
+    // conexión que sigue abierta pasa a su propio pool y no le quita hilos.
+    // Las tareas que esperan una compuerta de migración lo hacen en un pool
+    // aparte, no en el hilo que lee la conexión
+    private static final int HILOS_ACEPTACION = 100;
+    private static final int MAX_CONEXIONES_PERSISTENTES = 1000;
+    private static final ThreadPoolExecutor poolConexionesPersistentes = new ThreadPoolExecutor(
+            0, MAX_CONEXIONES_PERSISTENTES, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            hiloDemonio("ConexionCliente"));
+    private static final ExecutorService poolCompuertas = Executors.newCachedThreadPool(hiloDemonio("Compuerta"));
+    
+    // CARRILES: lectura, transferencia y auditoría con colas y pesos propios
+    // (--carriles=lectura:3,transferencia:5,auditoria:1)
+    private static PlanificadorCarriles poolDespacho;
+    
+    // QUÓRUM: copias que deben confirmar una transferencia (W) y réplicas que
+    // responden una consulta (R); con 1 se usa un solo nodo, como siempre.
+    // Auditorías: 0 = todas las réplicas disponibles (--quorum=W:R,
+    // --quorum-auditoria=R|todas; por solicitud ...|quorum=N)
+    private static int quorumEscritura = 2;
+    private static int quorumLectura = 1;
+    private static int quorumAuditoria = 0;
+    // Cerrojo por partición de las escrituras con quórum: compartido si la
+    // escritura se ejecuta en la primaria de la partición, exclusivo si la
+    // ejecuta otro nodo (transferencia entre particiones de primarias distintas)
+    private static final Map<String, ReentrantReadWriteLock> cerrojosParticion = new ConcurrentHashMap<>();
+    
+    // CAPTURA: solicitudes recibidas para reproducirlas con Cliente (--captura=archivo,
+    // rota por tamaño con --captura-max-mb=256 y --captura-archivos=4)
+    private static Captura captura;
+    
+    // ADMINISTRACIÓN: sin --token-admin= los comandos ADMIN sólo se aceptan
+    // desde loopback; con token, desde cualquier dirección con ...|token=
+    private static String tokenAdministracion;
+    
+    // REGISTRO: con --token-cluster= los nodos deben anunciarse con ...|token=;
+    // un ip= distinto de la dirección de la conexión sólo se acepta con ese
+    // token o desde loopback
+    private static String tokenCluster;
+    
+    // PLAZOS: presupuesto máximo de una solicitud si el cliente no indica uno
+    private static final long PLAZO_MAXIMO_MS = 30000;
+    private static final ScheduledExecutorService poolReintentos = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r);
+        hilo.setDaemon(true);
+        hilo.setName("Reintentos");
+        return hilo;
+    });
+    
+    // ANTI-ENTROPÍA: comparación de réplicas con los árboles Merkle de los nodos
+    private static final long INTERVALO_ANTIENTROPIA_MS = 30000;
+    private static final int RAMAS_MERKLE = 16;
+    private static final int NIVELES_MERKLE = 3;
+    private static final int MAX_HOJAS_POR_PASADA = 64;
+    
+    // RUTEO: réplicas de cada partición entre los nodos disponibles (se reemplaza entera)
+    private static final String[] NOMBRES_PARTICION = nombresParticion();
+    private static volatile TablaRuteo tablaRuteo = new TablaRuteo(Collections.emptyList());
+    
+    // Texto de los mensajes TASK, reutilizado por hilo
+    private static final ThreadLocal<StringBuilder> MENSAJES = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    
+    // MIGRACIÓN: compuerta de enrutamiento por partición para el corte
+    private static final Map<String, CompuertaParticion> compuertas = new ConcurrentHashMap<>();
+    private static final Object bloqueoMigracion = new Object(); // Una migración a la vez
+    private static final int MAX_RONDAS_DELTA = 5;
+    private static final int CAMBIOS_PARA_CORTE = 100;
+    private static final long ESPERA_DRENADO_MS = 2000;
+    private static final int TIEMPO_COPIA_MS = 600000;
+    
+    // CARGA MASIVA: archivos de transferencias en lotes por par de particiones
+    // (ADMIN|INGERIR|ruta[|lote=500][|ventana=8])
+    private static final int FILAS_POR_LOTE = 500;
+    private static final int LOTES_EN_VUELO = 8;
+    private static final int TIEMPO_LOTE_MS = 120000;
+    private static final long INTERVALO_CONTROL_MS = 1000;
+    private static final long INTERVALO_PROGRESO_MS = 5000;
+    
     // CONTADORES PARA ESTADÍSTICAS
     private static AtomicInteger contadorConsultas = new AtomicInteger(0);
     private static AtomicInteger contadorTransferencias = new AtomicInteger(0);
     private static AtomicInteger contadorErrores = new AtomicInteger(0);
+    private static AtomicInteger contadorReintentos = new AtomicInteger(0);
+    private static AtomicInteger contadorReintentosDenegados = new AtomicInteger(0);
+    private static AtomicInteger contadorQuorumFallido = new AtomicInteger(0);
+    private static AtomicInteger contadorLecturasReparadas = new AtomicInteger(0);
     
     /**
      * Clase que representa un nodo trabajador
@@ -59,9 +181,25 @@ public class ServidorCentral {
         String ip;
         int puerto;
         String lenguaje;
-        boolean disponible;
-        Set<String> particiones = new HashSet<>();
-        int cargaActual = 0; // Para balanceador de carga
+        volatile boolean disponible;
+        volatile boolean sospechoso = false; // phi sobre UMBRAL_SOSPECHA
+        volatile Set<String> particiones = new HashSet<>();
+        long versionParticiones = -1; // La que anuncia el nodo (vparticiones=); -1 si no la conoce
+        volatile int capacidad = 1; // Tareas concurrentes que anuncia el nodo
+        final AtomicInteger cargaActual = new AtomicInteger(); // Para balanceador de carga
+        volatile boolean listo = true; // false mientras el nodo informa estado=calentando
+        volatile int rampaPorMil = 1000; // Fracción de tareas admitida durante el arranque gradual
+        long rampaDesdeNanos = 0;
+        boolean registrado = false; // false para los nodos semilla
+        long caidoDesdeNanos = 0;
+        ScheduledFuture<?> latido;
+        
+        // Detección de fallos
+        final DetectorPhiAccrual detector = new DetectorPhiAccrual(INTERVALO_LATIDO_MS);
+        final CircuitoNodo circuito = new CircuitoNodo();
+        Socket socketLatido;
+        BufferedReader entradaLatido;
+        PrintWriter salidaLatido;
         
         public NodoTrabajador(String ip, int puerto, String lenguaje) {
             this.ip = ip;
@@ -73,7 +211,289 @@ public class ServidorCentral {
         @Override
         public String toString() {
             return "Nodo[ip=" + ip + ", puerto=" + puerto + ", lenguaje=" + lenguaje + 
-                   ", disponible=" + disponible + ", carga=" + cargaActual + "]";
+                   ", disponible=" + disponible + ", carga=" + cargaActual + "/" + capacidad + "]";
+        }
+    }
+    
+    /**
+     * Tabla de ruteo: para cada partición, los nodos disponibles y listos
+     * que la tienen (los que calientan sólo si no hay otros), y la lista de
+     * todos los disponibles para cuando ninguno sirve. Se arma de nuevo
+     * cuando cambia la disponibilidad, el estado listo, la membresía o las
+     * particiones de un nodo y se publica de una vez; el despacho sólo la
+     * lee, sin locks ni objetos nuevos.
+     */
+    static final class TablaRuteo {
+        final NodoTrabajador[][] replicas; // Índice = número de partición
+        final NodoTrabajador[] disponibles;
+        
+        TablaRuteo(List<NodoTrabajador> nodos) {
+            List<NodoTrabajador> vivos = new ArrayList<>();
+            for (NodoTrabajador nodo : nodos) {
+                if (nodo.disponible) {
+                    vivos.add(nodo);
+                }
+            }
+            disponibles = vivos.toArray(new NodoTrabajador[0]);
+            replicas = new NodoTrabajador[NUM_PARTICIONES + 1][];
+            for (int particion = 0; particion <= NUM_PARTICIONES; particion++) {
+                List<NodoTrabajador> listos = new ArrayList<>();
+                List<NodoTrabajador> calentando = new ArrayList<>();
+                for (NodoTrabajador nodo : vivos) {
+                    if (nodo.particiones.contains(NOMBRES_PARTICION[particion])) {
+                        (nodo.listo ? listos : calentando).add(nodo);
+                    }
+                }
+                replicas[particion] = (listos.isEmpty() ? calentando : listos).toArray(new NodoTrabajador[0]);
+            }
+        }
+    }
+    
+    private static String[] nombresParticion() {
+        String[] nombres = new String[NUM_PARTICIONES + 1];
+        for (int particion = 0; particion <= NUM_PARTICIONES; particion++) {
+            nombres[particion] = "parte" + particion;
+        }
+        return nombres;
+    }
+    
+    /**
+     * Publica una tabla de ruteo nueva con el estado actual de los nodos
+     */
+    private static synchronized void reconstruirRuteo() {
+        tablaRuteo = new TablaRuteo(nodosTrabajadores);
+    }
+    
+    /**
+     * Detector de fallos phi-accrual (Hayashibara et al.)
+     * 
+     * Mantiene una ventana de intervalos entre latidos y calcula phi, la
+     * sospecha de que el nodo haya caído dado el tiempo transcurrido desde
+     * la última señal de vida. phi = 1 equivale a ~10% de error al
+     * declararlo caído, phi = 8 a ~1e-8.
+     * 
+     * Un corte no es un intervalo normal: se registra acotado a
+     * FACTOR_INTERVALO_MAXIMO veces el esperado, y al reconectar el canal
+     * de latidos la ventana vuelve a empezar, así la caída siguiente se
+     * detecta igual de rápido.
+     */
+    static class DetectorPhiAccrual {
+        private static final int TAMANO_VENTANA = 100;
+        private static final double DESVIACION_MINIMA_MS = 50.0;
+        private static final double FACTOR_INTERVALO_MAXIMO = 3.0;
+        
+        private final double intervaloEsperadoMs;
+        private final double[] intervalos = new double[TAMANO_VENTANA];
+        private int cantidad = 0;
+        private int posicion = 0;
+        private double suma = 0;
+        private double sumaCuadrados = 0;
+        private long ultimoLatidoNanos;
+        private long ultimaActividadNanos;
+        
+        DetectorPhiAccrual(double intervaloEsperadoMs) {
+            this.intervaloEsperadoMs = intervaloEsperadoMs;
+            reiniciar(System.nanoTime());
+        }
+        
+        /**
+         * Registra la llegada de un latido y su intervalo
+         */
+        synchronized void registrarLatido(long ahoraNanos) {
+            double intervaloMs = (ahoraNanos - ultimoLatidoNanos) / 1_000_000.0;
+            agregarIntervalo(Math.min(intervaloMs, intervaloEsperadoMs * FACTOR_INTERVALO_MAXIMO));
+            ultimoLatidoNanos = ahoraNanos;
+            ultimaActividadNanos = Math.max(ultimaActividadNanos, ahoraNanos);
+        }
+        
+        /**
+         * Vacía la ventana (canal de latidos reconectado) y cuenta el
+         * latido actual
+         */
+        synchronized void reiniciar(long ahoraNanos) {
+            Arrays.fill(intervalos, 0);
+            cantidad = 0;
+            posicion = 0;
+            suma = 0;
+            sumaCuadrados = 0;
+            // Semilla: se asume que los latidos llegan al ritmo esperado
+            agregarIntervalo(intervaloEsperadoMs);
+            ultimoLatidoNanos = ahoraNanos;
+            ultimaActividadNanos = Math.max(ultimaActividadNanos, ahoraNanos);
+        }
+        
+        /**
+         * Registra otra señal de vida (respuesta a una tarea) sin alterar
+         * la estadística de intervalos
+         */
+        synchronized void registrarActividad(long ahoraNanos) {
+            ultimaActividadNanos = Math.max(ultimaActividadNanos, ahoraNanos);
+        }
+        
+        synchronized double phi(long ahoraNanos) {
+            double transcurridoMs = (ahoraNanos - ultimaActividadNanos) / 1_000_000.0;
+            double media = suma / cantidad;
+            double varianza = sumaCuadrados / cantidad - media * media;
+            double desviacion = Math.max(Math.sqrt(Math.max(varianza, 0)), DESVIACION_MINIMA_MS);
+            
+            // Aproximación logística de la CDF normal
+            double y = (transcurridoMs - media) / desviacion;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (transcurridoMs > media) {
+                return -Math.log10(e / (1.0 + e));
+            }
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+        
+        private void agregarIntervalo(double intervaloMs) {
+            if (cantidad == TAMANO_VENTANA) {
+                double saliente = intervalos[posicion];
+                suma -= saliente;
+                sumaCuadrados -= saliente * saliente;
+            } else {
+                cantidad++;
+            }
+            intervalos[posicion] = intervaloMs;
+            posicion = (posicion + 1) % TAMANO_VENTANA;
+            suma += intervaloMs;
+            sumaCuadrados += intervaloMs * intervaloMs;
+        }
+    }
+    
+    /**
+     * Circuit breaker por nodo (cerrado / abierto / semiabierto)
+     * 
+     * Tras FALLOS_PARA_ABRIR fallos de conexión consecutivos el circuito se
+     * abre y el nodo deja de recibir tareas. Pasado TIEMPO_ABIERTO_MS se deja
+     * pasar una única tarea de prueba: si tiene éxito se cierra, si falla
+     * vuelve a abrirse.
+     */
+    static class CircuitoNodo {
+        enum Estado { CERRADO, ABIERTO, SEMIABIERTO }
+        
+        // Resultado de permitirSolicitud: PRUEBA si la tarea se llevó la
+        // única prueba del circuito semiabierto
+        enum Permiso { DENEGADO, NORMAL, PRUEBA }
+        
+        private static final int FALLOS_PARA_ABRIR = 5;
+        private static final long TIEMPO_ABIERTO_MS = 2000;
+        
+        private volatile Estado estado = Estado.CERRADO; // Se lee sin lock en el balanceador
+        private int fallosConsecutivos = 0;
+        private long abiertoDesde = 0;
+        private boolean pruebaEnCurso = false;
+        
+        /**
+         * Indica si el nodo puede recibir tráfico, sin reservar la prueba
+         */
+        boolean admiteTrafico() {
+            return estado == Estado.CERRADO || admiteTraficoBloqueado();
+        }
+        
+        private synchronized boolean admiteTraficoBloqueado() {
+            switch (estado) {
+                case CERRADO:
+                    return true;
+                case ABIERTO:
+                    return System.currentTimeMillis() - abiertoDesde >= TIEMPO_ABIERTO_MS;
+                default:
+                    return !pruebaEnCurso;
+            }
+        }
+        
+        /**
+         * Reserva el envío de una tarea; en semiabierto sólo pasa una
+         */
+        synchronized Permiso permitirSolicitud() {
+            if (estado == Estado.ABIERTO && System.currentTimeMillis() - abiertoDesde >= TIEMPO_ABIERTO_MS) {
+                estado = Estado.SEMIABIERTO;
+                pruebaEnCurso = false;
+            }
+            switch (estado) {
+                case CERRADO:
+                    return Permiso.NORMAL;
+                case SEMIABIERTO:
+                    if (pruebaEnCurso) {
+                        return Permiso.DENEGADO;
+                    }
+                    pruebaEnCurso = true;
+                    return Permiso.PRUEBA;
+                default:
+                    return Permiso.DENEGADO;
+            }
+        }
+        
+        /**
+         * Libera la reserva de una solicitud que finalmente no se envió;
+         * sólo libera la prueba si esa solicitud era la que la tenía
+         */
+        synchronized void cancelarSolicitud(Permiso permiso) {
+            if (permiso == Permiso.PRUEBA) {
+                pruebaEnCurso = false;
+            }
+        }
+        
+        synchronized void registrarExito() {
+            estado = Estado.CERRADO;
+            fallosConsecutivos = 0;
+            pruebaEnCurso = false;
+        }
+        
+        /**
+         * Registra un fallo; devuelve true si el circuito acaba de abrirse
+         */
+        synchronized boolean registrarFallo() {
+            fallosConsecutivos++;
+            pruebaEnCurso = false;
+            if (estado == Estado.SEMIABIERTO ||
+                (estado == Estado.CERRADO && fallosConsecutivos >= FALLOS_PARA_ABRIR)) {
+                estado = Estado.ABIERTO;
+                abiertoDesde = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+        
+        synchronized Estado getEstado() {
+            return estado;
+        }
+    }
+    
+    /**
+     * Presupuesto global de reintentos (token bucket)
+     * 
+     * Cada solicitud nueva deposita una fracción de ficha y cada reintento
+     * consume una ficha completa, así los reintentos nunca superan ese
+     * porcentaje del tráfico. Se garantiza un mínimo de reintentos por
+     * segundo para que el tráfico bajo también pueda reintentar.
+     */
+    static class PresupuestoReintentos {
+        private final double proporcion;
+        private final double minimoPorSegundo;
+        private final double maximoFichas;
+        private double fichas;
+        private long ultimaRecarga = System.nanoTime();
+        
+        PresupuestoReintentos(double proporcion, double minimoPorSegundo) {
+            this.proporcion = proporcion;
+            this.minimoPorSegundo = minimoPorSegundo;
+            this.maximoFichas = Math.max(minimoPorSegundo, 100 * proporcion);
+            this.fichas = minimoPorSegundo;
+        }
+        
+        synchronized void depositar() {
+            fichas = Math.min(maximoFichas, fichas + proporcion);
+        }
+        
+        synchronized boolean retirar() {
+            long ahora = System.nanoTime();
+            fichas = Math.min(maximoFichas, fichas + (ahora - ultimaRecarga) / 1e9 * minimoPorSegundo);
+            ultimaRecarga = ahora;
+            if (fichas >= 1.0) {
+                fichas -= 1.0;
+                return true;
+            }
+            return false;
         }
     }
     
@@ -86,13 +506,25 @@ public class ServidorCentral {
         String[] parametros;
         CompletableFuture<String> resultadoFuturo;
         long tiempoCreacion;
+        long plazoNanos; // Instante (System.nanoTime) en que el cliente deja de esperar
+        PlanificadorCarriles.Carril carril;
+        String traza; // null si la solicitud no se traza
+        int quorum = 1; // Réplicas que deben responder (0 = todas las disponibles)
+        int intentos = 0;
+        List<NodoTrabajador> nodosIntentados = new ArrayList<>(MAX_INTENTOS);
         
-        public InfoTarea(int idTarea, String operacion, String[] parametros) {
+        public InfoTarea(int idTarea, String operacion, String[] parametros, long plazoMs) {
             this.idTarea = idTarea;
             this.operacion = operacion;
             this.parametros = parametros;
+            this.carril = PlanificadorCarriles.Carril.deOperacion(operacion);
             this.resultadoFuturo = new CompletableFuture<>();
             this.tiempoCreacion = System.currentTimeMillis();
+            this.plazoNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plazoMs);
+        }
+        
+        long restanteNanos() {
+            return plazoNanos - System.nanoTime();
         }
     }
     
@@ -100,15 +532,47 @@ public class ServidorCentral {
      * Método principal
      */
     public static void main(String[] args) {
+        // Opciones --clave=valor
+        Map<String, String> opciones = LineaComandos.opciones(args);
+        
         try {
+            PUERTO_SERVIDOR = Integer.parseInt(opciones.getOrDefault("puerto", String.valueOf(PUERTO_SERVIDOR)));
+            poolDespacho = new PlanificadorCarriles("Despacho", HILOS_DESPACHO,
+                    opciones.getOrDefault("carriles", PlanificadorCarriles.PESOS_POR_DEFECTO));
+            
+            // Quórum de escritura y lectura: --quorum=2:1
+            if (opciones.containsKey("quorum")) {
+                String[] quorum = opciones.get("quorum").split(":");
+                quorumEscritura = parsearQuorum(quorum[0]);
+                quorumLectura = quorum.length > 1 ? parsearQuorum(quorum[1]) : quorumLectura;
+            }
+            quorumAuditoria = parsearQuorum(opciones.getOrDefault("quorum-auditoria", String.valueOf(quorumAuditoria)));
+            tokenAdministracion = opciones.get("token-admin");
+            tokenCluster = opciones.get("token-cluster");
+            
+            // Trazas: fracción de solicitudes sin traza del cliente que se trazan
+            Trazador.iniciar("coordinador", Double.parseDouble(opciones.getOrDefault("muestreo", "0")));
+            
+            if (opciones.containsKey("captura")) {
+                captura = Captura.abrir(Paths.get(opciones.get("captura")),
+                        Long.parseLong(opciones.getOrDefault("captura-max-mb",
+                                String.valueOf(Captura.MAX_BYTES_POR_DEFECTO >> 20))) << 20,
+                        Integer.parseInt(opciones.getOrDefault("captura-archivos",
+                                String.valueOf(Captura.MAX_ARCHIVOS_POR_DEFECTO))));
+                log("Capturando solicitudes en " + captura.getArchivo());
+            }
+            
             // Crear directorios si no existen
             crearDirectorios();
             
             // SEGÚN PDF: Crear miles de cuentas iniciales
             inicializarSistemaCompleto();
             
-            // Cargar la configuración de nodos trabajadores
-            cargarConfiguracionNodos();
+            // Cargar la configuración de nodos trabajadores (semillas); con
+            // --semillas=no sólo se usan los nodos que se registran
+            if (!"no".equals(opciones.get("semillas"))) {
+                cargarConfiguracionNodos();
+            }
             
             // Iniciar monitor de estado de nodos (TOLERANCIA A FALLOS)
             iniciarMonitorNodos();
@@ -119,15 +583,20 @@ public class ServidorCentral {
             // Iniciar monitor de estadísticas
             iniciarMonitorEstadisticas();
             
+            // Anti-entropía entre las réplicas de cada partición
+            iniciarAntiEntropia();
+            
             // Pool de hilos para manejar solicitudes de clientes (ALTA DISPONIBILIDAD)
-            ExecutorService poolHilosClientes = Executors.newFixedThreadPool(100);
+            ExecutorService poolHilosClientes = Executors.newFixedThreadPool(HILOS_ACEPTACION);
             
             log("=== SERVIDOR CENTRAL BANCARIO DISTRIBUIDO ===");
             log("Puerto servidor: " + PUERTO_SERVIDOR);
             log("Nodos trabajadores configurados: " + nodosTrabajadores.size());
-            log("Saldo total del sistema: " + new DecimalFormat("#,##0.00").format(saldoTotalSistema));
+            log("Saldo total del sistema: " + formatoMonto(saldoTotalSistema));
             log("Particiones configuradas: " + NUM_PARTICIONES);
             log("Factor de replicación: " + FACTOR_REPLICACION);
+            log("Quórum: W=" + quorumEscritura + " R=" + quorumLectura + " auditoría R=" +
+                (quorumAuditoria == 0 ? "todas" : String.valueOf(quorumAuditoria)));
             log("Sistema listo para recibir solicitudes...");
             
             try (ServerSocket socketServidor = new ServerSocket(PUERTO_SERVIDOR)) {
@@ -135,9 +604,10 @@ public class ServidorCentral {
                     try {
                         // Esperar conexión de cliente
                         Socket socketCliente = socketServidor.accept();
+                        long aceptada = System.nanoTime();
                         
                         // Procesar solicitud en un hilo separado (CONCURRENCIA)
-                        poolHilosClientes.submit(() -> manejarSolicitudCliente(socketCliente));
+                        poolHilosClientes.submit(() -> manejarSolicitudCliente(socketCliente, aceptada));
                         
                     } catch (IOException e) {
                         log("Error aceptando conexión: " + e.getMessage());
@@ -188,43 +658,30 @@ public class ServidorCentral {
         // ARQUEO: Calcular saldo total del sistema
         realizarArqueoCompleto();
         log("Sistema inicializado. Total cuentas creadas. Saldo total: " + 
-            new DecimalFormat("#,##0.00").format(saldoTotalSistema));
+            formatoMonto(saldoTotalSistema));
     }
     
     /**
      * SEGÚN PDF: Crea miles de cuentas distribuidas en particiones
+     * 
+     * Usa GeneradorDatos con los parámetros por defecto (5000 cuentas, 1000
+     * clientes); para juegos de datos grandes se ejecuta GeneradorDatos aparte.
      */
     private static void crearMilesDeCuentas() {
         try {
-            Random random = new Random(12345); // Seed fijo para reproducibilidad
-            int totalCuentas = 5000; // 5 mil cuentas
-            int cuentasPorParticion = totalCuentas / NUM_PARTICIONES;
-            
-            // Crear clientes primero
-            crearClientes(totalCuentas);
+            GeneradorDatos.Parametros parametros = new GeneradorDatos.Parametros();
+            parametros.particiones = NUM_PARTICIONES;
+            parametros.directorio = DATA_DIR;
             
-            log("Creando " + totalCuentas + " cuentas distribuidas en " + NUM_PARTICIONES + " particiones...");
+            log("Creando " + parametros.cuentas + " cuentas y " + parametros.clientes + " clientes distribuidos en "
+                + NUM_PARTICIONES + " particiones...");
             
+            GeneradorDatos.Resultado resultado = GeneradorDatos.generar(parametros);
             for (int particion = 1; particion <= NUM_PARTICIONES; particion++) {
-                String archivoParticion = DATA_DIR + "/parte" + particion + "/cuentas_parte" + particion + ".txt";
-                
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(archivoParticion))) {
-                    int inicioId = (particion - 1) * cuentasPorParticion + 1;
-                    int finId = particion * cuentasPorParticion;
-                    
-                    for (int i = inicioId; i <= finId; i++) {
-                        int idCuenta = 100 + i; // IDs desde 101
-                        int idCliente = 1 + (i % 1000); // Clientes del 1 al 1000
-                        double saldo = 500 + random.nextDouble() * 4500; // Saldo entre 500 y 5000
-                        String tipoCuenta = (i % 3 == 0) ? "Ahorros" : "Corriente";
-                        
-                        writer.write(String.format("%d|%d|%.2f|%s\n", idCuenta, idCliente, saldo, tipoCuenta));
-                        saldoTotalSistema += saldo;
-                    }
-                }
-                
-                log("Partición " + particion + " creada: " + cuentasPorParticion + " cuentas");
+                log("Partición " + particion + " creada: " + resultado.cuentasPorParticion[particion - 1] + " cuentas");
             }
+            cuentasPorParticion = (int) parametros.cuentasPorParticion();
+            saldoTotalSistema = resultado.saldoTotal;
             
             // Crear archivo de transacciones vacío
             try {
@@ -233,43 +690,22 @@ public class ServidorCentral {
                 // El archivo ya existe, está bien
             }
             
-            log("Creación de cuentas completada. Total: " + totalCuentas + " cuentas");
+            log("Creación de cuentas completada. Total: " + parametros.cuentas + " cuentas en "
+                + String.format("%.2f", resultado.nanos / 1e9) + " s");
             
         } catch (IOException e) {
             log("Error creando cuentas: " + e.getMessage());
         }
     }
     
-    /**
-     * Crea los clientes del sistema
-     */
-    private static void crearClientes(int totalCuentas) {
-        try {
-            String[] nombres = {"Juan", "María", "Carlos", "Ana", "Pedro", "Laura", "Miguel", "Sofia", "Diego", "Carmen"};
-            String[] apellidos = {"Pérez", "López", "García", "Martínez", "Rodríguez", "González", "Hernández", "Díaz", "Moreno", "Muñoz"};
-            
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(DATA_DIR + "/clientes/clientes.txt"))) {
-                for (int i = 1; i <= 1000; i++) { // 1000 clientes únicos
-                    String nombre = nombres[i % nombres.length] + " " + apellidos[i % apellidos.length];
-                    String email = "cliente" + i + "@banco.com";
-                    String telefono = "9" + String.format("%08d", 10000000 + i);
-                    
-                    writer.write(String.format("%d|%s|%s|%s\n", i, nombre, email, telefono));
-                }
-            }
-            
-            log("1000 clientes creados exitosamente");
-        } catch (IOException e) {
-            log("Error creando clientes: " + e.getMessage());
-        }
-    }
-    
     /**
      * SEGÚN PDF: Realiza arqueo completo del sistema
      */
     private static void realizarArqueoCompleto() {
-        double saldoCalculado = 0;
+        long saldoCalculado = 0;
         int totalCuentas = 0;
+        int mayorParticion = 0;
+        int[] clientesPorParticion = new int[Math.max(particionesPorCliente.length, 1024)];
         
         try {
             for (int particion = 1; particion <= NUM_PARTICIONES; particion++) {
@@ -277,27 +713,41 @@ public class ServidorCentral {
                 File archivo = new File(archivoParticion);
                 
                 if (archivo.exists()) {
+                    int cuentasAntes = totalCuentas;
                     try (BufferedReader reader = new BufferedReader(new FileReader(archivo))) {
                         String linea;
                         while ((linea = reader.readLine()) != null) {
                             String[] partes = linea.split("\\|");
                             if (partes.length >= 3) {
                                 try {
-                                    double saldo = Double.parseDouble(partes[2]);
+                                    long saldo = CodecMonto.parsear(partes[2]);
                                     saldoCalculado += saldo;
                                     totalCuentas++;
+                                    int idCliente = Integer.parseInt(partes[1]);
+                                    if (idCliente >= clientesPorParticion.length) {
+                                        clientesPorParticion = Arrays.copyOf(clientesPorParticion,
+                                                Math.max(idCliente + 1, clientesPorParticion.length * 2));
+                                    }
+                                    clientesPorParticion[idCliente] |= 1 << (particion - 1);
                                 } catch (NumberFormatException e) {
                                     log("Error parseando saldo en línea: " + linea);
                                 }
                             }
                         }
                     }
+                    mayorParticion = Math.max(mayorParticion, totalCuentas - cuentasAntes);
                 }
             }
             
+            // Las particiones tienen rangos contiguos de IDs del mismo tamaño
+            // (la última puede quedar incompleta)
+            if (mayorParticion > 0) {
+                cuentasPorParticion = mayorParticion;
+            }
             saldoTotalSistema = saldoCalculado;
+            particionesPorCliente = clientesPorParticion;
             log("ARQUEO COMPLETADO - Total cuentas: " + totalCuentas + 
-                ", Saldo total: " + new DecimalFormat("#,##0.00").format(saldoTotalSistema));
+                ", Saldo total: " + formatoMonto(saldoTotalSistema));
                 
         } catch (IOException e) {
             log("Error en arqueo: " + e.getMessage());
@@ -326,6 +776,7 @@ public class ServidorCentral {
         nodosTrabajadores.add(nodo2);
         nodosTrabajadores.add(nodo3);
         nodosTrabajadores.add(nodo4);
+        reconstruirRuteo();
         
         log("CONFIGURACIÓN DE NODOS:");
         for (NodoTrabajador nodo : nodosTrabajadores) {
@@ -334,37 +785,241 @@ public class ServidorCentral {
     }
     
 
+    /**
+     * TOLERANCIA A FALLOS: Latidos en paralelo y detector phi-accrual
+     * 
+     * Cada nodo tiene su propio latido periódico sobre una conexión
+     * persistente, así un nodo caído no retrasa la verificación de los
+     * demás. Una tarea aparte evalúa phi para todos los nodos y actualiza
+     * su estado: sobre UMBRAL_SOSPECHA el balanceador le drena tráfico,
+     * sobre UMBRAL_FALLO se marca como no disponible.
+     */
     private static void iniciarMonitorNodos() {
-        Thread hiloMonitor = new Thread(() -> {
-            while (true) {
-                for (NodoTrabajador nodo : nodosTrabajadores) {
-                    boolean estaVivo = verificarEstadoNodo(nodo);
-                    
-                    if (nodo.disponible != estaVivo) {
-                        nodo.disponible = estaVivo;
-                        String estado = estaVivo ? "DISPONIBLE" : "NO DISPONIBLE";
-                        log("FAILOVER: Nodo " + nodo.ip + ":" + nodo.puerto + " -> " + estado);
-                        
-                        if (!estaVivo) {
-                            // Resetear carga del nodo que falló
-                            nodo.cargaActual = 0;
-                        }
-                    }
+        poolLatidos = new ScheduledThreadPoolExecutor(nodosTrabajadores.size() + 1, r -> {
+            Thread hilo = new Thread(r);
+            hilo.setDaemon(true);
+            hilo.setName("MonitorNodos");
+            return hilo;
+        });
+        poolLatidos.setRemoveOnCancelPolicy(true);
+        
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            nodo.latido = poolLatidos.scheduleWithFixedDelay(() -> enviarLatido(nodo),
+                    0, INTERVALO_LATIDO_MS, TimeUnit.MILLISECONDS);
+        }
+        
+        poolLatidos.scheduleAtFixedRate(ServidorCentral::evaluarNodos,
+                INTERVALO_EVALUACION_MS, INTERVALO_EVALUACION_MS, TimeUnit.MILLISECONDS);
+        
+        log("Monitor de nodos iniciado (latido cada " + INTERVALO_LATIDO_MS + "ms, phi sospecha=" +
+            UMBRAL_SOSPECHA + ", phi fallo=" + UMBRAL_FALLO + ")");
+    }
+    
+    /**
+     * Evalúa phi para cada nodo y aplica los cambios de estado
+     */
+    private static void evaluarNodos() {
+        long ahora = System.nanoTime();
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            double phi = nodo.detector.phi(ahora);
+            boolean estaVivo = phi < UMBRAL_FALLO;
+            boolean sospechoso = phi >= UMBRAL_SOSPECHA;
+            
+            if (nodo.sospechoso != sospechoso) {
+                nodo.sospechoso = sospechoso;
+                if (sospechoso && estaVivo) {
+                    log("Nodo " + nodo.ip + ":" + nodo.puerto + " sospechoso (phi=" +
+                        String.format("%.1f", phi) + "), drenando tráfico");
                 }
+            }
+            
+            if (nodo.disponible != estaVivo) {
+                nodo.disponible = estaVivo;
+                String estado = estaVivo ? "DISPONIBLE" : "NO DISPONIBLE";
+                log("FAILOVER: Nodo " + nodo.ip + ":" + nodo.puerto + " -> " + estado);
                 
-                try {
-                    Thread.sleep(3000); // Verificar cada 3 segundos
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+                if (!estaVivo) {
+                    // Resetear carga del nodo que falló
+                    nodo.cargaActual.set(0);
+                    nodo.caidoDesdeNanos = ahora;
+                } else if (nodo.listo) {
+                    iniciarRampa(nodo, ahora);
                 }
+                reconstruirRuteo();
             }
-        });
+            
+            if (nodo.rampaPorMil < 1000 && nodo.listo) {
+                long transcurridoMs = TimeUnit.NANOSECONDS.toMillis(ahora - nodo.rampaDesdeNanos);
+                nodo.rampaPorMil = (int) Math.min(1000, RAMPA_INICIAL_POR_MIL
+                        + (1000 - RAMPA_INICIAL_POR_MIL) * transcurridoMs / RAMPA_MS);
+                if (nodo.rampaPorMil == 1000) {
+                    log("ARRANQUE: Nodo " + nodo.ip + ":" + nodo.puerto + " recibe su parte completa de tráfico");
+                }
+            }
+            
+            // Los nodos registrados que no vuelven salen de la tabla
+            if (!estaVivo && nodo.registrado
+                    && ahora - nodo.caidoDesdeNanos > TimeUnit.MILLISECONDS.toNanos(TIEMPO_EXPULSION_MS)) {
+                expulsarNodo(nodo);
+            }
+        }
+    }
+    
+    /**
+     * Comienza el arranque gradual de un nodo
+     */
+    private static void iniciarRampa(NodoTrabajador nodo, long ahora) {
+        nodo.rampaDesdeNanos = ahora;
+        nodo.rampaPorMil = RAMPA_INICIAL_POR_MIL;
+    }
+    
+    /**
+     * Aplica el estado que informa el nodo (latido o registro); al quedar
+     * listo empieza su arranque gradual
+     */
+    private static void actualizarListo(NodoTrabajador nodo, boolean listo) {
+        if (nodo.listo == listo) {
+            return;
+        }
+        nodo.listo = listo;
+        if (listo) {
+            iniciarRampa(nodo, System.nanoTime());
+            log("ARRANQUE: Nodo " + nodo.ip + ":" + nodo.puerto + " listo, tráfico gradual en " + RAMPA_MS / 1000 + " s");
+        } else {
+            log("ARRANQUE: Nodo " + nodo.ip + ":" + nodo.puerto + " calentando, sin tráfico mientras haya réplicas listas");
+        }
+        reconstruirRuteo();
+    }
+    
+    /**
+     * MEMBRESÍA: Registra o renueva un nodo que se anuncia al iniciar
+     * 
+     * Formato: REGISTRO|idNodo|puerto|lenguaje|capacidad|parte1,parte2,...[|vparticiones=N]
+     *          [|ip=...][|estado=calentando][|token=...]
+     * Sin ip= se usa la dirección de la conexión. Un nodo ya conocido (misma
+     * ip y puerto, semilla o no) actualiza sus particiones y capacidad. Un
+     * nodo nuevo que ya está listo entra con arranque gradual.
+     * 
+     * Las particiones de un registro con vparticiones menor que la ya
+     * conocida se ignoran: el registro se armó antes de una migración que
+     * el servidor central ya aplicó (los nodos se registran cada 10 s), y
+     * también las de uno sin vparticiones si el nodo ya había anunciado una.
+     * 
+     * Con --token-cluster el registro debe traer token= igual. Un ip= que
+     * no es la dirección de la conexión sólo se acepta con token válido o
+     * desde loopback: si no, cualquiera podría anunciar otra dirección como
+     * réplica de cualquier partición.
+     */
+    private static synchronized String registrarNodo(String[] partes, Socket socket) {
+        int finParametros = inicioMetadatos(partes, 1);
+        if (finParametros < 6) {
+            return "ERROR|Formato de registro inválido";
+        }
+        
+        int puerto;
+        int capacidad;
+        try {
+            puerto = Integer.parseInt(partes[2]);
+            capacidad = Math.max(1, Integer.parseInt(partes[4]));
+        } catch (NumberFormatException e) {
+            return "ERROR|Puerto o capacidad inválidos";
+        }
+        String lenguaje = partes[3];
+        Set<String> particiones = new HashSet<>(Arrays.asList(partes[5].split(",")));
+        String ip = metadato(partes, finParametros, "ip");
+        String ipConexion = socket.getInetAddress().getHostAddress();
+        boolean conToken = tokenCluster != null && tokenValido(metadato(partes, finParametros, "token"), tokenCluster);
+        if (tokenCluster != null && !conToken) {
+            log("MEMBRESÍA: registro rechazado desde " + ipConexion + " (token inválido)");
+            return "ERROR|Registro no autorizado";
+        }
+        if (ip == null) {
+            ip = ipConexion;
+        } else if (!conToken && !socket.getInetAddress().isLoopbackAddress() && !mismaDireccion(ip, ipConexion)) {
+            log("MEMBRESÍA: registro rechazado desde " + ipConexion + " anunciando ip=" + ip);
+            return "ERROR|Registro no autorizado: ip= distinta de la conexión requiere token";
+        }
+        boolean listo = !"calentando".equals(metadato(partes, finParametros, "estado"));
+        
+        NodoTrabajador existente = null;
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (nodo.puerto == puerto && mismaDireccion(nodo.ip, ip)) {
+                existente = nodo;
+                break;
+            }
+        }
+        
+        long versionParticiones = -1;
+        try {
+            versionParticiones = Long.parseLong(metadato(partes, finParametros, "vparticiones"));
+        } catch (NumberFormatException e) {
+            // Nodo sin versión de particiones (o ausente)
+        }
+        
+        if (existente != null) {
+            if (versionParticiones < existente.versionParticiones) {
+                if (!existente.particiones.equals(particiones)) {
+                    log("MEMBRESÍA: registro atrasado de " + existente.ip + ":" + existente.puerto +
+                        " (particiones v" + versionParticiones + " < v" + existente.versionParticiones + "), se ignoran sus particiones");
+                }
+                particiones = existente.particiones;
+            } else {
+                existente.versionParticiones = Math.max(existente.versionParticiones, versionParticiones);
+            }
+            boolean cambios = !existente.particiones.equals(particiones) || existente.capacidad != capacidad
+                    || !existente.lenguaje.equals(lenguaje);
+            existente.particiones = particiones;
+            existente.capacidad = capacidad;
+            existente.lenguaje = lenguaje;
+            existente.detector.registrarActividad(System.nanoTime());
+            if (cambios) {
+                log("MEMBRESÍA: Nodo actualizado " + existente + " - Particiones: " + particiones);
+            }
+            actualizarListo(existente, listo);
+        } else {
+            NodoTrabajador nodo = new NodoTrabajador(ip, puerto, lenguaje);
+            nodo.particiones = particiones;
+            nodo.versionParticiones = versionParticiones;
+            nodo.capacidad = capacidad;
+            nodo.registrado = true;
+            nodo.listo = listo;
+            if (listo) {
+                iniciarRampa(nodo, System.nanoTime());
+            }
+            nodosTrabajadores.add(nodo);
+            
+            poolLatidos.setCorePoolSize(nodosTrabajadores.size() + 1);
+            nodo.latido = poolLatidos.scheduleWithFixedDelay(() -> enviarLatido(nodo),
+                    0, INTERVALO_LATIDO_MS, TimeUnit.MILLISECONDS);
+            log("MEMBRESÍA: Nodo registrado " + nodo + " - Particiones: " + particiones);
+        }
         
-        hiloMonitor.setDaemon(true);
-        hiloMonitor.setName("MonitorNodos");
-        hiloMonitor.start();
-        log("Monitor de nodos iniciado");
+        reconstruirRuteo();
+        return "REGISTRADO|" + nodosTrabajadores.size();
+    }
+    
+    private static boolean mismaDireccion(String a, String b) {
+        try {
+            return InetAddress.getByName(a).equals(InetAddress.getByName(b));
+        } catch (UnknownHostException e) {
+            return a.equals(b);
+        }
+    }
+    
+    /**
+     * Saca de la tabla un nodo registrado que dejó de responder
+     */
+    private static synchronized void expulsarNodo(NodoTrabajador nodo) {
+        if (nodosTrabajadores.remove(nodo)) {
+            if (nodo.latido != null) {
+                nodo.latido.cancel(false);
+            }
+            cerrarCanalLatido(nodo);
+            poolLatidos.setCorePoolSize(nodosTrabajadores.size() + 1);
+            reconstruirRuteo();
+            log("MEMBRESÍA: Nodo " + nodo.ip + ":" + nodo.puerto + " sale de la tabla tras " +
+                TIEMPO_EXPULSION_MS / 1000 + " s caído");
+        }
     }
     
     /**
@@ -374,15 +1029,16 @@ public class ServidorCentral {
         Thread hiloArqueo = new Thread(() -> {
             while (true) {
                 try {
-                    double saldoAnterior = saldoTotalSistema;
+                    long saldoAnterior = saldoTotalSistema;
                     realizarArqueoCompleto();
                     
-                    double diferencia = Math.abs(saldoAnterior - saldoTotalSistema);
-                    if (diferencia > 0.01) { // Tolerancia de 1 centavo
+                    // Sumas exactas en centavos: cualquier diferencia es real
+                    long diferencia = Math.abs(saldoAnterior - saldoTotalSistema);
+                    if (diferencia != 0) {
                         log("⚠️  ALERTA ARQUEO: Diferencia detectada!");
-                        log("   Saldo anterior: " + new DecimalFormat("#,##0.00").format(saldoAnterior));
-                        log("   Saldo actual: " + new DecimalFormat("#,##0.00").format(saldoTotalSistema));
-                        log("   Diferencia: " + new DecimalFormat("#,##0.00").format(diferencia));
+                        log("   Saldo anterior: " + formatoMonto(saldoAnterior));
+                        log("   Saldo actual: " + formatoMonto(saldoTotalSistema));
+                        log("   Diferencia: " + formatoMonto(diferencia));
                     }
                     
                     Thread.sleep(60000); // Arqueo cada minuto
@@ -402,219 +1058,2555 @@ public class ServidorCentral {
     }
     
     /**
-     * Monitor de estadísticas del sistema
+     * Compuerta de enrutamiento de una partición
+     * 
+     * Cuenta las tareas en curso sobre la partición. Durante el corte de una
+     * migración se cierra: las tareas nuevas esperan (hasta su plazo) y se
+     * espera a que terminen las que ya estaban en curso.
      */
-    private static void iniciarMonitorEstadisticas() {
-        Thread hiloStats = new Thread(() -> {
+    static class CompuertaParticion {
+        private final AtomicInteger enCurso = new AtomicInteger();
+        private volatile boolean cerrada = false;
+        
+        /**
+         * Registra una tarea en curso, esperando si la compuerta está
+         * cerrada; devuelve false si vence el plazo mientras espera
+         */
+        boolean entrar(long plazoNanos) throws InterruptedException {
             while (true) {
-                try {
-                    int consultas = contadorConsultas.get();
-                    int transferencias = contadorTransferencias.get();
-                    int errores = contadorErrores.get();
-                    int total = consultas + transferencias;
-                    
-                    if (total > 0) {
-                        log("📊 ESTADÍSTICAS: Consultas=" + consultas + 
-                            ", Transferencias=" + transferencias + 
-                            ", Errores=" + errores + 
-                            ", Total=" + total);
+                enCurso.incrementAndGet();
+                if (!cerrada) {
+                    return true;
+                }
+                salir();
+                
+                synchronized (this) {
+                    while (cerrada) {
+                        long restante = plazoNanos - System.nanoTime();
+                        if (restante <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, restante);
                     }
-                    
-                    Thread.sleep(30000); // Cada 30 segundos
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
                 }
             }
-        });
+        }
         
-        hiloStats.setDaemon(true);
-        hiloStats.setName("MonitorEstadisticas");
-        hiloStats.start();
+        /**
+         * Como entrar, sin esperar: false si la compuerta está cerrada
+         */
+        boolean intentarEntrar() {
+            enCurso.incrementAndGet();
+            if (!cerrada) {
+                return true;
+            }
+            salir();
+            return false;
+        }
+        
+        void salir() {
+            enCurso.decrementAndGet();
+        }
+        
+        /**
+         * Cierra la compuerta y espera a que no queden tareas en curso;
+         * devuelve false si no terminaron a tiempo
+         */
+        boolean cerrarYDrenar(long esperaMs) {
+            cerrada = true;
+            long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+            while (enCurso.get() > 0) {
+                if (System.nanoTime() - limite >= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(20_000);
+            }
+            return true;
+        }
+        
+        synchronized void abrir() {
+            cerrada = false;
+            notifyAll();
+        }
     }
     
     /**
-     * Verifica si un nodo está vivo
+     * Los comandos ADMIN llegan por el puerto de clientes: con token
+     * configurado se exige token= igual, si no sólo se aceptan desde
+     * loopback
      */
-    private static boolean verificarEstadoNodo(NodoTrabajador nodo) {
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(nodo.ip, nodo.puerto), 2000);
-            return true;
-        } catch (IOException e) {
-            return false;
+    private static boolean autorizadaAdministracion(String[] partes, Socket socket) {
+        boolean valido;
+        if (tokenAdministracion == null) {
+            valido = socket.getInetAddress().isLoopbackAddress();
+        } else {
+            valido = tokenValido(metadato(partes, 2, "token"), tokenAdministracion);
+        }
+        if (!valido) {
+            log("ADMIN rechazado desde " + socket.getInetAddress().getHostAddress());
         }
+        return valido;
+    }
+    
+    private static boolean tokenValido(String recibido, String esperado) {
+        return recibido != null && MessageDigest.isEqual(
+                recibido.getBytes(StandardCharsets.UTF_8), esperado.getBytes(StandardCharsets.UTF_8));
     }
     
     /**
-     * Maneja una solicitud de cliente
+     * Comandos de administración recibidos en el puerto de clientes
      */
-    private static void manejarSolicitudCliente(Socket socketCliente) {
-        try (
-            BufferedReader entrada = new BufferedReader(new InputStreamReader(socketCliente.getInputStream()));
-            PrintWriter salida = new PrintWriter(socketCliente.getOutputStream(), true)
-        ) {
-            // Leer solicitud
-            String solicitud = entrada.readLine();
-            
-            if (solicitud == null) {
-                salida.println("RESPONSE|" + generadorIdTarea.getAndIncrement() + "|ERROR|No se recibió solicitud");
-                contadorErrores.incrementAndGet();
-                return;
+    private static String atenderAdministracion(String[] partes) {
+        if (partes.length >= 5 && partes[1].equals("MIGRAR")) {
+            NodoTrabajador origen = buscarNodo(partes[3]);
+            NodoTrabajador destino = buscarNodo(partes[4]);
+            if (origen == null || destino == null) {
+                return "ERROR|Nodo no encontrado (usar ip:puerto)";
             }
-            
-            // Parsing de la solicitud: REQUEST|OPERACION|PARAM1|PARAM2|...
-            String[] partes = solicitud.split("\\|");
-            
-            if (partes.length < 3 || !partes[0].equals("REQUEST")) {
-                salida.println("RESPONSE|" + generadorIdTarea.getAndIncrement() + "|ERROR|Formato inválido");
-                contadorErrores.incrementAndGet();
-                return;
+            return migrarParticion(partes[2], origen, destino);
+        }
+        if (partes.length >= 3 && partes[1].equals("INGERIR")) {
+            try {
+                String lote = metadato(partes, 3, "lote");
+                String ventana = metadato(partes, 3, "ventana");
+                return ingerirArchivo(Paths.get(partes[2]),
+                        lote != null ? Integer.parseInt(lote) : FILAS_POR_LOTE,
+                        ventana != null ? Integer.parseInt(ventana) : LOTES_EN_VUELO);
+            } catch (NumberFormatException e) {
+                return "ERROR|Parámetros inválidos";
+            }
+        }
+        if (partes.length >= 2 && partes[1].equals("VOLCAR_DIARIO")) {
+            return volcarDiarios();
+        }
+        return "ERROR|Comando de administración no reconocido";
+    }
+    
+    /**
+     * Pide a cada nodo Java disponible que agregue sus transacciones nuevas
+     * a su diario columnar (ver DiarioColumnar) -> OK|ip:puerto=filas;...
+     */
+    private static String volcarDiarios() {
+        StringBuilder resultado = new StringBuilder("OK|");
+        int nodos = 0;
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (!llevaVersiones(nodo) || !nodo.disponible) {
+                continue;
+            }
+            String respuesta = consultarNodo(nodo, TIEMPO_COPIA_MS, "VOLCAR_DIARIO");
+            if (nodos++ > 0) {
+                resultado.append(';');
+            }
+            resultado.append(nodo.ip).append(':').append(nodo.puerto).append('=')
+                    .append(respuesta != null && respuesta.startsWith("OK|") ? respuesta.substring(3) : "error");
+        }
+        log("Diarios volcados: " + resultado.substring(3));
+        return nodos > 0 ? resultado.toString() : "ERROR|No hay nodos Java disponibles";
+    }
+    
+    private static NodoTrabajador buscarNodo(String direccion) {
+        int separador = direccion.lastIndexOf(':');
+        if (separador < 0) {
+            return null;
+        }
+        String ip = direccion.substring(0, separador);
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (String.valueOf(nodo.puerto).equals(direccion.substring(separador + 1)) && mismaDireccion(nodo.ip, ip)) {
+                return nodo;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * MIGRACIÓN EN VIVO: mueve una partición del nodo origen al destino
+     * 
+     * El destino copia la partición mientras el origen sigue atendiéndola y
+     * luego trae los cambios ocurridos durante la copia, en rondas, hasta que
+     * quedan pocos. Recién entonces se cierra la compuerta de la partición,
+     * se esperan las tareas en curso, se trae el último delta y se cambia el
+     * enrutamiento de una vez. La pausa visible es sólo ese corte.
+     */
+    private static String migrarParticion(String particion, NodoTrabajador origen, NodoTrabajador destino) {
+        synchronized (bloqueoMigracion) {
+            return migrarParticionBloqueado(particion, origen, destino);
+        }
+    }
+    
+    private static String migrarParticionBloqueado(String particion, NodoTrabajador origen, NodoTrabajador destino) {
+        if (!origen.particiones.contains(particion)) {
+            return "ERROR|El origen no tiene la partición " + particion;
+        }
+        if (destino.particiones.contains(particion) || !destino.disponible) {
+            return "ERROR|El destino ya tiene la partición o no está disponible";
+        }
+        
+        long inicio = System.nanoTime();
+        log("MIGRACIÓN: " + particion + " de " + origen.ip + ":" + origen.puerto + " a " +
+            destino.ip + ":" + destino.puerto);
+        
+        String respuesta = consultarNodo(origen, "MIGRAR_INICIO", particion);
+        if (respuesta == null || !respuesta.startsWith("OK|")) {
+            return "ERROR|El origen no puede migrar: " + respuesta;
+        }
+        
+        String puertoOrigen = String.valueOf(origen.puerto);
+        respuesta = consultarNodo(destino, TIEMPO_COPIA_MS, "MIGRAR_RECIBIR", particion, origen.ip, puertoOrigen);
+        if (respuesta == null || !respuesta.startsWith("OK|")) {
+            cancelarMigracion(particion, origen, destino);
+            return "ERROR|Falló la copia: " + respuesta;
+        }
+        String copiadas = respuesta.substring(3);
+        
+        // Rondas de cambios mientras la partición sigue en servicio
+        for (int ronda = 0; ronda < MAX_RONDAS_DELTA; ronda++) {
+            respuesta = consultarNodo(destino, TIEMPO_COPIA_MS, "MIGRAR_DELTA", particion, origen.ip, puertoOrigen);
+            if (respuesta == null || !respuesta.startsWith("OK|")) {
+                cancelarMigracion(particion, origen, destino);
+                return "ERROR|Falló el envío de cambios: " + respuesta;
+            }
+            if (Integer.parseInt(respuesta.substring(3)) < CAMBIOS_PARA_CORTE) {
+                break;
+            }
+        }
+        
+        // Corte: compuerta cerrada, último delta y cambio de enrutamiento
+        CompuertaParticion compuerta = compuertas.computeIfAbsent(particion, p -> new CompuertaParticion());
+        long inicioCorte = System.nanoTime();
+        try {
+            if (!compuerta.cerrarYDrenar(ESPERA_DRENADO_MS)) {
+                cancelarMigracion(particion, origen, destino);
+                return "ERROR|Las tareas en curso no terminaron a tiempo";
             }
             
-            String operacion = partes[1];
-            String[] parametros = Arrays.copyOfRange(partes, 2, partes.length);
+            respuesta = consultarNodo(destino, TIEMPO_COPIA_MS, "MIGRAR_DELTA", particion, origen.ip, puertoOrigen);
+            String activada = respuesta != null && respuesta.startsWith("OK|")
+                    ? consultarNodo(destino, "MIGRAR_ACTIVAR", particion) : null;
+            if (activada == null || !activada.startsWith("OK|")) {
+                cancelarMigracion(particion, origen, destino);
+                return "ERROR|Falló el corte: " + (activada != null ? activada : respuesta);
+            }
+            String finalizada = consultarNodo(origen, "MIGRAR_FIN", particion);
             
-            // Crear tarea
-            int idTarea = generadorIdTarea.getAndIncrement();
-            InfoTarea tarea = new InfoTarea(idTarea, operacion, parametros);
-            tareasPendientes.put(idTarea, tarea);
+            synchronized (ServidorCentral.class) {
+                Set<String> delDestino = new HashSet<>(destino.particiones);
+                delDestino.add(particion);
+                destino.particiones = delDestino;
+                destino.versionParticiones = Math.max(destino.versionParticiones, versionAnunciada(activada));
+                
+                Set<String> delOrigen = new HashSet<>(origen.particiones);
+                delOrigen.remove(particion);
+                origen.particiones = delOrigen;
+                origen.versionParticiones = Math.max(origen.versionParticiones, versionAnunciada(finalizada));
+                reconstruirRuteo();
+            }
+        } finally {
+            compuerta.abrir();
+        }
+        
+        double pausaMs = (System.nanoTime() - inicioCorte) / 1e6;
+        double totalMs = (System.nanoTime() - inicio) / 1e6;
+        log(String.format("MIGRACIÓN: %s completada (%s cuentas, pausa %.1f ms, total %.0f ms)",
+            particion, copiadas, pausaMs, totalMs));
+        return String.format("OK|cuentas=%s|pausa_ms=%.1f|total_ms=%.0f", copiadas, pausaMs, totalMs);
+    }
+    
+    /**
+     * vparticiones= de la respuesta a MIGRAR_ACTIVAR o MIGRAR_FIN (-1 si no viene)
+     */
+    private static long versionAnunciada(String respuesta) {
+        if (respuesta == null) {
+            return -1;
+        }
+        String[] campos = respuesta.split("\\|");
+        try {
+            String version = metadato(campos, inicioMetadatos(campos, 1), "vparticiones");
+            return version != null ? Long.parseLong(version) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static void cancelarMigracion(String particion, NodoTrabajador origen, NodoTrabajador destino) {
+        consultarNodo(origen, "MIGRAR_CANCELAR", particion);
+        consultarNodo(destino, "MIGRAR_CANCELAR", particion);
+        log("MIGRACIÓN: " + particion + " cancelada");
+    }
+    
+    /**
+     * CARGA MASIVA: aplica un archivo de transferencias (origen|destino|monto
+     * por línea, # para comentarios) leyéndolo de a una línea
+     * 
+     * Las filas se agrupan por par de particiones (origen, destino) y cada
+     * grupo se envía en lotes TRANSFERIR_LOTE al nodo que elige
+     * planearEscritura, como una transferencia con quórum; el grupo queda
+     * fijado a ese nodo. El estado de las cuentas del lote se copia a las
+     * demás réplicas y el lote cuenta como aplicado con W copias (ver
+     * aplicarLote). Hay a lo sumo `ventana`
+     * lotes en vuelo: con la ventana llena se deja de leer el archivo. Cada
+     * fila viaja con su número de línea y el nodo recuerda las que ya
+     * aplicó en el trabajo, así un lote reenviado al mismo nodo no repite
+     * transferencias. Por eso un grupo con un lote sin respuesta no cambia
+     * de nodo: se reintenta en el fijado y, si no vuelve, el trabajo se
+     * detiene. Los lotes pasan por las compuertas de migración de sus dos
+     * particiones, como las transferencias.
+     * 
+     * El punto de control (archivo.ckpt) guarda el id del trabajo y, por
+     * grupo, la línea hasta la que terminaron todos sus lotes y el nodo
+     * fijado. Si el servidor central se cae, volver a pedir el mismo
+     * archivo reanuda el trabajo en los mismos nodos: se saltan las filas
+     * confirmadas y las de los lotes que estaban en vuelo el nodo las
+     * descarta como duplicadas. Las filas rechazadas (saldo insuficiente,
+     * formato) se anotan en archivo.rechazos.
+     */
+    private static String ingerirArchivo(Path archivo, int filasPorLote, int ventana) {
+        if (!Files.isReadable(archivo)) {
+            return "ERROR|No se puede leer " + archivo;
+        }
+        
+        TrabajoIngesta trabajo;
+        try {
+            trabajo = new TrabajoIngesta(archivo, Math.max(1, ventana));
+        } catch (IOException e) {
+            return "ERROR|Punto de control ilegible: " + e.getMessage();
+        }
+        if (trabajo.completado) {
+            return "OK|trabajo=" + trabajo.id + "|Archivo ya ingerido";
+        }
+        log("CARGA MASIVA: " + (trabajo.reanudado ? "reanudando" : "iniciando") + " trabajo " + trabajo.id +
+            " con " + archivo + " (lotes de " + filasPorLote + ", " + ventana + " en vuelo)");
+        
+        long inicio = System.nanoTime();
+        long ultimoControl = inicio;
+        long ultimoProgreso = inicio;
+        try (BufferedReader lector = Files.newBufferedReader(archivo);
+             PrintWriter rechazos = new PrintWriter(Files.newBufferedWriter(trabajo.archivoRechazos,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            trabajo.rechazos = rechazos;
+            String linea;
+            int numero = 0;
             
-            // Incrementar contadores
-            if ("CONSULTAR_SALDO".equals(operacion)) {
-                contadorConsultas.incrementAndGet();
-            } else if ("TRANSFERIR_FONDOS".equals(operacion)) {
-                contadorTransferencias.incrementAndGet();
+            while ((linea = lector.readLine()) != null && trabajo.error == null) {
+                numero++;
+                linea = linea.trim();
+                if (linea.isEmpty() || linea.startsWith("#")) {
+                    continue;
+                }
+                trabajo.leidas++;
+                
+                if (numero <= trabajo.marcaMinima) {
+                    trabajo.saltadas++; // Ya anotada en la ejecución anterior
+                    continue;
+                }
+                String[] campos = linea.split("\\|");
+                long monto;
+                try {
+                    Integer.parseInt(campos[0].trim());
+                    Integer.parseInt(campos[1].trim());
+                    monto = CodecMonto.parsear(campos[2].trim());
+                } catch (RuntimeException e) {
+                    trabajo.rechazar(numero, "Formato inválido: " + linea);
+                    continue;
+                }
+                
+                String origen = campos[0].trim();
+                String destino = campos[1].trim();
+                GrupoIngesta grupo = trabajo.grupo(particionDeCuenta(origen), particionDeCuenta(destino));
+                if (numero <= grupo.marca) {
+                    trabajo.saltadas++;
+                    continue;
+                }
+                
+                grupo.agregar(numero, origen, destino, monto);
+                if (grupo.enLote >= filasPorLote) {
+                    despacharLote(trabajo, grupo);
+                }
+                
+                long ahora = System.nanoTime();
+                if (ahora - ultimoControl >= TimeUnit.MILLISECONDS.toNanos(INTERVALO_CONTROL_MS)) {
+                    trabajo.guardarControl(false);
+                    ultimoControl = ahora;
+                }
+                if (ahora - ultimoProgreso >= TimeUnit.MILLISECONDS.toNanos(INTERVALO_PROGRESO_MS)) {
+                    log(trabajo.progreso(ahora - inicio));
+                    ultimoProgreso = ahora;
+                }
             }
             
-            // Enviar tarea a nodo trabajador
-            enviarTareaANodo(tarea);
+            // Lotes incompletos y espera de los que siguen en vuelo
+            for (GrupoIngesta grupo : trabajo.grupos.values()) {
+                if (grupo.enLote > 0 && trabajo.error == null) {
+                    despacharLote(trabajo, grupo);
+                }
+            }
+            trabajo.ventana.acquireUninterruptibly(trabajo.tamanoVentana);
+            trabajo.guardarControl(trabajo.error == null);
             
-            // Esperar resultado
+        } catch (IOException e) {
+            trabajo.error = "Error leyendo " + archivo + ": " + e.getMessage();
+        } finally {
+            trabajo.pool.shutdown();
+        }
+        
+        long duracion = System.nanoTime() - inicio;
+        log(trabajo.progreso(duracion));
+        if (trabajo.error != null) {
+            log("CARGA MASIVA: trabajo " + trabajo.id + " detenido, se reanuda al volver a pedirlo: " + trabajo.error);
+            return "ERROR|" + trabajo.error + "|trabajo=" + trabajo.id;
+        }
+        double segundos = duracion / 1e9;
+        return String.format("OK|trabajo=%s|aplicadas=%d|duplicadas=%d|rechazadas=%d|saltadas=%d|segundos=%.1f|filas_por_s=%.0f",
+                trabajo.id, trabajo.aplicadas.get(), trabajo.duplicadas.get(), trabajo.rechazadas.get(),
+                trabajo.saltadas, segundos, trabajo.procesadas() / Math.max(segundos, 1e-3));
+    }
+    
+    /**
+     * Envía el lote en armado del grupo; espera lugar en la ventana
+     */
+    private static void despacharLote(TrabajoIngesta trabajo, GrupoIngesta grupo) {
+        String filas = grupo.filas.toString();
+        long numeroLote = grupo.siguienteLote++;
+        int ultimaLinea = grupo.ultimaLinea;
+        grupo.filas.setLength(0);
+        grupo.enLote = 0;
+        
+        trabajo.ventana.acquireUninterruptibly();
+        trabajo.pool.execute(() -> {
             try {
-                String resultado = tarea.resultadoFuturo.get(30, TimeUnit.SECONDS);
-                salida.println(resultado);
-                
-                // Si fue una transferencia exitosa, trigger arqueo
-                if ("TRANSFERIR_FONDOS".equals(operacion) && resultado.contains("|OK|")) {
-                    CompletableFuture.runAsync(() -> realizarArqueoCompleto());
+                String resultado = enviarLoteConReintentos(trabajo, grupo, filas);
+                if (resultado == null || !resultado.startsWith("OK|")) {
+                    if (trabajo.error == null) {
+                        String nodoFijado = grupo.nodoFijado;
+                        trabajo.error = "Lote de " + grupo.origen + ">" + grupo.destino + " no aplicado: " +
+                                (resultado != null ? resultado
+                                        : nodoFijado != null ? "el nodo " + nodoFijado + " del grupo no responde"
+                                        : "ningún nodo disponible con ambas particiones");
+                    }
+                    return;
                 }
-            } catch (Exception e) {
-                String errorResponse = "RESPONSE|" + idTarea + "|ERROR|Timeout o error procesando";
-                salida.println(errorResponse);
-                contadorErrores.incrementAndGet();
-                log("Error procesando tarea " + idTarea + ": " + e.getMessage());
+                trabajo.registrarResultado(resultado.split("\\|", 5));
+                grupo.terminar(numeroLote, ultimaLinea);
             } finally {
-                tareasPendientes.remove(idTarea);
+                trabajo.ventana.release();
+            }
+        });
+    }
+    
+    /**
+     * Envía un lote al nodo del grupo; si no responde se reintenta en el
+     * mismo (reenviarlo es seguro, el nodo descarta las filas ya aplicadas)
+     */
+    private static String enviarLoteConReintentos(TrabajoIngesta trabajo, GrupoIngesta grupo, String filas) {
+        for (int intento = 0; intento < MAX_INTENTOS && trabajo.error == null; intento++) {
+            if (intento > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos((long) BACKOFF_BASE_MS << intento));
+            }
+            PlanEscritura plan = planDeGrupo(grupo);
+            if (plan == null) {
+                continue;
             }
+            NodoTrabajador nodo = plan.ejecutora;
             
-        } catch (IOException e) {
-            log("Error manejando solicitud: " + e.getMessage());
-            contadorErrores.incrementAndGet();
+            // Compuertas de las dos particiones en orden, como compuertasDe
+            List<CompuertaParticion> compuertasLote = new ArrayList<>();
+            for (String particion : new TreeSet<>(Arrays.asList(grupo.origen, grupo.destino))) {
+                compuertasLote.add(compuertas.computeIfAbsent(particion, p -> new CompuertaParticion()));
+            }
+            long plazoNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIEMPO_LOTE_MS);
+            int tomadas = 0;
+            try {
+                while (tomadas < compuertasLote.size() && compuertasLote.get(tomadas).entrar(plazoNanos)) {
+                    tomadas++;
+                }
+                if (tomadas < compuertasLote.size()) {
+                    continue;
+                }
+                String resultado = aplicarLote(trabajo, grupo, plan, filas, plazoNanos);
+                if (resultado != null) {
+                    return resultado;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                for (int j = 0; j < tomadas; j++) {
+                    compuertasLote.get(j).salir();
+                }
+            }
+            log("CARGA MASIVA: nodo " + nodo.ip + ":" + nodo.puerto + " sin respuesta, se reenvía el lote al mismo nodo");
+            grupo.enDuda = true;
         }
+        return null;
     }
     
     /**
-     * SEGÚN PDF: Envía tarea a nodo trabajador con balanceador de carga
+     * Plan de los lotes del grupo: con el nodo fijado si está apto (aunque
+     * ya no sea la primaria: sólo él sabe qué filas aplicó); si no, y
+     * ningún lote del grupo quedó sin respuesta, el de planearEscritura,
+     * cuya ejecutora pasa a ser la fijada. null si hay que esperar.
      */
-    private static void enviarTareaANodo(InfoTarea tarea) {
-        NodoTrabajador nodoSeleccionado = seleccionarNodoConBalanceador(tarea);
+    private static PlanEscritura planDeGrupo(GrupoIngesta grupo) {
+        synchronized (grupo) {
+            NodoTrabajador fijado = grupo.nodoFijado != null ? buscarNodo(grupo.nodoFijado) : null;
+            if (fijado != null && aptoParaLote(fijado, grupo)) {
+                return planConEjecutora(fijado, grupo.origen, grupo.destino);
+            }
+            if (grupo.enDuda) {
+                return null;
+            }
+            PlanEscritura plan = planearEscritura(grupo.origen, grupo.destino);
+            if (plan != null) {
+                NodoTrabajador candidato = plan.ejecutora;
+                if (grupo.nodoFijado != null) {
+                    log("CARGA MASIVA: grupo " + grupo.origen + ">" + grupo.destino + " pasa de " +
+                        grupo.nodoFijado + " a " + candidato.ip + ":" + candidato.puerto);
+                }
+                grupo.nodoFijado = candidato.ip + ":" + candidato.puerto;
+            }
+            return plan;
+        }
+    }
+    
+    /**
+     * Aplica un lote como una transferencia con quórum (escribirConQuorum):
+     * bajo los cerrojos del plan trae de su primaria las cuentas de las
+     * particiones ajenas, aplica el lote en la ejecutora y le copia el
+     * estado resultante a esas primarias; después lo copia a las demás
+     * réplicas. Devuelve la respuesta del nodo sin el estado, null si no
+     * respondió, o un ERROR si no se llegó a W copias (las filas ya están
+     * aplicadas: reanudar el trabajo las cuenta como duplicadas y vuelve a
+     * copiar el estado).
+     */
+    private static String aplicarLote(TrabajoIngesta trabajo, GrupoIngesta grupo, PlanEscritura plan, String filas,
+                                      long plazoNanos) throws InterruptedException {
+        NodoTrabajador ejecutora = plan.ejecutora;
+        if (!plan.tomar(plazoNanos - System.nanoTime())) {
+            return "ERROR|Plazo vencido esperando las particiones del lote";
+        }
+        String resultado;
+        Map<String, NodoTrabajador> copiadas = new HashMap<>();
+        try {
+            for (Map.Entry<String, NodoTrabajador> ajena : plan.ajenas.entrySet()) {
+                String cuentas = cuentasDeLote(filas, ajena.getKey());
+                String leidas = consultarNodo(ajena.getValue(), "ESTADO_CUENTAS", cuentas);
+                if (leidas == null || !leidas.startsWith("OK|")) {
+                    return "ERROR|No se pudieron traer las cuentas de " + ajena.getKey() + " de su primaria";
+                }
+                if (leidas.length() > 3 && !EscrituraQuorum.reparacionConfirmada(
+                        consultarNodo(ejecutora, "REPARAR", ajena.getKey(), leidas.substring(3)))) {
+                    return "ERROR|El nodo " + ejecutora.ip + ":" + ejecutora.puerto +
+                           " no aplicó las cuentas de " + ajena.getKey();
+                }
+            }
+            
+            resultado = consultarNodo(ejecutora, TIEMPO_LOTE_MS, "TRANSFERIR_LOTE", trabajo.id, filas,
+                    "plazo=" + TIEMPO_LOTE_MS, "versiones=1");
+            if (resultado == null || !resultado.startsWith("OK|") || campoEstado(resultado) == null) {
+                return resultado;
+            }
+            for (Map.Entry<String, NodoTrabajador> ajena : plan.ajenas.entrySet()) {
+                String entradas = entradasDeParticion(campoEstado(resultado), ajena.getKey());
+                if (entradas.isEmpty() || EscrituraQuorum.reparacionConfirmada(
+                        consultarNodo(ajena.getValue(), "REPARAR", ajena.getKey(), entradas))) {
+                    copiadas.put(ajena.getKey(), ajena.getValue());
+                }
+            }
+        } finally {
+            plan.soltar();
+        }
         
-        if (nodoSeleccionado != null) {
-            // Incrementar carga del nodo seleccionado
-            nodoSeleccionado.cargaActual++;
-            
-            Thread hiloTrabajador = new Thread(() -> {
-                try (
-                    Socket socketNodo = new Socket(nodoSeleccionado.ip, nodoSeleccionado.puerto);
-                    PrintWriter salida = new PrintWriter(socketNodo.getOutputStream(), true);
-                    BufferedReader entrada = new BufferedReader(new InputStreamReader(socketNodo.getInputStream()))
-                ) {
-                    // Formato: TASK|idTarea|operacion|param1|param2|...
-                    StringBuilder sb = new StringBuilder("TASK|" + tarea.idTarea + "|" + tarea.operacion);
-                    for (String param : tarea.parametros) {
-                        sb.append("|").append(param);
-                    }
-                    
-                    String mensajeTarea = sb.toString();
-                    salida.println(mensajeTarea);
-                    
-                    // Leer respuesta
-                    String respuesta = entrada.readLine();
-                    
-                    if (respuesta != null) {
-                        tarea.resultadoFuturo.complete(respuesta);
-                    } else {
-                        tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Sin respuesta del nodo");
-                    }
-                    
-                } catch (IOException e) {
-                    log("Error conectando con nodo " + nodoSeleccionado + ": " + e.getMessage());
-                    
-                    // Marcar nodo como no disponible y retry
-                    nodoSeleccionado.disponible = false;
-                    enviarTareaANodo(tarea); // Retry con otro nodo
-                    
-                } finally {
-                    // Decrementar carga del nodo
-                    nodoSeleccionado.cargaActual = Math.max(0, nodoSeleccionado.cargaActual - 1);
+        String estado = campoEstado(resultado);
+        StringBuilder faltantes = new StringBuilder();
+        for (String particion : new TreeSet<>(Arrays.asList(grupo.origen, grupo.destino))) {
+            String entradas = entradasDeParticion(estado, particion);
+            if (entradas.isEmpty()) {
+                continue;
+            }
+            int copias = (ejecutora.particiones.contains(particion) ? 1 : 0) + (copiadas.containsKey(particion) ? 1 : 0);
+            for (NodoTrabajador nodo : nodosTrabajadores) {
+                if (nodo == ejecutora || copiadas.get(particion) == nodo || !llevaVersiones(nodo)
+                        || !nodo.disponible || !nodo.particiones.contains(particion)) {
+                    continue;
+                }
+                if (EscrituraQuorum.reparacionConfirmada(consultarNodo(nodo, "REPARAR", particion, entradas))) {
+                    copias++;
+                }
+            }
+            int conocidas = replicasConocidas(particion);
+            int requeridas = Math.max(1, quorumEscritura == 0 ? conocidas : Math.min(quorumEscritura, conocidas));
+            if (copias < requeridas) {
+                faltantes.append(faltantes.length() > 0 ? ", " : "").append(particion).append(' ')
+                         .append(copias).append('/').append(requeridas);
+            }
+        }
+        if (faltantes.length() > 0) {
+            contadorQuorumFallido.incrementAndGet();
+            return "ERROR|Lote aplicado sin quórum de escritura: copias " + faltantes;
+        }
+        return sinEstado(resultado);
+    }
+    
+    /**
+     * Cuentas distintas del lote (filas fila:origen:destino:monto) que son
+     * de la partición, separadas por comas
+     */
+    private static String cuentasDeLote(String filas, String particion) {
+        Set<String> cuentas = new TreeSet<>();
+        for (String fila : filas.split(";")) {
+            String[] campos = fila.split(":");
+            for (int i = 1; i <= 2; i++) {
+                if (particionDeCuenta(campos[i]).equals(particion)) {
+                    cuentas.add(campos[i]);
                 }
+            }
+        }
+        return String.join(",", cuentas);
+    }
+    
+    private static boolean aptoParaLote(NodoTrabajador nodo, GrupoIngesta grupo) {
+        return llevaVersiones(nodo) && nodo.disponible && nodo.circuito.admiteTrafico()
+                && nodo.particiones.contains(grupo.origen) && nodo.particiones.contains(grupo.destino);
+    }
+    
+    /**
+     * Estado de una carga masiva
+     */
+    static class TrabajoIngesta {
+        final String id;
+        final Path archivoControl;
+        final Path archivoRechazos;
+        final boolean reanudado;
+        final boolean completado;
+        final int marcaMinima; // Menor línea confirmada entre los grupos del punto de control
+        final int tamanoVentana;
+        final Semaphore ventana;
+        final ExecutorService pool;
+        final Map<String, GrupoIngesta> grupos = new ConcurrentHashMap<>();
+        private final Properties control = new Properties();
+        PrintWriter rechazos;
+        volatile String error; // Primer error que detiene el trabajo
+        
+        // Sólo los escribe el hilo lector
+        long leidas = 0;
+        long saltadas = 0;
+        
+        final AtomicLong aplicadas = new AtomicLong();
+        final AtomicLong duplicadas = new AtomicLong();
+        final AtomicLong rechazadas = new AtomicLong();
+        
+        TrabajoIngesta(Path archivo, int tamanoVentana) throws IOException {
+            this.archivoControl = Paths.get(archivo + ".ckpt");
+            this.archivoRechazos = Paths.get(archivo + ".rechazos");
+            this.tamanoVentana = tamanoVentana;
+            this.ventana = new Semaphore(tamanoVentana);
+            this.pool = Executors.newFixedThreadPool(tamanoVentana, r -> {
+                Thread hilo = new Thread(r);
+                hilo.setDaemon(true);
+                hilo.setName("CargaMasiva");
+                return hilo;
             });
             
-            hiloTrabajador.setName("Tarea-" + tarea.idTarea);
-            hiloTrabajador.start();
-        } else {
-            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|No hay nodos disponibles");
-            log("No hay nodos disponibles para tarea " + tarea.idTarea);
+            if (Files.exists(archivoControl)) {
+                try (Reader entrada = Files.newBufferedReader(archivoControl)) {
+                    control.load(entrada);
+                }
+            }
+            this.reanudado = control.containsKey("trabajo");
+            this.id = reanudado ? control.getProperty("trabajo")
+                    : Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+            this.completado = "completado".equals(control.getProperty("estado"));
+            int minima = reanudado ? Integer.MAX_VALUE : 0;
+            for (String clave : control.stringPropertyNames()) {
+                if (clave.startsWith("grupo.")) {
+                    minima = Math.min(minima, Integer.parseInt(control.getProperty(clave)));
+                }
+            }
+            this.marcaMinima = minima == Integer.MAX_VALUE ? 0 : minima;
+            if (!reanudado) {
+                Files.deleteIfExists(archivoRechazos);
+            }
+        }
+        
+        GrupoIngesta grupo(String origen, String destino) {
+            return grupos.computeIfAbsent(origen + ">" + destino, clave -> {
+                GrupoIngesta grupo = new GrupoIngesta(origen, destino);
+                grupo.marca = Integer.parseInt(control.getProperty("grupo." + clave, "0"));
+                // Lo que estaba en vuelo al caer sólo lo conoce el nodo fijado
+                grupo.nodoFijado = control.getProperty("nodo." + clave);
+                grupo.enDuda = grupo.nodoFijado != null;
+                return grupo;
+            });
+        }
+        
+        void registrarResultado(String[] resultado) {
+            // OK|aplicadas|duplicadas|rechazadas[|fila:motivo;...]
+            aplicadas.addAndGet(Long.parseLong(resultado[1]));
+            duplicadas.addAndGet(Long.parseLong(resultado[2]));
+            rechazadas.addAndGet(Long.parseLong(resultado[3]));
+            if (resultado.length > 4) {
+                synchronized (this) {
+                    for (String rechazo : resultado[4].split(";")) {
+                        int separador = rechazo.indexOf(':');
+                        rechazos.println(rechazo.substring(0, separador) + "|" + rechazo.substring(separador + 1));
+                    }
+                    rechazos.flush();
+                }
+            }
+        }
+        
+        synchronized void rechazar(int linea, String motivo) {
+            rechazadas.incrementAndGet();
+            rechazos.println(linea + "|" + motivo);
+        }
+        
+        long procesadas() {
+            return aplicadas.get() + duplicadas.get() + rechazadas.get();
+        }
+        
+        /**
+         * Escribe el punto de control (archivo temporal y reemplazo atómico)
+         */
+        synchronized void guardarControl(boolean terminado) throws IOException {
+            control.setProperty("trabajo", id);
+            control.setProperty("estado", terminado ? "completado" : "en_curso");
+            for (Map.Entry<String, GrupoIngesta> grupo : grupos.entrySet()) {
+                control.setProperty("grupo." + grupo.getKey(), String.valueOf(grupo.getValue().marcaConfirmada()));
+                String nodoFijado = grupo.getValue().nodoFijado;
+                if (nodoFijado != null) {
+                    control.setProperty("nodo." + grupo.getKey(), nodoFijado);
+                }
+            }
+            if (rechazos != null) {
+                rechazos.flush();
+            }
+            Path temporal = Paths.get(archivoControl + ".tmp");
+            try (Writer salida = Files.newBufferedWriter(temporal)) {
+                control.store(salida, "Carga masiva: linea confirmada por grupo de particiones");
+            }
+            Files.move(temporal, archivoControl, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        
+        String progreso(long nanos) {
+            double segundos = Math.max(nanos / 1e9, 1e-3);
+            return String.format("CARGA MASIVA %s: %d filas leídas, %d aplicadas, %d duplicadas, %d rechazadas, " +
+                    "%d saltadas (%.0f filas/s)", id, leidas, aplicadas.get(), duplicadas.get(),
+                    rechazadas.get(), saltadas, procesadas() / segundos);
         }
     }
     
     /**
-     * SEGÚN PDF: Selecciona nodo con balanceador de carga y particiones
+     * Filas de un par de particiones: lote en armado, línea confirmada y
+     * nodo fijado
+     * 
+     * Los lotes terminan en cualquier orden; la marca sólo avanza hasta el
+     * último lote con todos los anteriores terminados.
      */
-    private static NodoTrabajador seleccionarNodoConBalanceador(InfoTarea tarea) {
-        String particionRequerida = determinarParticion(tarea);
+    static class GrupoIngesta {
+        final String origen;
+        final String destino;
+        int marca; // Línea hasta la que todas las filas del grupo están aplicadas
+        volatile String nodoFijado; // ip:puerto del nodo que aplica los lotes
+        volatile boolean enDuda;    // Algún lote quedó sin respuesta: no se cambia de nodo
         
-        // Buscar nodos disponibles que tengan la partición requerida
-        List<NodoTrabajador> nodosAptos = new ArrayList<>();
-        for (NodoTrabajador nodo : nodosTrabajadores) {
-            if (nodo.disponible && nodo.particiones.contains(particionRequerida)) {
-                nodosAptos.add(nodo);
+        // Lote en armado (hilo lector)
+        final StringBuilder filas = new StringBuilder();
+        int enLote = 0;
+        int ultimaLinea = 0;
+        long siguienteLote = 0;
+        
+        // Lotes terminados fuera de orden: número -> última línea
+        private final TreeMap<Long, Integer> terminados = new TreeMap<>();
+        private long siguienteConfirmado = 0;
+        
+        GrupoIngesta(String origen, String destino) {
+            this.origen = origen;
+            this.destino = destino;
+        }
+        
+        void agregar(int linea, String origen, String destino, long monto) {
+            if (enLote > 0) {
+                filas.append(';');
             }
+            filas.append(linea).append(':').append(origen).append(':').append(destino).append(':');
+            CodecMonto.escribir(filas, monto);
+            enLote++;
+            ultimaLinea = linea;
         }
         
-        if (nodosAptos.isEmpty()) {
-            // Fallback: cualquier nodo disponible
-            for (NodoTrabajador nodo : nodosTrabajadores) {
-                if (nodo.disponible) {
-                    nodosAptos.add(nodo);
-                }
+        synchronized void terminar(long numeroLote, int ultimaLinea) {
+            terminados.put(numeroLote, ultimaLinea);
+            while (terminados.containsKey(siguienteConfirmado)) {
+                marca = terminados.remove(siguienteConfirmado++);
             }
         }
         
-        if (nodosAptos.isEmpty()) {
-            return null; // No hay nodos disponibles
+        synchronized int marcaConfirmada() {
+            return marca;
         }
+    }
+    
+    /**
+     * Anti-entropía entre réplicas
+     * 
+     * Periódicamente compara la raíz del árbol Merkle de cada partición en
+     * sus réplicas. Si difieren, baja por el árbol pidiendo sólo los hijos
+     * de los nodos distintos hasta llegar a las hojas, trae las cuentas de
+     * esas hojas y envía a cada réplica atrasada el estado ganador: mayor
+     * versión y, a igual versión, el de la réplica configurada primero.
+     */
+    private static void iniciarAntiEntropia() {
+        Thread hiloAntiEntropia = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(INTERVALO_ANTIENTROPIA_MS);
+                    
+                    for (int particion = 1; particion <= NUM_PARTICIONES; particion++) {
+                        compararReplicas("parte" + particion);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log("Error en anti-entropía: " + e.getMessage());
+                }
+            }
+        });
         
-        // BALANCEADOR DE CARGA: Seleccionar el nodo con menor carga
-        return nodosAptos.stream()
-                .min(Comparator.comparingInt(n -> n.cargaActual))
-                .orElse(nodosAptos.get(0));
+        hiloAntiEntropia.setDaemon(true);
+        hiloAntiEntropia.setName("AntiEntropia");
+        hiloAntiEntropia.start();
+        log("Anti-entropía iniciada (cada " + INTERVALO_ANTIENTROPIA_MS / 1000 + " s)");
     }
     
     /**
-     * Determina la partición requerida para una tarea
+     * Compara y repara las réplicas de una partición
      */
-    private static String determinarParticion(InfoTarea tarea) {
-        if (tarea.parametros.length > 0) {
-            try {
-                int idCuenta = Integer.parseInt(tarea.parametros[0]);
-                int particion = ((idCuenta - 101) / 1250) + 1; // Distribución uniforme
-                return "parte" + Math.min(particion, NUM_PARTICIONES);
-            } catch (NumberFormatException e) {
-                return "parte1"; // Default
+    private static void compararReplicas(String particion) {
+        // Réplicas disponibles que mantienen árbol Merkle
+        List<NodoTrabajador> replicas = new ArrayList<>();
+        Set<String> raices = new HashSet<>();
+        long bytes = 0;
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (!nodo.disponible || !nodo.particiones.contains(particion)) {
+                continue;
+            }
+            String raiz = consultarNodo(nodo, "MERKLE_RAIZ", particion);
+            if (raiz != null && raiz.startsWith("OK|")) {
+                replicas.add(nodo);
+                raices.add(raiz.split("\\|")[1]);
+                bytes += raiz.length();
+            }
+        }
+        if (replicas.size() < 2 || raices.size() == 1) {
+            return;
+        }
+        
+        // Bajar por el árbol sólo por los nodos distintos
+        List<Integer> distintos = Collections.singletonList(0);
+        for (int nivel = 0; nivel < NIVELES_MERKLE && !distintos.isEmpty(); nivel++) {
+            String indices = unir(distintos, ",");
+            List<String[]> hijos = new ArrayList<>();
+            for (NodoTrabajador nodo : replicas) {
+                String respuesta = consultarNodo(nodo, "MERKLE_HIJOS", particion, String.valueOf(nivel), indices);
+                if (respuesta == null || !respuesta.startsWith("OK|")) {
+                    return; // Se reintenta en la próxima pasada
+                }
+                hijos.add(respuesta.substring(3).split(","));
+                bytes += respuesta.length();
+            }
+            
+            List<Integer> siguientes = new ArrayList<>();
+            for (int k = 0; k < distintos.size() * RAMAS_MERKLE; k++) {
+                for (String[] otros : hijos) {
+                    if (!otros[k].equals(hijos.get(0)[k])) {
+                        siguientes.add(distintos.get(k / RAMAS_MERKLE) * RAMAS_MERKLE + k % RAMAS_MERKLE);
+                        break;
+                    }
+                }
+            }
+            distintos = siguientes;
+        }
+        if (distintos.isEmpty()) {
+            return; // Cambió mientras se comparaba
+        }
+        int hojasDistintas = distintos.size();
+        if (distintos.size() > MAX_HOJAS_POR_PASADA) {
+            distintos = distintos.subList(0, MAX_HOJAS_POR_PASADA);
+        }
+        
+        // Cuentas de las hojas distintas en cada réplica: id -> {saldo, versión}
+        String hojas = unir(distintos, ",");
+        List<Map<Integer, long[]>> estados = new ArrayList<>();
+        for (NodoTrabajador nodo : replicas) {
+            String respuesta = consultarNodo(nodo, "RANGO_CUENTAS", particion, hojas);
+            if (respuesta == null || !respuesta.startsWith("OK|")) {
+                return;
+            }
+            bytes += respuesta.length();
+            
+            Map<Integer, long[]> estado = new HashMap<>();
+            for (String entrada : respuesta.substring(3).split(";")) {
+                String[] campos = entrada.split(":");
+                if (campos.length == 3) {
+                    estado.put(Integer.parseInt(campos[0]),
+                            new long[] {CodecMonto.parsear(campos[1]), Long.parseLong(campos[2])});
+                }
             }
+            estados.add(estado);
         }
-        return "parte1";
+        
+        // Estado ganador por cuenta y reparaciones por réplica
+        List<StringBuilder> reparaciones = new ArrayList<>();
+        for (int r = 0; r < replicas.size(); r++) {
+            reparaciones.add(new StringBuilder());
+        }
+        Set<Integer> idsCuentas = new TreeSet<>();
+        for (Map<Integer, long[]> estado : estados) {
+            idsCuentas.addAll(estado.keySet());
+        }
+        
+        // Conflicto: misma versión con saldos distintos (cada réplica confirmó
+        // un cambio distinto). No se elige uno: se anota y sólo se reparan
+        // las réplicas con versión anterior
+        List<Integer> conflictos = new ArrayList<>();
+        for (int idCuenta : idsCuentas) {
+            long[] ganador = null;
+            boolean conflicto = false;
+            for (Map<Integer, long[]> estado : estados) {
+                long[] actual = estado.get(idCuenta);
+                if (actual == null) {
+                    continue;
+                }
+                if (ganador == null || actual[1] > ganador[1]) {
+                    ganador = actual;
+                    conflicto = false;
+                } else if (actual[1] == ganador[1] && actual[0] != ganador[0]) {
+                    conflicto = true;
+                }
+            }
+            if (conflicto) {
+                conflictos.add(idCuenta);
+            }
+            
+            for (int r = 0; r < replicas.size(); r++) {
+                long[] actual = estados.get(r).get(idCuenta);
+                if (actual != null && (actual[1] < ganador[1] || (!conflicto && actual[0] != ganador[0]))) {
+                    StringBuilder reparacion = reparaciones.get(r);
+                    if (reparacion.length() > 0) {
+                        reparacion.append(';');
+                    }
+                    reparacion.append(idCuenta).append(':');
+                    CodecMonto.escribir(reparacion, ganador[0]).append(':').append(ganador[1]);
+                }
+            }
+        }
+        
+        int reparadas = 0;
+        for (int r = 0; r < replicas.size(); r++) {
+            if (reparaciones.get(r).length() == 0) {
+                continue;
+            }
+            String respuesta = consultarNodo(replicas.get(r), "REPARAR", particion, reparaciones.get(r).toString());
+            bytes += reparaciones.get(r).length();
+            if (respuesta != null && respuesta.startsWith("OK|")) {
+                reparadas += Integer.parseInt(respuesta.split("\\|")[1]);
+            }
+        }
+        
+        log("Anti-entropía " + particion + ": " + hojasDistintas + " hojas distintas, " + reparadas +
+            " cuentas reparadas, " + conflictos.size() + " conflictos, " + bytes + " bytes intercambiados");
+        if (!conflictos.isEmpty()) {
+            log("Anti-entropía " + particion + ": CONFLICTO de versión (saldos distintos, no se reparan) en cuentas " +
+                conflictos.subList(0, Math.min(conflictos.size(), 20)) + (conflictos.size() > 20 ? "..." : ""));
+        }
+    }
+    
+    /**
+     * Envía una operación administrativa a un nodo y devuelve el resultado
+     * (lo que sigue a RESPONSE|idTarea|), o null si el nodo no responde
+     */
+    private static String consultarNodo(NodoTrabajador nodo, String operacion, String... parametros) {
+        return consultarNodo(nodo, TIEMPO_RESPUESTA_NODO_MS, operacion, parametros);
+    }
+    
+    private static String consultarNodo(NodoTrabajador nodo, int tiempoRespuestaMs, String operacion,
+                                        String... parametros) {
+        try (Socket socketNodo = new Socket()) {
+            socketNodo.connect(new InetSocketAddress(nodo.ip, nodo.puerto), TIEMPO_CONEXION_NODO_MS);
+            socketNodo.setSoTimeout(tiempoRespuestaMs);
+            
+            PrintWriter salida = new PrintWriter(socketNodo.getOutputStream(), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socketNodo.getInputStream()));
+            
+            int idTarea = generadorIdTarea.getAndIncrement();
+            StringBuilder sb = new StringBuilder("TASK|" + idTarea + "|" + operacion);
+            for (String param : parametros) {
+                sb.append("|").append(param);
+            }
+            salida.println(sb);
+            
+            String respuesta = entrada.readLine();
+            String prefijo = "RESPONSE|" + idTarea + "|";
+            if (respuesta == null || !respuesta.startsWith(prefijo)) {
+                return null;
+            }
+            return respuesta.substring(prefijo.length());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private static String unir(List<Integer> valores, String separador) {
+        StringBuilder sb = new StringBuilder();
+        for (int valor : valores) {
+            if (sb.length() > 0) {
+                sb.append(separador);
+            }
+            sb.append(valor);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Monitor de estadísticas del sistema
+     */
+    private static void iniciarMonitorEstadisticas() {
+        Thread hiloStats = new Thread(() -> {
+            while (true) {
+                try {
+                    int consultas = contadorConsultas.get();
+                    int transferencias = contadorTransferencias.get();
+                    int errores = contadorErrores.get();
+                    int total = consultas + transferencias;
+                    
+                    if (total > 0) {
+                        log("📊 ESTADÍSTICAS: Consultas=" + consultas + 
+                            ", Transferencias=" + transferencias + 
+                            ", Errores=" + errores + 
+                            ", Reintentos=" + contadorReintentos.get() +
+                            " (denegados=" + contadorReintentosDenegados.get() + ")" +
+                            ", Quórum fallido=" + contadorQuorumFallido.get() +
+                            ", Lecturas reparadas=" + contadorLecturasReparadas.get() +
+                            ", Total=" + total);
+                        log("   Carriles: " + poolDespacho.resumen());
+                        if (captura != null) {
+                            log("   Captura: " + captura.escritos() + " solicitudes" +
+                                " (descartadas=" + captura.descartados() +
+                                ", rotaciones=" + captura.rotaciones() + ")");
+                        }
+                        
+                        for (NodoTrabajador nodo : nodosTrabajadores) {
+                            if (nodo.circuito.getEstado() != CircuitoNodo.Estado.CERRADO) {
+                                log("   Circuito " + nodo.ip + ":" + nodo.puerto + " " + nodo.circuito.getEstado());
+                            }
+                        }
+                    }
+                    
+                    Thread.sleep(30000); // Cada 30 segundos
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        });
+        
+        hiloStats.setDaemon(true);
+        hiloStats.setName("MonitorEstadisticas");
+        hiloStats.start();
+    }
+    
+    /**
+     * Envía un latido al nodo por su conexión persistente
+     */
+    private static void enviarLatido(NodoTrabajador nodo) {
+        boolean reconectado = nodo.socketLatido == null;
+        try {
+            if (reconectado) {
+                Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(nodo.ip, nodo.puerto), INTERVALO_LATIDO_MS);
+                socket.setSoTimeout(INTERVALO_LATIDO_MS);
+                nodo.socketLatido = socket;
+                nodo.entradaLatido = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                nodo.salidaLatido = new PrintWriter(socket.getOutputStream(), true);
+            }
+            
+            nodo.salidaLatido.println("PING");
+            
+            // Cualquier línea de respuesta es señal de vida (los nodos que no
+            // conocen PING responden con un error de formato); el nodo Java
+            // responde PONG|estado=calentando hasta terminar su calentamiento
+            String respuesta = nodo.entradaLatido.readLine();
+            if (respuesta != null) {
+                if (reconectado) {
+                    nodo.detector.reiniciar(System.nanoTime());
+                } else {
+                    nodo.detector.registrarLatido(System.nanoTime());
+                }
+                actualizarListo(nodo, !respuesta.contains("estado=calentando"));
+            } else {
+                cerrarCanalLatido(nodo);
+            }
+        } catch (IOException e) {
+            cerrarCanalLatido(nodo);
+        }
+    }
+    
+    private static void cerrarCanalLatido(NodoTrabajador nodo) {
+        if (nodo.socketLatido != null) {
+            try {
+                nodo.socketLatido.close();
+            } catch (IOException e) {
+                // Nada que hacer
+            }
+        }
+        nodo.socketLatido = null;
+        nodo.entradaLatido = null;
+        nodo.salidaLatido = null;
+    }
+    
+    /**
+     * Maneja la conexión de un cliente
+     * 
+     * Una conexión puede llevar muchas solicitudes seguidas sin esperar
+     * cada respuesta (pipelining): se leen una tras otra y cada respuesta
+     * se escribe cuando su tarea termina, en el orden en que terminan. El
+     * cliente las asocia por el metadato id=, que vuelve en el segundo
+     * campo de la respuesta. Un cliente que envía una línea y cierra
+     * funciona igual que antes.
+     * 
+     * Este hilo (del pool de aceptación) sólo atiende la primera línea; el
+     * resto de la conexión sigue en poolConexionesPersistentes, así los
+     * clientes con conexión abierta no dejan sin hilos a registros y ADMIN.
+     * 
+     * aceptada es el instante en que se aceptó la conexión, para medir la
+     * espera en la cola del pool de clientes.
+     */
+    private static void manejarSolicitudCliente(Socket socketCliente, long aceptada) {
+        long inicio = System.nanoTime();
+        boolean cedida = false;
+        try {
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socketCliente.getInputStream()));
+            PrintWriter salida = new PrintWriter(socketCliente.getOutputStream(), true);
+            
+            // Leer solicitud
+            String solicitud = entrada.readLine();
+            long leida = System.nanoTime();
+            
+            if (solicitud == null) {
+                salida.println("RESPONSE|" + generadorIdTarea.getAndIncrement() + "|ERROR|No se recibió solicitud");
+                contadorErrores.incrementAndGet();
+                return;
+            }
+            
+            // Parsing de la solicitud: REQUEST|OPERACION|PARAM1|PARAM2|...
+            String[] partes = solicitud.split("\\|");
+            if (atenderControl(partes, socketCliente, salida)) {
+                return;
+            }
+            
+            Set<CompletableFuture<Void>> enCurso = ConcurrentHashMap.newKeySet();
+            seguirRespuesta(enCurso, atenderSolicitud(partes, salida, aceptada, inicio, leida));
+            
+            cedida = true;
+            try {
+                poolConexionesPersistentes.execute(() -> atenderConexion(socketCliente, entrada, salida, enCurso));
+            } catch (RejectedExecutionException e) {
+                // Sin hilos para conexiones persistentes: se sigue en este
+                atenderConexion(socketCliente, entrada, salida, enCurso);
+            }
+            
+        } catch (IOException e) {
+            log("Error manejando solicitud: " + e.getMessage());
+            contadorErrores.incrementAndGet();
+        } finally {
+            if (!cedida) {
+                cerrarSocket(socketCliente);
+            }
+        }
+    }
+    
+    /**
+     * Lee las siguientes solicitudes de una conexión hasta que el cliente
+     * la cierra; la conexión se cierra al terminar sus respuestas pendientes
+     */
+    private static void atenderConexion(Socket socketCliente, BufferedReader entrada, PrintWriter salida,
+                                        Set<CompletableFuture<Void>> enCurso) {
+        try {
+            while (true) {
+                // Las siguientes solicitudes de la conexión no esperan en la cola de aceptación
+                long inicio = System.nanoTime();
+                String solicitud = entrada.readLine();
+                long leida = System.nanoTime();
+                if (solicitud == null) {
+                    break;
+                }
+                
+                String[] partes = solicitud.split("\\|");
+                if (atenderControl(partes, socketCliente, salida)) {
+                    break;
+                }
+                seguirRespuesta(enCurso, atenderSolicitud(partes, salida, inicio, inicio, leida));
+            }
+        } catch (IOException e) {
+            log("Error manejando solicitud: " + e.getMessage());
+            contadorErrores.incrementAndGet();
+        } finally {
+            // No se cierra la conexión con respuestas pendientes
+            CompletableFuture.allOf(enCurso.toArray(new CompletableFuture<?>[0])).join();
+            cerrarSocket(socketCliente);
+        }
+    }
+    
+    /**
+     * Atiende REGISTRO y ADMIN, que responden una línea y cierran la
+     * conexión; devuelve false si la línea es una solicitud de cliente
+     */
+    private static boolean atenderControl(String[] partes, Socket socketCliente, PrintWriter salida) {
+        // Alta o renovación de un nodo trabajador
+        if (partes[0].equals("REGISTRO")) {
+            responder(salida, registrarNodo(partes, socketCliente));
+            return true;
+        }
+        
+        // Comandos de administración: ADMIN|MIGRAR|parteN|ip:puerto origen|ip:puerto destino
+        // y ADMIN|INGERIR|ruta del archivo de transferencias
+        if (partes[0].equals("ADMIN")) {
+            responder(salida, autorizadaAdministracion(partes, socketCliente)
+                    ? atenderAdministracion(partes)
+                    : "ERROR|Administración no autorizada");
+            return true;
+        }
+        return false;
+    }
+    
+    private static void seguirRespuesta(Set<CompletableFuture<Void>> enCurso, CompletableFuture<Void> respuesta) {
+        enCurso.add(respuesta);
+        respuesta.whenComplete((r, e) -> enCurso.remove(respuesta));
+    }
+    
+    private static void cerrarSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ya cerrado
+        }
+    }
+    
+    /**
+     * Atiende una solicitud REQUEST; la respuesta se escribe en la conexión
+     * cuando la tarea termina o vence su plazo
+     */
+    private static CompletableFuture<Void> atenderSolicitud(String[] partes, PrintWriter salida, long aceptada,
+                                                            long inicio, long leida) {
+        if (partes.length < 3 || !partes[0].equals("REQUEST")) {
+            contadorErrores.incrementAndGet();
+            String idMalformada = metadato(partes, inicioMetadatos(partes, 1), "id");
+            responder(salida, "RESPONSE|" + (idMalformada != null ? idMalformada
+                      : String.valueOf(generadorIdTarea.getAndIncrement())) + "|ERROR|Formato inválido");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String operacion = partes[1];
+        int finParametros = inicioMetadatos(partes, 2);
+        String[] parametros = Arrays.copyOfRange(partes, 2, finParametros);
+        
+        // Plazo opcional del cliente en milisegundos: ...|plazo=500
+        long plazoMs = PLAZO_MAXIMO_MS;
+        String plazo = metadato(partes, finParametros, "plazo");
+        if (plazo != null) {
+            try {
+                plazoMs = Math.min(Math.max(Long.parseLong(plazo), 0), PLAZO_MAXIMO_MS);
+            } catch (NumberFormatException e) {
+                // Se usa el plazo máximo
+            }
+        }
+        
+        // Identificador del cliente para asociar la respuesta: ...|id=17
+        String idCliente = metadato(partes, finParametros, "id");
+        
+        // Una operación sin carril no la atiende ningún nodo
+        int idTarea = generadorIdTarea.getAndIncrement();
+        if (PlanificadorCarriles.Carril.deOperacion(operacion) == null) {
+            contadorErrores.incrementAndGet();
+            responder(salida, "RESPONSE|" + (idCliente != null ? idCliente : String.valueOf(idTarea)) +
+                      "|ERROR|Operación no soportada: " + operacion);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // Crear tarea
+        InfoTarea tarea = new InfoTarea(idTarea, operacion, parametros, plazoMs);
+        
+        // Clase de tráfico opcional: ...|clase=auditoria para barridos y arqueos
+        PlanificadorCarriles.Carril clase = PlanificadorCarriles.Carril.desdeNombre(
+                metadato(partes, finParametros, "clase"));
+        if (clase != null) {
+            tarea.carril = clase;
+        }
+        
+        // Quórum de la operación; ...|quorum=N lo cambia para esta solicitud
+        tarea.quorum = quorumDe(tarea, metadato(partes, finParametros, "quorum"));
+        
+        // Traza del cliente (|traza=...) o muestreo propio
+        tarea.traza = metadato(partes, finParametros, "traza");
+        if (tarea.traza == null) {
+            tarea.traza = Trazador.muestrear();
+        }
+        Trazador.tramo(tarea.traza, "cola_aceptacion", aceptada, inicio);
+        Trazador.tramo(tarea.traza, "lectura_solicitud", inicio, leida);
+        tareasPendientes.put(idTarea, tarea);
+        
+        // Incrementar contadores
+        if ("CONSULTAR_SALDO".equals(operacion) || "CONSULTAR_CLIENTE".equals(operacion)) {
+            contadorConsultas.incrementAndGet();
+        } else if ("TRANSFERIR_FONDOS".equals(operacion)) {
+            contadorTransferencias.incrementAndGet();
+        }
+        
+        // Esperar si alguna partición de la tarea está en el corte de una
+        // migración; la tarea cuenta como en curso hasta su resultado. Con
+        // una compuerta cerrada la espera sigue en poolCompuertas y el hilo
+        // de la conexión pasa a la siguiente solicitud
+        List<CompuertaParticion> compuertasTarea = compuertasDe(tarea);
+        if (entrarSinEsperar(compuertasTarea)) {
+            tarea.resultadoFuturo.whenComplete((r, e) -> compuertasTarea.forEach(CompuertaParticion::salir));
+            enviarTareaANodo(tarea);
+        } else {
+            poolCompuertas.execute(() -> esperarCompuertasYEnviar(tarea, compuertasTarea));
+        }
+        
+        // Esperar resultado sin bloquear el hilo de la conexión; el vencimiento
+        // no completa la tarea, que sigue en curso para la compuerta
+        return tarea.resultadoFuturo.copy()
+                .orTimeout(Math.max(tarea.restanteNanos(), 0), TimeUnit.NANOSECONDS)
+                .handle((resultado, error) -> {
+                    long antesRespuesta = System.nanoTime();
+                    tareasPendientes.remove(idTarea);
+                    if (error != null) {
+                        contadorErrores.incrementAndGet();
+                        log("Error procesando tarea " + idTarea + ": " + error);
+                        resultado = "RESPONSE|" + idTarea + "|ERROR|Timeout o error procesando";
+                    } else if ("TRANSFERIR_FONDOS".equals(operacion) && resultado.contains("|OK|")) {
+                        // Si fue una transferencia exitosa, trigger arqueo
+                        CompletableFuture.runAsync(() -> realizarArqueoCompleto());
+                    }
+                    
+                    responder(salida, idCliente != null ? conIdCliente(resultado, idCliente) : resultado);
+                    long respondida = System.nanoTime();
+                    if (captura != null) {
+                        captura.registrar(leida, respondida, resultado.contains("|ERROR|"), cuerpoCapturado(partes));
+                    }
+                    Trazador.tramo(tarea.traza, "respuesta", antesRespuesta, respondida);
+                    Trazador.tramo(tarea.traza, "solicitud", aceptada, respondida);
+                    return null;
+                });
+    }
+    
+    /**
+     * Toma todas las compuertas si ninguna está cerrada; si alguna lo está
+     * no queda ninguna tomada
+     */
+    private static boolean entrarSinEsperar(List<CompuertaParticion> compuertasTarea) {
+        for (int i = 0; i < compuertasTarea.size(); i++) {
+            if (!compuertasTarea.get(i).intentarEntrar()) {
+                for (int j = 0; j < i; j++) {
+                    compuertasTarea.get(j).salir();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Espera a que abran las compuertas de la tarea (hasta su plazo) y la
+     * envía; corre en poolCompuertas
+     */
+    private static void esperarCompuertasYEnviar(InfoTarea tarea, List<CompuertaParticion> compuertasTarea) {
+        long antesCompuerta = System.nanoTime();
+        int tomadas = 0;
+        try {
+            while (tomadas < compuertasTarea.size() && compuertasTarea.get(tomadas).entrar(tarea.plazoNanos)) {
+                tomadas++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (tomadas < compuertasTarea.size()) {
+            for (int j = 0; j < tomadas; j++) {
+                compuertasTarea.get(j).salir();
+            }
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Plazo vencido");
+            return;
+        }
+        Trazador.tramo(tarea.traza, "compuerta", antesCompuerta, System.nanoTime());
+        tarea.resultadoFuturo.whenComplete((r, e) -> compuertasTarea.forEach(CompuertaParticion::salir));
+        enviarTareaANodo(tarea);
+    }
+    
+    private static ThreadFactory hiloDemonio(String nombre) {
+        return r -> {
+            Thread hilo = new Thread(r);
+            hilo.setDaemon(true);
+            hilo.setName(nombre);
+            return hilo;
+        };
+    }
+    
+    /**
+     * Escribe una respuesta; las tareas de una misma conexión terminan en
+     * hilos distintos y no deben intercalar sus líneas
+     */
+    private static void responder(PrintWriter salida, String linea) {
+        synchronized (salida) {
+            salida.println(linea);
+        }
+    }
+    
+    /**
+     * Solicitud sin "REQUEST|" ni los metadatos id= y traza= de este envío
+     */
+    private static String cuerpoCapturado(String[] partes) {
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 1; i < partes.length; i++) {
+            if (partes[i].startsWith("id=") || partes[i].startsWith("traza=")) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(partes[i]);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Reemplaza el id de tarea de RESPONSE|idTarea|... por el id del cliente
+     */
+    private static String conIdCliente(String respuesta, String idCliente) {
+        int inicioId = respuesta.indexOf('|');
+        int finId = inicioId < 0 ? -1 : respuesta.indexOf('|', inicioId + 1);
+        if (finId < 0) {
+            return respuesta;
+        }
+        return respuesta.substring(0, inicioId + 1) + idCliente + respuesta.substring(finId);
+    }
+    
+    /**
+     * SEGÚN PDF: Envía tarea a nodo trabajador con balanceador de carga
+     */
+    private static void enviarTareaANodo(InfoTarea tarea) {
+        if (tarea.intentos == 0) {
+            presupuestoReintentos.depositar();
+            if ("CONSULTAR_CLIENTE".equals(tarea.operacion)) {
+                consultarCliente(tarea);
+                return;
+            }
+            if (tarea.quorum != 1 && enviarConQuorum(tarea)) {
+                return;
+            }
+        }
+        
+        long inicio = System.nanoTime();
+        NodoTrabajador candidato = seleccionarNodoConBalanceador(tarea);
+        // Otra tarea pudo reservar la prueba de un circuito semiabierto entre
+        // la selección y la reserva: se descarta ese nodo y se elige otro
+        CircuitoNodo.Permiso permiso = CircuitoNodo.Permiso.DENEGADO;
+        while (candidato != null
+                && (permiso = candidato.circuito.permitirSolicitud()) == CircuitoNodo.Permiso.DENEGADO) {
+            tarea.nodosIntentados.add(candidato);
+            candidato = seleccionarNodoConBalanceador(tarea);
+        }
+        NodoTrabajador nodoSeleccionado = candidato;
+        CircuitoNodo.Permiso permisoSeleccionado = permiso;
+        long encolada = System.nanoTime();
+        Trazador.tramo(tarea.traza, "balanceador", inicio, encolada);
+        
+        if (nodoSeleccionado != null) {
+            // Incrementar carga del nodo seleccionado
+            nodoSeleccionado.cargaActual.incrementAndGet();
+            tarea.intentos++;
+            tarea.nodosIntentados.add(nodoSeleccionado);
+            
+            poolDespacho.ejecutar(tarea.carril, tarea.plazoNanos, () -> {
+                Trazador.tramo(tarea.traza, "cola_despacho", encolada, System.nanoTime());
+                ejecutarIntento(tarea, nodoSeleccionado, permisoSeleccionado);
+            });
+        } else {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|No hay nodos disponibles");
+            log("No hay nodos disponibles para tarea " + tarea.idTarea);
+        }
+    }
+    
+    /**
+     * Ejecuta un intento de la tarea contra el nodo seleccionado
+     */
+    private static void ejecutarIntento(InfoTarea tarea, NodoTrabajador nodo, CircuitoNodo.Permiso permiso) {
+        boolean enviada = false;
+        
+        // No se gasta capacidad del nodo en tareas cuyo cliente ya no espera
+        if (tarea.restanteNanos() <= 0) {
+            liberarCarga(nodo);
+            nodo.circuito.cancelarSolicitud(permiso);
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Plazo vencido");
+            return;
+        }
+        
+        try (Socket socketNodo = conectarNodo(tarea, nodo)) {
+            long conectada = System.nanoTime();
+            PrintWriter salida = new PrintWriter(socketNodo.getOutputStream(), true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socketNodo.getInputStream()));
+            
+            salida.println(mensajeTarea(tarea, tarea.operacion, tarea.parametros, false));
+            enviada = true;
+            
+            // Leer respuesta
+            String respuesta = entrada.readLine();
+            Trazador.tramo(tarea.traza, "nodo", conectada, System.nanoTime());
+            
+            if (respuesta != null) {
+                nodo.circuito.registrarExito();
+                nodo.detector.registrarActividad(System.nanoTime());
+                tarea.resultadoFuturo.complete(respuesta);
+            } else {
+                manejarFalloIntento(tarea, nodo, true, "Sin respuesta del nodo");
+            }
+            
+        } catch (IOException e) {
+            manejarFalloIntento(tarea, nodo, enviada, e.getMessage());
+            
+        } finally {
+            // Decrementar carga del nodo
+            liberarCarga(nodo);
+        }
+    }
+    
+    /**
+     * Abre la conexión con el nodo dentro del plazo de la tarea
+     */
+    private static Socket conectarNodo(InfoTarea tarea, NodoTrabajador nodo) throws IOException {
+        long restanteMs = TimeUnit.NANOSECONDS.toMillis(tarea.restanteNanos());
+        Socket socketNodo = new Socket();
+        try {
+            long antesConexion = System.nanoTime();
+            socketNodo.connect(new InetSocketAddress(nodo.ip, nodo.puerto),
+                    (int) Math.max(1, Math.min(TIEMPO_CONEXION_NODO_MS, restanteMs)));
+            Trazador.tramo(tarea.traza, "conexion_nodo", antesConexion, System.nanoTime());
+            socketNodo.setSoTimeout((int) Math.max(1, Math.min(TIEMPO_RESPUESTA_NODO_MS, restanteMs)));
+            return socketNodo;
+        } catch (IOException e) {
+            socketNodo.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Formato: TASK|idTarea|operacion|param1|param2|...|plazo=restanteMs
+     * [|clase=...][|traza=...][|versiones=1]
+     */
+    static String mensajeTarea(InfoTarea tarea, String operacion, String[] parametros, boolean versiones) {
+        StringBuilder sb = MENSAJES.get();
+        sb.setLength(0);
+        sb.append("TASK|").append(tarea.idTarea).append('|').append(operacion);
+        for (String param : parametros) {
+            sb.append('|').append(param);
+        }
+        sb.append("|plazo=").append(Math.max(0, TimeUnit.NANOSECONDS.toMillis(tarea.restanteNanos())));
+        if (tarea.carril != PlanificadorCarriles.Carril.deOperacion(operacion)) {
+            sb.append("|clase=").append(tarea.carril.nombre());
+        }
+        if (tarea.traza != null) {
+            sb.append("|traza=").append(tarea.traza);
+        }
+        if (versiones) {
+            sb.append("|versiones=1");
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Decide si un intento fallido se reintenta en otro nodo
+     * 
+     * Una transferencia que ya llegó al nodo no se reenvía: pudo haberse
+     * aplicado antes del fallo y repetirla la aplicaría dos veces.
+     */
+    private static void manejarFalloIntento(InfoTarea tarea, NodoTrabajador nodo, boolean enviada, String motivo) {
+        log("Error con nodo " + nodo + " en tarea " + tarea.idTarea + " (intento " +
+            tarea.intentos + "): " + motivo);
+        
+        if (nodo.circuito.registrarFallo()) {
+            log("CIRCUITO ABIERTO: Nodo " + nodo.ip + ":" + nodo.puerto);
+        }
+        
+        if (enviada && !"CONSULTAR_SALDO".equals(tarea.operacion)) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                "|ERROR|Resultado incierto, el nodo falló tras recibir la tarea");
+            return;
+        }
+        
+        if (tarea.intentos >= MAX_INTENTOS) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                "|ERROR|Nodo no disponible tras " + tarea.intentos + " intentos");
+            return;
+        }
+        
+        if (!presupuestoReintentos.retirar()) {
+            contadorReintentosDenegados.incrementAndGet();
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                "|ERROR|Nodo no disponible, presupuesto de reintentos agotado");
+            return;
+        }
+        
+        // Backoff exponencial con jitter completo
+        long tope = Math.min(BACKOFF_MAXIMO_MS, (long) BACKOFF_BASE_MS << (tarea.intentos - 1));
+        long espera = ThreadLocalRandom.current().nextLong(tope + 1);
+        
+        if (TimeUnit.MILLISECONDS.toNanos(espera) >= tarea.restanteNanos()) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Plazo vencido");
+            return;
+        }
+        
+        contadorReintentos.incrementAndGet();
+        poolReintentos.schedule(() -> enviarTareaANodo(tarea), espera, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * QUÓRUM: ejecuta una consulta o transferencia en las réplicas de su partición
+     * 
+     * Las consultas van en paralelo a todas las réplicas y se responde al
+     * juntar R respuestas, con el saldo de la de mayor versión; las que
+     * respondieron una versión menor se reparan. Una transferencia no se
+     * puede enviar a cada réplica por separado (el débito no es idempotente
+     * y el resultado depende del orden), así que la ejecuta la réplica
+     * primaria de la partición (ver primariaDe y escribirConQuorum),
+     * y el estado resultante de las cuentas con su versión se copia en
+     * paralelo a las demás réplicas con REPARAR; se responde cuando W
+     * copias lo tienen. Sólo participan nodos Java, los que llevan versión
+     * por cuenta, y el quórum no pide más réplicas de las que la partición
+     * tiene en la tabla.
+     * 
+     * Devuelve false si la tarea debe ir por el camino de un solo nodo.
+     */
+    private static boolean enviarConQuorum(InfoTarea tarea) {
+        String particion = determinarParticion(tarea);
+        List<NodoTrabajador> replicas = new ArrayList<>();
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (llevaVersiones(nodo) && nodo.particiones.contains(particion)
+                    && nodo.disponible && nodo.circuito.admiteTrafico()) {
+                replicas.add(nodo);
+            }
+        }
+        int requeridas = tarea.quorum == 0 ? replicas.size()
+                : Math.min(tarea.quorum, replicasConocidas(particion));
+        if (requeridas <= 1) {
+            tarea.quorum = 1;
+            return false;
+        }
+        
+        if (replicas.size() < requeridas) {
+            contadorQuorumFallido.incrementAndGet();
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Quórum inalcanzable: " +
+                replicas.size() + " réplicas disponibles de " + requeridas + " requeridas");
+            return true;
+        }
+        
+        long encolada = System.nanoTime();
+        if ("TRANSFERIR_FONDOS".equals(tarea.operacion)) {
+            poolDespacho.ejecutar(tarea.carril, tarea.plazoNanos, () -> {
+                Trazador.tramo(tarea.traza, "cola_despacho", encolada, System.nanoTime());
+                escribirConQuorum(tarea, requeridas);
+            });
+        } else {
+            LecturaQuorum lectura = new LecturaQuorum(tarea, replicas.size(), requeridas);
+            for (NodoTrabajador nodo : replicas) {
+                nodo.cargaActual.incrementAndGet();
+                poolDespacho.ejecutar(tarea.carril, tarea.plazoNanos, () -> {
+                    Trazador.tramo(tarea.traza, "cola_despacho", encolada, System.nanoTime());
+                    lectura.registrar(nodo, pedirANodo(tarea, nodo, tarea.operacion, tarea.parametros));
+                });
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Ejecuta la transferencia en una primaria y copia el estado a las demás réplicas
+     * 
+     * La ejecuta la primaria de la partición de origen si tiene la cuenta
+     * destino, si no la de la partición destino si tiene la de origen, y si
+     * ninguna tiene ambas la primera réplica de la tabla que sí. De cada
+     * partición de la que la ejecutora no es primaria se toma el cerrojo
+     * exclusivo, la cuenta se trae de su primaria antes de ejecutar y el
+     * resultado se le copia antes de soltarlo: la primaria de cada
+     * partición siempre tiene la última versión de sus cuentas. Si la
+     * ejecutora no responde la transferencia falla; la siguiente va a la
+     * nueva primaria.
+     */
+    private static void escribirConQuorum(InfoTarea tarea, int requeridas) {
+        String cuentaOrigen = tarea.parametros[0];
+        String cuentaDestino = tarea.parametros.length > 1 ? tarea.parametros[1] : cuentaOrigen;
+        PlanEscritura plan = planearEscritura(particionDeCuenta(cuentaOrigen), particionDeCuenta(cuentaDestino));
+        if (plan == null) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                "|ERROR|No hay réplicas disponibles con ambas cuentas");
+            return;
+        }
+        NodoTrabajador primaria = plan.ejecutora;
+        
+        try {
+            if (!plan.tomar(tarea.restanteNanos())) {
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Plazo vencido");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Transferencia interrumpida");
+            return;
+        }
+        Map<String, NodoTrabajador> copiadas = Collections.emptyMap();
+        String respuesta = null;
+        try {
+            for (Map.Entry<String, NodoTrabajador> ajena : plan.ajenas.entrySet()) {
+                String cuenta = ajena.getKey().equals(particionDeCuenta(cuentaOrigen)) ? cuentaOrigen : cuentaDestino;
+                if (!traerCuenta(tarea, primaria, ajena.getValue(), ajena.getKey(), cuenta)) {
+                    tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                        "|ERROR|No se pudo traer la cuenta " + cuenta + " de su primaria");
+                    return;
+                }
+            }
+            
+            Socket socketNodo;
+            try {
+                socketNodo = conectarNodo(tarea, primaria);
+            } catch (IOException e) {
+                primaria.circuito.registrarFallo();
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|La primaria no responde");
+                return;
+            }
+            primaria.cargaActual.incrementAndGet();
+            try (socketNodo) {
+                long conectada = System.nanoTime();
+                respuesta = intercambiar(socketNodo, mensajeTarea(tarea, tarea.operacion, tarea.parametros, true));
+                Trazador.tramo(tarea.traza, "nodo", conectada, System.nanoTime());
+            } catch (IOException e) {
+                // Sin respuesta tras enviar: resultado incierto
+            } finally {
+                liberarCarga(primaria);
+            }
+            
+            if (respuesta == null) {
+                primaria.circuito.registrarFallo();
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                    "|ERROR|Resultado incierto, el nodo falló tras recibir la tarea");
+                return;
+            }
+            primaria.circuito.registrarExito();
+            primaria.detector.registrarActividad(System.nanoTime());
+            
+            String estado = campoEstado(respuesta);
+            if (!plan.ajenas.isEmpty() && estado != null && respuesta.contains("|OK|")) {
+                copiadas = copiarAPrimarias(tarea, plan, estado);
+            }
+        } finally {
+            plan.soltar();
+        }
+        replicarEstado(tarea, primaria, respuesta, requeridas, copiadas);
+    }
+    
+    /**
+     * Trae a la ejecutora el estado de la cuenta que tiene la primaria de
+     * su partición; false si no se pudo leer o la ejecutora no lo aplicó
+     */
+    private static boolean traerCuenta(InfoTarea tarea, NodoTrabajador ejecutora, NodoTrabajador primaria,
+                                       String particion, String cuenta) {
+        primaria.cargaActual.incrementAndGet();
+        String leida = pedirANodo(tarea, primaria, "CONSULTAR_SALDO", cuenta);
+        String estado = leida != null && leida.contains("|OK|") ? campoEstado(leida) : null;
+        if (estado == null) {
+            return false;
+        }
+        ejecutora.cargaActual.incrementAndGet();
+        return EscrituraQuorum.reparacionConfirmada(pedirANodo(tarea, ejecutora, "REPARAR", particion, estado));
+    }
+    
+    /**
+     * Copia el estado resultante a las primarias de las particiones ajenas
+     * del plan; devuelve las que confirmaron (partición -> primaria)
+     */
+    private static Map<String, NodoTrabajador> copiarAPrimarias(InfoTarea tarea, PlanEscritura plan, String estado) {
+        Map<String, NodoTrabajador> copiadas = new HashMap<>();
+        for (Map.Entry<String, NodoTrabajador> ajena : plan.ajenas.entrySet()) {
+            NodoTrabajador primaria = ajena.getValue();
+            String entradas = entradasDeParticion(estado, ajena.getKey());
+            primaria.cargaActual.incrementAndGet();
+            if (EscrituraQuorum.reparacionConfirmada(pedirANodo(tarea, primaria, "REPARAR", ajena.getKey(), entradas))) {
+                copiadas.put(ajena.getKey(), primaria);
+            } else {
+                log("QUÓRUM: la primaria " + primaria.ip + ":" + primaria.puerto + " de " + ajena.getKey() +
+                    " no confirmó la copia de " + entradas);
+            }
+        }
+        return copiadas;
+    }
+    
+    /**
+     * QUÓRUM: réplica primaria de la partición, la primera de la tabla de
+     * ruteo que lleva versiones y admite tráfico (null si no hay). Todas las
+     * escrituras con quórum de la partición se ejecutan en ella o le copian
+     * el resultado bajo el cerrojo exclusivo de la partición.
+     */
+    private static NodoTrabajador primariaDe(String particion) {
+        for (NodoTrabajador nodo : replicasEnTabla(particion)) {
+            if (llevaVersiones(nodo) && nodo.circuito.admiteTrafico()) {
+                return nodo;
+            }
+        }
+        return null;
+    }
+    
+    private static NodoTrabajador[] replicasEnTabla(String particion) {
+        int numero = Arrays.asList(NOMBRES_PARTICION).indexOf(particion);
+        return numero < 0 ? new NodoTrabajador[0] : tablaRuteo.replicas[numero];
+    }
+    
+    /**
+     * Nodo que ejecuta una escritura sobre las dos particiones (ver
+     * escribirConQuorum), o null si no hay réplica apta con ambas
+     */
+    private static PlanEscritura planearEscritura(String particionOrigen, String particionDestino) {
+        NodoTrabajador primariaOrigen = primariaDe(particionOrigen);
+        NodoTrabajador primariaDestino = primariaDe(particionDestino);
+        if (primariaOrigen == null || primariaDestino == null) {
+            return null;
+        }
+        NodoTrabajador ejecutora = null;
+        if (primariaOrigen.particiones.contains(particionDestino)) {
+            ejecutora = primariaOrigen;
+        } else if (primariaDestino.particiones.contains(particionOrigen)) {
+            ejecutora = primariaDestino;
+        } else {
+            for (NodoTrabajador nodo : replicasEnTabla(particionOrigen)) {
+                if (llevaVersiones(nodo) && nodo.circuito.admiteTrafico() && nodo.particiones.contains(particionDestino)) {
+                    ejecutora = nodo;
+                    break;
+                }
+            }
+            if (ejecutora == null) {
+                return null;
+            }
+        }
+        return planConEjecutora(ejecutora, particionOrigen, particionDestino);
+    }
+    
+    /**
+     * Plan con la ejecutora dada: ajenas son las particiones de las que no
+     * es primaria (null si alguna partición no tiene primaria)
+     */
+    private static PlanEscritura planConEjecutora(NodoTrabajador ejecutora, String particionOrigen,
+                                                  String particionDestino) {
+        NodoTrabajador primariaOrigen = primariaDe(particionOrigen);
+        NodoTrabajador primariaDestino = primariaDe(particionDestino);
+        if (primariaOrigen == null || primariaDestino == null) {
+            return null;
+        }
+        Map<String, NodoTrabajador> ajenas = new TreeMap<>();
+        if (primariaOrigen != ejecutora) {
+            ajenas.put(particionOrigen, primariaOrigen);
+        }
+        if (primariaDestino != ejecutora) {
+            ajenas.put(particionDestino, primariaDestino);
+        }
+        return new PlanEscritura(ejecutora, ajenas, particionOrigen, particionDestino);
+    }
+    
+    /**
+     * Entradas id:saldo:version del estado que son de la partición
+     */
+    private static String entradasDeParticion(String estado, String particion) {
+        StringBuilder entradas = new StringBuilder();
+        for (String entrada : estado.split(";")) {
+            if (particionDeCuenta(entrada.substring(0, entrada.indexOf(':'))).equals(particion)) {
+                if (entradas.length() > 0) {
+                    entradas.append(';');
+                }
+                entradas.append(entrada);
+            }
+        }
+        return entradas.toString();
+    }
+    
+    /**
+     * Ejecutora de una escritura con quórum y cerrojos de sus particiones:
+     * compartido en las que la ejecutora es primaria, exclusivo en las ajenas
+     */
+    static final class PlanEscritura {
+        final NodoTrabajador ejecutora;
+        final Map<String, NodoTrabajador> ajenas; // Partición -> su primaria, si no es la ejecutora
+        private final List<Lock> cerrojos = new ArrayList<>();
+        private int tomados = 0;
+        
+        PlanEscritura(NodoTrabajador ejecutora, Map<String, NodoTrabajador> ajenas, String... particiones) {
+            this.ejecutora = ejecutora;
+            this.ajenas = ajenas;
+            // En orden de nombre, como las compuertas, para no bloquearse entre sí
+            for (String particion : new TreeSet<>(Arrays.asList(particiones))) {
+                ReentrantReadWriteLock cerrojo = cerrojosParticion.computeIfAbsent(particion,
+                        p -> new ReentrantReadWriteLock(true));
+                cerrojos.add(ajenas.containsKey(particion) ? cerrojo.writeLock() : cerrojo.readLock());
+            }
+        }
+        
+        boolean tomar(long esperaNanos) throws InterruptedException {
+            long limite = System.nanoTime() + esperaNanos;
+            while (tomados < cerrojos.size()) {
+                if (!cerrojos.get(tomados).tryLock(limite - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    soltar();
+                    return false;
+                }
+                tomados++;
+            }
+            return true;
+        }
+        
+        void soltar() {
+            while (tomados > 0) {
+                cerrojos.get(--tomados).unlock();
+            }
+        }
+    }
+    
+    /**
+     * Envía el estado que devolvió la primaria a las demás réplicas de cada
+     * partición tocada y responde al llegar a W copias en todas. copiadas
+     * (partición -> nodo) ya confirmaron su copia.
+     */
+    private static void replicarEstado(InfoTarea tarea, NodoTrabajador primaria, String respuesta, int requeridas,
+                                       Map<String, NodoTrabajador> copiadas) {
+        String estado = campoEstado(respuesta);
+        if (estado == null || !respuesta.contains("|OK|")) {
+            // Error de la operación (saldo insuficiente...): no hay nada que copiar
+            tarea.resultadoFuturo.complete(sinEstado(respuesta));
+            return;
+        }
+        
+        Map<String, StringBuilder> porParticion = new TreeMap<>();
+        for (String entrada : estado.split(";")) {
+            StringBuilder entradas = porParticion.computeIfAbsent(
+                    particionDeCuenta(entrada.substring(0, entrada.indexOf(':'))), p -> new StringBuilder());
+            if (entradas.length() > 0) {
+                entradas.append(';');
+            }
+            entradas.append(entrada);
+        }
+        
+        EscrituraQuorum escritura = new EscrituraQuorum(tarea, sinEstado(respuesta), requeridas,
+                porParticion.keySet(), primaria);
+        for (String particion : copiadas.keySet()) {
+            if (porParticion.containsKey(particion)) {
+                escritura.contarCopia(particion);
+            }
+        }
+        List<NodoTrabajador> destinos = new ArrayList<>();
+        List<String> particiones = new ArrayList<>();
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (nodo == primaria || !llevaVersiones(nodo) || !nodo.disponible) {
+                continue;
+            }
+            for (String particion : porParticion.keySet()) {
+                if (copiadas.get(particion) == nodo) {
+                    continue;
+                }
+                if (nodo.particiones.contains(particion)) {
+                    destinos.add(nodo);
+                    particiones.add(particion);
+                }
+            }
+        }
+        
+        escritura.iniciar(destinos.size());
+        for (int i = 0; i < destinos.size(); i++) {
+            NodoTrabajador nodo = destinos.get(i);
+            String particion = particiones.get(i);
+            String entradas = porParticion.get(particion).toString();
+            nodo.cargaActual.incrementAndGet();
+            poolDespacho.ejecutar(tarea.carril, tarea.plazoNanos, () ->
+                    escritura.confirmar(particion, pedirANodo(tarea, nodo, "REPARAR", particion, entradas)));
+        }
+    }
+    
+    /**
+     * Envía una operación de la tarea a una réplica y devuelve la respuesta,
+     * o null si el nodo no responde. La carga del nodo ya está contada.
+     */
+    private static String pedirANodo(InfoTarea tarea, NodoTrabajador nodo, String operacion, String... parametros) {
+        try {
+            if (tarea.restanteNanos() <= 0) {
+                return null;
+            }
+            try (Socket socketNodo = conectarNodo(tarea, nodo)) {
+                long conectada = System.nanoTime();
+                String respuesta = intercambiar(socketNodo,
+                        mensajeTarea(tarea, operacion, parametros, !"REPARAR".equals(operacion)));
+                Trazador.tramo(tarea.traza, "nodo", conectada, System.nanoTime());
+                if (respuesta != null) {
+                    nodo.circuito.registrarExito();
+                    nodo.detector.registrarActividad(System.nanoTime());
+                }
+                return respuesta;
+            }
+        } catch (IOException e) {
+            if (nodo.circuito.registrarFallo()) {
+                log("CIRCUITO ABIERTO: Nodo " + nodo.ip + ":" + nodo.puerto);
+            }
+            return null;
+        } finally {
+            liberarCarga(nodo);
+        }
+    }
+    
+    /**
+     * Descuenta una tarea terminada de la carga del nodo (sin bajar de 0:
+     * la carga se reinicia cuando el nodo vuelve)
+     */
+    private static void liberarCarga(NodoTrabajador nodo) {
+        nodo.cargaActual.updateAndGet(carga -> Math.max(0, carga - 1));
+    }
+    
+    private static String intercambiar(Socket socketNodo, String mensaje) throws IOException {
+        PrintWriter salida = new PrintWriter(socketNodo.getOutputStream(), true);
+        BufferedReader entrada = new BufferedReader(new InputStreamReader(socketNodo.getInputStream()));
+        salida.println(mensaje);
+        return entrada.readLine();
+    }
+    
+    /**
+     * Consulta de cliente: reparte CONSULTAR_CLIENTE entre los nodos que
+     * cubren las particiones con cuentas del cliente y une los resultados
+     * 
+     * Se elige primero el nodo que tiene más de esas particiones, así con
+     * la tabla de réplicas actual bastan uno o dos nodos. Cada nodo recibe
+     * la lista de particiones que debe incluir. Si uno no responde sus
+     * particiones pasan a otro nodo que las tenga.
+     */
+    private static void consultarCliente(InfoTarea tarea) {
+        if (tarea.parametros.length < 1) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Faltan parámetros para consultar cliente");
+            return;
+        }
+        try {
+            Integer.parseInt(tarea.parametros[0]);
+        } catch (NumberFormatException e) {
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|ID de cliente inválido");
+            return;
+        }
+        new ConsultaCliente(tarea).repartir(particionesDeCliente(tarea.parametros[0]));
+    }
+    
+    /**
+     * Particiones con cuentas del cliente según el último arqueo (todas si
+     * el cliente no figura)
+     */
+    private static List<String> particionesDeCliente(String idCliente) {
+        int[] indice = particionesPorCliente;
+        int mascara = 0;
+        try {
+            int id = Integer.parseInt(idCliente);
+            mascara = id >= 0 && id < indice.length ? indice[id] : 0;
+        } catch (NumberFormatException e) {
+            // Se consultan todas
+        }
+        List<String> resultado = new ArrayList<>(NUM_PARTICIONES);
+        for (int particion = 1; particion <= NUM_PARTICIONES; particion++) {
+            if (mascara == 0 || (mascara & (1 << (particion - 1))) != 0) {
+                resultado.add("parte" + particion);
+            }
+        }
+        return resultado;
+    }
+    
+    /**
+     * Resultados parciales de una consulta de cliente
+     */
+    static class ConsultaCliente {
+        private final InfoTarea tarea;
+        private final TreeMap<Integer, String> saldos = new TreeMap<>(); // Cuenta -> saldo
+        private final Set<NodoTrabajador> fallidos = new HashSet<>();
+        private long total = 0;
+        private int pendientes = 0;
+        
+        ConsultaCliente(InfoTarea tarea) {
+            this.tarea = tarea;
+        }
+        
+        /**
+         * Asigna las particiones a nodos Java disponibles (sólo ellos tienen
+         * el índice por cliente) y envía una solicitud por nodo
+         */
+        synchronized void repartir(List<String> particiones) {
+            Set<String> restantes = new TreeSet<>(particiones);
+            while (!restantes.isEmpty()) {
+                NodoTrabajador elegido = null;
+                int cubiertas = 0;
+                for (NodoTrabajador nodo : nodosTrabajadores) {
+                    if (!llevaVersiones(nodo) || !nodo.disponible || !nodo.circuito.admiteTrafico()
+                            || fallidos.contains(nodo)) {
+                        continue;
+                    }
+                    int cantidad = 0;
+                    for (String particion : restantes) {
+                        if (nodo.particiones.contains(particion)) {
+                            cantidad++;
+                        }
+                    }
+                    if (cantidad > cubiertas) {
+                        elegido = nodo;
+                        cubiertas = cantidad;
+                    }
+                }
+                if (elegido == null) {
+                    tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                            "|ERROR|Sin réplica disponible para " + String.join(",", restantes));
+                    return;
+                }
+                
+                List<String> asignadas = new ArrayList<>();
+                for (String particion : restantes) {
+                    if (elegido.particiones.contains(particion)) {
+                        asignadas.add(particion);
+                    }
+                }
+                restantes.removeAll(asignadas);
+                
+                NodoTrabajador nodo = elegido;
+                nodo.cargaActual.incrementAndGet();
+                pendientes++;
+                long encolada = System.nanoTime();
+                poolDespacho.ejecutar(tarea.carril, tarea.plazoNanos, () -> {
+                    Trazador.tramo(tarea.traza, "cola_despacho", encolada, System.nanoTime());
+                    registrar(nodo, asignadas, pedirANodo(tarea, nodo, "CONSULTAR_CLIENTE",
+                            tarea.parametros[0], String.join(",", asignadas)));
+                });
+            }
+        }
+        
+        synchronized void registrar(NodoTrabajador nodo, List<String> asignadas, String respuesta) {
+            pendientes--;
+            if (tarea.resultadoFuturo.isDone()) {
+                return;
+            }
+            
+            if (respuesta != null && respuesta.contains("|ERROR|")) {
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + respuesta.substring(respuesta.indexOf("|ERROR|")));
+                return;
+            }
+            
+            // RESPONSE|id|OK|cuentas|total[|id:saldo;...]
+            String[] campos = respuesta != null ? respuesta.split("\\|") : null;
+            if (campos == null || campos.length < 5) {
+                fallidos.add(nodo);
+                repartir(asignadas);
+            } else {
+                total += CodecMonto.parsear(campos[4]);
+                if (campos.length > 5) {
+                    for (String cuenta : campos[5].split(";")) {
+                        int separador = cuenta.indexOf(':');
+                        saldos.put(Integer.parseInt(cuenta.substring(0, separador)), cuenta.substring(separador + 1));
+                    }
+                }
+            }
+            
+            if (pendientes == 0 && !tarea.resultadoFuturo.isDone()) {
+                responder();
+            }
+        }
+        
+        private void responder() {
+            if (saldos.isEmpty()) {
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|ERROR|Cliente sin cuentas: " +
+                        tarea.parametros[0]);
+                return;
+            }
+            StringBuilder sb = new StringBuilder(32 + saldos.size() * 16).append("RESPONSE|").append(tarea.idTarea)
+                    .append("|OK|").append(saldos.size()).append('|');
+            CodecMonto.escribir(sb, total).append('|');
+            boolean primera = true;
+            for (Map.Entry<Integer, String> cuenta : saldos.entrySet()) {
+                if (!primera) {
+                    sb.append(';');
+                }
+                sb.append(cuenta.getKey()).append(':').append(cuenta.getValue());
+                primera = false;
+            }
+            tarea.resultadoFuturo.complete(sb.toString());
+        }
+    }
+    
+    /**
+     * Respuestas de las réplicas a una consulta con quórum
+     */
+    static class LecturaQuorum {
+        private final InfoTarea tarea;
+        private final int requeridas;
+        private int pendientes;
+        private String error; // Error de la operación que devolvieron las réplicas
+        private final List<NodoTrabajador> nodos = new ArrayList<>();
+        private final List<String> estados = new ArrayList<>(); // id:saldo:version
+        
+        LecturaQuorum(InfoTarea tarea, int replicas, int requeridas) {
+            this.tarea = tarea;
+            this.pendientes = replicas;
+            this.requeridas = requeridas;
+        }
+        
+        synchronized void registrar(NodoTrabajador nodo, String respuesta) {
+            pendientes--;
+            String estado = respuesta != null && respuesta.contains("|OK|") ? campoEstado(respuesta) : null;
+            if (estado != null) {
+                nodos.add(nodo);
+                estados.add(estado);
+            } else if (respuesta != null) {
+                error = sinEstado(respuesta);
+            }
+            if (tarea.resultadoFuturo.isDone()) {
+                return;
+            }
+            
+            if (estados.size() >= requeridas) {
+                responder();
+            } else if (estados.size() + pendientes < requeridas) {
+                if (error == null) {
+                    contadorQuorumFallido.incrementAndGet();
+                    error = "RESPONSE|" + tarea.idTarea + "|ERROR|Quórum de lectura no alcanzado: " +
+                            estados.size() + " de " + requeridas + " réplicas";
+                }
+                tarea.resultadoFuturo.complete(error);
+            }
+        }
+        
+        /**
+         * Responde con la versión más nueva y repara las réplicas atrasadas
+         * 
+         * Con la misma versión y saldos distintos las réplicas divergieron y
+         * ningún saldo es el correcto: se responde el de la primaria de la
+         * partición si está entre las leídas (si no, un error), se registra
+         * el conflicto y no se repara ninguna réplica.
+         */
+        private void responder() {
+            String[] nueva = estados.get(0).split(":");
+            for (String estado : estados) {
+                String[] campos = estado.split(":");
+                if (Long.parseLong(campos[2]) > Long.parseLong(nueva[2])) {
+                    nueva = campos;
+                }
+            }
+            long versionNueva = Long.parseLong(nueva[2]);
+            long saldoNuevo = CodecMonto.parsear(nueva[1]);
+            String particion = particionDeCuenta(nueva[0]);
+            
+            boolean conflicto = false;
+            for (String estado : estados) {
+                String[] campos = estado.split(":");
+                conflicto |= Long.parseLong(campos[2]) == versionNueva && CodecMonto.parsear(campos[1]) != saldoNuevo;
+            }
+            if (conflicto) {
+                int indicePrimaria = nodos.indexOf(primariaDe(particion));
+                String[] dePrimaria = indicePrimaria >= 0 ? estados.get(indicePrimaria).split(":") : null;
+                if (dePrimaria != null && Long.parseLong(dePrimaria[2]) != versionNueva) {
+                    dePrimaria = null;
+                }
+                log("CONFLICTO en lectura de cuenta " + nueva[0] + " (versión " + versionNueva +
+                    "): réplicas con saldos distintos " + estados +
+                    (dePrimaria != null ? "; se responde el de la primaria" : "; sin saldo de la primaria en esa versión"));
+                tarea.resultadoFuturo.complete(dePrimaria != null
+                        ? "RESPONSE|" + tarea.idTarea + "|OK|" + dePrimaria[1]
+                        : "RESPONSE|" + tarea.idTarea + "|ERROR|Réplicas en conflicto para la cuenta " + nueva[0]);
+                return;
+            }
+            tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea + "|OK|" + nueva[1]);
+            
+            String ganador = String.join(":", nueva);
+            for (int i = 0; i < estados.size(); i++) {
+                if (Long.parseLong(estados.get(i).split(":")[2]) < versionNueva) {
+                    NodoTrabajador atrasado = nodos.get(i);
+                    contadorLecturasReparadas.incrementAndGet();
+                    CompletableFuture.runAsync(() -> consultarNodo(atrasado, "REPARAR", particion, ganador));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copias confirmadas por partición de una transferencia con quórum
+     */
+    static class EscrituraQuorum {
+        private final InfoTarea tarea;
+        private final String respuesta;
+        private final Map<String, Integer> copias = new HashMap<>();
+        private final Map<String, Integer> requeridas = new HashMap<>();
+        private int pendientes;
+        
+        EscrituraQuorum(InfoTarea tarea, String respuesta, int quorum, Collection<String> particiones,
+                        NodoTrabajador primaria) {
+            this.tarea = tarea;
+            this.respuesta = respuesta;
+            for (String particion : particiones) {
+                copias.put(particion, primaria.particiones.contains(particion) ? 1 : 0);
+                requeridas.put(particion, Math.max(1, Math.min(quorum, replicasConocidas(particion))));
+            }
+        }
+        
+        synchronized void iniciar(int envios) {
+            pendientes = envios;
+            evaluar();
+        }
+        
+        synchronized void contarCopia(String particion) {
+            copias.merge(particion, 1, Integer::sum);
+        }
+        
+        synchronized void confirmar(String particion, String resultado) {
+            pendientes--;
+            if (reparacionConfirmada(resultado)) {
+                copias.merge(particion, 1, Integer::sum);
+            }
+            evaluar();
+        }
+        
+        /**
+         * La réplica cuenta como copia si todas las cuentas enviadas quedaron
+         * con ese estado o uno más nuevo: [RESPONSE|id|]OK|aplicadas|omitidas|detalle
+         * con sólo A (aplicada) o V (ya estaba). Sin detalle (nodo anterior)
+         * basta con que no haya omitidas.
+         */
+        static boolean reparacionConfirmada(String resultado) {
+            if (resultado == null || !resultado.startsWith("OK|") && !resultado.contains("|OK|")) {
+                return false;
+            }
+            String[] campos = resultado.substring(resultado.startsWith("OK|") ? 0 : resultado.indexOf("|OK|") + 1)
+                    .split("\\|");
+            if (campos.length > 3) {
+                for (int i = 0; i < campos[3].length(); i++) {
+                    char estado = campos[3].charAt(i);
+                    if (estado != 'A' && estado != 'V') {
+                        return false;
+                    }
+                }
+                return !campos[3].isEmpty();
+            }
+            return campos.length > 2 && "0".equals(campos[2]);
+        }
+        
+        private void evaluar() {
+            if (tarea.resultadoFuturo.isDone()) {
+                return;
+            }
+            boolean alcanzado = true;
+            for (Map.Entry<String, Integer> particion : copias.entrySet()) {
+                alcanzado &= particion.getValue() >= requeridas.get(particion.getKey());
+            }
+            if (alcanzado) {
+                tarea.resultadoFuturo.complete(respuesta);
+            } else if (pendientes == 0) {
+                // La primaria ya la aplicó: el cliente no debe repetirla a ciegas
+                contadorQuorumFallido.incrementAndGet();
+                tarea.resultadoFuturo.complete("RESPONSE|" + tarea.idTarea +
+                    "|ERROR|Transferencia aplicada sin quórum de escritura: copias " + copias +
+                    ", requeridas " + requeridas);
+            }
+        }
+    }
+    
+    /**
+     * Nodos de la tabla que guardan versiones por cuenta (los nodos Java)
+     */
+    private static boolean llevaVersiones(NodoTrabajador nodo) {
+        return "java".equals(nodo.lenguaje);
+    }
+    
+    /**
+     * Réplicas de la partición en la tabla que llevan versiones, disponibles o no
+     */
+    private static int replicasConocidas(String particion) {
+        int replicas = 0;
+        for (NodoTrabajador nodo : nodosTrabajadores) {
+            if (llevaVersiones(nodo) && nodo.particiones.contains(particion)) {
+                replicas++;
+            }
+        }
+        return replicas;
+    }
+    
+    /**
+     * Quórum de una tarea: el indicado en la solicitud o el de su operación
+     * (W en transferencias, R en consultas; las demás operaciones usan un nodo)
+     */
+    private static int quorumDe(InfoTarea tarea, String indicado) {
+        boolean transferencia = "TRANSFERIR_FONDOS".equals(tarea.operacion);
+        if (!transferencia && !"CONSULTAR_SALDO".equals(tarea.operacion)) {
+            return 1;
+        }
+        if (indicado != null) {
+            try {
+                return parsearQuorum(indicado);
+            } catch (NumberFormatException e) {
+                // Se usa el de la operación
+            }
+        }
+        if (transferencia) {
+            return quorumEscritura;
+        }
+        return tarea.carril == PlanificadorCarriles.Carril.AUDITORIA ? quorumAuditoria : quorumLectura;
+    }
+    
+    /**
+     * "todas" o 0 = todas las réplicas disponibles
+     */
+    private static int parsearQuorum(String valor) {
+        return "todas".equalsIgnoreCase(valor.trim()) ? 0 : Math.max(0, Integer.parseInt(valor.trim()));
+    }
+    
+    /**
+     * Estado de las cuentas que agrega el nodo con versiones=1 (null si no viene)
+     */
+    private static String campoEstado(String respuesta) {
+        int inicio = respuesta.indexOf("|estado=");
+        return inicio < 0 ? null : respuesta.substring(inicio + "|estado=".length());
+    }
+    
+    private static String sinEstado(String respuesta) {
+        int inicio = respuesta.indexOf("|estado=");
+        return inicio < 0 ? respuesta : respuesta.substring(0, inicio);
+    }
+    
+    /**
+     * SEGÚN PDF: Selecciona nodo con balanceador de carga y particiones
+     */
+    private static NodoTrabajador seleccionarNodoConBalanceador(InfoTarea tarea) {
+        return seleccionarNodo(tablaRuteo, tarea);
+    }
+    
+    /**
+     * Nodos disponibles que tienen la partición requerida según la tabla de
+     * ruteo; si ninguno sirve, cualquier nodo disponible
+     */
+    static NodoTrabajador seleccionarNodo(TablaRuteo tabla, InfoTarea tarea) {
+        NodoTrabajador[] replicas = tabla.replicas[numeroParticion(tarea)];
+        NodoTrabajador elegido = menosCargado(replicas, tarea, true);
+        if (elegido == null) {
+            elegido = menosCargado(replicas, tarea, false);
+        }
+        return elegido != null ? elegido : menosCargado(tabla.disponibles, tarea, false);
+    }
+    
+    /**
+     * BALANCEADOR DE CARGA: el candidato con menor carga respecto a su
+     * capacidad, drenando los nodos sospechosos mientras haya alternativas
+     * sanas; no repite los ya intentados ni los de circuito abierto. Con
+     * rampa, un nodo en arranque gradual participa sólo en la fracción de
+     * las tareas que le corresponde
+     */
+    private static NodoTrabajador menosCargado(NodoTrabajador[] nodos, InfoTarea tarea, boolean rampa) {
+        NodoTrabajador mejor = null;
+        for (NodoTrabajador nodo : nodos) {
+            if (!esCandidato(nodo, tarea)) {
+                continue;
+            }
+            int fraccion = nodo.rampaPorMil;
+            if (rampa && fraccion < 1000 && ThreadLocalRandom.current().nextInt(1000) >= fraccion) {
+                continue;
+            }
+            if (mejor == null || (nodo.sospechoso != mejor.sospechoso ? mejor.sospechoso
+                    : (long) nodo.cargaActual.get() * mejor.capacidad < (long) mejor.cargaActual.get() * nodo.capacidad)) {
+                mejor = nodo;
+            }
+        }
+        return mejor;
+    }
+    
+    /**
+     * Devuelve la posición donde empiezan los metadatos opcionales
+     * (campos clave=valor al final de la solicitud)
+     */
+    private static int inicioMetadatos(String[] partes, int desde) {
+        int fin = partes.length;
+        while (fin > desde && partes[fin - 1].indexOf('=') > 0) {
+            fin--;
+        }
+        return fin;
+    }
+    
+    /**
+     * Busca el valor de un metadato clave=valor a partir de la posición dada
+     */
+    private static String metadato(String[] partes, int desde, String clave) {
+        for (int i = desde; i < partes.length; i++) {
+            String campo = partes[i];
+            if (campo.length() > clave.length() && campo.charAt(clave.length()) == '=' && campo.startsWith(clave)) {
+                return campo.substring(clave.length() + 1);
+            }
+        }
+        return null;
+    }
+    
+    private static boolean esCandidato(NodoTrabajador nodo, InfoTarea tarea) {
+        return nodo.disponible && nodo.circuito.admiteTrafico() && !tarea.nodosIntentados.contains(nodo);
+    }
+    
+    /**
+     * Determina la partición requerida para una tarea
+     */
+    private static String determinarParticion(InfoTarea tarea) {
+        return NOMBRES_PARTICION[numeroParticion(tarea)];
+    }
+    
+    private static int numeroParticion(InfoTarea tarea) {
+        return tarea.parametros.length > 0 ? numeroParticion(tarea.parametros[0]) : 1;
+    }
+    
+    private static String particionDeCuenta(String idCuenta) {
+        return NOMBRES_PARTICION[numeroParticion(idCuenta)];
+    }
+    
+    private static int numeroParticion(String idCuenta) {
+        try {
+            int particion = ((Integer.parseInt(idCuenta) - GeneradorDatos.PRIMER_ID_CUENTA) / cuentasPorParticion) + 1; // Rangos contiguos
+            return Math.min(Math.max(particion, 1), NUM_PARTICIONES);
+        } catch (NumberFormatException e) {
+            return 1; // Default
+        }
+    }
+    
+    /**
+     * Particiones que toca una tarea (origen y destino en transferencias),
+     * en orden para tomar sus compuertas siempre en el mismo orden
+     */
+    private static List<CompuertaParticion> compuertasDe(InfoTarea tarea) {
+        if (!"CONSULTAR_CLIENTE".equals(tarea.operacion)) {
+            int primera = numeroParticion(tarea);
+            int segunda = "TRANSFERIR_FONDOS".equals(tarea.operacion) && tarea.parametros.length > 1
+                    ? numeroParticion(tarea.parametros[1]) : primera;
+            if (primera == segunda) {
+                return List.of(compuertaDe(primera));
+            }
+            return List.of(compuertaDe(Math.min(primera, segunda)), compuertaDe(Math.max(primera, segunda)));
+        }
+        Set<String> tocadas = new TreeSet<>(particionesDeCliente(tarea.parametros.length > 0 ? tarea.parametros[0] : ""));
+        List<CompuertaParticion> resultado = new ArrayList<>(tocadas.size());
+        for (String particion : tocadas) {
+            resultado.add(compuertas.computeIfAbsent(particion, p -> new CompuertaParticion()));
+        }
+        return resultado;
+    }
+    
+    private static CompuertaParticion compuertaDe(int particion) {
+        return compuertas.computeIfAbsent(NOMBRES_PARTICION[particion], p -> new CompuertaParticion());
+    }
+    
+    /**
+     * Formatea un monto en centavos con separador de miles para el log
+     */
+    private static String formatoMonto(long centavos) {
+        return new DecimalFormat("#,##0.00").format(java.math.BigDecimal.valueOf(centavos, 2));
     }
     
     /**
@@ -0,0 +1,222 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trazador - Trazas de extremo a extremo de las solicitudes
+ *
+ * Cliente, servidor central y nodos anotan tramos con tiempo (espera en
+ * colas, balanceador, conexión, locks, ejecución, log, respuesta) de las
+ * solicitudes muestreadas. El identificador de la traza viaja en los
+ * metadatos de REQUEST y TASK ("|traza=9f3c..."), así los tramos de los
+ * tres procesos se pueden unir.
+ *
+ * Cada proceso escribe trazas/componente-pid.json en el formato de eventos
+ * de Chrome (chrome://tracing, Perfetto). El arreglo no se cierra, cosa
+ * que ese formato admite, para poder agregar eventos hasta el final.
+ * Los instantes son microsegundos de reloj de pared, así los archivos
+ * de procesos en la misma máquina se pueden abrir juntos.
+ *
+ * Resumen por tramo (percentiles) de uno o más archivos:
+ *   java Trazador resumen trazas/*.json
+ */
+public final class Trazador {
+
+    private static final int CAPACIDAD_COLA = 65536;
+    private static final long INTERVALO_ESCRITURA_MS = 1000;
+
+    // Reloj de pared en microsegundos = origen + nanoTime / 1000
+    private static final long origenMicros =
+            System.currentTimeMillis() * 1000 - System.nanoTime() / 1000;
+    private static final long pid = ProcessHandle.current().pid();
+
+    private static final ThreadLocal<String> trazaActual = new ThreadLocal<>();
+    private static final BlockingQueue<String> pendientes = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+    private static final AtomicLong descartados = new AtomicLong();
+
+    private static volatile String componente = "proceso";
+    private static volatile double muestreo;
+    private static Thread escritor;
+
+    private Trazador() {
+    }
+
+    /**
+     * Configura el componente y la fracción de solicitudes propias que se
+     * trazan (0 = sólo las que ya llegan con traza)
+     */
+    public static void iniciar(String nombreComponente, double fraccionMuestreo) {
+        componente = nombreComponente;
+        muestreo = Math.max(0, Math.min(1, fraccionMuestreo));
+    }
+
+    /**
+     * Nuevo identificador de traza si la solicitud sale sorteada, si no null
+     */
+    public static String muestrear() {
+        double fraccion = muestreo;
+        if (fraccion <= 0 || ThreadLocalRandom.current().nextDouble() >= fraccion) {
+            return null;
+        }
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+    }
+
+    /**
+     * Traza de la tarea que está ejecutando este hilo (null si no se traza)
+     */
+    public static String actual() {
+        return trazaActual.get();
+    }
+
+    public static void fijarActual(String traza) {
+        if (traza == null) {
+            trazaActual.remove();
+        } else {
+            trazaActual.set(traza);
+        }
+    }
+
+    /**
+     * Anota un tramo [inicio, fin] medido con System.nanoTime
+     */
+    public static void tramo(String traza, String nombre, long inicioNanos, long finNanos) {
+        if (traza == null) {
+            return;
+        }
+        iniciarEscritor();
+
+        long inicio = origenMicros + inicioNanos / 1000;
+        long duracion = Math.max(0, (finNanos - inicioNanos) / 1000);
+        StringBuilder sb = new StringBuilder(192);
+        sb.append("{\"name\":\"").append(nombre)
+          .append("\",\"cat\":\"").append(componente)
+          .append("\",\"ph\":\"X\",\"ts\":").append(inicio)
+          .append(",\"dur\":").append(duracion)
+          .append(",\"pid\":").append(pid)
+          .append(",\"tid\":").append(Thread.currentThread().getId())
+          .append(",\"args\":{\"traza\":\"").append(traza).append("\"}}");
+
+        if (!pendientes.offer(sb.toString())) {
+            descartados.incrementAndGet();
+        }
+    }
+
+    private static synchronized void iniciarEscritor() {
+        if (escritor != null) {
+            return;
+        }
+        escritor = new Thread(Trazador::escribir);
+        escritor.setDaemon(true);
+        escritor.setName("Trazas");
+        escritor.start();
+    }
+
+    /**
+     * Vuelca los eventos pendientes al archivo del proceso
+     */
+    private static void escribir() {
+        Path archivo = Paths.get("trazas", componente + "-" + pid + ".json");
+        try {
+            Files.createDirectories(archivo.getParent());
+            try (BufferedWriter salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+                salida.write("[\n");
+                salida.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid
+                        + ",\"args\":{\"name\":\"" + componente + "\"}},\n");
+
+                List<String> lote = new ArrayList<>(1024);
+                while (true) {
+                    String evento = pendientes.poll(INTERVALO_ESCRITURA_MS, TimeUnit.MILLISECONDS);
+                    if (evento != null) {
+                        lote.add(evento);
+                        pendientes.drainTo(lote);
+                        for (String e : lote) {
+                            salida.write(e);
+                            salida.write(",\n");
+                        }
+                        lote.clear();
+                    }
+                    salida.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Trazas desactivadas, no se pudo escribir " + archivo + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Eventos perdidos porque la cola de escritura estaba llena
+     */
+    public static long descartados() {
+        return descartados.get();
+    }
+
+    /**
+     * Resumen de archivos de trazas: percentiles de duración por tramo
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !args[0].equals("resumen")) {
+            System.err.println("Uso: java Trazador resumen <archivo.json>...");
+            return;
+        }
+
+        Map<String, List<Long>> duraciones = new TreeMap<>();
+        Set<String> trazas = new HashSet<>();
+        for (int i = 1; i < args.length; i++) {
+            for (String linea : Files.readAllLines(Paths.get(args[i]), StandardCharsets.UTF_8)) {
+                String fase = campo(linea, "ph");
+                if (!"X".equals(fase)) {
+                    continue;
+                }
+                String clave = campo(linea, "cat") + "." + campo(linea, "name");
+                duraciones.computeIfAbsent(clave, k -> new ArrayList<>())
+                        .add(Long.parseLong(campo(linea, "dur")));
+                trazas.add(campo(linea, "traza"));
+            }
+        }
+
+        System.out.println("Trazas: " + trazas.size());
+        System.out.println(String.format("%-36s %8s %10s %10s %10s %10s",
+                "tramo", "n", "p50 ms", "p90 ms", "p99 ms", "máx ms"));
+        for (Map.Entry<String, List<Long>> entrada : duraciones.entrySet()) {
+            List<Long> valores = entrada.getValue();
+            Collections.sort(valores);
+            System.out.println(String.format("%-36s %8d %10.3f %10.3f %10.3f %10.3f",
+                    entrada.getKey(), valores.size(),
+                    percentil(valores, 0.50), percentil(valores, 0.90),
+                    percentil(valores, 0.99), valores.get(valores.size() - 1) / 1000.0));
+        }
+    }
+
+    private static double percentil(List<Long> ordenados, double p) {
+        int i = (int) Math.ceil(p * ordenados.size()) - 1;
+        return ordenados.get(Math.max(0, i)) / 1000.0;
+    }
+
+    /**
+     * Valor de un campo de un evento escrito por este trazador (una línea por evento)
+     */
+    private static String campo(String linea, String nombre) {
+        String clave = "\"" + nombre + "\":";
+        int i = linea.indexOf(clave);
+        if (i < 0) {
+            return null;
+        }
+        i += clave.length();
+        if (linea.charAt(i) == '"') {
+            return linea.substring(i + 1, linea.indexOf('"', i + 1));
+        }
+        int fin = i;
+        while (fin < linea.length() && (Character.isDigit(linea.charAt(fin)) || linea.charAt(fin) == '-')) {
+            fin++;
+        }
+        return linea.substring(i, fin);
+    }
+}